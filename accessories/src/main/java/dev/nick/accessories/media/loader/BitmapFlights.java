@@ -0,0 +1,356 @@
+/*
+ * Copyright (c) 2016 Nick Guo
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package dev.nick.accessories.media.loader;
+
+import android.graphics.Bitmap;
+import android.support.annotation.NonNull;
+import android.support.annotation.Nullable;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import dev.nick.accessories.logger.Logger;
+import dev.nick.accessories.logger.LoggerManager;
+import dev.nick.accessories.media.loader.cache.CacheKey;
+import dev.nick.accessories.media.loader.queue.Priority;
+import dev.nick.accessories.media.loader.worker.DecodeSpec;
+import dev.nick.accessories.media.loader.worker.MediaData;
+import dev.nick.accessories.media.loader.worker.ProgressListener;
+import dev.nick.accessories.media.loader.worker.result.Cause;
+import dev.nick.accessories.media.loader.worker.result.ErrorListener;
+import dev.nick.accessories.media.loader.worker.task.BaseDisplayTask;
+import dev.nick.accessories.media.loader.worker.task.BaseFutureTask;
+import dev.nick.accessories.media.loader.worker.task.BitmapDisplayTask;
+import dev.nick.accessories.media.loader.worker.task.DisplayTaskRecord;
+import dev.nick.accessories.media.loader.worker.task.FutureBitmapTask;
+import dev.nick.accessories.media.loader.worker.task.TaskInterrupter;
+import dev.nick.accessories.media.loader.worker.task.TaskManager;
+
+/**
+ * Bitmap loads in flight, keyed by url and variant. A display of a key already in flight
+ * subscribes to the running fetch and decode instead of starting its own, and every subscriber
+ * gets the result. The shared work is cancelled only once none of its subscribers is left.
+ * <p>
+ * Each display gets a {@link Subscription} future, which is never submitted to an executor,
+ * it is run by the flight when the work lands. The work itself runs as a usual
+ * {@link BitmapDisplayTask} with the flight as its listeners and {@link TaskInterrupter}.
+ */
+class BitmapFlights {
+
+    private final Map<String, Flight> mFlights = new HashMap<>();
+
+    private final TaskManager mTaskManager;
+
+    private final Logger mLogger;
+
+    BitmapFlights(TaskManager taskManager) {
+        mTaskManager = taskManager;
+        mLogger = LoggerManager.getLogger(getClass());
+    }
+
+    @NonNull
+    static String keyOf(@NonNull String url, @NonNull DecodeSpec spec) {
+        return CacheKey.of(url, spec).getVariantKey() + "/" + spec.getQuality();
+    }
+
+    /**
+     * Subscribe the future of a display, its task must be a {@link Subscription}.
+     *
+     * @return The flight of the key, to be started by the caller if {@link Flight#claimStart()}.
+     */
+    @NonNull
+    synchronized Flight subscribe(@NonNull String key, @NonNull FutureBitmapTask future) {
+        Flight flight = mFlights.get(key);
+        if (flight == null || !flight.add(future)) {
+            flight = new Flight(key);
+            flight.add(future);
+            mFlights.put(key, flight);
+        } else {
+            mLogger.verbose("Joined flight:" + key);
+        }
+        return flight;
+    }
+
+    /**
+     * Called when a future is cancelled, the work of its flight is cancelled if it was the last subscriber.
+     */
+    void onCancel(@NonNull BaseFutureTask future) {
+        if (future.getListenableTask() instanceof Subscription) {
+            Flight flight = ((Subscription) future.getListenableTask()).mFlight;
+            if (flight != null) flight.unsubscribe(future);
+        }
+    }
+
+    /**
+     * Called when the priority of a future changed, the work of its flight takes the highest
+     * priority of its subscribers.
+     *
+     * @return The future to move in the queue of its executor, {@code null} if none.
+     */
+    @Nullable
+    BaseFutureTask onReprioritized(@NonNull BaseFutureTask future) {
+        if (!(future.getListenableTask() instanceof Subscription)) return future;
+        Flight flight = ((Subscription) future.getListenableTask()).mFlight;
+        return flight == null ? null : flight.reprioritize();
+    }
+
+    class Flight implements ProgressListener<Bitmap>, ErrorListener, TaskInterrupter {
+
+        private final String mKey;
+        // Guarded by BitmapFlights.this.
+        private final List<BaseFutureTask> mSubscribers = new ArrayList<>();
+        private boolean mStartClaimed;
+        // Takes no subscriber anymore.
+        private boolean mClosed;
+        private boolean mLanded;
+        @Nullable
+        private FutureBitmapTask mWork;
+
+        private Flight(String key) {
+            mKey = key;
+        }
+
+        private boolean add(BaseFutureTask future) {
+            if (mClosed) return false;
+            ((Subscription) future.getListenableTask()).mFlight = this;
+            mSubscribers.add(future);
+            return true;
+        }
+
+        /**
+         * @return {@code true} only once, to the caller which has to start the work.
+         */
+        boolean claimStart() {
+            synchronized (BitmapFlights.this) {
+                if (mStartClaimed) return false;
+                mStartClaimed = true;
+                return true;
+            }
+        }
+
+        /**
+         * @param task Task doing the fetch and decode, with this flight as its listeners.
+         * @return The future of the work, to be submitted by the caller.
+         */
+        @NonNull
+        FutureBitmapTask newWork(@NonNull BitmapDisplayTask task, @Nullable BaseFutureTask.TaskActionListener listener) {
+            FutureBitmapTask work = new FutureBitmapTask(task, listener, false) {
+                @Override
+                protected void done() {
+                    super.done();
+                    land(null, null, false);
+                }
+            };
+            synchronized (BitmapFlights.this) {
+                mWork = work;
+            }
+            return work;
+        }
+
+        /**
+         * @return Record of the work, it matches no view.
+         */
+        @NonNull
+        DisplayTaskRecord newWorkRecord() {
+            return new DisplayTaskRecord(0, mTaskManager.nextTaskId());
+        }
+
+        private void unsubscribe(BaseFutureTask future) {
+            FutureBitmapTask abandoned = null;
+            synchronized (BitmapFlights.this) {
+                if (!mSubscribers.remove(future) || mClosed) return;
+                for (BaseFutureTask subscriber : mSubscribers) {
+                    if (!subscriber.isCancelled()) return;
+                }
+                close();
+                abandoned = mWork;
+            }
+            mLogger.verbose("Abandoned flight:" + mKey);
+            if (abandoned != null) abandoned.cancel(true);
+        }
+
+        @Nullable
+        private FutureBitmapTask reprioritize() {
+            synchronized (BitmapFlights.this) {
+                if (mWork == null || mLanded) return null;
+                Priority highest = Priority.LOW;
+                for (BaseFutureTask subscriber : mSubscribers) {
+                    if (subscriber.isCancelled()) continue;
+                    Priority priority = subscriber.getRemark();
+                    if (priority.ordinal() < highest.ordinal()) highest = priority;
+                }
+                if (mWork.getRemark() == highest) return null;
+                mWork.setPriority(highest);
+                return mWork;
+            }
+        }
+
+        private void close() {
+            mClosed = true;
+            if (mFlights.get(mKey) == this) mFlights.remove(mKey);
+        }
+
+        private List<BaseFutureTask> liveSubscribers() {
+            synchronized (BitmapFlights.this) {
+                List<BaseFutureTask> live = new ArrayList<>(mSubscribers.size());
+                for (BaseFutureTask subscriber : mSubscribers) {
+                    if (!subscriber.isCancelled()) live.add(subscriber);
+                }
+                return live;
+            }
+        }
+
+        private void land(@Nullable Bitmap result, @Nullable Cause cause, boolean completed) {
+            List<BaseFutureTask> subscribers;
+            synchronized (BitmapFlights.this) {
+                if (mLanded) return;
+                mLanded = true;
+                close();
+                subscribers = new ArrayList<>(mSubscribers);
+                mSubscribers.clear();
+            }
+            for (BaseFutureTask subscriber : subscribers) {
+                if (subscriber.isCancelled()) continue;
+                ((Subscription) subscriber.getListenableTask()).land(result, cause, completed);
+                // Calls back the listeners of the subscriber on this thread, and completes its future.
+                subscriber.run();
+            }
+        }
+
+        @Override
+        public void onStartLoading() {
+            for (BaseFutureTask subscriber : liveSubscribers()) {
+                ProgressListener listener = subscriber.getListenableTask().getProgressListener();
+                if (listener != null) listener.onStartLoading();
+            }
+        }
+
+        @Override
+        public void onProgressUpdate(float progress) {
+            for (BaseFutureTask subscriber : liveSubscribers()) {
+                ProgressListener listener = subscriber.getListenableTask().getProgressListener();
+                if (listener != null) listener.onProgressUpdate(progress);
+            }
+        }
+
+        @Override
+        public void onCancel() {
+            for (BaseFutureTask subscriber : liveSubscribers()) {
+                ProgressListener listener = subscriber.getListenableTask().getProgressListener();
+                if (listener != null) listener.onCancel();
+            }
+        }
+
+        @Override
+        public void onComplete(Bitmap result) {
+            land(result, null, true);
+        }
+
+        @Override
+        public void onError(@NonNull Cause cause) {
+            land(null, cause, false);
+        }
+
+        /**
+         * The work runs as long as one subscriber is neither cancelled nor replaced on its view.
+         */
+        @Override
+        public boolean interruptExecute(DisplayTaskRecord record) {
+            for (BaseFutureTask subscriber : liveSubscribers()) {
+                DisplayTaskRecord subscriberRecord = (DisplayTaskRecord) subscriber.getListenableTask().getTaskRecord();
+                if (!mTaskManager.interruptExecute(subscriberRecord)) return false;
+            }
+            return true;
+        }
+
+        @Override
+        public boolean interruptDisplay(DisplayTaskRecord record) {
+            return interruptExecute(record);
+        }
+    }
+
+    /**
+     * One display of a flight, its future completes with the result of the flight.
+     */
+    static class Subscription extends BaseDisplayTask<Bitmap> {
+
+        private final MediaData<Bitmap> mMediaData;
+        private final DisplayTaskRecord mTaskRecord;
+        private final ErrorListener mErrorListener;
+        private ProgressListener<Bitmap> mProgressListener;
+
+        private Flight mFlight;
+
+        private Bitmap mResult;
+        private Cause mCause;
+        private boolean mCompleted;
+
+        Subscription(MediaData<Bitmap> mediaData,
+                     ProgressListener<Bitmap> progressListener,
+                     ErrorListener errorListener,
+                     DisplayTaskRecord taskRecord) {
+            mMediaData = mediaData;
+            mProgressListener = progressListener;
+            mErrorListener = errorListener;
+            mTaskRecord = taskRecord;
+        }
+
+        private void land(Bitmap result, Cause cause, boolean completed) {
+            mResult = result;
+            mCause = cause;
+            mCompleted = completed;
+        }
+
+        @Override
+        public void run() {
+            call();
+        }
+
+        @Override
+        public Bitmap call() {
+            if (mCause != null) {
+                if (mErrorListener != null) mErrorListener.onError(mCause);
+                return null;
+            }
+            if (mCompleted && mProgressListener != null) mProgressListener.onComplete(mResult);
+            return mResult;
+        }
+
+        @Override
+        public DisplayTaskRecord getTaskRecord() {
+            return mTaskRecord;
+        }
+
+        @NonNull
+        @Override
+        public MediaData<Bitmap> getImageData() {
+            return mMediaData;
+        }
+
+        @Override
+        public ProgressListener<Bitmap> getProgressListener() {
+            return mProgressListener;
+        }
+
+        @Override
+        public void setProgressListener(@Nullable ProgressListener<Bitmap> listener) {
+            mProgressListener = listener;
+        }
+    }
+}
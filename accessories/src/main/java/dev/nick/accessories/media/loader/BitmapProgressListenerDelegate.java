@@ -17,36 +17,53 @@
 package dev.nick.accessories.media.loader;
 
 import android.graphics.Bitmap;
+import android.support.annotation.Nullable;
 
 import java.util.ArrayList;
 
-import dev.nick.accessories.media.loader.cache.CacheManager;
+import dev.nick.accessories.media.loader.cache.BitmapCacheManager;
+import dev.nick.accessories.media.loader.cache.pool.BitmapSeatTracker;
 import dev.nick.accessories.media.loader.ui.DisplayOption;
 import dev.nick.accessories.media.loader.ui.MediaHolder;
 import dev.nick.accessories.media.loader.ui.animator.ViewAnimator;
 import dev.nick.accessories.media.loader.ui.art.MediaArt;
-import dev.nick.accessories.media.loader.worker.DimenSpec;
+import dev.nick.accessories.media.loader.worker.DecodeSpec;
+import dev.nick.accessories.media.loader.worker.Pipeline;
 import dev.nick.accessories.media.loader.worker.ProgressListener;
 import dev.nick.accessories.media.loader.worker.task.DisplayTaskRecord;
 import dev.nick.accessories.media.loader.worker.task.TaskManager;
+import lombok.Setter;
 
 class BitmapProgressListenerDelegate extends ProgressListenerDelegate<Bitmap> {
 
+    private BitmapCacheManager bitmapCacheManager;
 
-    BitmapProgressListenerDelegate(CacheManager<Bitmap> cacheManager,
+    // Run once the result is shown.
+    @Setter
+    @Nullable
+    private Runnable revalidation;
+
+    // Only cache the result, for prefetches: no arts, nothing set on the holder.
+    @Setter
+    private boolean warmOnly;
+
+    BitmapProgressListenerDelegate(BitmapCacheManager cacheManager,
                                    TaskManager taskManager,
                                    ProgressListener<Bitmap> listener,
-                                   DimenSpec dimenSpec,
+                                   DecodeSpec decodeSpec,
                                    DisplayOption<Bitmap> option,
                                    MediaHolder<Bitmap> mediaHolder,
                                    DisplayTaskRecord taskRecord,
                                    String url) {
-        super(cacheManager, taskManager, listener, dimenSpec, option, mediaHolder, taskRecord, url);
+        super(cacheManager, taskManager, listener, decodeSpec, option, mediaHolder, taskRecord, url);
+        this.bitmapCacheManager = cacheManager;
     }
 
     @Override
     protected void callOnComplete(Bitmap result) {
         if (!canceled) {
+            // The listener may hold it as long as it likes, never reuse it.
+            if (listener != null) BitmapSeatTracker.getSharedTracker().markEscaped(result);
             UIThreadRouter.getSharedRouter().callOnComplete(listener, result);
         }
     }
@@ -54,6 +71,11 @@ class BitmapProgressListenerDelegate extends ProgressListenerDelegate<Bitmap> {
     @Override
     public void onComplete(Bitmap result) {
 
+        if (warmOnly) {
+            if (result != null) cacheManager.cache(url, decodeSpec, result);
+            return;
+        }
+
         callOnComplete(result);
 
         if (result == null) {
@@ -62,7 +84,7 @@ class BitmapProgressListenerDelegate extends ProgressListenerDelegate<Bitmap> {
         }
 
         if (canceled) {
-            cacheManager.cache(url, result);
+            cacheManager.cache(url, decodeSpec, result);
             mLogger.verbose("Skip calling back, canceled");
             return;
         }
@@ -74,8 +96,39 @@ class BitmapProgressListenerDelegate extends ProgressListenerDelegate<Bitmap> {
         if (!isViewMaybeReused || !checkTaskDirty()) {
             ViewAnimator<Bitmap> animator = (option == null ? null : option.getAnimator());
             ArrayList<MediaArt<Bitmap>> mediaArts = (option == null ? null : option.getMediaArts());
-            UISettingApplier.getSharedApplier().applySettings(result, mediaArts, settable, animator);
+            Pipeline pipeline = decodeSpec.getPipeline();
+            if (pipeline != null && mediaArts != null && !mediaArts.isEmpty()) {
+                applyArtsOnStage(pipeline, result, mediaArts, animator);
+                return;
+            }
+            Bitmap arted = bitmapCacheManager.applyArts(url, decodeSpec, result, mediaArts, settable);
+            UISettingApplier.getSharedApplier().applyRetainedSettings(arted, settable, animator);
+        }
+        cacheManager.cache(url, decodeSpec, result);
+        if (revalidation != null) revalidation.run();
+    }
+
+    /**
+     * Run the art chain on the art stage and show its output from there. The source is cached
+     * once the chain is done with it, a cached bitmap may go back to the pool once evicted.
+     */
+    private void applyArtsOnStage(Pipeline pipeline, final Bitmap result, final ArrayList<MediaArt<Bitmap>> mediaArts,
+                                  @Nullable final ViewAnimator<Bitmap> animator) {
+        boolean accepted = pipeline.submit(Pipeline.Stage.ART, new Runnable() {
+            @Override
+            public void run() {
+                // The view may have been given to another task meanwhile.
+                if (!canceled && (!option.isViewMaybeReused() || !checkTaskDirty())) {
+                    Bitmap arted = bitmapCacheManager.applyArts(url, decodeSpec, result, mediaArts, settable);
+                    UISettingApplier.getSharedApplier().applyRetainedSettings(arted, settable, animator);
+                }
+                cacheManager.cache(url, decodeSpec, result);
+                if (revalidation != null) revalidation.run();
+            }
+        });
+        if (!accepted) {
+            mLogger.verbose("Arts dropped, the loader is terminated");
+            cacheManager.cache(url, decodeSpec, result);
         }
-        cacheManager.cache(url, result);
     }
 }
@@ -0,0 +1,229 @@
+/*
+ * Copyright (c) 2016 Nick Guo
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package dev.nick.accessories.media.loader;
+
+import android.content.Context;
+import android.graphics.Bitmap;
+import android.os.Process;
+import android.support.annotation.NonNull;
+import android.support.annotation.Nullable;
+import android.support.annotation.WorkerThread;
+import android.support.v4.util.LruCache;
+
+import com.google.guava.io.Files;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.TimeUnit;
+
+import dev.nick.accessories.logger.Logger;
+import dev.nick.accessories.logger.LoggerManager;
+import dev.nick.accessories.media.loader.cache.BitmapCacheManager;
+import dev.nick.accessories.media.loader.cache.OriginalCommitter;
+import dev.nick.accessories.media.loader.queue.Dispatcher;
+import dev.nick.accessories.media.loader.ui.DisplayOption;
+import dev.nick.accessories.media.loader.ui.MediaHolder;
+import dev.nick.accessories.media.loader.utils.FileUtils;
+import dev.nick.accessories.media.loader.worker.DecodeSpec;
+import dev.nick.accessories.media.loader.worker.MediaSource;
+import dev.nick.accessories.media.loader.worker.bitmap.BitmapSource;
+import dev.nick.accessories.media.loader.worker.network.CacheMeta;
+import dev.nick.accessories.media.loader.worker.network.DownloadManager;
+import dev.nick.accessories.media.loader.worker.network.DownloadManagerImpl;
+import dev.nick.accessories.media.loader.worker.network.DownloadResult;
+import dev.nick.accessories.media.loader.worker.network.NetworkPolicy;
+import dev.nick.accessories.media.loader.worker.task.DisplayTaskRecord;
+import dev.nick.accessories.media.loader.worker.task.TaskManager;
+
+/**
+ * Refreshes network urls served from a cached copy under {@link NetworkPolicy#isStaleWhileRevalidate()},
+ * one at a time in the background. When the content changed, the cached variants of the url
+ * are dropped and the new bitmap is pushed to the holder if it still shows the url.
+ */
+class BitmapRevalidator {
+
+    // How long a url is not checked again after a failure, such as being offline.
+    private static final long RETRY_DELAY = TimeUnit.SECONDS.toMillis(30);
+    private static final int MAX_TRACKED_URLS = 256;
+
+    private final Context mContext;
+    private final LoaderConfig mConfig;
+    private final BitmapCacheManager mCacheManager;
+    private final TaskManager mTaskManager;
+    private final DownloadManager mDownloadManager;
+    private final ExecutorService mService;
+
+    // Time until which each url is not checked again, Long.MAX_VALUE while being checked.
+    private final LruCache<String, Long> mCheckedUntil = new LruCache<>(MAX_TRACKED_URLS);
+
+    private final Logger mLogger;
+
+    BitmapRevalidator(Context context, LoaderConfig config, BitmapCacheManager cacheManager, TaskManager taskManager) {
+        mContext = context;
+        mConfig = config;
+        mCacheManager = cacheManager;
+        mTaskManager = taskManager;
+        mDownloadManager = new DownloadManagerImpl(context, config);
+        mService = Dispatcher.shared().newExecutor("Revalidator", 1);
+        mLogger = LoggerManager.getLogger(getClass());
+    }
+
+    static boolean isRevalidatable(MediaSource source) {
+        return BitmapSource.HTTP.equals(source) || BitmapSource.HTTPS.equals(source);
+    }
+
+    /**
+     * Check the url for a new content in the background, unless checked recently.
+     *
+     * @param record Record of the display which showed the cached copy.
+     */
+    void revalidate(@NonNull final String url,
+                    @NonNull final DecodeSpec spec,
+                    @NonNull final DisplayOption<Bitmap> option,
+                    @NonNull final MediaHolder<Bitmap> holder,
+                    @NonNull final DisplayTaskRecord record) {
+        if (!claim(url)) return;
+        // Not to be aborted when the display task is cancelled.
+        final DecodeSpec ownSpec = spec.detached();
+        mService.execute(new Runnable() {
+            @Override
+            public void run() {
+                Process.setThreadPriority(Process.THREAD_PRIORITY_BACKGROUND);
+                long checkedUntil = System.currentTimeMillis() + RETRY_DELAY;
+                try {
+                    checkedUntil = revalidateNow(url, ownSpec, option, holder, record);
+                } catch (Exception e) {
+                    mLogger.trace("Failed to revalidate:" + url, e);
+                } finally {
+                    mCheckedUntil.put(url, checkedUntil);
+                }
+            }
+        });
+    }
+
+    private boolean claim(String url) {
+        synchronized (mCheckedUntil) {
+            Long until = mCheckedUntil.get(url);
+            if (until != null && System.currentTimeMillis() < until) return false;
+            mCheckedUntil.put(url, Long.MAX_VALUE);
+            return true;
+        }
+    }
+
+    /**
+     * @return Time until which the url is not checked again.
+     */
+    @WorkerThread
+    private long revalidateNow(String url, DecodeSpec spec, DisplayOption<Bitmap> option,
+                               MediaHolder<Bitmap> holder, DisplayTaskRecord record) throws Exception {
+        long now = System.currentTimeMillis();
+
+        // Meta lives next to the file the url was kept in, the original in the disk cache or the download.
+        File local = localCopyOf(url);
+        CacheMeta cached = local == null ? null : CacheMeta.read(local);
+        if (cached != null && cached.isFresh(now)) return cached.getExpiresAt();
+
+        DownloadManager.Transaction transaction = mDownloadManager.beginTransaction();
+        transaction.setUrl(url);
+        DownloadResult<String> result = mDownloadManager.revalidate(transaction,
+                cached != null && cached.hasValidators() ? cached : null);
+
+        if (result == null) return now + RETRY_DELAY;
+
+        CacheMeta meta = result.getMeta();
+
+        if (result.isNotModified()) {
+            mLogger.verbose("Not modified:" + url);
+            if (local != null) meta.write(local);
+            return meta.getExpiresAt();
+        }
+
+        File received = new File(result.getContent());
+
+        if (isSameContent(url, local, received)) {
+            mLogger.verbose("Same content:" + url);
+            if (local != null) meta.write(local);
+            //noinspection ResultOfMethodCallIgnored
+            received.delete();
+            return meta.getExpiresAt();
+        }
+
+        Bitmap bitmap = BitmapSource.FILE.getFetcher(mContext, mConfig)
+                .fetchFromUrl(MediaSource.Prefix.FILE + received.getPath(), spec, null, null);
+        if (bitmap == null) {
+            //noinspection ResultOfMethodCallIgnored
+            received.delete();
+            return now + RETRY_DELAY;
+        }
+
+        mLogger.info("Content changed:" + url);
+        mCacheManager.invalidate(url);
+        keep(url, received, meta);
+
+        // A newer display took the holder meanwhile.
+        if (!mTaskManager.interruptDisplay(record)) {
+            Bitmap arted = mCacheManager.applyArts(url, spec, bitmap, option.getMediaArts(), holder);
+            UISettingApplier.getSharedApplier().applyRetainedSettings(arted, holder, option.getAnimator());
+        }
+        // Once shown, a cached bitmap may go back to the pool as soon as it is evicted.
+        mCacheManager.cache(url, spec, bitmap);
+        return meta.getExpiresAt();
+    }
+
+    /**
+     * @return The local file of the url, if it is a plain file.
+     */
+    @Nullable
+    private File localCopyOf(String url) {
+        String original = mCacheManager.getOriginalPath(url);
+        if (original != null && BitmapSource.from(original) == null) return new File(original);
+        File download = new File(mDownloadManager.getDownloadPath(url));
+        return download.exists() ? download : null;
+    }
+
+    private boolean isSameContent(String url, @Nullable File local, File received) {
+        return mCacheManager.isSameOriginal(url, received)
+                || (local != null && FileUtils.contentEquals(local, received));
+    }
+
+    /**
+     * Keep the new content where the old one was, with its meta.
+     */
+    private void keep(String url, File received, CacheMeta meta) {
+        OriginalCommitter committer = mCacheManager.getOriginalCommitter();
+        if (committer != null) {
+            String path = committer.commitOriginal(url, received);
+            if (path != null) {
+                if (BitmapSource.from(path) == null) meta.write(new File(path));
+                return;
+            }
+        }
+        File download = new File(mDownloadManager.getDownloadPath(url));
+        try {
+            Files.move(received, download);
+            meta.write(download);
+        } catch (IOException e) {
+            mLogger.trace("Failed to move file:", e);
+        }
+    }
+
+    void terminate() {
+        mService.shutdownNow();
+        mDownloadManager.terminate();
+    }
+}
@@ -25,6 +25,7 @@ import java.util.concurrent.CancellationException;
 import java.util.concurrent.ExecutionException;
 
 import dev.nick.accessories.common.annotation.AccessoryApi;
+import dev.nick.accessories.media.loader.cache.pool.BitmapSeatTracker;
 import dev.nick.accessories.media.loader.queue.Priority;
 import dev.nick.accessories.media.loader.ui.DisplayOption;
 import dev.nick.accessories.media.loader.ui.ImageViewDelegate;
@@ -103,7 +104,7 @@ public class BitmapTransaction extends Transaction<Bitmap> {
     @AccessoryApi
     public Bitmap startSynchronously() {
         try {
-            return accessory.displayBitmap(
+            Bitmap result = accessory.displayBitmap(
                     mediaData,
                     noneNullSettable(),
                     option.or(sDefDisplayOption),
@@ -111,6 +112,8 @@ public class BitmapTransaction extends Transaction<Bitmap> {
                     errorListener,
                     priority)
                     .get();
+            BitmapSeatTracker.getSharedTracker().markEscaped(result);
+            return result;
         } catch (InterruptedException | ExecutionException | CancellationException ignored) {
 
         }
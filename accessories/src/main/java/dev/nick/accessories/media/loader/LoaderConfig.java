@@ -25,6 +25,7 @@ import dev.nick.accessories.common.annotation.AccessoryApi;
 import dev.nick.accessories.common.annotation.MinSize;
 import dev.nick.accessories.media.loader.cache.CachePolicy;
 import dev.nick.accessories.media.loader.queue.QueuePolicy;
+import dev.nick.accessories.media.loader.scrollable.ViewportPolicy;
 import dev.nick.accessories.media.loader.utils.Preconditions;
 import dev.nick.accessories.media.loader.worker.network.NetworkPolicy;
 import lombok.AccessLevel;
@@ -47,6 +48,7 @@ public class LoaderConfig {
             .cachePolicy(CachePolicy.DEFAULT_CACHE_POLICY)
             .networkPolicy(NetworkPolicy.DEFAULT_NETWORK_POLICY)
             .queuePolicy(QueuePolicy.FIFO)
+            .viewportPolicy(ViewportPolicy.DEFAULT_VIEWPORT_POLICY)
             .loadingThreads((Runtime.getRuntime().availableProcessors() + 1) / 2)
             .debugLevel(Log.DEBUG)
             .build();
@@ -54,10 +56,17 @@ public class LoaderConfig {
     private CachePolicy cachePolicy;
     private NetworkPolicy networkPolicy;
     private QueuePolicy queuePolicy;
+    private ViewportPolicy viewportPolicy;
 
     @MinSize(1)
     private int loadingThreads;
 
+    @MinSize(1)
+    private int decodeThreads;
+
+    @MinSize(1)
+    private int artThreads;
+
     @MinSize(0)
     private int debugLevel;
 
@@ -69,10 +78,13 @@ public class LoaderConfig {
     public static class Builder {
 
         private Optional<Integer> nLoadingThreads = Optional.absent();
+        private Optional<Integer> nDecodeThreads = Optional.absent();
+        private Optional<Integer> nArtThreads = Optional.absent();
 
         private Optional<CachePolicy> cachePolicy = Optional.absent();
         private Optional<NetworkPolicy> networkPolicy = Optional.absent();
         private Optional<QueuePolicy> queuePolicy = Optional.absent();
+        private Optional<ViewportPolicy> viewportPolicy = Optional.absent();
 
         private Optional<Integer> debugLevel = Optional.absent();
 
@@ -107,6 +119,16 @@ public class LoaderConfig {
             return Builder.this;
         }
 
+        /**
+         * @param viewportPolicy The {@link ViewportPolicy} using for the linked lists.
+         * @return Builder instance.
+         * @see ViewportPolicy
+         */
+        public Builder viewportPolicy(@NonNull ViewportPolicy viewportPolicy) {
+            this.viewportPolicy = Optional.of(viewportPolicy);
+            return Builder.this;
+        }
+
         /**
          * @param nLoadingThreads Number of threads when loading.
          * @return Builder instance.
@@ -117,6 +139,26 @@ public class LoaderConfig {
             return Builder.this;
         }
 
+        /**
+         * @param nDecodeThreads Number of decodes running at once, the loading threads hand theirs over and move on.
+         * @return Builder instance.
+         */
+        public Builder decodeThreads(@MinSize(1) int nDecodeThreads) {
+            Preconditions.checkState(nDecodeThreads > 0, "Decode thread count should be positive");
+            this.nDecodeThreads = Optional.of(nDecodeThreads);
+            return Builder.this;
+        }
+
+        /**
+         * @param nArtThreads Number of art chains running at once.
+         * @return Builder instance.
+         */
+        public Builder artThreads(@MinSize(1) int nArtThreads) {
+            Preconditions.checkState(nArtThreads > 0, "Art thread count should be positive");
+            this.nArtThreads = Optional.of(nArtThreads);
+            return Builder.this;
+        }
+
         /**
          * @param debugLevel Debug level of Loader.
          * @return Builder instance.
@@ -132,7 +174,10 @@ public class LoaderConfig {
                     cachePolicy.or(CachePolicy.DEFAULT_CACHE_POLICY),
                     networkPolicy.or(NetworkPolicy.DEFAULT_NETWORK_POLICY),
                     queuePolicy.or(QueuePolicy.FIFO),
+                    viewportPolicy.or(ViewportPolicy.DEFAULT_VIEWPORT_POLICY),
                     nLoadingThreads.or(Runtime.getRuntime().availableProcessors()),
+                    nDecodeThreads.or(Runtime.getRuntime().availableProcessors()),
+                    nArtThreads.or(Runtime.getRuntime().availableProcessors()),
                     debugLevel.or(Log.DEBUG));
         }
     }
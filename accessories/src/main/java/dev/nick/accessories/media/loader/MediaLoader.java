@@ -20,19 +20,22 @@ import android.annotation.SuppressLint;
 import android.content.Context;
 import android.graphics.Bitmap;
 import android.graphics.Movie;
+import android.os.SystemClock;
 import android.support.annotation.NonNull;
 import android.support.annotation.Nullable;
 import android.support.annotation.WorkerThread;
 import android.support.v7.widget.RecyclerView;
+import android.view.View;
 import android.widget.AbsListView;
 import android.widget.ImageView;
 
+import java.util.ArrayDeque;
 import java.util.ArrayList;
 import java.util.List;
-import java.util.concurrent.ExecutorService;
+import java.util.Map;
+import java.util.WeakHashMap;
 import java.util.concurrent.Future;
-import java.util.concurrent.ThreadPoolExecutor;
-import java.util.concurrent.TimeUnit;
+import java.util.concurrent.RejectedExecutionException;
 
 import dev.nick.accessories.common.annotation.AccessoryApi;
 import dev.nick.accessories.common.annotation.Lazy;
@@ -42,19 +45,27 @@ import dev.nick.accessories.logger.LoggerManager;
 import dev.nick.accessories.media.loader.cache.BitmapCacheManager;
 import dev.nick.accessories.media.loader.cache.CacheManager;
 import dev.nick.accessories.media.loader.cache.MovieCacheManager;
+import dev.nick.accessories.media.loader.cache.disk.DiskWriteStats;
+import dev.nick.accessories.media.loader.cache.mem.MemCacheStats;
+import dev.nick.accessories.media.loader.cache.pool.BitmapPoolStats;
+import dev.nick.accessories.media.loader.cache.pool.BitmapSeatTracker;
 import dev.nick.accessories.media.loader.control.Forkable;
 import dev.nick.accessories.media.loader.control.Freezer;
 import dev.nick.accessories.media.loader.control.LoaderState;
 import dev.nick.accessories.media.loader.control.StorageStats;
 import dev.nick.accessories.media.loader.control.TrafficStats;
-import dev.nick.accessories.media.loader.queue.FIFOPriorityBlockingQueue;
+import dev.nick.accessories.media.loader.queue.Dispatcher;
+import dev.nick.accessories.media.loader.queue.DispatcherStats;
 import dev.nick.accessories.media.loader.queue.IdleStateMonitor;
-import dev.nick.accessories.media.loader.queue.LIFOPriorityBlockingQueue;
 import dev.nick.accessories.media.loader.queue.Priority;
 import dev.nick.accessories.media.loader.queue.QueuePolicy;
+import dev.nick.accessories.media.loader.queue.QuotaExecutor;
 import dev.nick.accessories.media.loader.queue.RequestHandler;
 import dev.nick.accessories.media.loader.queue.RequestQueueManager;
 import dev.nick.accessories.media.loader.scrollable.AbsListViewScrollDetector;
+import dev.nick.accessories.media.loader.scrollable.PrefetchProvider;
+import dev.nick.accessories.media.loader.scrollable.ViewportPolicy;
+import dev.nick.accessories.media.loader.scrollable.ViewportTracker;
 import dev.nick.accessories.media.loader.ui.DisplayOption;
 import dev.nick.accessories.media.loader.ui.IDCreator;
 import dev.nick.accessories.media.loader.ui.IDCreatorImpl;
@@ -62,12 +73,19 @@ import dev.nick.accessories.media.loader.ui.ImageViewDelegate;
 import dev.nick.accessories.media.loader.ui.MediaHolder;
 import dev.nick.accessories.media.loader.ui.MediaQuality;
 import dev.nick.accessories.media.loader.utils.Preconditions;
+import dev.nick.accessories.media.loader.worker.CancelSignal;
+import dev.nick.accessories.media.loader.worker.CancelStats;
+import dev.nick.accessories.media.loader.worker.DecodeSpec;
 import dev.nick.accessories.media.loader.worker.DimenSpec;
 import dev.nick.accessories.media.loader.worker.MediaData;
 import dev.nick.accessories.media.loader.worker.MediaSource;
+import dev.nick.accessories.media.loader.worker.Pipeline;
 import dev.nick.accessories.media.loader.worker.ProgressListener;
+import dev.nick.accessories.media.loader.worker.StageStats;
 import dev.nick.accessories.media.loader.worker.bitmap.BitmapSource;
 import dev.nick.accessories.media.loader.worker.movie.MovieSource;
+import dev.nick.accessories.media.loader.worker.network.ConcurrencyController;
+import dev.nick.accessories.media.loader.worker.network.ConcurrencyStats;
 import dev.nick.accessories.media.loader.worker.result.ErrorListener;
 import dev.nick.accessories.media.loader.worker.task.BaseFutureTask;
 import dev.nick.accessories.media.loader.worker.task.BitmapDisplayTask;
@@ -89,11 +107,6 @@ public class MediaLoader implements
         Forkable<MediaLoader, LoaderConfig>,
         Terminable {
 
-    @Lazy
-    private static RecyclerView.OnScrollListener sRecyclerViewListener;
-    @Lazy
-    private static AbsListViewScrollDetector sListViewScrollDetector;
-
     @Shared
     private static MediaLoader sAccessory;
 
@@ -103,19 +116,41 @@ public class MediaLoader implements
     private UIThreadRouter mUiThreadRouter;
     private UISettingApplier mUISettingApplier;
     @Lazy
-    private CacheManager<Bitmap> mBitmapCacheManager;
+    private BitmapCacheManager mBitmapCacheManager;
+    private BitmapFlights mBitmapFlights;
+    private CancelSignal.Counter mCancelCounter;
+    @Lazy
+    private BitmapRevalidator mBitmapRevalidator;
     @Lazy
     private CacheManager<Movie> mMovieCacheManager;
     private LoaderConfig mConfig;
     private RequestQueueManager<BaseFutureTask> mTaskHandleService;
     private Logger mLogger;
 
-    private ThreadPoolExecutor mLoadingService;
+    private int mLoaderId;
+
+    // Quotas of the threads of the shared dispatcher.
+    private QuotaExecutor mLoadingService;
     @Lazy
-    private ThreadPoolExecutor mFallbackService;
+    private QuotaExecutor mFallbackService;
+    // Runs the slow tasks, so the local ones never wait for a download. Its quota follows
+    // the concurrency controller of the network policy if any.
+    private QuotaExecutor mNetworkService;
+    // Decode and art stages the fetching threads hand their bitmaps over to.
+    private Pipeline mPipeline;
 
     private Freezer mFreezer;
 
+    // Lists linked by linkScrollStateTo(), guarded by mViewportTrackers.
+    private final Map<View, ViewportTracker> mViewportTrackers = new WeakHashMap<>();
+    private final Map<RecyclerView, RecyclerView.OnScrollListener> mRecyclerViewListeners = new WeakHashMap<>();
+    @Lazy
+    private Prefetcher mPrefetcher;
+    // Tasks held back while a list flings, in order, guarded by itself with the fields below.
+    private final ArrayDeque<BaseFutureTask> mThrottledTasks = new ArrayDeque<>();
+    private boolean mThrottleScheduled;
+    private long mLastDispatchTime;
+
     @Getter
     private LoaderState mState;
 
@@ -130,19 +165,17 @@ public class MediaLoader implements
         this.mContext = context;
         this.mConfig = config;
         this.mTaskManager = new TaskManagerImpl();
+        this.mBitmapFlights = new BitmapFlights(mTaskManager);
+        this.mCancelCounter = new CancelSignal.Counter();
         this.mSettableIdCreator = new IDCreatorImpl();
         this.mUiThreadRouter = UIThreadRouter.getSharedRouter();
         this.mUISettingApplier = UISettingApplier.getSharedApplier();
-        //noinspection deprecation
-        this.mLoadingService = new ThreadPoolExecutor(
-                config.getLoadingThreads(),
-                config.getLoadingThreads(),
-                0L,
-                TimeUnit.MILLISECONDS,
-                config.getQueuePolicy() == QueuePolicy.FIFO
-                        ? new FIFOPriorityBlockingQueue<Runnable>()
-                        : new LIFOPriorityBlockingQueue<Runnable>());
         int loaderId = AccessoryFactory.assignId();
+        this.mLoaderId = loaderId;
+        this.mLoadingService = Dispatcher.shared().newExecutor("LoadingService#" + loaderId,
+                config.getLoadingThreads(), config.getQueuePolicy());
+        this.mNetworkService = createNetworkService(config, loaderId);
+        this.mPipeline = new Pipeline("#" + loaderId, config.getDecodeThreads(), config.getArtThreads());
         this.mTaskHandleService = RequestQueueManager.createStarted(new TaskHandler(), null, null, "TaskHandleService#" + loaderId);
         this.mTransactionService = RequestQueueManager.createStarted(new TransactionHandler(), new IdleStateMonitor() {
             @Override
@@ -166,21 +199,19 @@ public class MediaLoader implements
         this.mContext = from.mContext;
         this.mConfig = config;
         this.mTaskManager = new TaskManagerImpl();
+        this.mBitmapFlights = new BitmapFlights(mTaskManager);
+        this.mCancelCounter = new CancelSignal.Counter();
         this.mSettableIdCreator = from.mSettableIdCreator;
         this.mUiThreadRouter = UIThreadRouter.getSharedRouter();
         this.mUISettingApplier = UISettingApplier.getSharedApplier();
         this.mBitmapCacheManager = from.lazyGetBitmapCacheManager().fork(config.getCachePolicy());
         this.mMovieCacheManager = from.lazyGetMovieCacheManager().fork(config.getCachePolicy());
-        //noinspection deprecation
-        this.mLoadingService = new ThreadPoolExecutor(
-                config.getLoadingThreads(),
-                config.getLoadingThreads(),
-                0L,
-                TimeUnit.MILLISECONDS,
-                config.getQueuePolicy() == QueuePolicy.FIFO
-                        ? new FIFOPriorityBlockingQueue<Runnable>()
-                        : new LIFOPriorityBlockingQueue<Runnable>());
         int loaderId = AccessoryFactory.assignId();
+        this.mLoaderId = loaderId;
+        this.mLoadingService = Dispatcher.shared().newExecutor("LoadingService#" + loaderId,
+                config.getLoadingThreads(), config.getQueuePolicy());
+        this.mNetworkService = createNetworkService(config, loaderId);
+        this.mPipeline = new Pipeline("#" + loaderId, config.getDecodeThreads(), config.getArtThreads());
         this.mTaskHandleService = RequestQueueManager.createStarted(new TaskHandler(), null, null, "TaskHandleService#" + loaderId);
         this.mTransactionService = RequestQueueManager.createStarted(new TransactionHandler(), new IdleStateMonitor() {
             @Override
@@ -288,6 +319,9 @@ public class MediaLoader implements
 
         DisplayTaskRecord record = createTaskRecord(Preconditions.checkNotNull(mediaHolder));
 
+        // A prefetch only fills the caches, nothing is shown or seated in its holder.
+        boolean warmOnly = mediaHolder instanceof Prefetcher.Holder;
+
         // 1. Get from cache.
         // 2. If no mem cache, start a loading task from disk cache file or perform first loading.
         // 3. Cache the loaded.
@@ -298,26 +332,48 @@ public class MediaLoader implements
 
         DimenSpec dimenSpec = new DimenSpec(mediaHolder.getWidth(), mediaHolder.getHeight());
 
-        ProgressListenerDelegate<Bitmap> progressListenerDelegate = new BitmapProgressListenerDelegate(
+        DecodeSpec decodeSpec = new DecodeSpec(mediaQuality, dimenSpec);
+        // Before the url may be replaced by the one of the disk cache.
+        String prefetchKey = mPrefetcher == null ? null : BitmapFlights.keyOf(mediaData.getUrl(), decodeSpec);
+        decodeSpec.setBitmapPool(mBitmapCacheManager.getBitmapPool());
+        decodeSpec.setOriginalCommitter(mBitmapCacheManager.getOriginalCommitter());
+        decodeSpec.setPipeline(mPipeline);
+        decodeSpec.setCancelSignal(new CancelSignal(mCancelCounter));
+
+        // Copies served from the caches are checked against the network afterwards.
+        Runnable revalidation = warmOnly ? null
+                : createRevalidation(mediaData, decodeSpec, option, mediaHolder, record);
+
+        BitmapProgressListenerDelegate progressListenerDelegate = new BitmapProgressListenerDelegate(
                 mBitmapCacheManager,
                 mTaskManager,
                 progressListener,
-                dimenSpec,
+                decodeSpec,
                 option,
                 mediaHolder,
                 record,
                 mediaData.getUrl());
+        progressListenerDelegate.setWarmOnly(warmOnly);
 
         if (mBitmapCacheManager.isMemCacheEnabled()) {
+            // The listener gets the source on every path, the art output is only shown,
+            // applyArts() takes it from the mem cache if the chain is stable.
+            // The source is retained until both are done with it, an eviction meanwhile
+            // would give it to a decode through the pool.
             Bitmap cached;
-            if ((cached = mBitmapCacheManager.get(mediaData.getUrl())) != null) {
+            if ((cached = mBitmapCacheManager.getForDisplay(mediaData.getUrl(), decodeSpec)) != null) {
                 mLogger.verbose("Using mem cached bitmap for:" + mediaData.getUrl());
-                mUISettingApplier.applySettings(
-                        cached,
-                        option.getMediaArts(),
-                        mediaHolder,
-                        option.isAnimateOnlyNewLoaded() ? null : option.getAnimator());
-                progressListenerDelegate.callOnComplete(cached);
+                if (!warmOnly) {
+                    mUISettingApplier.applyRetainedSettings(
+                            mBitmapCacheManager.applyArts(mediaData.getUrl(), decodeSpec, cached,
+                                    option.getMediaArts(), mediaHolder),
+                            mediaHolder,
+                            option.isAnimateOnlyNewLoaded() ? null : option.getAnimator());
+                    progressListenerDelegate.callOnComplete(cached);
+                }
+                BitmapSeatTracker.getSharedTracker().release(cached);
+                if (revalidation != null) revalidation.run();
+                onDisplayForPrefetch(mediaHolder, prefetchKey, true);
                 return new MokeFutureImageTask<>(cached);
             }
         }
@@ -327,33 +383,49 @@ public class MediaLoader implements
 
         if (mBitmapCacheManager.isDiskCacheEnabled()) {
             String cachePath;
-            if ((cachePath = mBitmapCacheManager.getCachePath(loadingUrl)) != null) {
-                loadingUrl = BitmapSource.FILE.getPrefix() + cachePath;
+            if ((cachePath = mBitmapCacheManager.getCachePath(loadingUrl, decodeSpec)) != null) {
+                // Entries of the packed store come as urls of their own source.
+                BitmapSource cacheSource = BitmapSource.from(cachePath);
+                if (cacheSource == null) {
+                    cacheSource = BitmapSource.FILE;
+                    loadingUrl = BitmapSource.FILE.getPrefix() + cachePath;
+                } else {
+                    loadingUrl = cachePath;
+                }
                 // Check mem cache again.
                 if (mBitmapCacheManager.isMemCacheEnabled()) {
                     Bitmap cached;
-                    if ((cached = mBitmapCacheManager.get(loadingUrl)) != null) {
+                    if ((cached = mBitmapCacheManager.getForDisplay(loadingUrl, decodeSpec)) != null) {
                         mLogger.verbose("Using mem cached bitmap for:" + mediaData.getUrl());
-                        mUISettingApplier.applySettings(
-                                cached,
-                                option.getMediaArts(),
-                                mediaHolder,
-                                option.isAnimateOnlyNewLoaded() ? null : option.getAnimator());
-                        progressListenerDelegate.callOnComplete(cached);
+                        if (!warmOnly) {
+                            mUISettingApplier.applyRetainedSettings(
+                                    mBitmapCacheManager.applyArts(loadingUrl, decodeSpec, cached,
+                                            option.getMediaArts(), mediaHolder),
+                                    mediaHolder,
+                                    option.isAnimateOnlyNewLoaded() ? null : option.getAnimator());
+                            progressListenerDelegate.callOnComplete(cached);
+                        }
+                        BitmapSeatTracker.getSharedTracker().release(cached);
+                        if (revalidation != null) revalidation.run();
+                        onDisplayForPrefetch(mediaHolder, prefetchKey, true);
                         return new MokeFutureImageTask<>(cached);
                     }
                 }
                 mediaData.setUrl(loadingUrl);
-                mediaData.setSource(BitmapSource.FILE);
+                mediaData.setSource(cacheSource);
                 usingDiskCacheUrl = true;
+                // After the cached copy is shown, or it may land over the refreshed one.
+                progressListenerDelegate.setRevalidation(revalidation);
             }
         }
 
-        showOnLoadingBm(mediaHolder, option);
+        onDisplayForPrefetch(mediaHolder, prefetchKey, usingDiskCacheUrl);
+
+        if (!warmOnly) showOnLoadingBm(mediaHolder, option);
 
         ErrorListenerDelegate<Bitmap> errorListenerDelegate = new BitmapErrorListenerDelegate(
                 errorListener,
-                option.isFailureImgDefined() ? option.getFailureImg() : null,
+                option.isFailureImgDefined() && !warmOnly ? option.getFailureImg() : null,
                 mediaHolder);
 
         if (usingDiskCacheUrl) {
@@ -362,21 +434,36 @@ public class MediaLoader implements
             mLogger.verbose("No cache found, perform loading: " + loadingUrl);
         }
 
-        BitmapDisplayTask imageTask = new BitmapDisplayTask(
-                mContext,
-                mConfig,
-                mTaskManager,
-                mediaData,
-                dimenSpec,
-                mediaQuality,
-                progressListenerDelegate,
-                errorListenerDelegate,
-                record);
-
-        FutureBitmapTask future = new FutureBitmapTask(imageTask, this, option.isViewMaybeReused());
+        FutureBitmapTask future = new FutureBitmapTask(
+                new BitmapFlights.Subscription(mediaData, progressListenerDelegate, errorListenerDelegate, record),
+                this,
+                option.isViewMaybeReused());
         future.setPriority(priority == null ? Priority.NORMAL : priority);
 
-        mTaskHandleService.push(future);
+        // Subscribe before cancelling the others of this view, a rebind to the same url keeps the flight.
+        BitmapFlights.Flight flight = mBitmapFlights.subscribe(
+                BitmapFlights.keyOf(mediaData.getUrl(), decodeSpec), future);
+        onFutureSubmit(future);
+
+        if (flight.claimStart()) {
+            BitmapDisplayTask imageTask = new BitmapDisplayTask(
+                    mContext,
+                    mConfig,
+                    flight,
+                    mediaData,
+                    decodeSpec,
+                    flight,
+                    flight,
+                    flight.newWorkRecord());
+
+            FutureBitmapTask work = flight.newWork(imageTask, this);
+            work.setPriority(future.getRemark());
+
+            mTaskHandleService.push(work);
+        } else {
+            // A display joining a prefetch raises its work.
+            requeue(mBitmapFlights.onReprioritized(future));
+        }
 
         return future;
     }
@@ -401,12 +488,14 @@ public class MediaLoader implements
 
         MediaQuality mediaQuality = option.getQuality();
         DimenSpec dimenSpec = new DimenSpec(mediaHolder.getWidth(), mediaHolder.getHeight());
+        DecodeSpec decodeSpec = new DecodeSpec(mediaQuality, dimenSpec);
+        decodeSpec.setCancelSignal(new CancelSignal(mCancelCounter));
 
         ProgressListenerDelegate<Movie> progressListenerDelegate = new MovieProgressListenerDelegate(
                 mMovieCacheManager,
                 mTaskManager,
                 progressListener,
-                dimenSpec,
+                decodeSpec,
                 option,
                 mediaHolder,
                 record,
@@ -414,7 +503,7 @@ public class MediaLoader implements
 
         if (mMovieCacheManager.isMemCacheEnabled()) {
             Movie cached;
-            if ((cached = mMovieCacheManager.get(source.getUrl())) != null) {
+            if ((cached = mMovieCacheManager.get(source.getUrl(), decodeSpec)) != null) {
                 mUISettingApplier.applySettings(
                         cached,
                         option.getMediaArts(),
@@ -430,12 +519,12 @@ public class MediaLoader implements
 
         if (mMovieCacheManager.isDiskCacheEnabled()) {
             String cachePath;
-            if ((cachePath = mMovieCacheManager.getCachePath(loadingUrl)) != null) {
+            if ((cachePath = mMovieCacheManager.getCachePath(loadingUrl, decodeSpec)) != null) {
                 loadingUrl = BitmapSource.FILE.getPrefix() + cachePath;
                 // Check mem cache again.
                 if (mMovieCacheManager.isMemCacheEnabled()) {
                     Movie cached;
-                    if ((cached = mMovieCacheManager.get(loadingUrl)) != null) {
+                    if ((cached = mMovieCacheManager.get(loadingUrl, decodeSpec)) != null) {
                         mUISettingApplier.applySettings(
                                 cached,
                                 option.getMediaArts(),
@@ -471,6 +560,7 @@ public class MediaLoader implements
                 source,
                 dimenSpec,
                 mediaQuality,
+                decodeSpec.getCancelSignal(),
                 progressListenerDelegate,
                 errorListenerDelegate,
                 record);
@@ -483,12 +573,40 @@ public class MediaLoader implements
         return future;
     }
 
-    private synchronized CacheManager<Bitmap> lazyGetBitmapCacheManager() {
+    private synchronized BitmapCacheManager lazyGetBitmapCacheManager() {
         if (mBitmapCacheManager == null)
             this.mBitmapCacheManager = new BitmapCacheManager(mConfig.getCachePolicy(), mContext);
         return mBitmapCacheManager;
     }
 
+    /**
+     * @return The revalidator, {@code null} if the network policy does not revalidate.
+     */
+    @Nullable
+    private synchronized BitmapRevalidator lazyGetBitmapRevalidator() {
+        if (mBitmapRevalidator == null && mConfig.getNetworkPolicy().isStaleWhileRevalidate())
+            this.mBitmapRevalidator = new BitmapRevalidator(mContext, mConfig, mBitmapCacheManager, mTaskManager);
+        return mBitmapRevalidator;
+    }
+
+    @Nullable
+    private Runnable createRevalidation(final MediaData<Bitmap> mediaData,
+                                        final DecodeSpec decodeSpec,
+                                        final DisplayOption<Bitmap> option,
+                                        final MediaHolder<Bitmap> mediaHolder,
+                                        final DisplayTaskRecord record) {
+        if (!BitmapRevalidator.isRevalidatable(mediaData.getSource())) return null;
+        final BitmapRevalidator revalidator = lazyGetBitmapRevalidator();
+        if (revalidator == null) return null;
+        final String url = mediaData.getUrl();
+        return new Runnable() {
+            @Override
+            public void run() {
+                revalidator.revalidate(url, decodeSpec, option, mediaHolder, record);
+            }
+        };
+    }
+
     private synchronized CacheManager<Movie> lazyGetMovieCacheManager() {
         if (mMovieCacheManager == null)
             this.mMovieCacheManager = new MovieCacheManager(mConfig.getCachePolicy(), mContext);
@@ -530,6 +648,7 @@ public class MediaLoader implements
         synchronized (mFutures) {
             mFutures.remove(task);
         }
+        applyNetworkLimit();
     }
 
     private void onFutureCancel(BaseFutureTask task) {
@@ -539,105 +658,295 @@ public class MediaLoader implements
         mUiThreadRouter.callOnCancel(task.getListenableTask().getProgressListener());
     }
 
-    private ExecutorService getExecutor(MediaSource type) {
+    @NonNull
+    private static QuotaExecutor createNetworkService(LoaderConfig config, int loaderId) {
+        ConcurrencyController concurrency = config.getNetworkPolicy().getConcurrency();
+        return Dispatcher.shared().newExecutor("NetworkService#" + loaderId,
+                concurrency == null ? config.getLoadingThreads() : concurrency.getLimit(),
+                config.getQueuePolicy());
+    }
+
+    /**
+     * Set the quota of the network service to the current limit of the controller.
+     */
+    private void applyNetworkLimit() {
+        ConcurrencyController concurrency = mConfig.getNetworkPolicy().getConcurrency();
+        if (concurrency == null) return;
+        int limit = concurrency.getLimit();
+        if (limit == mNetworkService.getQuota()) return;
+        mNetworkService.setQuota(limit);
+        mLogger.verbose("Network quota set to:" + limit);
+    }
+
+    private QuotaExecutor getExecutor(MediaSource type) {
         if (type.maybeSlow()) {
-            mLogger.verbose("Using default loading service for slower task.");
-            return mLoadingService;
-        } else {
-            int activeThreads = mLoadingService.getActiveCount();
-            int max = mLoadingService.getMaximumPoolSize();
-            if (activeThreads == max) {
-                mLogger.warn("The loading service hits, using fallback one.");
-                ensureFallbackService();
-                return mFallbackService;
-            }
+            applyNetworkLimit();
+            return mNetworkService;
+        }
+        int activeThreads = mLoadingService.getActiveCount();
+        int max = mLoadingService.getQuota();
+        if (activeThreads == max) {
+            mLogger.warn("The loading service hits, using fallback one.");
+            ensureFallbackService();
+            return mFallbackService;
         }
         mLogger.verbose("Using default loading service.");
         return mLoadingService;
     }
 
-    @SuppressWarnings("deprecation")
     private synchronized void ensureFallbackService() {
         if (mFallbackService == null) {
             int poolSize = mConfig.getLoadingThreads();
             poolSize = poolSize / 2 + 1;
-            this.mFallbackService = new ThreadPoolExecutor(
-                    poolSize,
-                    poolSize,
-                    0L,
-                    TimeUnit.MILLISECONDS,
-                    mConfig.getQueuePolicy() == QueuePolicy.FIFO
-                            ? new FIFOPriorityBlockingQueue<Runnable>()
-                            : new LIFOPriorityBlockingQueue<Runnable>());
-            mLogger.verbose("Created fallback service with pool size:" + poolSize);
+            this.mFallbackService = Dispatcher.shared().newExecutor("FallbackService#" + mLoaderId,
+                    poolSize, mConfig.getQueuePolicy());
+            mLogger.verbose("Created fallback service with quota:" + poolSize);
         }
     }
 
+    /**
+     * Link the loader to the scroll of a list. Tasks of the visible rows are raised, tasks of
+     * the rows out of the viewport are lowered, and cancelled once further than the
+     * {@link ViewportPolicy#getCancelMargin()}. While the list flings, tasks are started at most
+     * once every {@link ViewportPolicy#getFlingDispatchInterval()} instead of not at all.
+     */
     public
     @AccessoryApi
     @NonNull
     AbsListViewScrollDetector linkScrollStateTo(@NonNull AbsListView view) {
-        mLogger.verbose(view);
-        synchronized (this) {
-            if (sListViewScrollDetector == null) {
-                sListViewScrollDetector = new AbsListViewScrollDetector() {
-                    @Override
-                    public void onScrollUp() {
-                        pause();
-                        cancelAllTasks();
-                    }
+        return linkScrollStateTo(view, null);
+    }
 
-                    @Override
-                    public void onScrollDown() {
-                        pause();
-                        cancelAllTasks();
-                    }
+    /**
+     * Link the loader to the scroll of a list, and prefetch the images the provider tells
+     * for the positions ahead of its viewport.
+     *
+     * @see #linkScrollStateTo(AbsListView)
+     * @see #getPrefetchStats()
+     */
+    public
+    @AccessoryApi
+    @NonNull
+    AbsListViewScrollDetector linkScrollStateTo(@NonNull AbsListView view, @Nullable final PrefetchProvider provider) {
+        mLogger.verbose(view);
+        final ViewportTracker tracker = new ViewportTracker(mSettableIdCreator, mConfig.getViewportPolicy());
+        AbsListViewScrollDetector detector = new AbsListViewScrollDetector() {
+            @Override
+            public void onScrollStateChanged(AbsListView view, int scrollState) {
+                super.onScrollStateChanged(view, scrollState);
+                tracker.setFlinging(scrollState == SCROLL_STATE_FLING);
+                if (scrollState == SCROLL_STATE_IDLE) onScrollIdle(tracker, provider);
+            }
 
-                    @Override
-                    public void onIdle() {
-                        resume();
-                    }
-                };
+            @Override
+            public void onScroll(AbsListView view, int firstVisibleItem, int visibleItemCount, int totalItemCount) {
+                super.onScroll(view, firstVisibleItem, visibleItemCount, totalItemCount);
+                if (tracker.onLayout(view)) onViewportChanged(tracker, provider);
             }
+        };
+        Preconditions.checkNotNull(view).setOnScrollListener(detector);
+        detector.setListView(view);
+        synchronized (mViewportTrackers) {
+            mViewportTrackers.put(view, tracker);
         }
-        Preconditions.checkNotNull(view).setOnScrollListener(sListViewScrollDetector);
-        sListViewScrollDetector.setListView(view);
-        return sListViewScrollDetector;
+        return detector;
     }
 
     @AccessoryApi
     public void unLinkScrollStateTo(@NonNull AbsListView view) {
         mLogger.verbose(view);
         view.setOnScrollListener(null);
+        ViewportTracker tracker;
+        synchronized (mViewportTrackers) {
+            tracker = mViewportTrackers.remove(view);
+        }
+        if (tracker != null && mPrefetcher != null) mPrefetcher.forget(tracker);
     }
 
+    /**
+     * @see #linkScrollStateTo(AbsListView)
+     */
     public
     @AccessoryApi
     void linkScrollStateTo(@NonNull RecyclerView view) {
+        linkScrollStateTo(view, null);
+    }
+
+    /**
+     * @see #linkScrollStateTo(AbsListView, PrefetchProvider)
+     */
+    public
+    @AccessoryApi
+    void linkScrollStateTo(@NonNull RecyclerView view, @Nullable final PrefetchProvider provider) {
         mLogger.verbose(view);
-        synchronized (this) {
-            if (sRecyclerViewListener == null) {
-                sRecyclerViewListener = new RecyclerView.OnScrollListener() {
-                    @Override
-                    public void onScrollStateChanged(RecyclerView recyclerView, int newState) {
-                        super.onScrollStateChanged(recyclerView, newState);
-                        if (newState == RecyclerView.SCROLL_STATE_IDLE) {
-                            resume();
-                        } else {
-                            pause();
-                            cancelAllTasks();
-                        }
-                    }
-                };
+        final ViewportTracker tracker = new ViewportTracker(mSettableIdCreator, mConfig.getViewportPolicy());
+        RecyclerView.OnScrollListener listener = new RecyclerView.OnScrollListener() {
+            @Override
+            public void onScrollStateChanged(RecyclerView recyclerView, int newState) {
+                super.onScrollStateChanged(recyclerView, newState);
+                tracker.setFlinging(newState == RecyclerView.SCROLL_STATE_SETTLING);
+                if (newState == RecyclerView.SCROLL_STATE_IDLE) onScrollIdle(tracker, provider);
+            }
+
+            @Override
+            public void onScrolled(RecyclerView recyclerView, int dx, int dy) {
+                super.onScrolled(recyclerView, dx, dy);
+                if (tracker.onLayout(recyclerView)) onViewportChanged(tracker, provider);
             }
+        };
+        view.addOnScrollListener(listener);
+        synchronized (mViewportTrackers) {
+            mViewportTrackers.put(view, tracker);
+            mRecyclerViewListeners.put(view, listener);
         }
-        view.addOnScrollListener(sRecyclerViewListener);
     }
 
     @AccessoryApi
     public void unLinkScrollStateTo(@NonNull RecyclerView view) {
         mLogger.verbose(view);
-        view.removeOnScrollListener(sRecyclerViewListener);
+        RecyclerView.OnScrollListener listener;
+        ViewportTracker tracker;
+        synchronized (mViewportTrackers) {
+            tracker = mViewportTrackers.remove(view);
+            listener = mRecyclerViewListeners.remove(view);
+        }
+        if (listener != null) view.removeOnScrollListener(listener);
+        if (tracker != null && mPrefetcher != null) mPrefetcher.forget(tracker);
+    }
+
+    private void onViewportChanged(ViewportTracker tracker, @Nullable PrefetchProvider provider) {
+        onViewportChanged(tracker);
+        if (provider != null) lazyGetPrefetcher().onViewportChanged(tracker, provider);
+    }
+
+    private void onScrollIdle(ViewportTracker tracker, @Nullable PrefetchProvider provider) {
+        tracker.onIdle();
+        if (provider != null) lazyGetPrefetcher().onViewportChanged(tracker, provider);
+    }
+
+    private synchronized Prefetcher lazyGetPrefetcher() {
+        if (mPrefetcher == null) mPrefetcher = new Prefetcher(this, mConfig.getViewportPolicy());
+        return mPrefetcher;
+    }
+
+    private void onDisplayForPrefetch(MediaHolder<Bitmap> mediaHolder, @Nullable String prefetchKey, boolean cached) {
+        if (prefetchKey != null && !(mediaHolder instanceof Prefetcher.Holder)) {
+            mPrefetcher.onDisplay(prefetchKey, cached);
+        }
+    }
+
+    /**
+     * Raise, lower or cancel the tasks of the holders known to the tracker by their distance to the viewport.
+     */
+    private void onViewportChanged(ViewportTracker tracker) {
+        List<BaseFutureTask> futures;
+        synchronized (mFutures) {
+            futures = new ArrayList<>(mFutures);
+        }
+        int cancelled = 0;
+        for (BaseFutureTask future : futures) {
+            if (future.isDone()) continue;
+            long viewId = future.getListenableTask().getTaskRecord().getViewId();
+            // Works of the flights match no view, they follow their subscribers.
+            if (viewId == 0) continue;
+            int distance = tracker.distanceOf(viewId);
+            if (distance == ViewportTracker.UNKNOWN) continue;
+            if (tracker.isBeyondMargin(distance)) {
+                future.cancel(true);
+                cancelled++;
+            } else {
+                reprioritize(future, distance == 0 ? Priority.HIGH : Priority.LOW);
+            }
+        }
+        tracker.trim();
+        if (cancelled > 0) mLogger.verbose("Cancelled tasks out of the viewport:" + cancelled);
+    }
+
+    private void reprioritize(BaseFutureTask future, Priority priority) {
+        if (future.getRemark() == priority) return;
+        future.setPriority(priority);
+        requeue(mBitmapFlights.onReprioritized(future));
+    }
+
+    private void requeue(@Nullable BaseFutureTask queued) {
+        if (queued == null) return;
+        // Not in a queue yet if still waiting for the task handler, it is read when queued.
+        QuotaExecutor[] executors = {mLoadingService, mNetworkService, mFallbackService};
+        for (QuotaExecutor executor : executors) {
+            if (executor != null && executor.getQueue().reprioritize(queued)) return;
+        }
+    }
+
+    private boolean isAnyListFlinging() {
+        synchronized (mViewportTrackers) {
+            for (ViewportTracker tracker : mViewportTrackers.values()) {
+                if (tracker.isFlinging()) return true;
+            }
+        }
+        return false;
+    }
+
+    /**
+     * Hold the task back if a list flings and a task was started less than the fling interval ago.
+     * Held tasks are started later by a timer of the {@link Dispatcher}, one per interval while the
+     * fling lasts, all at once after it, so the task handler thread never waits.
+     *
+     * @return {@code true} if the task is held back.
+     */
+    private boolean throttleIfFlinging(BaseFutureTask task) {
+        synchronized (mThrottledTasks) {
+            // Behind the ones held back already, to keep the order.
+            if (mThrottledTasks.isEmpty()) {
+                long now = SystemClock.uptimeMillis();
+                long wait = mLastDispatchTime + mConfig.getViewportPolicy().getFlingDispatchInterval() - now;
+                if (wait <= 0 || !isAnyListFlinging()) {
+                    mLastDispatchTime = now;
+                    return false;
+                }
+                scheduleThrottled(wait);
+            }
+            mThrottledTasks.addLast(task);
+            return true;
+        }
+    }
+
+    // Guarded by mThrottledTasks.
+    private void scheduleThrottled(long delayMillis) {
+        if (mThrottleScheduled) return;
+        mThrottleScheduled = true;
+        Dispatcher.shared().schedule(new Runnable() {
+            @Override
+            public void run() {
+                dispatchThrottled();
+            }
+        }, delayMillis);
+    }
+
+    private void dispatchThrottled() {
+        List<BaseFutureTask> ready = new ArrayList<>();
+        synchronized (mThrottledTasks) {
+            mThrottleScheduled = false;
+            // Kept until resume(), as the task handler does.
+            if (isPaused() || mThrottledTasks.isEmpty()) return;
+            boolean flinging = isAnyListFlinging();
+            do {
+                ready.add(mThrottledTasks.pollFirst());
+            } while (!flinging && !mThrottledTasks.isEmpty());
+            mLastDispatchTime = SystemClock.uptimeMillis();
+            if (!mThrottledTasks.isEmpty()) {
+                scheduleThrottled(mConfig.getViewportPolicy().getFlingDispatchInterval());
+            }
+        }
+        for (BaseFutureTask task : ready) {
+            dispatch(task);
+        }
+    }
+
+    private void dispatch(BaseFutureTask task) {
+        if (!onFutureSubmit(task)) return;
+        mLogger.funcEnter();
+        // Execute, not submit, the queue needs the task itself to read its priority.
+        getExecutor(task.getListenableTask().getImageData().getSource()).execute(task);
     }
 
     /**
@@ -692,6 +1001,9 @@ public class MediaLoader implements
                 mLogger.funcExit();
             }
         }
+        synchronized (mThrottledTasks) {
+            if (!mThrottledTasks.isEmpty()) scheduleThrottled(0);
+        }
     }
 
     /**
@@ -713,7 +1025,16 @@ public class MediaLoader implements
         ensureNotTerminated();
         mState = LoaderState.TERMINATED;
         mTaskHandleService.terminate();
+        synchronized (mThrottledTasks) {
+            // Dropped like the requests still queued for the task handler.
+            mThrottledTasks.clear();
+        }
         mLoadingService.shutdown();
+        mNetworkService.shutdown();
+        if (mFallbackService != null) mFallbackService.shutdown();
+        // Hand-offs still queued end with the cancel of their tasks below.
+        mPipeline.shutdown();
+        if (mBitmapRevalidator != null) mBitmapRevalidator.terminate();
         mTaskManager.terminate();
         cancelAllTasks();
         mLogger.funcExit();
@@ -840,6 +1161,91 @@ public class MediaLoader implements
         mLogger.funcExit();
     }
 
+    /**
+     * Shrink the memory cache, call this from {@link android.content.ComponentCallbacks2#onTrimMemory(int)}.
+     *
+     * @param level The trim level.
+     */
+    @AccessoryApi
+    public void onTrimMemory(int level) {
+        if (mBitmapCacheManager != null) {
+            mBitmapCacheManager.trimMem(level);
+        }
+        mLogger.funcExit();
+    }
+
+    /**
+     * @return Hit, miss and eviction counters of the memory cache.
+     */
+    @AccessoryApi
+    public MemCacheStats getMemCacheStats() {
+        return lazyGetBitmapCacheManager().getMemCacheStats();
+    }
+
+    /**
+     * @return Depth, drop and latency counters of the disk cache write queue.
+     */
+    @AccessoryApi
+    public DiskWriteStats getDiskWriteStats() {
+        return lazyGetBitmapCacheManager().getDiskWriteStats();
+    }
+
+    /**
+     * @return Downloads and decodes cancelled tasks aborted, and the bytes that saved.
+     */
+    @AccessoryApi
+    public CancelStats getCancelStats() {
+        return mCancelCounter.getStats();
+    }
+
+    /**
+     * @return Current limit and throughput estimate of the network tasks,
+     * {@code null} if the network policy does not adapt their concurrency.
+     */
+    @AccessoryApi
+    @Nullable
+    public ConcurrencyStats getNetworkConcurrencyStats() {
+        ConcurrencyController concurrency = mConfig.getNetworkPolicy().getConcurrency();
+        return concurrency == null ? null : concurrency.getStats();
+    }
+
+    /**
+     * @return Thread and wake-up counters of the dispatcher, shared by all the loaders of the process.
+     */
+    @AccessoryApi
+    public DispatcherStats getDispatcherStats() {
+        return Dispatcher.shared().getStats();
+    }
+
+    /**
+     * @param stage Stage after the fetch of a bitmap.
+     * @return Hand-off counters of the stage.
+     */
+    @AccessoryApi
+    public StageStats getStageStats(@NonNull Pipeline.Stage stage) {
+        return mPipeline.getStats(stage);
+    }
+
+    /**
+     * @return Counters of the prefetch of the linked lists,
+     * {@code null} if no list was linked with a {@link PrefetchProvider}.
+     */
+    @AccessoryApi
+    @Nullable
+    public PrefetchStats getPrefetchStats() {
+        return mPrefetcher == null ? null : mPrefetcher.getStats();
+    }
+
+    /**
+     * @return Hit, miss and eviction counters of the bitmap reuse pool,
+     * {@code null} if it is not enabled by the cache policy.
+     */
+    @AccessoryApi
+    @Nullable
+    public BitmapPoolStats getBitmapPoolStats() {
+        return lazyGetBitmapCacheManager().getBitmapPoolStats();
+    }
+
     void freezeIfRequested() {
         if (mState == LoaderState.PAUSE_REQUESTED) {
             mState = LoaderState.PAUSED;
@@ -859,6 +1265,30 @@ public class MediaLoader implements
     public void onCancel(BaseFutureTask futureTask) {
         mLogger.verbose(futureTask.getListenableTask().getTaskRecord());
         onFutureCancel(futureTask);
+        mBitmapFlights.onCancel(futureTask);
+    }
+
+    @Override
+    public boolean onRetry(final BaseFutureTask futureTask, long delayMillis) {
+        if (isTerminated()) return false;
+        mLogger.verbose(futureTask.getListenableTask().getTaskRecord());
+        // Its loading thread goes on with other tasks meanwhile.
+        Dispatcher.shared().schedule(new Runnable() {
+            @Override
+            public void run() {
+                if (futureTask.isDone()) return;
+                if (isTerminated()) {
+                    futureTask.cancel(false);
+                    return;
+                }
+                try {
+                    getExecutor(futureTask.getListenableTask().getImageData().getSource()).execute(futureTask);
+                } catch (RejectedExecutionException e) {
+                    futureTask.cancel(false);
+                }
+            }
+        }, delayMillis);
+        return true;
     }
 
     @Override
@@ -900,9 +1330,7 @@ public class MediaLoader implements
         @Override
         public boolean handleRequest(BaseFutureTask request) {
             freezeIfRequested();
-            if (!onFutureSubmit(request)) return false;
-            mLogger.funcEnter();
-            getExecutor(request.getListenableTask().getImageData().getSource()).submit(request);
+            if (!throttleIfFlinging(request)) dispatch(request);
             return true;
         }
     }
@@ -25,7 +25,7 @@ import dev.nick.accessories.media.loader.ui.DisplayOption;
 import dev.nick.accessories.media.loader.ui.MediaHolder;
 import dev.nick.accessories.media.loader.ui.animator.ViewAnimator;
 import dev.nick.accessories.media.loader.ui.art.MediaArt;
-import dev.nick.accessories.media.loader.worker.DimenSpec;
+import dev.nick.accessories.media.loader.worker.DecodeSpec;
 import dev.nick.accessories.media.loader.worker.ProgressListener;
 import dev.nick.accessories.media.loader.worker.task.DisplayTaskRecord;
 import dev.nick.accessories.media.loader.worker.task.TaskManager;
@@ -36,12 +36,12 @@ class MovieProgressListenerDelegate extends ProgressListenerDelegate<Movie> {
     MovieProgressListenerDelegate(CacheManager<Movie> cacheManager,
                                   TaskManager taskManager,
                                   ProgressListener<Movie> listener,
-                                  DimenSpec dimenSpec,
+                                  DecodeSpec decodeSpec,
                                   DisplayOption<Movie> option,
                                   MediaHolder<Movie> mediaHolder,
                                   DisplayTaskRecord taskRecord,
                                   String url) {
-        super(cacheManager, taskManager, listener, dimenSpec, option, mediaHolder, taskRecord, url);
+        super(cacheManager, taskManager, listener, decodeSpec, option, mediaHolder, taskRecord, url);
     }
 
     @Override
@@ -61,7 +61,7 @@ class MovieProgressListenerDelegate extends ProgressListenerDelegate<Movie> {
         }
 
         if (canceled) {
-            cacheManager.cache(url, result);
+            cacheManager.cache(url, decodeSpec, result);
             return;
         }
 
@@ -72,6 +72,6 @@ class MovieProgressListenerDelegate extends ProgressListenerDelegate<Movie> {
             ArrayList<MediaArt<Movie>> handlers = (option == null ? null : option.getMediaArts());
             UISettingApplier.getSharedApplier().applySettings(result, handlers, settable, animator);
         }
-        cacheManager.cache(url, result);
+        cacheManager.cache(url, decodeSpec, result);
     }
 }
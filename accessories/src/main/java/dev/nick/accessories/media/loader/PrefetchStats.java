@@ -0,0 +1,52 @@
+/*
+ * Copyright (c) 2016 Nick Guo
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package dev.nick.accessories.media.loader;
+
+import lombok.AccessLevel;
+import lombok.AllArgsConstructor;
+import lombok.Getter;
+import lombok.ToString;
+
+/**
+ * Counters of the prefetch of the linked lists, apart from the ones of the caches.
+ */
+@Getter
+@ToString
+@AllArgsConstructor(access = AccessLevel.PACKAGE)
+public class PrefetchStats {
+
+    // Prefetches started, not counting the ones found in the memory cache.
+    private int issuedCount;
+    // Prefetches cancelled, by a change of direction or the unlink of their list.
+    private int cancelledCount;
+    // Prefetched images displayed from the caches.
+    private int hitCount;
+    // Prefetched images displayed while their prefetch was still loading.
+    private int lateCount;
+    // Prefetched images not in the caches anymore when displayed.
+    private int missCount;
+    // Estimated decoded bytes of the prefetches in flight.
+    private long inFlightBytes;
+
+    /**
+     * @return Part of the prefetched images displayed which were ready in the caches.
+     */
+    public float getHitRate() {
+        int total = hitCount + lateCount + missCount;
+        return total == 0 ? 0f : (float) hitCount / total;
+    }
+}
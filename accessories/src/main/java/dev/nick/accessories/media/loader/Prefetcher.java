@@ -0,0 +1,262 @@
+/*
+ * Copyright (c) 2016 Nick Guo
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package dev.nick.accessories.media.loader;
+
+import android.graphics.Bitmap;
+import android.support.annotation.NonNull;
+import android.support.annotation.UiThread;
+
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.WeakHashMap;
+import java.util.concurrent.Future;
+
+import dev.nick.accessories.media.loader.cache.pool.BitmapSeatTracker;
+import dev.nick.accessories.media.loader.queue.Priority;
+import dev.nick.accessories.media.loader.scrollable.PrefetchProvider;
+import dev.nick.accessories.media.loader.scrollable.ViewportPolicy;
+import dev.nick.accessories.media.loader.scrollable.ViewportTracker;
+import dev.nick.accessories.media.loader.ui.DisplayOption;
+import dev.nick.accessories.media.loader.worker.DecodeSpec;
+import dev.nick.accessories.media.loader.worker.DimenSpec;
+import dev.nick.accessories.media.loader.worker.bitmap.BitmapSource;
+import dev.nick.accessories.media.loader.worker.task.MokeFutureImageTask;
+
+/**
+ * Prefetch of the lists linked with a {@link PrefetchProvider}. When the viewport of a list moves,
+ * the images of the positions ahead of it, as many as the velocity covers in
+ * {@link ViewportPolicy#getPrefetchLookahead()}, are loaded at {@link Priority#LOW} at the size of
+ * the cells. They only warm the disk and memory caches: no arts are run and nothing is set on
+ * their holders.
+ * <p>
+ * The prefetches in flight of a list are bounded by count and estimated bytes, and cancelled when
+ * its scroll changes direction. Displays of prefetched images are counted in {@link PrefetchStats}.
+ */
+class Prefetcher {
+
+    // Prefetched keys kept to count the displays against, the oldest ones are forgotten.
+    private static final int LEDGER_SIZE = 256;
+    // ARGB_8888, the estimate does not know the config of the decode.
+    private static final int BYTES_PER_PIXEL = 4;
+
+    private final MediaLoader mLoader;
+    private final ViewportPolicy mPolicy;
+
+    private final Map<ViewportTracker, Window> mWindows = new WeakHashMap<>();
+    private final Map<String, Prefetch> mLedger = new LinkedHashMap<String, Prefetch>() {
+        @Override
+        protected boolean removeEldestEntry(Entry<String, Prefetch> eldest) {
+            return size() > LEDGER_SIZE;
+        }
+    };
+
+    private int mIssuedCount;
+    private int mCancelledCount;
+    private int mHitCount;
+    private int mLateCount;
+    private int mMissCount;
+
+    Prefetcher(@NonNull MediaLoader loader, @NonNull ViewportPolicy policy) {
+        mLoader = loader;
+        mPolicy = policy;
+    }
+
+    @UiThread
+    synchronized void onViewportChanged(@NonNull ViewportTracker tracker, @NonNull PrefetchProvider provider) {
+        int direction = tracker.getDirection();
+        DimenSpec dimen = tracker.getExpectedDimen();
+        if (direction == 0 || dimen == null) return;
+
+        Window window = mWindows.get(tracker);
+        if (window == null) {
+            window = new Window();
+            mWindows.put(tracker, window);
+        }
+        if (direction != window.direction) {
+            cancel(window);
+            window.direction = direction;
+        }
+        window.retire();
+
+        int ahead = Math.round(tracker.getVelocity() * mPolicy.getPrefetchLookahead() / 1000);
+        ahead = Math.max(1, Math.min(ahead, mPolicy.getPrefetchMaxCount()));
+        long bytes = (long) dimen.width * dimen.height * BYTES_PER_PIXEL;
+        int edge = direction > 0 ? tracker.getLastVisible() : tracker.getFirstVisible();
+
+        for (int i = 1; i <= ahead; i++) {
+            if (window.prefetches.size() >= mPolicy.getPrefetchMaxCount()
+                    || window.bytes + bytes > mPolicy.getPrefetchMaxBytes()) {
+                break;
+            }
+            int position = edge + i * direction;
+            if (position < 0) break;
+            String url = provider.getUrl(position);
+            if (url == null || BitmapSource.from(url) == null) continue;
+            DisplayOption<Bitmap> option = provider.getOption(position);
+            String key = BitmapFlights.keyOf(url, new DecodeSpec(option.getQuality(), dimen));
+            if (mLedger.containsKey(key)) continue;
+
+            Prefetch prefetch = new Prefetch(key, bytes);
+            prefetch.from(url)
+                    .option(option)
+                    .priority(Priority.LOW)
+                    .into(new Holder(key, dimen));
+            window.add(prefetch);
+            mLedger.put(key, prefetch);
+            prefetch.start();
+        }
+    }
+
+    /**
+     * Cancel the prefetches of a list being unlinked.
+     */
+    synchronized void forget(@NonNull ViewportTracker tracker) {
+        Window window = mWindows.remove(tracker);
+        if (window != null) cancel(window);
+    }
+
+    private void cancel(Window window) {
+        for (Prefetch prefetch : window.prefetches) {
+            if (prefetch.cancel()) mCancelledCount++;
+            mLedger.remove(prefetch.key);
+        }
+        window.prefetches.clear();
+        window.bytes = 0;
+    }
+
+    /**
+     * Called for each display not started by the prefetch.
+     *
+     * @param key    Key of the flight of the display.
+     * @param cached {@code true} if it is served from the memory or disk cache.
+     */
+    synchronized void onDisplay(@NonNull String key, boolean cached) {
+        Prefetch prefetch = mLedger.remove(key);
+        if (prefetch == null || prefetch.cancelled) return;
+        if (cached) {
+            mHitCount++;
+        } else if (prefetch.future == null || !prefetch.future.isDone()) {
+            mLateCount++;
+        } else {
+            mMissCount++;
+        }
+    }
+
+    synchronized PrefetchStats getStats() {
+        long inFlightBytes = 0;
+        for (Window window : mWindows.values()) {
+            window.retire();
+            inFlightBytes += window.bytes;
+        }
+        return new PrefetchStats(mIssuedCount, mCancelledCount, mHitCount, mLateCount, mMissCount, inFlightBytes);
+    }
+
+    private static class Window {
+        int direction;
+        final List<Prefetch> prefetches = new ArrayList<>();
+        long bytes;
+
+        void add(Prefetch prefetch) {
+            prefetches.add(prefetch);
+            bytes += prefetch.bytes;
+        }
+
+        void retire() {
+            Iterator<Prefetch> iterator = prefetches.iterator();
+            while (iterator.hasNext()) {
+                Prefetch prefetch = iterator.next();
+                if (prefetch.future != null && prefetch.future.isDone()) {
+                    iterator.remove();
+                    bytes -= prefetch.bytes;
+                }
+            }
+        }
+    }
+
+    /**
+     * Started on the transaction thread like any transaction, so the lookups of the caches are not
+     * done on the ui thread.
+     */
+    private class Prefetch extends BitmapTransaction {
+
+        final String key;
+        final long bytes;
+        // Guarded by Prefetcher.this.
+        Future<Bitmap> future;
+        boolean cancelled;
+
+        Prefetch(String key, long bytes) {
+            super(mLoader);
+            this.key = key;
+            this.bytes = bytes;
+        }
+
+        @Override
+        void startAsync() {
+            synchronized (Prefetcher.this) {
+                if (cancelled) return;
+            }
+            Future<Bitmap> result = accessory.displayBitmap(mediaData, settable, option.get(), null, null, priority);
+            synchronized (Prefetcher.this) {
+                future = result;
+                if (cancelled) {
+                    result.cancel(true);
+                } else if (result instanceof MokeFutureImageTask) {
+                    // Already in memory, nothing was prefetched.
+                    mLedger.remove(key);
+                } else {
+                    mIssuedCount++;
+                }
+            }
+        }
+
+        /**
+         * @return {@code true} if it was not done yet.
+         */
+        boolean cancel() {
+            cancelled = true;
+            return future == null || future.cancel(true);
+        }
+    }
+
+    /**
+     * Holder of a prefetch, matching no view, at the size of the cells of the list.
+     * The loader never sets a bitmap on it, so it takes no seat in the {@link BitmapSeatTracker}.
+     */
+    static class Holder extends FakeBitmapMediaHolder {
+
+        private final DimenSpec mDimen;
+
+        Holder(String key, DimenSpec dimen) {
+            super(key);
+            mDimen = dimen;
+        }
+
+        @Override
+        public int getWidth() {
+            return mDimen.width;
+        }
+
+        @Override
+        public int getHeight() {
+            return mDimen.height;
+        }
+    }
+}
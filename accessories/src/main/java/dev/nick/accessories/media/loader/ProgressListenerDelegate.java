@@ -19,7 +19,7 @@ package dev.nick.accessories.media.loader;
 import dev.nick.accessories.media.loader.cache.CacheManager;
 import dev.nick.accessories.media.loader.ui.DisplayOption;
 import dev.nick.accessories.media.loader.ui.MediaHolder;
-import dev.nick.accessories.media.loader.worker.DimenSpec;
+import dev.nick.accessories.media.loader.worker.DecodeSpec;
 import dev.nick.accessories.media.loader.worker.ProgressListener;
 import dev.nick.accessories.media.loader.worker.task.DisplayTaskRecord;
 import dev.nick.accessories.media.loader.worker.task.TaskManager;
@@ -36,7 +36,7 @@ abstract class ProgressListenerDelegate<T> implements ProgressListener<T> {
     protected MediaHolder<T> settable;
     protected String url;
     protected DisplayOption<T> option;
-    protected DimenSpec dimenSpec;
+    protected DecodeSpec decodeSpec;
     protected Boolean canceled = Boolean.FALSE;
     protected Boolean isTaskDirty = null;
     protected Logger mLogger;
@@ -46,14 +46,14 @@ abstract class ProgressListenerDelegate<T> implements ProgressListener<T> {
             CacheManager<T> cacheManager,
             TaskManager taskManager,
             ProgressListener<T> listener,
-            DimenSpec dimenSpec,
+            DecodeSpec decodeSpec,
             DisplayOption<T> option,
             MediaHolder<T> mediaHolder,
             DisplayTaskRecord taskRecord,
             String url) {
         this.cacheManager = cacheManager;
         this.taskManager = taskManager;
-        this.dimenSpec = dimenSpec;
+        this.decodeSpec = decodeSpec;
         this.listener = listener;
         this.option = option;
         this.settable = mediaHolder;
@@ -26,6 +26,7 @@ import android.support.annotation.WorkerThread;
 import java.util.List;
 
 import dev.nick.accessories.common.annotation.Shared;
+import dev.nick.accessories.media.loader.cache.pool.BitmapSeatTracker;
 import dev.nick.accessories.media.loader.ui.BitmapViewSettings;
 import dev.nick.accessories.media.loader.ui.MediaHolder;
 import dev.nick.accessories.media.loader.ui.MovieViewSettings;
@@ -68,6 +69,10 @@ class UISettingApplier implements Handler.Callback {
     private void onApplyImageSettings(ViewSettings settings) {
         mLogger.verbose(settings);
         settings.run();
+        if (settings instanceof BitmapViewSettings) {
+            BitmapSeatTracker.getSharedTracker().onSeated(settings.getSeat().hashCode(),
+                    ((BitmapViewSettings) settings).getBitmap());
+        }
     }
 
     @WorkerThread
@@ -83,10 +88,28 @@ class UISettingApplier implements Handler.Callback {
                     (arts == null || arts.size() == 0
                             ? bitmap
                             : MultipleMediaArtistCaller.call(arts, bitmap, mediaHolder)));
+            BitmapSeatTracker.getSharedTracker().retain(settings.getBitmap());
             mUIThreadHandler.obtainMessage(MSG_APPLY_SETTINGS, settings).sendToTarget();
         }
     }
 
+    /**
+     * Show a bitmap the caller retained in the {@link BitmapSeatTracker}, the seat takes that retain
+     * over. It is released if there is no holder to show it.
+     */
+    @WorkerThread
+    void applyRetainedSettings(Bitmap bitmap, MediaHolder<Bitmap> mediaHolder, ViewAnimator<Bitmap> animator) {
+
+        mLogger.verbose("mediaHolder: " + mediaHolder + ", bitmap: " + bitmap + ", animator:" + animator);
+
+        if (mediaHolder == null) {
+            BitmapSeatTracker.getSharedTracker().release(bitmap);
+            return;
+        }
+        BitmapViewSettings settings = new BitmapViewSettings(animator, mediaHolder, bitmap);
+        mUIThreadHandler.obtainMessage(MSG_APPLY_SETTINGS, settings).sendToTarget();
+    }
+
     void applySettings(Movie movie, List<MediaArt<Movie>> arts, MediaHolder<Movie> mediaHolder,
                        ViewAnimator<Movie> animator) {
         if (mediaHolder != null) {
@@ -18,22 +18,36 @@ package dev.nick.accessories.media.loader.cache;
 
 import android.content.Context;
 import android.graphics.Bitmap;
-import android.os.Process;
 import android.support.annotation.NonNull;
+import android.support.annotation.Nullable;
 import android.support.annotation.WorkerThread;
 
+import java.io.File;
+import java.util.List;
 import java.util.concurrent.ExecutorService;
-import java.util.concurrent.Executors;
 
-import dev.nick.accessories.media.loader.cache.disk.DiskCache;
-import dev.nick.accessories.media.loader.cache.mem.MemCache;
 import dev.nick.accessories.logger.Logger;
 import dev.nick.accessories.logger.LoggerManager;
+import dev.nick.accessories.media.loader.cache.disk.DiskCache;
+import dev.nick.accessories.media.loader.cache.disk.DiskWriteStats;
+import dev.nick.accessories.media.loader.cache.mem.MemCache;
+import dev.nick.accessories.media.loader.cache.mem.MemCacheStats;
+import dev.nick.accessories.media.loader.cache.pool.BitmapPool;
+import dev.nick.accessories.media.loader.cache.pool.BitmapPoolImpl;
+import dev.nick.accessories.media.loader.cache.pool.BitmapSeatTracker;
+import dev.nick.accessories.media.loader.cache.pool.BitmapPoolStats;
+import dev.nick.accessories.media.loader.queue.Dispatcher;
+import dev.nick.accessories.media.loader.ui.MediaHolder;
+import dev.nick.accessories.media.loader.ui.art.MediaArt;
+import dev.nick.accessories.media.loader.ui.art.MultipleMediaArtistCaller;
+import dev.nick.accessories.media.loader.ui.art.StableMediaArt;
+import dev.nick.accessories.media.loader.worker.DecodeSpec;
 
-public class BitmapCacheManager implements CacheManager<Bitmap> {
+public class BitmapCacheManager implements CacheManager<Bitmap>, OriginalCommitter {
 
     private DiskCache mDiskCache;
-    private Cache<String, Bitmap> mMemCache;
+    private MemCache mMemCache;
+    private BitmapPool mBitmapPool;
 
     private KeyGenerator mKeyGenerator;
 
@@ -41,6 +55,7 @@ public class BitmapCacheManager implements CacheManager<Bitmap> {
 
     private boolean isMemCacheEnabled;
     private boolean isDiskCacheEnabled;
+    private boolean isOriginalBytesEnabled;
 
     private Logger mLogger;
 
@@ -49,9 +64,11 @@ public class BitmapCacheManager implements CacheManager<Bitmap> {
         mLogger.verbose("Create BitmapCacheManager with policy:" + cachePolicy);
         isDiskCacheEnabled = cachePolicy.isDiskCacheEnabled();
         isMemCacheEnabled = cachePolicy.isMemCacheEnabled();
+        isOriginalBytesEnabled = cachePolicy.isOriginalBytesEnabled();
         mKeyGenerator = cachePolicy.getKeyGenerator();
         mDiskCache = from.mDiskCache;
         mMemCache = from.mMemCache;
+        mBitmapPool = from.mBitmapPool;
         mCacheService = from.mCacheService;
     }
 
@@ -60,43 +77,149 @@ public class BitmapCacheManager implements CacheManager<Bitmap> {
         mLogger.verbose("Create BitmapCacheManager with policy:" + cachePolicy);
         isDiskCacheEnabled = cachePolicy.isDiskCacheEnabled();
         isMemCacheEnabled = cachePolicy.isMemCacheEnabled();
-        mDiskCache = new DiskCache(cachePolicy, context);
-        mMemCache = new MemCache(cachePolicy);
-        mCacheService = Executors.newFixedThreadPool(cachePolicy.getCachingThreads());
+        isOriginalBytesEnabled = cachePolicy.isOriginalBytesEnabled();
+        if (cachePolicy.getBitmapPoolSize() > 0) {
+            mBitmapPool = new BitmapPoolImpl(cachePolicy.getBitmapPoolSize());
+        }
+        mCacheService = Dispatcher.shared().newExecutor("CacheService", cachePolicy.getCachingThreads());
+        mDiskCache = new DiskCache(cachePolicy, context, mCacheService, mBitmapPool);
+        mMemCache = new MemCache(cachePolicy, mBitmapPool);
         mKeyGenerator = cachePolicy.getKeyGenerator();
     }
 
+    private CacheKey keyOf(String url) {
+        return CacheKey.of(mKeyGenerator.fromUrl(url), CacheKey.fingerprintOf(url));
+    }
+
+    private CacheKey keyOf(String url, DecodeSpec spec) {
+        return CacheKey.of(mKeyGenerator.fromUrl(url), CacheKey.fingerprintOf(url), spec);
+    }
+
+    @Nullable
+    private CacheKey artKeyOf(String url, DecodeSpec spec, List<MediaArt<Bitmap>> arts) {
+        if (!isMemCacheEnabled) return null;
+        String signature = MultipleMediaArtistCaller.signatureOf(arts);
+        return signature == null ? null : keyOf(url, spec).withArtSignature(signature);
+    }
+
     @Override
-    public Bitmap get(String url) {
-        return mMemCache.get(mKeyGenerator.fromUrl(url));
+    public Bitmap get(@NonNull String url, @NonNull DecodeSpec spec) {
+        return mMemCache.get(keyOf(url, spec));
+    }
+
+    /**
+     * Like {@link #get(String, DecodeSpec)} for a display, the bitmap is retained in the
+     * {@link BitmapSeatTracker} so it can not go back to the pool before the caller releases it.
+     */
+    @Nullable
+    public Bitmap getForDisplay(@NonNull String url, @NonNull DecodeSpec spec) {
+        return mMemCache.getRetained(keyOf(url, spec));
+    }
+
+    /**
+     * Run the art chain on the source. The output of a chain made of {@link StableMediaArt}s
+     * is kept in the mem cache, so the next request for it skips the chain.
+     * The source must not be put back to the pool while the chain runs, either because it is
+     * not cached yet or because the caller retains it.
+     *
+     * @return The output of the chain, or the source itself if there is no art, retained in the
+     * {@link BitmapSeatTracker} for the display. The display seats it or releases it.
+     */
+    @WorkerThread
+    @NonNull
+    public Bitmap applyArts(@NonNull String url, @NonNull DecodeSpec spec, @NonNull Bitmap source,
+                            @Nullable List<MediaArt<Bitmap>> arts, @NonNull MediaHolder<Bitmap> mediaHolder) {
+        if (arts == null || arts.isEmpty()) {
+            BitmapSeatTracker.getSharedTracker().retain(source);
+            return source;
+        }
+        CacheKey key = artKeyOf(url, spec, arts);
+        if (key != null) {
+            Bitmap cached = mMemCache.getRetained(key);
+            if (cached != null) return cached;
+        }
+        Bitmap out = MultipleMediaArtistCaller.call(arts, source, mediaHolder);
+        // An art may give back its input, caching it twice would count it twice.
+        if (key != null && out != source) {
+            mMemCache.cacheRetained(key, out);
+        } else {
+            BitmapSeatTracker.getSharedTracker().retain(out);
+        }
+        return out;
     }
 
     @Override
-    public String getCachePath(String url) {
-        return mDiskCache.getCachePath(mKeyGenerator.fromUrl(url));
+    public String getCachePath(@NonNull String url, @NonNull DecodeSpec spec) {
+        return mDiskCache.getCachePath(keyOf(url, spec));
     }
 
     @Override
-    public boolean cache(@NonNull final String url, @NonNull final Bitmap value) {
-        final String key = mKeyGenerator.fromUrl(url);
+    public boolean cache(@NonNull String url, @NonNull DecodeSpec spec, @NonNull Bitmap value) {
+        CacheKey key = keyOf(url, spec);
         if (isMemCacheEnabled) {
             mMemCache.cache(key, value);
         }
-        if (isDiskCacheEnabled) {
+        // The original bytes are already on disk, or come from somewhere as cheap to read as the disk,
+        // only thumbnails kept as raw pixels save the decoding.
+        if (isDiskCacheEnabled && (!isOriginalBytesEnabled || mDiskCache.isRawPixelsThumbnail(key, value))) {
             mLogger.verbose("About to cache to disk:" + url);
-            mCacheService.execute(new Runnable() {
-                @Override
-                public void run() {
-                    Process.setThreadPriority(Process.THREAD_PRIORITY_BACKGROUND);
-                    mDiskCache.cache(key, value);
-                }
-            });
+            mDiskCache.enqueue(key, value);
         } else {
             return false;
         }
         return true;
     }
 
+    @Nullable
+    @Override
+    @WorkerThread
+    public String commitOriginal(@NonNull String url, @NonNull File file) {
+        if (!isDiskCacheEnabled || !isOriginalBytesEnabled) return null;
+        return mDiskCache.commitOriginal(keyOf(url), file);
+    }
+
+    @Override
+    @WorkerThread
+    public void discardOriginal(@NonNull String url) {
+        if (!isDiskCacheEnabled || !isOriginalBytesEnabled) return;
+        mDiskCache.discardOriginal(keyOf(url));
+    }
+
+    /**
+     * @return Path of the kept original bytes of the url, {@code null} if not kept.
+     * @see DiskCache#getOriginalPath(CacheKey)
+     */
+    @Nullable
+    public String getOriginalPath(@NonNull String url) {
+        if (!isDiskCacheEnabled || !isOriginalBytesEnabled) return null;
+        return mDiskCache.getOriginalPath(keyOf(url));
+    }
+
+    /**
+     * @return {@code true} if the original bytes of the url are kept and the same as the file.
+     */
+    @WorkerThread
+    public boolean isSameOriginal(@NonNull String url, @NonNull File file) {
+        return isDiskCacheEnabled && isOriginalBytesEnabled && mDiskCache.isSameOriginal(keyOf(url), file);
+    }
+
+    /**
+     * Drop all variants cached for the url, in memory and on disk, once its content changed.
+     */
+    @WorkerThread
+    public void invalidate(@NonNull String url) {
+        if (isMemCacheEnabled) mMemCache.removeAll(mKeyGenerator.fromUrl(url));
+        if (isDiskCacheEnabled) mDiskCache.invalidate(keyOf(url));
+    }
+
+    /**
+     * @return Committer to hand downloaded files to, {@code null} if originals are not kept.
+     */
+    @Nullable
+    public OriginalCommitter getOriginalCommitter() {
+        return isDiskCacheEnabled && isOriginalBytesEnabled ? this : null;
+    }
+
     @Override
     public boolean isDiskCacheEnabled() {
         return isDiskCacheEnabled;
@@ -117,6 +240,36 @@ public class BitmapCacheManager implements CacheManager<Bitmap> {
         mMemCache.evictAll();
     }
 
+    @Override
+    public void trimMem(int level) {
+        mLogger.verbose("Trim mem cache, level:" + level);
+        mMemCache.trimMemory(level);
+        mDiskCache.trimMemory(level);
+        if (mBitmapPool != null) {
+            mBitmapPool.trimMemory(level);
+        }
+    }
+
+    @NonNull
+    public MemCacheStats getMemCacheStats() {
+        return mMemCache.getStats();
+    }
+
+    @NonNull
+    public DiskWriteStats getDiskWriteStats() {
+        return mDiskCache.getWriteStats();
+    }
+
+    @Nullable
+    public BitmapPool getBitmapPool() {
+        return mBitmapPool;
+    }
+
+    @Nullable
+    public BitmapPoolStats getBitmapPoolStats() {
+        return mBitmapPool == null ? null : mBitmapPool.getStats();
+    }
+
     @Override
     public BitmapCacheManager fork(CachePolicy policy) {
         return new BitmapCacheManager(this, policy);
@@ -0,0 +1,225 @@
+/*
+ * Copyright (c) 2016 Nick Guo
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+package dev.nick.accessories.media.loader.cache;
+
+import android.support.annotation.NonNull;
+import android.support.annotation.Nullable;
+
+import dev.nick.accessories.media.loader.ui.MediaQuality;
+import dev.nick.accessories.media.loader.utils.Murmur3;
+import dev.nick.accessories.media.loader.worker.DecodeSpec;
+import dev.nick.accessories.media.loader.worker.DimenSpec;
+import lombok.Getter;
+
+/**
+ * Key of one decoded variant of an image, the same url decoded with
+ * a different {@link MediaQuality} or dimen is cached as a different entry.
+ * The output of an art chain is keyed by the variant it was made from plus the chain signature.
+ * <p>
+ * Keys carry a fingerprint of the url, hashed apart from the {@link KeyGenerator}, so two urls
+ * with the same key are told apart instead of showing the image of each other.
+ */
+@Getter
+public class CacheKey {
+
+    // Fetchers decode to 512x512 pixels when the view is not measured yet.
+    private static final int UNMEASURED_DIMEN = 512;
+
+    public static final long UNKNOWN_FINGERPRINT = 0;
+    private static final long FINGERPRINT_SEED = 0x5bd1e995L;
+
+    @NonNull
+    private final String baseKey;
+    @NonNull
+    private final MediaQuality quality;
+    private final int width;
+    private final int height;
+    @Nullable
+    private final String artSignature;
+    // UNKNOWN_FINGERPRINT if the url is not known.
+    private final long urlFingerprint;
+
+    private CacheKey(@NonNull String baseKey, long urlFingerprint, @NonNull MediaQuality quality, int width, int height) {
+        this(baseKey, urlFingerprint, quality, width, height, null);
+    }
+
+    private CacheKey(@NonNull String baseKey, long urlFingerprint, @NonNull MediaQuality quality, int width, int height,
+                     @Nullable String artSignature) {
+        this.baseKey = baseKey;
+        this.urlFingerprint = urlFingerprint;
+        this.quality = quality;
+        this.width = width;
+        this.height = height;
+        this.artSignature = artSignature;
+    }
+
+    /**
+     * @return Fingerprint of the url to build keys with, never {@link #UNKNOWN_FINGERPRINT}.
+     */
+    public static long fingerprintOf(@NonNull String url) {
+        long fingerprint = Murmur3.hash64(url, FINGERPRINT_SEED);
+        return fingerprint == UNKNOWN_FINGERPRINT ? 1 : fingerprint;
+    }
+
+    /**
+     * @param baseKey Key of the url, from {@link KeyGenerator#fromUrl(String)}.
+     * @return Key of the full size variant.
+     */
+    public static CacheKey of(@NonNull String baseKey) {
+        return of(baseKey, UNKNOWN_FINGERPRINT);
+    }
+
+    /**
+     * @param baseKey        Key of the url, from {@link KeyGenerator#fromUrl(String)}.
+     * @param urlFingerprint Fingerprint of the url, from {@link #fingerprintOf(String)}.
+     * @return Key of the full size variant.
+     */
+    public static CacheKey of(@NonNull String baseKey, long urlFingerprint) {
+        return new CacheKey(baseKey, urlFingerprint, MediaQuality.RAW, 0, 0);
+    }
+
+    /**
+     * @param baseKey Key of the url, from {@link KeyGenerator#fromUrl(String)}.
+     * @param spec    Spec the image is decoded with.
+     * @return Key of the variant decoded with this spec.
+     */
+    public static CacheKey of(@NonNull String baseKey, @NonNull DecodeSpec spec) {
+        return of(baseKey, UNKNOWN_FINGERPRINT, spec);
+    }
+
+    /**
+     * @param baseKey        Key of the url, from {@link KeyGenerator#fromUrl(String)}.
+     * @param urlFingerprint Fingerprint of the url, from {@link #fingerprintOf(String)}.
+     * @param spec           Spec the image is decoded with.
+     * @return Key of the variant decoded with this spec.
+     */
+    public static CacheKey of(@NonNull String baseKey, long urlFingerprint, @NonNull DecodeSpec spec) {
+        if (spec.getQuality() != MediaQuality.OPT) {
+            return new CacheKey(baseKey, urlFingerprint, MediaQuality.RAW, 0, 0);
+        }
+        DimenSpec dimenSpec = spec.getDimenSpec();
+        if (dimenSpec == null || dimenSpec.width <= 0 || dimenSpec.height <= 0) {
+            return new CacheKey(baseKey, urlFingerprint, MediaQuality.OPT, UNMEASURED_DIMEN, UNMEASURED_DIMEN);
+        }
+        return new CacheKey(baseKey, urlFingerprint, MediaQuality.OPT, dimenSpec.width, dimenSpec.height);
+    }
+
+    /**
+     * @return Key of the full size variant of the same url.
+     */
+    public CacheKey toRaw() {
+        return quality == MediaQuality.RAW ? this
+                : new CacheKey(baseKey, urlFingerprint, MediaQuality.RAW, 0, 0, artSignature);
+    }
+
+    /**
+     * @param artSignature Signature of the art chain applied to this variant.
+     * @return Key of the art chain output.
+     */
+    public CacheKey withArtSignature(@NonNull String artSignature) {
+        return new CacheKey(baseKey, urlFingerprint, quality, width, height, artSignature);
+    }
+
+    /**
+     * @param urlFingerprint Fingerprint an entry was stored with.
+     * @return {@code false} if the entry is known to be of another url with the same key.
+     */
+    public boolean isSameUrl(long urlFingerprint) {
+        return this.urlFingerprint == UNKNOWN_FINGERPRINT
+                || urlFingerprint == UNKNOWN_FINGERPRINT
+                || this.urlFingerprint == urlFingerprint;
+    }
+
+    /**
+     * @param other Key of the requested variant.
+     * @return {@code true} if the image of this key is large enough to be displayed for {@code other}.
+     */
+    public boolean covers(@NonNull CacheKey other) {
+        if (!baseKey.equals(other.baseKey) || !isSameUrl(other.urlFingerprint)) return false;
+        if (artSignature == null ? other.artSignature != null : !artSignature.equals(other.artSignature)) {
+            return false;
+        }
+        if (quality == MediaQuality.RAW) return true;
+        return other.quality != MediaQuality.RAW && width >= other.width && height >= other.height;
+    }
+
+    /**
+     * @return Pixels asked for by this key, RAW is the largest.
+     */
+    public long area() {
+        return quality == MediaQuality.RAW ? Long.MAX_VALUE : (long) width * height;
+    }
+
+    /**
+     * @return Key string of this variant, used to name the disk cache file.
+     */
+    @NonNull
+    public String getVariantKey() {
+        String variant = quality == MediaQuality.RAW
+                ? baseKey + "@raw"
+                : baseKey + "@" + width + "x" + height;
+        return artSignature == null ? variant : variant + "#" + artSignature;
+    }
+
+    /**
+     * @return Key string of the original encoded bytes of the url, used to name the disk cache file.
+     */
+    @NonNull
+    public String getOriginalKey() {
+        return baseKey + "@orig";
+    }
+
+    /**
+     * @return Key string of the raw pixels of this variant, used to name the disk cache file.
+     */
+    @NonNull
+    public String getPixelsKey() {
+        return getVariantKey() + "@px";
+    }
+
+    @Override
+    public boolean equals(Object o) {
+        if (this == o) return true;
+        if (o == null || getClass() != o.getClass()) return false;
+
+        CacheKey that = (CacheKey) o;
+
+        return width == that.width
+                && height == that.height
+                && urlFingerprint == that.urlFingerprint
+                && quality == that.quality
+                && baseKey.equals(that.baseKey)
+                && (artSignature == null ? that.artSignature == null : artSignature.equals(that.artSignature));
+    }
+
+    @Override
+    public int hashCode() {
+        int result = baseKey.hashCode();
+        result = 31 * result + (int) (urlFingerprint ^ (urlFingerprint >>> 32));
+        result = 31 * result + quality.hashCode();
+        result = 31 * result + width;
+        result = 31 * result + height;
+        result = 31 * result + (artSignature != null ? artSignature.hashCode() : 0);
+        return result;
+    }
+
+    @Override
+    public String toString() {
+        return getVariantKey();
+    }
+}
@@ -19,13 +19,19 @@ package dev.nick.accessories.media.loader.cache;
 import android.support.annotation.NonNull;
 
 import dev.nick.accessories.media.loader.control.Forkable;
+import dev.nick.accessories.media.loader.worker.DecodeSpec;
 
 public interface CacheManager<T> extends Forkable<CacheManager<T>, CachePolicy> {
-    T get(String url);
+    /**
+     * @param url  Url of the request.
+     * @param spec Spec the request is decoded with, a variant large enough for it may be returned.
+     * @return The cached one or {@code null}.
+     */
+    T get(@NonNull String url, @NonNull DecodeSpec spec);
 
-    String getCachePath(String url);
+    String getCachePath(@NonNull String url, @NonNull DecodeSpec spec);
 
-    boolean cache(@NonNull String url, @NonNull T value);
+    boolean cache(@NonNull String url, @NonNull DecodeSpec spec, @NonNull T value);
 
     boolean isDiskCacheEnabled();
 
@@ -34,4 +40,9 @@ public interface CacheManager<T> extends Forkable<CacheManager<T>, CachePolicy>
     void evictDisk();
 
     void evictMem();
+
+    /**
+     * @param level Trim level from {@link android.content.ComponentCallbacks2#onTrimMemory(int)}
+     */
+    void trimMem(int level);
 }
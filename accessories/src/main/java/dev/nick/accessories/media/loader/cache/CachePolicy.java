@@ -36,15 +36,25 @@ import lombok.ToString;
 public class CachePolicy {
 
     public static final int DEFAULT_MEM_CACHE_POOL_SIZE = (int) (Runtime.getRuntime().maxMemory() / 8);
+    public static final int DEFAULT_BITMAP_POOL_SIZE = (int) (Runtime.getRuntime().maxMemory() / 16);
+    public static final long DEFAULT_DISK_CACHE_MAX_SIZE = 64 * 1024 * 1024;
+    public static final int DEFAULT_DISK_CACHE_MAX_ENTRIES = 4096;
+    public static final int DEFAULT_PACKED_ENTRY_MAX_SIZE = 32 * 1024;
+    public static final int DEFAULT_RAW_PIXELS_MAX_AREA = 256 * 256;
+    public static final int DEFAULT_DISK_WRITE_QUEUE_SIZE = 32;
     // +1, FIX for emulators
     public static final int DEFAULT_CACHING_THREADS = (Runtime.getRuntime().availableProcessors()) / 4 + 1;
 
     public static final FileNameGenerator DEFAULT_FILENAME_GENERATOR = new HeadlessFileNameGenerator();
-    public static final KeyGenerator DEFAULT_KEY_GENERATOR = new HashcodeKeyGenerator();
+    // 32 bits, urls do collide at the size of a disk cache. Kept for the keys written by it.
+    public static final KeyGenerator HASHCODE_KEY_GENERATOR = new HashcodeKeyGenerator();
+    public static final KeyGenerator MURMUR3_KEY_GENERATOR = new Murmur3KeyGenerator();
+    public static final KeyGenerator DEFAULT_KEY_GENERATOR = MURMUR3_KEY_GENERATOR;
 
     public static final CachePolicy DEFAULT_CACHE_POLICY = CachePolicy.builder()
             .enableDiskCache()
             .enableMemCache()
+            .enableOriginalBytes()
             .cachingThreads(DEFAULT_CACHING_THREADS)
             .memCachePoolSize(DEFAULT_MEM_CACHE_POOL_SIZE)
             .compressFormat(Bitmap.CompressFormat.PNG)
@@ -58,11 +68,26 @@ public class CachePolicy {
     private boolean memCacheEnabled;
     private boolean diskCacheEnabled;
     private boolean storageStatsEnabled;
+    private boolean originalBytesEnabled;
 
     @MinSize(1)
     private int cachingThreads;
+    // Pending disk writes, the oldest ones are dropped beyond it.
+    @MinSize(1)
+    private int diskWriteQueueSize;
     @MinSize(1)
     private int memCachePoolSize;
+    // 0 if bitmap reusing is disabled.
+    private int bitmapPoolSize;
+    @MinSize(1024 * 1024)
+    private long diskCacheMaxSize;
+    @MinSize(1)
+    private int diskCacheMaxEntries;
+    private int diskBackend;
+    // Entries not larger than this go to the packed store, only used by DiskBackend#PACKED.
+    private int packedEntryMaxSize;
+    // 0 if thumbnails are not kept as raw pixels.
+    private int rawPixelsMaxArea;
     private int preferredLocation;
     private String cacheDirName;
     private KeyGenerator keyGenerator;
@@ -75,8 +100,16 @@ public class CachePolicy {
     private CachePolicy(boolean memCacheEnabled,
                         boolean diskCacheEnabled,
                         boolean storageStatsEnabled,
+                        boolean originalBytesEnabled,
                         int cachingThreads,
+                        int diskWriteQueueSize,
                         int memCachePoolSize,
+                        int bitmapPoolSize,
+                        long diskCacheMaxSize,
+                        int diskCacheMaxEntries,
+                        int diskBackend,
+                        int packedEntryMaxSize,
+                        int rawPixelsMaxArea,
                         String cacheDirName,
                         FileNameGenerator fileNameGenerator,
                         KeyGenerator keyGenerator,
@@ -86,8 +119,16 @@ public class CachePolicy {
         this.memCacheEnabled = memCacheEnabled;
         this.diskCacheEnabled = diskCacheEnabled;
         this.storageStatsEnabled = storageStatsEnabled;
+        this.originalBytesEnabled = originalBytesEnabled;
         this.cachingThreads = cachingThreads;
+        this.diskWriteQueueSize = diskWriteQueueSize;
         this.memCachePoolSize = memCachePoolSize;
+        this.bitmapPoolSize = bitmapPoolSize;
+        this.diskCacheMaxSize = diskCacheMaxSize;
+        this.diskCacheMaxEntries = diskCacheMaxEntries;
+        this.diskBackend = diskBackend;
+        this.packedEntryMaxSize = packedEntryMaxSize;
+        this.rawPixelsMaxArea = rawPixelsMaxArea;
         this.cacheDirName = cacheDirName;
         this.fileNameGenerator = fileNameGenerator;
         this.keyGenerator = keyGenerator;
@@ -105,6 +146,13 @@ public class CachePolicy {
         int EXTERNAL = 0x101;
     }
 
+    public interface DiskBackend {
+        // One file per entry.
+        int FILES = 0x200;
+        // Small entries are packed into segment files, larger ones are kept as files.
+        int PACKED = 0x201;
+    }
+
     public interface Quality {
         int BEST = 100;
         int HIGH = 60;
@@ -116,9 +164,19 @@ public class CachePolicy {
         private boolean memCacheEnabled;
         private boolean diskCacheEnabled;
         private boolean storageStats;
+        private boolean bitmapPoolEnabled;
+        private boolean originalBytesEnabled;
+        private boolean rawPixelsEnabled;
 
         private Optional<Integer> nCachingThreads = Optional.absent();
+        private Optional<Integer> diskWriteQueueSize = Optional.absent();
         private Optional<Integer> memCachePoolSize = Optional.absent();
+        private Optional<Integer> bitmapPoolSize = Optional.absent();
+        private Optional<Long> diskCacheMaxSize = Optional.absent();
+        private Optional<Integer> diskCacheMaxEntries = Optional.absent();
+        private Optional<Integer> diskBackend = Optional.absent();
+        private Optional<Integer> packedEntryMaxSize = Optional.absent();
+        private Optional<Integer> rawPixelsMaxArea = Optional.absent();
         private Optional<Integer> preferredLocation = Optional.absent();
 
         private Optional<String> cacheDirName = Optional.absent();
@@ -161,6 +219,38 @@ public class CachePolicy {
             return Builder.this;
         }
 
+        /**
+         * To enable reusing bitmaps removed from the mem cache when decoding.
+         *
+         * @return Builder instance.
+         */
+        public Builder enableBitmapPool() {
+            this.bitmapPoolEnabled = true;
+            return Builder.this;
+        }
+
+        /**
+         * To keep the downloaded bytes in the disk cache as they are, instead of
+         * compressing the decoded bitmaps with {@link #compressFormat(Bitmap.CompressFormat)}.
+         *
+         * @return Builder instance.
+         */
+        public Builder enableOriginalBytes() {
+            this.originalBytesEnabled = true;
+            return Builder.this;
+        }
+
+        /**
+         * To keep downsampled thumbnails on disk as raw pixels, which are copied into a bitmap
+         * without decoding. Takes a few times the disk space of {@link #compressFormat(Bitmap.CompressFormat)}.
+         *
+         * @return Builder instance.
+         */
+        public Builder enableRawPixels() {
+            this.rawPixelsEnabled = true;
+            return Builder.this;
+        }
+
         /**
          * @param nCachingThreads Number of threads when caching.
          * @return Builder instance.
@@ -171,6 +261,18 @@ public class CachePolicy {
             return Builder.this;
         }
 
+        /**
+         * @param diskWriteQueueSize Max number of bitmaps waiting to be written to the disk cache,
+         *                           default is {@link #DEFAULT_DISK_WRITE_QUEUE_SIZE}. Each one is held
+         *                           until written, the oldest ones are dropped beyond it.
+         * @return Builder instance.
+         */
+        public Builder diskWriteQueueSize(@MinSize(1) int diskWriteQueueSize) {
+            Preconditions.checkState(diskWriteQueueSize >= 1);
+            this.diskWriteQueueSize = Optional.of(diskWriteQueueSize);
+            return Builder.this;
+        }
+
         /**
          * @param memCachePoolSize Pool size of the mem cache, default is {@link #DEFAULT_MEM_CACHE_POOL_SIZE}
          * @return Builder instance.
@@ -181,6 +283,71 @@ public class CachePolicy {
             return Builder.this;
         }
 
+        /**
+         * @param bitmapPoolSize Pool size of the bitmap reuse pool, default is {@link #DEFAULT_BITMAP_POOL_SIZE}
+         * @return Builder instance.
+         */
+        public Builder bitmapPoolSize(@MinSize(1024) int bitmapPoolSize) {
+            Preconditions.checkState(bitmapPoolSize >= 1024, "Too small");
+            this.bitmapPoolSize = Optional.of(bitmapPoolSize);
+            return Builder.this;
+        }
+
+        /**
+         * @param diskCacheMaxSize Max bytes of the disk cache files, default is {@link #DEFAULT_DISK_CACHE_MAX_SIZE}.
+         *                         Least recently used files are deleted when exceeded.
+         * @return Builder instance.
+         */
+        public Builder diskCacheMaxSize(@MinSize(1024 * 1024) long diskCacheMaxSize) {
+            Preconditions.checkState(diskCacheMaxSize >= 1024 * 1024, "Too small");
+            this.diskCacheMaxSize = Optional.of(diskCacheMaxSize);
+            return Builder.this;
+        }
+
+        /**
+         * @param diskCacheMaxEntries Max count of the disk cache files, default is {@link #DEFAULT_DISK_CACHE_MAX_ENTRIES}.
+         * @return Builder instance.
+         */
+        public Builder diskCacheMaxEntries(@MinSize(1) int diskCacheMaxEntries) {
+            Preconditions.checkState(diskCacheMaxEntries >= 1);
+            this.diskCacheMaxEntries = Optional.of(diskCacheMaxEntries);
+            return Builder.this;
+        }
+
+        /**
+         * @param diskBackend How the disk cache stores its entries, default is {@link DiskBackend#FILES}.
+         * @return Builder instance.
+         * @see DiskBackend
+         */
+        public Builder diskBackend(int diskBackend) {
+            Preconditions.checkState(diskBackend == DiskBackend.FILES
+                    || diskBackend == DiskBackend.PACKED);
+            this.diskBackend = Optional.of(diskBackend);
+            return Builder.this;
+        }
+
+        /**
+         * @param packedEntryMaxSize Max bytes of an entry to pack when using {@link DiskBackend#PACKED},
+         *                           default is {@link #DEFAULT_PACKED_ENTRY_MAX_SIZE}.
+         * @return Builder instance.
+         */
+        public Builder packedEntryMaxSize(@MinSize(1) int packedEntryMaxSize) {
+            Preconditions.checkState(packedEntryMaxSize >= 1);
+            this.packedEntryMaxSize = Optional.of(packedEntryMaxSize);
+            return Builder.this;
+        }
+
+        /**
+         * @param rawPixelsMaxArea Max width * height of a thumbnail kept as raw pixels,
+         *                         default is {@link #DEFAULT_RAW_PIXELS_MAX_AREA}.
+         * @return Builder instance.
+         */
+        public Builder rawPixelsMaxArea(@MinSize(1) int rawPixelsMaxArea) {
+            Preconditions.checkState(rawPixelsMaxArea >= 1);
+            this.rawPixelsMaxArea = Optional.of(rawPixelsMaxArea);
+            return Builder.this;
+        }
+
         /**
          * @param preferredLocation Preferred cache file location.
          * @return Builder instance.
@@ -232,8 +399,16 @@ public class CachePolicy {
                     memCacheEnabled,
                     diskCacheEnabled,
                     storageStats,
+                    originalBytesEnabled,
                     nCachingThreads.or(DEFAULT_CACHING_THREADS),
+                    diskWriteQueueSize.or(DEFAULT_DISK_WRITE_QUEUE_SIZE),
                     memCachePoolSize.or(DEFAULT_MEM_CACHE_POOL_SIZE),
+                    bitmapPoolEnabled ? bitmapPoolSize.or(DEFAULT_BITMAP_POOL_SIZE) : 0,
+                    diskCacheMaxSize.or(DEFAULT_DISK_CACHE_MAX_SIZE),
+                    diskCacheMaxEntries.or(DEFAULT_DISK_CACHE_MAX_ENTRIES),
+                    diskBackend.or(DiskBackend.FILES),
+                    packedEntryMaxSize.or(DEFAULT_PACKED_ENTRY_MAX_SIZE),
+                    rawPixelsEnabled ? rawPixelsMaxArea.or(DEFAULT_RAW_PIXELS_MAX_AREA) : 0,
                     cacheDirName.or("media"),
                     fileNameGenerator.or(DEFAULT_FILENAME_GENERATOR),
                     keyGenerator.or(DEFAULT_KEY_GENERATOR),
@@ -20,6 +20,8 @@ import android.content.Context;
 import android.graphics.Movie;
 import android.support.annotation.NonNull;
 
+import dev.nick.accessories.media.loader.worker.DecodeSpec;
+
 public class MovieCacheManager implements CacheManager<Movie> {
 
     public MovieCacheManager(CachePolicy cachePolicy, Context context) {
@@ -27,17 +29,17 @@ public class MovieCacheManager implements CacheManager<Movie> {
     }
 
     @Override
-    public Movie get(String url) {
+    public Movie get(@NonNull String url, @NonNull DecodeSpec spec) {
         return null;
     }
 
     @Override
-    public String getCachePath(String url) {
+    public String getCachePath(@NonNull String url, @NonNull DecodeSpec spec) {
         return null;
     }
 
     @Override
-    public boolean cache(@NonNull String url, @NonNull Movie value) {
+    public boolean cache(@NonNull String url, @NonNull DecodeSpec spec, @NonNull Movie value) {
         return false;
     }
 
@@ -61,6 +63,11 @@ public class MovieCacheManager implements CacheManager<Movie> {
         // Nothing
     }
 
+    @Override
+    public void trimMem(int level) {
+        // Nothing
+    }
+
     @Override
     public CacheManager<Movie> fork(CachePolicy param) {
         return this;
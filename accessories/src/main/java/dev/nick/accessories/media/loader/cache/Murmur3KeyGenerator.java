@@ -0,0 +1,59 @@
+/*
+ * Copyright (c) 2016 Nick Guo
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package dev.nick.accessories.media.loader.cache;
+
+import android.support.annotation.NonNull;
+
+import dev.nick.accessories.media.loader.utils.Murmur3;
+
+/**
+ * 128 bit {@link Murmur3} of the url as 32 hex chars. Encoded through a per thread buffer,
+ * the key string is the only allocation.
+ */
+class Murmur3KeyGenerator implements KeyGenerator {
+
+    private static final char[] HEX = "0123456789abcdef".toCharArray();
+
+    private static final ThreadLocal<Buffers> sBuffers = new ThreadLocal<Buffers>() {
+        @Override
+        protected Buffers initialValue() {
+            return new Buffers();
+        }
+    };
+
+    @Override
+    @NonNull
+    public String fromUrl(@NonNull String url) {
+        Buffers buffers = sBuffers.get();
+        Murmur3.hash128(url, 0, buffers.hash);
+        encode(buffers.hash[0], buffers.chars, 0);
+        encode(buffers.hash[1], buffers.chars, 16);
+        return new String(buffers.chars);
+    }
+
+    private static void encode(long value, char[] out, int offset) {
+        for (int i = 15; i >= 0; i--) {
+            out[offset + i] = HEX[(int) (value & 0xf)];
+            value >>>= 4;
+        }
+    }
+
+    private static class Buffers {
+        final long[] hash = new long[2];
+        final char[] chars = new char[32];
+    }
+}
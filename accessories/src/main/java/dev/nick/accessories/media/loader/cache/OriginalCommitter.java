@@ -0,0 +1,50 @@
+/*
+ * Copyright (c) 2016 Nick Guo
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+package dev.nick.accessories.media.loader.cache;
+
+import android.support.annotation.NonNull;
+import android.support.annotation.Nullable;
+import android.support.annotation.WorkerThread;
+
+import java.io.File;
+
+/**
+ * Takes downloaded files into the disk cache as the original bytes of an url.
+ */
+public interface OriginalCommitter {
+
+    /**
+     * Move the file into the disk cache.
+     *
+     * @param url  Url the file was downloaded from.
+     * @param file The downloaded file.
+     * @return Path of the file in the disk cache, or the url of the packed entry,
+     * {@code null} if it was not taken and left where it is.
+     */
+    @WorkerThread
+    @Nullable
+    String commitOriginal(@NonNull String url, @NonNull File file);
+
+    /**
+     * Drop the original of this url, for example when it can not be decoded.
+     *
+     * @param url Url of the original.
+     */
+    @WorkerThread
+    void discardOriginal(@NonNull String url);
+}
@@ -21,29 +21,53 @@ import android.content.Context;
 import android.graphics.Bitmap;
 import android.graphics.BitmapFactory;
 import android.os.Environment;
+import android.os.Process;
 import android.support.annotation.NonNull;
+import android.support.annotation.Nullable;
 import android.support.annotation.WorkerThread;
 import android.util.Log;
 
+import java.io.ByteArrayOutputStream;
 import java.io.File;
 import java.io.FileInputStream;
 import java.io.FileNotFoundException;
 import java.io.FileOutputStream;
 import java.io.IOException;
-import java.util.ArrayList;
-import java.util.List;
+import java.util.concurrent.Executor;
+import java.util.concurrent.atomic.AtomicBoolean;
 
 import dev.nick.accessories.media.loader.cache.Cache;
+import dev.nick.accessories.media.loader.cache.CacheKey;
 import dev.nick.accessories.media.loader.cache.CachePolicy;
 import dev.nick.accessories.media.loader.cache.FileNameGenerator;
+import dev.nick.accessories.media.loader.cache.pool.BitmapPool;
 import dev.nick.accessories.media.loader.control.StorageStats;
+import dev.nick.accessories.media.loader.utils.BitmapUtils;
+import dev.nick.accessories.media.loader.ui.MediaQuality;
 import dev.nick.accessories.media.loader.utils.FileUtils;
+import dev.nick.accessories.media.loader.worker.MediaSource;
+import dev.nick.accessories.media.loader.worker.network.CacheMeta;
 import dev.nick.accessories.logger.Logger;
 import dev.nick.accessories.logger.LoggerManager;
 
-public class DiskCache implements Cache<String, Bitmap> {
+/**
+ * Disk tier of the bitmap cache. Files are tracked by a {@link DiskLruIndex}, the least
+ * recently used ones are deleted on the executor once the size or entry limit
+ * of {@link CachePolicy} is exceeded. The index is loaded on the executor too,
+ * lookups look at the files only until it is loaded.
+ * <p>
+ * With {@link CachePolicy.DiskBackend#PACKED}, small entries go to a {@link PackedBlobStore}
+ * in the internal dir instead, they share the index and the limits with the files.
+ * <p>
+ * With {@link CachePolicy#getRawPixelsMaxArea()}, thumbnails are written as {@link RawPixels}
+ * files and come back as {@link MediaSource.Prefix#PIXELS} urls.
+ * <p>
+ * Writes given to {@link #enqueue(CacheKey, Bitmap)} wait in a bounded {@link DiskWriteQueue},
+ * see {@link CachePolicy#getDiskWriteQueueSize()}.
+ */
+public class DiskCache implements Cache<CacheKey, Bitmap> {
 
-    private final List<FileOperator> mRunningOps;
+    private final DiskWriteQueue mWriteQueue;
     private String mExternalCacheDir;
     private String mInternalCacheDir;
     private boolean mPreferToExternal;
@@ -52,10 +76,27 @@ public class DiskCache implements Cache<String, Bitmap> {
     private Bitmap.CompressFormat mFormat;
     private int mQuality;
     private FileNameGenerator mFileNameGenerator;
+    private BitmapPool mBitmapPool;
+
+    @Nullable
+    private PackedBlobStore mPackedStore;
+    private int mPackedEntryMaxSize;
+    private int mRawPixelsMaxArea;
+
+    private DiskLruIndex mIndex;
+    private long mMaxSize;
+    private int mMaxEntries;
+    private Executor mExecutor;
+    private final AtomicBoolean mTrimScheduled = new AtomicBoolean(false);
 
     private Logger mLogger;
 
-    public DiskCache(CachePolicy cachePolicy, Context context) {
+    public DiskCache(CachePolicy cachePolicy, Context context, @NonNull Executor executor) {
+        this(cachePolicy, context, executor, null);
+    }
+
+    public DiskCache(CachePolicy cachePolicy, Context context, @NonNull Executor executor,
+                     @Nullable BitmapPool bitmapPool) {
         mPreferToExternal = cachePolicy.getPreferredLocation() == CachePolicy.Location.EXTERNAL;
         mInternalCacheDir = context.getCacheDir().getPath() + File.separator + cachePolicy.getCacheDirName();
         if (mPreferToExternal) {
@@ -67,11 +108,45 @@ public class DiskCache implements Cache<String, Bitmap> {
         if (mStorageStatsEnabled) {
             mStorageStats = StorageStats.from(context);
         }
-        mRunningOps = new ArrayList<>();
         mFileNameGenerator = cachePolicy.getFileNameGenerator();
         mFormat = cachePolicy.getCompressFormat();
         mQuality = cachePolicy.getQuality();
+        mBitmapPool = bitmapPool;
+        if (cachePolicy.getDiskBackend() == CachePolicy.DiskBackend.PACKED) {
+            mPackedStore = PackedBlobStore.of(new File(mInternalCacheDir, "packed"), executor);
+            mPackedEntryMaxSize = cachePolicy.getPackedEntryMaxSize();
+        }
+        mRawPixelsMaxArea = cachePolicy.getRawPixelsMaxArea();
+        mIndex = new DiskLruIndex(new File(context.getCacheDir(), cachePolicy.getCacheDirName() + ".journal"), executor);
+        mMaxSize = cachePolicy.getDiskCacheMaxSize();
+        mMaxEntries = cachePolicy.getDiskCacheMaxEntries();
+        mExecutor = executor;
+        mWriteQueue = new DiskWriteQueue(cachePolicy.getDiskWriteQueueSize(), cachePolicy.getCachingThreads(),
+                executor, new DiskWriteQueue.Writer() {
+                    @Override
+                    public void write(@NonNull CacheKey key, @NonNull Bitmap value) {
+                        cache(key, value);
+                    }
+                });
         mLogger = LoggerManager.getLogger(getClass());
+        mExecutor.execute(new Runnable() {
+            @Override
+            public void run() {
+                Process.setThreadPriority(Process.THREAD_PRIORITY_BACKGROUND);
+                index();
+            }
+        });
+    }
+
+    /**
+     * @return The index, opened on this thread if not loaded yet.
+     */
+    @WorkerThread
+    private DiskLruIndex index() {
+        if (mIndex.isLoaded()) return mIndex;
+        if (mPackedStore != null) mPackedStore.open();
+        mIndex.open(mInternalCacheDir, mExternalCacheDir, mPackedStore == null ? null : mPackedStore.sizes());
+        return mIndex;
     }
 
     @SuppressWarnings("ResultOfMethodCallIgnored")
@@ -83,31 +158,96 @@ public class DiskCache implements Cache<String, Bitmap> {
         }
     }
 
+    /**
+     * @return {@code true} if compressed into the packed store.
+     */
+    @WorkerThread
+    private boolean pack(String key, long fingerprint, Bitmap value) {
+        // Hits of the disk cache are cached again by the loader.
+        if (mPackedStore.contains(mFileNameGenerator.fromKey(key))) return true;
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        if (!value.compress(mFormat, mQuality, out) || out.size() > mPackedEntryMaxSize) {
+            return false;
+        }
+        return pack(mFileNameGenerator.fromKey(key), fingerprint, out.toByteArray());
+    }
+
+    @WorkerThread
+    private boolean pack(String fileName, long fingerprint, byte[] data) {
+        index();
+        if (!mPackedStore.put(fileName, data)) return false;
+        onEntryWritten(fileName, data.length, false, true, fingerprint);
+        return true;
+    }
+
     @Override
     @WorkerThread
-    public void cache(@NonNull String key, Bitmap value) {
-        mLogger.verbose(String.format("Caching for key %s", key));
+    public void cache(@NonNull CacheKey cacheKey, Bitmap value) {
+        mLogger.verbose(String.format("Caching for key %s", cacheKey));
+        boolean rawPixels = isRawPixelsThumbnail(cacheKey, value);
+        String key = rawPixels ? cacheKey.getPixelsKey() : cacheKey.getVariantKey();
+        long fingerprint = cacheKey.getUrlFingerprint();
+        if (!rawPixels && mPackedStore != null && pack(key, fingerprint, value)) {
+            return;
+        }
         if (mPreferToExternal && mExternalCacheDir != null
                 && Environment.getExternalStorageState().equals(Environment.MEDIA_MOUNTED)) {
-            if (!new FileWriter(mExternalCacheDir, value, key).write())
-                new FileWriter(mInternalCacheDir, value, key).write();
+            if (!new FileWriter(mExternalCacheDir, value, key, fingerprint, rawPixels).write())
+                new FileWriter(mInternalCacheDir, value, key, fingerprint, rawPixels).write();
         } else {
             if (mInternalCacheDir == null) {
                 // No cache area available.
                 return;
             }
-            new FileWriter(mInternalCacheDir, value, key).write();
+            new FileWriter(mInternalCacheDir, value, key, fingerprint, rawPixels).write();
         }
     }
 
+    /**
+     * Queue the bitmap to be written by {@link #cache(CacheKey, Bitmap)} on the executor.
+     *
+     * @return {@code false} if the key is already queued or being written.
+     */
+    public boolean enqueue(@NonNull CacheKey key, @NonNull Bitmap value) {
+        return mWriteQueue.offer(key, value);
+    }
+
+    /**
+     * Drop queued writes according to the level given by {@link android.content.ComponentCallbacks2#onTrimMemory(int)}.
+     */
+    public void trimMemory(int level) {
+        mWriteQueue.trimMemory(level);
+    }
+
+    /**
+     * @return A snapshot of the counters of the write queue.
+     */
+    @NonNull
+    public DiskWriteStats getWriteStats() {
+        return mWriteQueue.getStats();
+    }
+
+    /**
+     * @return {@code true} if the bitmap is a thumbnail to be kept as {@link RawPixels}.
+     */
+    public boolean isRawPixelsThumbnail(@NonNull CacheKey key, @NonNull Bitmap value) {
+        return mRawPixelsMaxArea > 0
+                && key.getQuality() == MediaQuality.OPT
+                && key.getArtSignature() == null
+                && (long) value.getWidth() * value.getHeight() <= mRawPixelsMaxArea
+                && RawPixels.isSupported(value);
+    }
+
     @SuppressLint("InlinedApi")
     @Override
     @WorkerThread
     @Deprecated
-    public Bitmap get(@NonNull String key) {
+    public Bitmap get(@NonNull CacheKey cacheKey) {
 
         Bitmap result;
 
+        String key = cacheKey.getVariantKey();
+
         if (mPreferToExternal) {
             result = new FileReader(mExternalCacheDir, key).read();
             if (result != null) return result;
@@ -116,24 +256,161 @@ public class DiskCache implements Cache<String, Bitmap> {
         return new FileReader(mInternalCacheDir, key).read();
     }
 
-    public String getCachePath(@NonNull String key) {
-        File in = new File(getFilePathByKey(key));
+    /**
+     * @param key Key of the requested variant.
+     * @return Path of the file of this variant, or of the original bytes, or of the full size
+     * variant if this variant is not cached, {@code null} if none of them exists.
+     * Packed entries are returned as {@link PackedBlobStore#urlOf(String)}, raw pixels
+     * of this variant as {@link MediaSource.Prefix#PIXELS} urls.
+     */
+    public String getCachePath(@NonNull CacheKey key) {
+        if (mRawPixelsMaxArea > 0) {
+            String pixels = findFile(mFileNameGenerator.fromKey(key.getPixelsKey()), key);
+            if (pixels != null) return MediaSource.Prefix.PIXELS + pixels;
+        }
+        String path = findFile(mFileNameGenerator.fromKey(key.getVariantKey()), key);
+        if (path == null) {
+            path = findFile(mFileNameGenerator.fromKey(key.getOriginalKey()), key);
+        }
+        if (path == null && key.toRaw() != key) {
+            path = findFile(mFileNameGenerator.fromKey(key.toRaw().getVariantKey()), key);
+        }
+        if (path == null) {
+            mLogger.verbose("No disk file for:" + key);
+        }
+        return path;
+    }
+
+    /**
+     * Move a downloaded file into the cache as the original bytes of the key.
+     *
+     * @return Path of the moved file, {@code null} if it can not be moved into any dir.
+     */
+    @WorkerThread
+    @Nullable
+    public String commitOriginal(@NonNull CacheKey key, @NonNull File file) {
+        String fileName = mFileNameGenerator.fromKey(key.getOriginalKey());
+        if (mPackedStore != null && file.length() <= mPackedEntryMaxSize) {
+            byte[] data = FileUtils.readBytes(file);
+            if (data != null && pack(fileName, key.getUrlFingerprint(), data)) {
+                if (!file.delete()) mLogger.debug("Failed to delete packed file:" + file);
+                // Packed entries keep no meta, they are downloaded again once expired.
+                CacheMeta.delete(file);
+                return mPackedStore.urlOf(fileName);
+            }
+        }
+        if (mPreferToExternal && mExternalCacheDir != null
+                && Environment.getExternalStorageState().equals(Environment.MEDIA_MOUNTED)) {
+            String path = moveInto(file, mExternalCacheDir, fileName, key.getUrlFingerprint(), true);
+            if (path != null) return path;
+        }
+        return moveInto(file, mInternalCacheDir, fileName, key.getUrlFingerprint(), false);
+    }
 
-        if (!in.exists()) {
-            mLogger.info("No disk file:" + in.getAbsolutePath());
+    @Nullable
+    private String moveInto(File file, String dir, String fileName, long fingerprint, boolean external) {
+        if (dir == null) return null;
+        File out = new File(dir, fileName);
+        if (!out.getParentFile().exists() && !out.getParentFile().mkdirs()) {
+            mLogger.debug("Failed to create dirs:" + out.getParentFile().getAbsolutePath());
             return null;
         }
-        return in.getPath();
+        long size = file.length();
+        // Rename only, a copy across volumes would cost as much as what we try to save.
+        if (!file.renameTo(out)) {
+            mLogger.debug("Failed to move " + file + " to " + out);
+            return null;
+        }
+        CacheMeta.move(file, out);
+        onFileWritten(fileName, size, external, fingerprint);
+        mLogger.info("Committed original to:" + out.getAbsolutePath());
+        return out.getPath();
+    }
+
+    /**
+     * Delete the original bytes of the key.
+     */
+    @WorkerThread
+    public void discardOriginal(@NonNull CacheKey key) {
+        String fileName = mFileNameGenerator.fromKey(key.getOriginalKey());
+        DiskLruIndex.Entry entry = index().get(fileName);
+        // Not ours to delete if written for another url.
+        if (entry == null || !key.isSameUrl(entry.fingerprint)) return;
+        index().remove(fileName);
+        deleteEntry(entry);
+    }
+
+    /**
+     * @return Path of the original bytes of the key, a {@link PackedBlobStore#urlOf(String)} if packed,
+     * {@code null} if not kept.
+     */
+    @Nullable
+    public String getOriginalPath(@NonNull CacheKey key) {
+        return findFile(mFileNameGenerator.fromKey(key.getOriginalKey()), key);
+    }
+
+    /**
+     * @return {@code true} if the original bytes of the key are kept and the same as the file.
+     */
+    @WorkerThread
+    public boolean isSameOriginal(@NonNull CacheKey key, @NonNull File file) {
+        String fileName = mFileNameGenerator.fromKey(key.getOriginalKey());
+        DiskLruIndex.Entry entry = index().get(fileName);
+        if (entry == null || !key.isSameUrl(entry.fingerprint)) return false;
+        if (entry.packed) {
+            byte[] data = mPackedStore == null ? null : mPackedStore.read(fileName);
+            return data != null && FileUtils.contentEquals(data, file);
+        }
+        String dir = entry.external ? mExternalCacheDir : mInternalCacheDir;
+        return dir != null && FileUtils.contentEquals(new File(dir, fileName), file);
     }
 
-    private String getFilePathByKey(String key) {
-        String dir = mPreferToExternal ? mExternalCacheDir : mInternalCacheDir;
-        return dir + File.separator + mFileNameGenerator.fromKey(key);
+    /**
+     * Delete all entries written for the url of the key, the original bytes included.
+     */
+    @WorkerThread
+    public void invalidate(@NonNull CacheKey key) {
+        if (key.getUrlFingerprint() == CacheKey.UNKNOWN_FINGERPRINT) return;
+        for (DiskLruIndex.Entry entry : index().entriesOf(key.getUrlFingerprint())) {
+            index().remove(entry.name);
+            deleteEntry(entry);
+        }
+    }
+
+    /**
+     * @param key Key the file is looked up for, the file is not returned if written for another url.
+     */
+    @Nullable
+    private String findFile(String fileName, CacheKey key) {
+        if (mIndex.isLoaded()) {
+            DiskLruIndex.Entry entry = mIndex.get(fileName);
+            if (entry == null) return null;
+            if (!key.isSameUrl(entry.fingerprint)) {
+                mLogger.warn("Key collision on " + fileName + ", not serving the entry of another url");
+                return null;
+            }
+            if (entry.packed) return mPackedStore == null ? null : mPackedStore.urlOf(fileName);
+            String dir = entry.external ? mExternalCacheDir : mInternalCacheDir;
+            return dir == null ? null : dir + File.separator + fileName;
+        }
+        // Index still loading, look at both dirs, no fingerprint to check yet.
+        if (mPackedStore != null && mPackedStore.isLoaded() && mPackedStore.contains(fileName)) {
+            return mPackedStore.urlOf(fileName);
+        }
+        if (mPreferToExternal && mExternalCacheDir != null) {
+            File in = new File(mExternalCacheDir, fileName);
+            if (in.exists()) return in.getPath();
+        }
+        File in = new File(mInternalCacheDir, fileName);
+        return in.exists() ? in.getPath() : null;
     }
 
     @Override
     public void evictAll() {
-        deleteFilesByDirectory(new File(mExternalCacheDir));
+        mWriteQueue.clear();
+        index().clear();
+        if (mPackedStore != null) mPackedStore.clear();
+        if (mExternalCacheDir != null) deleteFilesByDirectory(new File(mExternalCacheDir));
         deleteFilesByDirectory(new File(mInternalCacheDir));
     }
 
@@ -145,21 +422,70 @@ public class DiskCache implements Cache<String, Bitmap> {
         }
     }
 
-    void addOp(FileOperator op) {
-        synchronized (mRunningOps) {
-            mRunningOps.add(op);
+    void onFileWritten(String fileName, long fileSize, boolean external, long fingerprint) {
+        onEntryWritten(fileName, fileSize, external, false, fingerprint);
+    }
+
+    private void onEntryWritten(String fileName, long fileSize, boolean external, boolean packed, long fingerprint) {
+        if (packed) {
+            index().putPacked(fileName, fileSize, fingerprint);
+        } else {
+            index().put(fileName, fileSize, external, fingerprint);
+        }
+        if (mStorageStatsEnabled) {
+            updateUsage(fileSize, external);
         }
+        if (isOverBudget() && mTrimScheduled.compareAndSet(false, true)) {
+            mExecutor.execute(new Runnable() {
+                @Override
+                public void run() {
+                    Process.setThreadPriority(Process.THREAD_PRIORITY_BACKGROUND);
+                    try {
+                        trimToBudget();
+                    } finally {
+                        mTrimScheduled.set(false);
+                    }
+                }
+            });
+        }
+    }
+
+    private boolean isOverBudget() {
+        DiskLruIndex index = index();
+        return index.size() > mMaxSize || index.count() > mMaxEntries;
     }
 
-    void removeOp(FileOperator op) {
-        synchronized (mRunningOps) {
-            mRunningOps.remove(op);
+    @WorkerThread
+    private void trimToBudget() {
+        DiskLruIndex.Entry eldest;
+        while (isOverBudget() && (eldest = index().eldest()) != null) {
+            // Out of the index first, so no lookup returns a file being deleted.
+            index().remove(eldest.name);
+            deleteEntry(eldest);
+            mLogger.verbose("Evicted disk file:" + eldest.name);
         }
     }
 
-    boolean hasOp(FileOperator op) {
-        synchronized (mRunningOps) {
-            return mRunningOps.contains(op);
+    private void deleteEntry(DiskLruIndex.Entry entry) {
+        if (entry.packed) {
+            if (mPackedStore != null) mPackedStore.remove(entry.name);
+        } else {
+            String dir = entry.external ? mExternalCacheDir : mInternalCacheDir;
+            if (dir != null) {
+                File file = new File(dir, entry.name);
+                new AtomicFileCompat(file).delete();
+                CacheMeta.delete(file);
+            }
+        }
+        onFileDeleted(entry);
+    }
+
+    private void onFileDeleted(DiskLruIndex.Entry entry) {
+        if (!mStorageStatsEnabled) return;
+        if (entry.external) {
+            mStorageStats.onExternalStorageFreed(entry.size);
+        } else {
+            mStorageStats.onInternalStorageFreed(entry.size);
         }
     }
 
@@ -194,10 +520,24 @@ public class DiskCache implements Cache<String, Bitmap> {
             AtomicFileCompat atomicFile = new AtomicFileCompat(in);
 
             try {
-                FileInputStream fis = atomicFile.openRead();
-                Bitmap out = BitmapFactory.decodeStream(fis);
+                BitmapFactory.Options options = null;
+                if (mBitmapPool != null) {
+                    options = new BitmapFactory.Options();
+                    options.inJustDecodeBounds = true;
+                    decode(atomicFile, options);
+                    options.inJustDecodeBounds = false;
+                    BitmapUtils.addInBitmapOptions(options, mBitmapPool);
+                }
+                Bitmap out;
+                try {
+                    out = decode(atomicFile, options);
+                } catch (IllegalArgumentException e) {
+                    if (options == null || options.inBitmap == null) throw e;
+                    // The reused bitmap is not suitable, decode into a new one.
+                    options.inBitmap = null;
+                    out = decode(atomicFile, options);
+                }
                 mLogger.info("Success read file cache:" + in.getAbsolutePath());
-                fis.close();
                 return out;
             } catch (FileNotFoundException e) {
                 mLogger.debug("Cache file do not exists:" + Log.getStackTraceString(e));
@@ -207,6 +547,15 @@ public class DiskCache implements Cache<String, Bitmap> {
                 return null;
             }
         }
+
+        private Bitmap decode(AtomicFileCompat atomicFile, BitmapFactory.Options options) throws IOException {
+            FileInputStream fis = atomicFile.openRead();
+            try {
+                return BitmapFactory.decodeStream(fis, null, options);
+            } finally {
+                fis.close();
+            }
+        }
     }
 
     class FileWriter extends FileOperator {
@@ -214,82 +563,67 @@ public class DiskCache implements Cache<String, Bitmap> {
         Bitmap in;
         String dir;
         String key;
+        long fingerprint;
+        boolean rawPixels;
 
         String fileName;
 
         public FileWriter(String dir, Bitmap in, String key) {
+            this(dir, in, key, CacheKey.UNKNOWN_FINGERPRINT, false);
+        }
+
+        public FileWriter(String dir, Bitmap in, String key, long fingerprint, boolean rawPixels) {
             this.dir = dir;
             this.in = in;
             this.key = key;
+            this.fingerprint = fingerprint;
+            this.rawPixels = rawPixels;
             this.fileName = getFileNameByKey(key);
         }
 
-        @Override
-        public boolean equals(Object o) {
-            if (this == o) return true;
-            if (o == null || getClass() != o.getClass()) return false;
-
-            FileWriter that = (FileWriter) o;
-
-            return key.equals(that.key);
-
-        }
-
-        @Override
-        public int hashCode() {
-            return key.hashCode();
-        }
-
         public boolean write() {
 
-            if (hasOp(this)) {
-                mLogger.info("Ignore dup task for:" + fileName);
-                return true;
-            }
-
-            addOp(this);
-
             File out = new File(dir, fileName);
 
             if (out.exists()) {
                 mLogger.debug("Skip cache exists file:" + out.getAbsolutePath());
-                removeOp(this);
                 return true;
             }
 
             if (!out.getParentFile().exists() && !out.getParentFile().mkdirs()) {
                 // Something went wrong, nothing to do.
                 mLogger.debug("Failed to create dirs:" + out.getParentFile().getAbsolutePath());
-                removeOp(this);
                 return false;
             }
             try {
                 if (!out.createNewFile()) {
                     // Something went wrong, nothing to do.
                     mLogger.debug("Failed to create file:" + out.getAbsolutePath());
-                    removeOp(this);
                     return false;
                 }
                 AtomicFileCompat atomicFile = new AtomicFileCompat(out);
                 FileOutputStream fos = atomicFile.startWrite();
-                if (!in.compress(DiskCache.this.mFormat, DiskCache.this.mQuality, fos)) {
+                if (rawPixels) {
+                    try {
+                        RawPixels.write(in, fos);
+                    } catch (IOException e) {
+                        atomicFile.failWrite(fos);
+                        throw e;
+                    }
+                } else if (!in.compress(DiskCache.this.mFormat, DiskCache.this.mQuality, fos)) {
                     mLogger.debug("Failed to compress bitmap to file:" + out.getAbsolutePath());
-                    removeOp(this);
                     atomicFile.failWrite(fos);
                     return false;
                 }
                 atomicFile.finishWrite(fos);
-                if (mStorageStatsEnabled) {
-                    updateUsage(FileUtils.getFileSize(atomicFile.getBaseFile()), dir.equals(mExternalCacheDir));
-                }
+                onFileWritten(fileName, FileUtils.getFileSize(atomicFile.getBaseFile()), dir.equals(mExternalCacheDir),
+                        fingerprint);
             } catch (IOException e) {
                 // Something went wrong, nothing to do.
                 mLogger.debug("IOException when create file:" + Log.getStackTraceString(e));
-                removeOp(this);
                 return false;
             }
             mLogger.info("Success write bitmap to:" + out.getAbsolutePath());
-            removeOp(this);
             return true;
         }
     }
@@ -0,0 +1,477 @@
+/*
+ * Copyright (c) 2016 Nick Guo
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+package dev.nick.accessories.media.loader.cache.disk;
+
+import android.support.annotation.NonNull;
+import android.support.annotation.Nullable;
+import android.support.annotation.WorkerThread;
+import android.util.Log;
+
+import java.io.BufferedReader;
+import java.io.BufferedWriter;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.Executor;
+
+import dev.nick.accessories.logger.Logger;
+import dev.nick.accessories.logger.LoggerManager;
+import dev.nick.accessories.media.loader.cache.CacheKey;
+import dev.nick.accessories.media.loader.worker.network.CacheMeta;
+
+/**
+ * LRU index of the disk cache files, persisted by an append-only journal
+ * in the style of DiskLruCache. One journal tracks the internal dir, the external dir
+ * and the {@link PackedBlobStore} if any.
+ * <p>
+ * Lookups only touch memory, journal lines are queued and written on the executor.
+ * Until {@link #open(String, String, Map)} is done, {@link #isLoaded()} returns false
+ * and the caller has to look at the files by itself.
+ * <p>
+ * Journal format, after a header of magic, version and a blank line:
+ * <pre>
+ *     PUT I|E|P size fingerprint name
+ *     READ name
+ *     DEL name
+ * </pre>
+ * The fingerprint is the one of the url the entry was written for, see {@link CacheKey#fingerprintOf(String)},
+ * 0 if not known.
+ */
+class DiskLruIndex {
+
+    static final String MAGIC = "dev.nick.accessories.media.disk.journal";
+    static final String VERSION = "2";
+
+    private static final String PUT = "PUT";
+    private static final String READ = "READ";
+    private static final String DEL = "DEL";
+
+    private static final char INTERNAL = 'I';
+    private static final char EXTERNAL = 'E';
+    private static final char PACKED = 'P';
+
+    // Rebuild the journal once it has this many lines not needed to restore the index.
+    static final int COMPACT_THRESHOLD = 2000;
+
+    private final File mJournalFile;
+    private final File mJournalTmp;
+
+    private final Executor mExecutor;
+
+    private final Object mOpenLock = new Object();
+    // Held when writing the journal, before the lock of this index if both are needed.
+    private final Object mWriterLock = new Object();
+
+    private final LinkedHashMap<String, Entry> mEntries = new LinkedHashMap<>(0, 0.75f, true);
+    private long mSize;
+    private int mRedundantOps;
+
+    private List<String> mPendingLines = new ArrayList<>();
+    private boolean mFlushScheduled;
+    private boolean mCompactScheduled;
+
+    private Writer mJournalWriter;
+
+    private volatile boolean mLoaded;
+
+    private Logger mLogger;
+
+    DiskLruIndex(@NonNull File journalFile, @NonNull Executor executor) {
+        mJournalFile = journalFile;
+        mJournalTmp = new File(journalFile.getPath() + ".tmp");
+        mExecutor = executor;
+        mLogger = LoggerManager.getLogger(getClass());
+    }
+
+    boolean isLoaded() {
+        return mLoaded;
+    }
+
+    /**
+     * Restore the index from the journal, then match it with the files in the dirs.
+     * Blocks until done if another thread is opening it.
+     *
+     * @param internalDir Internal cache dir.
+     * @param externalDir External cache dir, may be null.
+     * @param packed      Sizes of the entries of the packed store, null if there is none.
+     */
+    @WorkerThread
+    void open(@Nullable String internalDir, @Nullable String externalDir, @Nullable Map<String, Long> packed) {
+        if (mLoaded) return;
+        synchronized (mOpenLock) {
+            if (mLoaded) return;
+            synchronized (mWriterLock) {
+                synchronized (this) {
+                    if (mJournalFile.exists()) {
+                        try {
+                            readJournal();
+                        } catch (IOException e) {
+                            mLogger.warn("Journal is broken, rebuilding: " + Log.getStackTraceString(e));
+                            mEntries.clear();
+                            mSize = 0;
+                        }
+                    }
+                    reconcile(internalDir, externalDir, packed);
+                }
+                rebuildJournal();
+            }
+            mLoaded = true;
+        }
+    }
+
+    /**
+     * Get the entry and mark it as recently used, only valid once {@link #isLoaded()}.
+     */
+    @Nullable
+    synchronized Entry get(@NonNull String name) {
+        Entry entry = mEntries.get(name);
+        if (entry != null) {
+            mRedundantOps++;
+            journal(READ + ' ' + name);
+        }
+        return entry;
+    }
+
+    @WorkerThread
+    synchronized void put(@NonNull String name, long size, boolean external, long fingerprint) {
+        Entry previous = mEntries.put(name, new Entry(name, size, external, false, fingerprint));
+        if (previous != null) {
+            mSize -= previous.size;
+            mRedundantOps++;
+        }
+        mSize += size;
+        journal(PUT + ' ' + (external ? EXTERNAL : INTERNAL) + ' ' + size + ' ' + fingerprint + ' ' + name);
+    }
+
+    @WorkerThread
+    synchronized void putPacked(@NonNull String name, long size, long fingerprint) {
+        Entry previous = mEntries.put(name, new Entry(name, size, false, true, fingerprint));
+        if (previous != null) {
+            mSize -= previous.size;
+            mRedundantOps++;
+        }
+        mSize += size;
+        journal(PUT + ' ' + PACKED + ' ' + size + ' ' + fingerprint + ' ' + name);
+    }
+
+    @Nullable
+    synchronized Entry remove(@NonNull String name) {
+        Entry entry = mEntries.remove(name);
+        if (entry != null) {
+            mSize -= entry.size;
+            mRedundantOps += 2;
+            journal(DEL + ' ' + name);
+        }
+        return entry;
+    }
+
+    /**
+     * @return Entries written for the url of this fingerprint.
+     */
+    synchronized List<Entry> entriesOf(long fingerprint) {
+        List<Entry> result = new ArrayList<>();
+        for (Entry entry : mEntries.values()) {
+            if (entry.fingerprint == fingerprint) result.add(entry);
+        }
+        return result;
+    }
+
+    /**
+     * @return The least recently used entry, not touched by this call.
+     */
+    @Nullable
+    synchronized Entry eldest() {
+        Iterator<Entry> entries = mEntries.values().iterator();
+        return entries.hasNext() ? entries.next() : null;
+    }
+
+    synchronized long size() {
+        return mSize;
+    }
+
+    synchronized int count() {
+        return mEntries.size();
+    }
+
+    @WorkerThread
+    void clear() {
+        synchronized (mWriterLock) {
+            synchronized (this) {
+                mEntries.clear();
+                mSize = 0;
+            }
+            rebuildJournal();
+        }
+    }
+
+    private void journal(String line) {
+        mPendingLines.add(line);
+        if (!mFlushScheduled) {
+            mFlushScheduled = true;
+            mExecutor.execute(new Runnable() {
+                @Override
+                public void run() {
+                    flushJournal();
+                }
+            });
+        }
+        if (!mCompactScheduled && mRedundantOps >= COMPACT_THRESHOLD && mRedundantOps >= mEntries.size()) {
+            mCompactScheduled = true;
+            mExecutor.execute(new Runnable() {
+                @Override
+                public void run() {
+                    synchronized (mWriterLock) {
+                        rebuildJournal();
+                    }
+                }
+            });
+        }
+    }
+
+    @WorkerThread
+    private void flushJournal() {
+        synchronized (mWriterLock) {
+            List<String> lines;
+            synchronized (this) {
+                lines = mPendingLines;
+                mPendingLines = new ArrayList<>();
+                mFlushScheduled = false;
+            }
+            if (mJournalWriter == null || lines.isEmpty()) return;
+            try {
+                for (String line : lines) {
+                    mJournalWriter.write(line);
+                    mJournalWriter.write('\n');
+                }
+                mJournalWriter.flush();
+            } catch (IOException e) {
+                mLogger.warn("Failed to write journal: " + Log.getStackTraceString(e));
+                closeWriter();
+            }
+        }
+    }
+
+    private void readJournal() throws IOException {
+        BufferedReader reader = new BufferedReader(new InputStreamReader(new FileInputStream(mJournalFile)));
+        try {
+            if (!MAGIC.equals(reader.readLine())
+                    || !VERSION.equals(reader.readLine())
+                    || !"".equals(reader.readLine())) {
+                throw new IOException("Unexpected journal header");
+            }
+            String line;
+            while ((line = reader.readLine()) != null) {
+                if (!readLine(line)) {
+                    // A partial line from a crash, everything before it is still good.
+                    mLogger.warn("Ignore bad journal line: " + line);
+                    break;
+                }
+            }
+        } finally {
+            reader.close();
+        }
+    }
+
+    private boolean readLine(String line) {
+        if (line.startsWith(PUT + ' ')) {
+            String[] parts = line.split(" ", 5);
+            if (parts.length != 5 || parts[1].length() != 1) return false;
+            long size;
+            long fingerprint;
+            try {
+                size = Long.parseLong(parts[2]);
+                fingerprint = Long.parseLong(parts[3]);
+            } catch (NumberFormatException e) {
+                return false;
+            }
+            char location = parts[1].charAt(0);
+            Entry previous = mEntries.put(parts[4],
+                    new Entry(parts[4], size, location == EXTERNAL, location == PACKED, fingerprint));
+            if (previous != null) mSize -= previous.size;
+            mSize += size;
+            return true;
+        }
+        if (line.startsWith(READ + ' ')) {
+            mEntries.get(line.substring(READ.length() + 1));
+            return true;
+        }
+        if (line.startsWith(DEL + ' ')) {
+            Entry entry = mEntries.remove(line.substring(DEL.length() + 1));
+            if (entry != null) mSize -= entry.size;
+            return true;
+        }
+        return false;
+    }
+
+    /**
+     * Drop entries whose file is gone, adopt files the journal does not know as the eldest ones.
+     */
+    private void reconcile(@Nullable String internalDir, @Nullable String externalDir,
+                           @Nullable Map<String, Long> packed) {
+        Map<String, File> internalFiles = listFiles(internalDir);
+        Map<String, File> externalFiles = listFiles(externalDir);
+        Map<String, Long> packedSizes = packed == null ? new HashMap<String, Long>() : new HashMap<>(packed);
+
+        Iterator<Entry> entries = mEntries.values().iterator();
+        while (entries.hasNext()) {
+            Entry entry = entries.next();
+            boolean exists = entry.packed
+                    ? packedSizes.remove(entry.name) != null
+                    : (entry.external ? externalFiles : internalFiles).remove(entry.name) != null;
+            if (!exists) {
+                entries.remove();
+                mSize -= entry.size;
+            }
+        }
+
+        List<Entry> adopted = new ArrayList<>();
+        adopt(internalFiles, false, adopted);
+        adopt(externalFiles, true, adopted);
+        for (Map.Entry<String, Long> size : packedSizes.entrySet()) {
+            // No time to sort them by, they go before the files.
+            adopted.add(new Entry(size.getKey(), size.getValue(), false, true));
+        }
+        if (adopted.isEmpty()) return;
+
+        // Oldest first, so they are evicted first.
+        Collections.sort(adopted, new Comparator<Entry>() {
+            @Override
+            public int compare(Entry lhs, Entry rhs) {
+                return lhs.lastModified < rhs.lastModified ? -1 : (lhs.lastModified == rhs.lastModified ? 0 : 1);
+            }
+        });
+        Set<String> names = new HashSet<>();
+        LinkedHashMap<String, Entry> known = new LinkedHashMap<>(mEntries);
+        mEntries.clear();
+        for (Entry entry : adopted) {
+            if (names.add(entry.name) && !known.containsKey(entry.name)) {
+                mEntries.put(entry.name, entry);
+                mSize += entry.size;
+            }
+        }
+        mEntries.putAll(known);
+    }
+
+    private static Map<String, File> listFiles(@Nullable String dir) {
+        Map<String, File> result = new LinkedHashMap<>();
+        if (dir == null) return result;
+        File[] files = new File(dir).listFiles();
+        if (files == null) return result;
+        for (File file : files) {
+            if (file.isFile() && !file.getName().endsWith(".bak") && !CacheMeta.isMetaFile(file)) {
+                result.put(file.getName(), file);
+            }
+        }
+        return result;
+    }
+
+    private static void adopt(Map<String, File> files, boolean external, List<Entry> out) {
+        for (File file : files.values()) {
+            Entry entry = new Entry(file.getName(), file.length(), external);
+            entry.lastModified = file.lastModified();
+            out.add(entry);
+        }
+    }
+
+    /**
+     * Write the journal from the index. Must hold {@link #mWriterLock}.
+     */
+    private void rebuildJournal() {
+        List<Entry> snapshot;
+        synchronized (this) {
+            snapshot = new ArrayList<>(mEntries.values());
+            mPendingLines.clear();
+            mRedundantOps = 0;
+            mCompactScheduled = false;
+        }
+        closeWriter();
+        try {
+            Writer writer = new BufferedWriter(new OutputStreamWriter(new FileOutputStream(mJournalTmp)));
+            try {
+                writer.write(MAGIC + '\n' + VERSION + '\n' + '\n');
+                for (Entry entry : snapshot) {
+                    writer.write(PUT + ' ' + entry.location() + ' ' + entry.size + ' ' + entry.fingerprint
+                            + ' ' + entry.name + '\n');
+                }
+            } finally {
+                writer.close();
+            }
+            if (!mJournalTmp.renameTo(mJournalFile)) {
+                throw new IOException("Failed to rename " + mJournalTmp);
+            }
+            mJournalWriter = new BufferedWriter(new OutputStreamWriter(new FileOutputStream(mJournalFile, true)));
+        } catch (IOException e) {
+            // Keep going with the in memory index only.
+            mLogger.warn("Failed to rebuild journal: " + Log.getStackTraceString(e));
+        }
+    }
+
+    private void closeWriter() {
+        if (mJournalWriter == null) return;
+        try {
+            mJournalWriter.close();
+        } catch (IOException ignored) {
+        }
+        mJournalWriter = null;
+    }
+
+    static class Entry {
+        final String name;
+        final long size;
+        final boolean external;
+        // In the packed store instead of a file of its own.
+        final boolean packed;
+        final long fingerprint;
+        // Only used when adopting files.
+        long lastModified;
+
+        Entry(String name, long size, boolean external) {
+            this(name, size, external, false);
+        }
+
+        Entry(String name, long size, boolean external, boolean packed) {
+            this(name, size, external, packed, CacheKey.UNKNOWN_FINGERPRINT);
+        }
+
+        Entry(String name, long size, boolean external, boolean packed, long fingerprint) {
+            this.name = name;
+            this.size = size;
+            this.external = external;
+            this.packed = packed;
+            this.fingerprint = fingerprint;
+        }
+
+        char location() {
+            return packed ? PACKED : (external ? EXTERNAL : INTERNAL);
+        }
+    }
+}
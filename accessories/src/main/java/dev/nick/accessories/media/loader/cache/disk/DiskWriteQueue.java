@@ -0,0 +1,193 @@
+/*
+ * Copyright (c) 2016 Nick Guo
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package dev.nick.accessories.media.loader.cache.disk;
+
+import android.content.ComponentCallbacks2;
+import android.graphics.Bitmap;
+import android.os.Process;
+import android.os.SystemClock;
+import android.support.annotation.NonNull;
+import android.support.annotation.WorkerThread;
+
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.Executor;
+
+import dev.nick.accessories.logger.Logger;
+import dev.nick.accessories.logger.LoggerManager;
+import dev.nick.accessories.media.loader.cache.CacheKey;
+import dev.nick.accessories.media.loader.cache.pool.BitmapSeatTracker;
+
+/**
+ * Bitmaps waiting to be written to a {@link DiskCache}, each one is held until written,
+ * and retained in the {@link BitmapSeatTracker} so it is not reused for a decode meanwhile.
+ * The queue is bounded, the oldest waiting write is dropped to make room, and a key is
+ * written once however often it is offered while waiting or being written.
+ * At most {@code maxWorkers} tasks of the executor drain it.
+ */
+class DiskWriteQueue {
+
+    interface Writer {
+        @WorkerThread
+        void write(@NonNull CacheKey key, @NonNull Bitmap value);
+    }
+
+    private final int mCapacity;
+    private final int mMaxWorkers;
+    private final Executor mExecutor;
+    private final Writer mWriter;
+
+    // Guarded by this, in offer order.
+    private final LinkedHashMap<CacheKey, Pending> mPending = new LinkedHashMap<>();
+    private final Set<CacheKey> mWriting = new HashSet<>();
+    private int mWorkers;
+
+    // Counters, guarded by this.
+    private int mMaxDepth;
+    private long mOfferCount;
+    private long mCoalescedCount;
+    private long mDropCount;
+    private long mWriteCount;
+    private long mTotalWaitTime;
+    private long mTotalWriteTime;
+    private long mMaxWriteTime;
+
+    private final Logger mLogger;
+
+    DiskWriteQueue(int capacity, int maxWorkers, @NonNull Executor executor, @NonNull Writer writer) {
+        mCapacity = capacity;
+        mMaxWorkers = maxWorkers;
+        mExecutor = executor;
+        mWriter = writer;
+        mLogger = LoggerManager.getLogger(getClass());
+    }
+
+    /**
+     * @return {@code false} if the key is already waiting or being written.
+     */
+    synchronized boolean offer(@NonNull CacheKey key, @NonNull Bitmap value) {
+        mOfferCount++;
+        if (mWriting.contains(key) || mPending.containsKey(key)) {
+            mCoalescedCount++;
+            return false;
+        }
+        if (mPending.size() >= mCapacity) {
+            dropEldest(mPending.size() - mCapacity + 1);
+        }
+        BitmapSeatTracker.getSharedTracker().retain(value);
+        mPending.put(key, new Pending(value, SystemClock.uptimeMillis()));
+        mMaxDepth = Math.max(mMaxDepth, mPending.size());
+        if (mWorkers < mMaxWorkers) {
+            mWorkers++;
+            mExecutor.execute(mDrain);
+        }
+        return true;
+    }
+
+    /**
+     * Drop waiting writes according to the level given by {@link ComponentCallbacks2#onTrimMemory(int)}.
+     */
+    synchronized void trimMemory(int level) {
+        if (level >= ComponentCallbacks2.TRIM_MEMORY_RUNNING_CRITICAL) {
+            dropEldest(mPending.size());
+        } else if (level >= ComponentCallbacks2.TRIM_MEMORY_RUNNING_LOW) {
+            dropEldest(mPending.size() / 2);
+        }
+    }
+
+    synchronized void clear() {
+        dropEldest(mPending.size());
+    }
+
+    private void dropEldest(int count) {
+        Iterator<Map.Entry<CacheKey, Pending>> entries = mPending.entrySet().iterator();
+        for (int i = 0; i < count && entries.hasNext(); i++) {
+            Map.Entry<CacheKey, Pending> eldest = entries.next();
+            mLogger.verbose("Dropped disk write of:" + eldest.getKey());
+            entries.remove();
+            BitmapSeatTracker.getSharedTracker().release(eldest.getValue().value);
+            mDropCount++;
+        }
+    }
+
+    @NonNull
+    synchronized DiskWriteStats getStats() {
+        return new DiskWriteStats(
+                mPending.size(),
+                mMaxDepth,
+                mCapacity,
+                mOfferCount,
+                mCoalescedCount,
+                mDropCount,
+                mWriteCount,
+                mTotalWaitTime,
+                mTotalWriteTime,
+                mMaxWriteTime);
+    }
+
+    private final Runnable mDrain = new Runnable() {
+        @Override
+        public void run() {
+            Process.setThreadPriority(Process.THREAD_PRIORITY_BACKGROUND);
+            while (true) {
+                CacheKey key;
+                Pending pending;
+                synchronized (DiskWriteQueue.this) {
+                    Iterator<Map.Entry<CacheKey, Pending>> entries = mPending.entrySet().iterator();
+                    if (!entries.hasNext()) {
+                        mWorkers--;
+                        return;
+                    }
+                    Map.Entry<CacheKey, Pending> eldest = entries.next();
+                    entries.remove();
+                    key = eldest.getKey();
+                    pending = eldest.getValue();
+                    mWriting.add(key);
+                    mTotalWaitTime += SystemClock.uptimeMillis() - pending.offerTime;
+                }
+                long start = SystemClock.uptimeMillis();
+                try {
+                    mWriter.write(key, pending.value);
+                } catch (RuntimeException e) {
+                    mLogger.trace("Failed to write:" + key, e);
+                } finally {
+                    long took = SystemClock.uptimeMillis() - start;
+                    BitmapSeatTracker.getSharedTracker().release(pending.value);
+                    synchronized (DiskWriteQueue.this) {
+                        mWriting.remove(key);
+                        mWriteCount++;
+                        mTotalWriteTime += took;
+                        mMaxWriteTime = Math.max(mMaxWriteTime, took);
+                    }
+                }
+            }
+        }
+    };
+
+    private static class Pending {
+        final Bitmap value;
+        final long offerTime;
+
+        Pending(Bitmap value, long offerTime) {
+            this.value = value;
+            this.offerTime = offerTime;
+        }
+    }
+}
@@ -0,0 +1,53 @@
+/*
+ * Copyright (c) 2016 Nick Guo
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package dev.nick.accessories.media.loader.cache.disk;
+
+import lombok.AccessLevel;
+import lombok.AllArgsConstructor;
+import lombok.Getter;
+import lombok.ToString;
+
+/**
+ * Counters of the write queue of a {@link DiskCache}, times are in milliseconds.
+ */
+@Getter
+@ToString
+@AllArgsConstructor(access = AccessLevel.PACKAGE)
+public class DiskWriteStats {
+
+    // Writes waiting right now.
+    private int depth;
+    private int maxDepth;
+    private int capacity;
+    private long offerCount;
+    // Offered while the same key was waiting or being written.
+    private long coalescedCount;
+    // Dropped for the queue being full, or on memory pressure.
+    private long dropCount;
+    private long writeCount;
+    private long totalWaitTime;
+    private long totalWriteTime;
+    private long maxWriteTime;
+
+    public float getAverageWaitTime() {
+        return writeCount == 0 ? 0f : (float) totalWaitTime / writeCount;
+    }
+
+    public float getAverageWriteTime() {
+        return writeCount == 0 ? 0f : (float) totalWriteTime / writeCount;
+    }
+}
@@ -0,0 +1,609 @@
+/*
+ * Copyright (c) 2016 Nick Guo
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package dev.nick.accessories.media.loader.cache.disk;
+
+import android.os.Handler;
+import android.os.Looper;
+import android.os.MessageQueue;
+import android.os.Process;
+import android.support.annotation.NonNull;
+import android.support.annotation.Nullable;
+import android.support.annotation.WorkerThread;
+import android.util.Log;
+
+import java.io.BufferedInputStream;
+import java.io.DataInputStream;
+import java.io.EOFException;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FilenameFilter;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.Charset;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.Executor;
+import java.util.concurrent.locks.ReadWriteLock;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+
+import dev.nick.accessories.logger.Logger;
+import dev.nick.accessories.logger.LoggerManager;
+import dev.nick.accessories.media.loader.worker.MediaSource;
+
+/**
+ * Append-only store packing small disk cache entries into segment files, so a grid of
+ * thumbnails does not end up as tens of thousands of files.
+ * <p>
+ * A record is {@code magic, name length, name, data length, data}, a data length of -1
+ * deletes the name. Records are only appended to the active segment, a new one is started
+ * when it is full. Reads go through {@link FileChannel#map}, the mapping of a segment is kept
+ * and only made again once the active segment grew past it. Reads share a read lock, writes
+ * take the write lock.
+ * <p>
+ * Sealed segments are rewritten at idle time once most of them is dead, the oldest first.
+ * Entries are copied under the read lock and moved one at a time, so reads do not wait for
+ * the whole segment. A delete record moves along as long as an older segment may still
+ * hold the record it deletes.
+ * <p>
+ * Stores are shared per dir, see {@link #of(File, Executor)}.
+ */
+public class PackedBlobStore {
+
+    private static final String SEGMENT_SUFFIX = ".seg";
+    private static final String NAME_SEPARATOR = "!/";
+
+    private static final int MAGIC = 0x504b4231;
+    private static final int DELETED = -1;
+    // magic + data length + name length.
+    private static final int HEADER_SIZE = 4 + 4 + 2;
+
+    static final long SEGMENT_SIZE = 4 * 1024 * 1024;
+    // Rewrite a sealed segment once this much of it is dead.
+    private static final float COMPACT_RATIO = 0.5f;
+
+    private static final Charset UTF_8 = Charset.forName("UTF-8");
+
+    private static final Map<String, PackedBlobStore> sStores = new HashMap<>();
+
+    private final File mDir;
+    private final Executor mExecutor;
+
+    // Guards the slots and segments below.
+    private final ReadWriteLock mLock = new ReentrantReadWriteLock();
+
+    private final Map<String, Slot> mSlots = new HashMap<>();
+    private final TreeMap<Integer, Segment> mSegments = new TreeMap<>();
+    private Segment mActive;
+
+    private volatile boolean mLoaded;
+    private boolean mCompactScheduled;
+
+    private Logger mLogger;
+
+    private PackedBlobStore(File dir, Executor executor) {
+        mDir = dir;
+        mExecutor = executor;
+        mLogger = LoggerManager.getLogger(getClass());
+    }
+
+    /**
+     * @param dir      Dir of the segment files.
+     * @param executor Executor to compact on, only used by the first call for this dir.
+     * @return The store of this dir, not opened yet if just created.
+     */
+    @NonNull
+    public static PackedBlobStore of(@NonNull File dir, @NonNull Executor executor) {
+        synchronized (sStores) {
+            String key = dir.getAbsolutePath();
+            PackedBlobStore store = sStores.get(key);
+            if (store == null) {
+                store = new PackedBlobStore(dir, executor);
+                sStores.put(key, store);
+            }
+            return store;
+        }
+    }
+
+    /**
+     * @return The store of this dir, {@code null} if no disk cache is using it.
+     */
+    @Nullable
+    public static PackedBlobStore find(@NonNull String dir) {
+        synchronized (sStores) {
+            return sStores.get(new File(dir).getAbsolutePath());
+        }
+    }
+
+    /**
+     * @return Url of an entry, read by the packed source of the loader.
+     */
+    @NonNull
+    public String urlOf(@NonNull String name) {
+        return MediaSource.Prefix.PACKED + mDir.getAbsolutePath() + NAME_SEPARATOR + name;
+    }
+
+    /**
+     * @param path Url of an entry without the prefix.
+     * @return {dir, name}, {@code null} if it is not an entry path.
+     */
+    @Nullable
+    public static String[] splitPath(@NonNull String path) {
+        int index = path.indexOf(NAME_SEPARATOR);
+        if (index <= 0) return null;
+        return new String[]{path.substring(0, index), path.substring(index + NAME_SEPARATOR.length())};
+    }
+
+    public boolean isLoaded() {
+        return mLoaded;
+    }
+
+    /**
+     * Scan the segments to build the index. Blocks until done if another thread is opening it.
+     */
+    @WorkerThread
+    public void open() {
+        mLock.writeLock().lock();
+        try {
+            openLocked();
+        } finally {
+            mLock.writeLock().unlock();
+        }
+    }
+
+    private void openLocked() {
+        if (mLoaded) return;
+        if (!mDir.exists() && !mDir.mkdirs()) {
+            mLogger.warn("Failed to create dir:" + mDir);
+        }
+        File[] files = mDir.listFiles(new FilenameFilter() {
+            @Override
+            public boolean accept(File dir, String filename) {
+                return filename.endsWith(SEGMENT_SUFFIX);
+            }
+        });
+        if (files != null) {
+            for (File file : files) {
+                String id = file.getName().substring(0, file.getName().length() - SEGMENT_SUFFIX.length());
+                try {
+                    mSegments.put(Integer.parseInt(id), new Segment(Integer.parseInt(id), file));
+                } catch (NumberFormatException e) {
+                    mLogger.warn("Ignore unknown file:" + file);
+                }
+            }
+        }
+        for (Segment segment : new ArrayList<>(mSegments.values())) {
+            try {
+                scan(segment);
+            } catch (IOException e) {
+                mLogger.warn("Failed to scan " + segment.file + ": " + Log.getStackTraceString(e));
+            }
+        }
+        if (!mSegments.isEmpty()) {
+            mActive = mSegments.lastEntry().getValue();
+            for (Segment segment : mSegments.headMap(mActive.id).values()) {
+                segment.seal();
+            }
+        }
+        mLoaded = true;
+        maybeScheduleCompact();
+    }
+
+    /**
+     * Read the records of the segment, the tail after the last complete record is cut.
+     */
+    private void scan(Segment segment) throws IOException {
+        DataInputStream in = new DataInputStream(new BufferedInputStream(new FileInputStream(segment.file)));
+        long offset = 0;
+        try {
+            while (true) {
+                int magic;
+                try {
+                    magic = in.readInt();
+                } catch (EOFException e) {
+                    break;
+                }
+                if (magic != MAGIC) break;
+                int length = in.readInt();
+                byte[] name = new byte[in.readUnsignedShort()];
+                in.readFully(name);
+                if (length > 0 && in.skipBytes(length) != length) break;
+                Slot slot = new Slot(segment, offset, HEADER_SIZE + name.length, Math.max(length, 0));
+                String entry = new String(name, UTF_8);
+                apply(entry, length == DELETED ? null : slot);
+                if (length == DELETED) {
+                    segment.dead += slot.recordSize();
+                    segment.tombstones.add(entry);
+                }
+                offset += slot.recordSize();
+            }
+        } catch (EOFException ignored) {
+            // A partial record from a crash.
+        } finally {
+            in.close();
+        }
+        segment.size = offset;
+        if (offset < segment.file.length()) {
+            mLogger.warn("Cut the broken tail of " + segment.file + " at " + offset);
+            RandomAccessFile file = new RandomAccessFile(segment.file, "rw");
+            try {
+                file.setLength(offset);
+            } finally {
+                file.close();
+            }
+        }
+    }
+
+    private void apply(String name, @Nullable Slot slot) {
+        Slot previous = slot == null ? mSlots.remove(name) : mSlots.put(name, slot);
+        if (previous != null) previous.segment.dead += previous.recordSize();
+    }
+
+    public boolean contains(@NonNull String name) {
+        mLock.readLock().lock();
+        try {
+            return mSlots.containsKey(name);
+        } finally {
+            mLock.readLock().unlock();
+        }
+    }
+
+    /**
+     * @return Size of every entry by name, only valid once {@link #isLoaded()}.
+     */
+    @NonNull
+    Map<String, Long> sizes() {
+        mLock.readLock().lock();
+        try {
+            Map<String, Long> sizes = new HashMap<>(mSlots.size());
+            for (Map.Entry<String, Slot> entry : mSlots.entrySet()) {
+                sizes.put(entry.getKey(), (long) entry.getValue().length);
+            }
+            return sizes;
+        } finally {
+            mLock.readLock().unlock();
+        }
+    }
+
+    /**
+     * @return The data of the entry, {@code null} if there is none or it can not be read.
+     */
+    @Nullable
+    @WorkerThread
+    public byte[] read(@NonNull String name) {
+        mLock.readLock().lock();
+        try {
+            Slot slot = mSlots.get(name);
+            return slot == null ? null : copyOf(name, slot);
+        } finally {
+            mLock.readLock().unlock();
+        }
+    }
+
+    /**
+     * Copy the data out of the mapping, the decoder wants an array. Called with a lock held.
+     */
+    @Nullable
+    private byte[] copyOf(String name, Slot slot) {
+        try {
+            ByteBuffer buffer = slot.segment.map(slot.offset + slot.headerSize, slot.length);
+            byte[] data = new byte[slot.length];
+            buffer.get(data);
+            return data;
+        } catch (IOException e) {
+            mLogger.warn("Failed to read " + name + ": " + Log.getStackTraceString(e));
+            return null;
+        }
+    }
+
+    /**
+     * Append the entry, replacing the one of the same name.
+     *
+     * @return {@code true} if written.
+     */
+    @WorkerThread
+    public boolean put(@NonNull String name, @NonNull byte[] data) {
+        mLock.writeLock().lock();
+        try {
+            Slot slot = append(name, data, data.length);
+            if (slot == null) return false;
+            apply(name, slot);
+            maybeScheduleCompact();
+            return true;
+        } finally {
+            mLock.writeLock().unlock();
+        }
+    }
+
+    /**
+     * @return {@code true} if there was such an entry.
+     */
+    @WorkerThread
+    public boolean remove(@NonNull String name) {
+        mLock.writeLock().lock();
+        try {
+            if (!mSlots.containsKey(name)) return false;
+            apply(name, null);
+            Slot tombstone = append(name, new byte[0], DELETED);
+            // Still gone for this run if not written, it may come back after a restart.
+            if (tombstone != null) {
+                tombstone.segment.dead += tombstone.recordSize();
+                tombstone.segment.tombstones.add(name);
+            }
+            maybeScheduleCompact();
+            return true;
+        } finally {
+            mLock.writeLock().unlock();
+        }
+    }
+
+    @WorkerThread
+    public void clear() {
+        mLock.writeLock().lock();
+        try {
+            for (Segment segment : mSegments.values()) {
+                segment.close();
+                if (!segment.file.delete()) mLogger.warn("Failed to delete " + segment.file);
+            }
+            mSegments.clear();
+            mSlots.clear();
+            mActive = null;
+        } finally {
+            mLock.writeLock().unlock();
+        }
+    }
+
+    @Nullable
+    private Slot append(String name, byte[] data, int length) {
+        byte[] nameBytes = name.getBytes(UTF_8);
+        ByteBuffer record = ByteBuffer.allocate(HEADER_SIZE + nameBytes.length + data.length);
+        record.putInt(MAGIC).putInt(length).putShort((short) nameBytes.length).put(nameBytes).put(data);
+        Segment segment = null;
+        try {
+            segment = activeSegment(record.capacity());
+            long offset = segment.size;
+            segment.write(record.array());
+            return new Slot(segment, offset, HEADER_SIZE + nameBytes.length, data.length);
+        } catch (IOException e) {
+            mLogger.warn("Failed to append " + name + ": " + Log.getStackTraceString(e));
+            if (segment != null) segment.truncate();
+            return null;
+        }
+    }
+
+    private Segment activeSegment(int recordSize) throws IOException {
+        if (mActive == null || (mActive.size > 0 && mActive.size + recordSize > SEGMENT_SIZE)) {
+            if (mActive != null) mActive.seal();
+            int id = mSegments.isEmpty() ? 0 : mSegments.lastKey() + 1;
+            mActive = new Segment(id, new File(mDir, id + SEGMENT_SUFFIX));
+            mSegments.put(id, mActive);
+        }
+        return mActive;
+    }
+
+    /**
+     * @return The sealed segments mostly dead, the oldest first so they drop their delete records.
+     */
+    private List<Segment> compactCandidates() {
+        List<Segment> candidates = new ArrayList<>();
+        for (Segment segment : mSegments.values()) {
+            if (segment != mActive && segment.isMostlyDead()) candidates.add(segment);
+        }
+        return candidates;
+    }
+
+    private void maybeScheduleCompact() {
+        if (mCompactScheduled || compactCandidates().isEmpty()) return;
+        mCompactScheduled = true;
+        // Wait for the main thread to be idle, not to copy segments while the user scrolls.
+        new Handler(Looper.getMainLooper()).post(new Runnable() {
+            @Override
+            public void run() {
+                Looper.myQueue().addIdleHandler(new MessageQueue.IdleHandler() {
+                    @Override
+                    public boolean queueIdle() {
+                        mExecutor.execute(new Runnable() {
+                            @Override
+                            public void run() {
+                                Process.setThreadPriority(Process.THREAD_PRIORITY_BACKGROUND);
+                                compact();
+                            }
+                        });
+                        return false;
+                    }
+                });
+            }
+        });
+    }
+
+    /**
+     * Move the live entries of the mostly dead segments to the active one, then delete them.
+     */
+    @WorkerThread
+    void compact() {
+        List<Segment> candidates;
+        mLock.writeLock().lock();
+        try {
+            mCompactScheduled = false;
+            candidates = compactCandidates();
+        } finally {
+            mLock.writeLock().unlock();
+        }
+        for (Segment segment : candidates) {
+            // Keep the segment, try again next time.
+            if (!compact(segment)) {
+                mLogger.warn("Failed to compact " + segment.file);
+                return;
+            }
+        }
+    }
+
+    private boolean compact(Segment segment) {
+        List<String> names = new ArrayList<>();
+        mLock.readLock().lock();
+        try {
+            for (Map.Entry<String, Slot> entry : mSlots.entrySet()) {
+                if (entry.getValue().segment == segment) names.add(entry.getKey());
+            }
+        } finally {
+            mLock.readLock().unlock();
+        }
+        int moved = 0;
+        for (String name : names) {
+            Slot slot;
+            byte[] data;
+            mLock.readLock().lock();
+            try {
+                slot = mSlots.get(name);
+                // Replaced or removed meanwhile.
+                if (slot == null || slot.segment != segment) continue;
+                data = copyOf(name, slot);
+            } finally {
+                mLock.readLock().unlock();
+            }
+            if (data == null) return false;
+            mLock.writeLock().lock();
+            try {
+                if (mSlots.get(name) != slot) continue;
+                Slot copy = append(name, data, data.length);
+                if (copy == null) return false;
+                apply(name, copy);
+                moved++;
+            } finally {
+                mLock.writeLock().unlock();
+            }
+        }
+        mLock.writeLock().lock();
+        try {
+            // Cleared meanwhile.
+            if (mSegments.get(segment.id) != segment) return true;
+            // Without an older segment there is nothing left for its delete records to delete,
+            // neither if the name was put again since.
+            boolean oldest = mSegments.firstKey() == segment.id;
+            for (String name : segment.tombstones) {
+                if (oldest || mSlots.containsKey(name)) continue;
+                Slot tombstone = append(name, new byte[0], DELETED);
+                if (tombstone == null) return false;
+                // Not dead, it would get its segment compacted over and over.
+                tombstone.segment.tombstones.add(name);
+            }
+            segment.close();
+            mSegments.remove(segment.id);
+            if (!segment.file.delete()) mLogger.warn("Failed to delete " + segment.file);
+            mLogger.verbose("Compacted " + segment.file + ", moved " + moved + " entries");
+            return true;
+        } finally {
+            mLock.writeLock().unlock();
+        }
+    }
+
+    static class Slot {
+        final Segment segment;
+        // Where the record starts.
+        final long offset;
+        final int headerSize;
+        final int length;
+
+        Slot(Segment segment, long offset, int headerSize, int length) {
+            this.segment = segment;
+            this.offset = offset;
+            this.headerSize = headerSize;
+            this.length = length;
+        }
+
+        long recordSize() {
+            return headerSize + length;
+        }
+    }
+
+    static class Segment {
+        final int id;
+        final File file;
+        long size;
+        long dead;
+        // Names of its delete records.
+        final List<String> tombstones = new ArrayList<>();
+
+        // Only for the active segment.
+        private RandomAccessFile mWriter;
+        // Mapped on the first read, again if the active segment grew past it.
+        private MappedByteBuffer mMapped;
+
+        Segment(int id, File file) {
+            this.id = id;
+            this.file = file;
+        }
+
+        boolean isMostlyDead() {
+            return size == 0 || dead >= size * COMPACT_RATIO;
+        }
+
+        void write(byte[] record) throws IOException {
+            if (mWriter == null) mWriter = new RandomAccessFile(file, "rw");
+            mWriter.seek(size);
+            mWriter.write(record);
+            size += record.length;
+        }
+
+        /**
+         * Drop a partial record after a failed write.
+         */
+        void truncate() {
+            try {
+                if (mWriter != null) mWriter.setLength(size);
+            } catch (IOException ignored) {
+            }
+        }
+
+        /**
+         * Readers share the mapping, only making it is guarded by the segment.
+         */
+        synchronized ByteBuffer map(long position, int length) throws IOException {
+            if (mMapped == null || position + length > mMapped.capacity()) {
+                RandomAccessFile in = new RandomAccessFile(file, "r");
+                try {
+                    // The mapping stays valid after the channel is closed, records are never rewritten.
+                    mMapped = in.getChannel().map(FileChannel.MapMode.READ_ONLY, 0, size);
+                } finally {
+                    in.close();
+                }
+            }
+            ByteBuffer buffer = mMapped.duplicate();
+            buffer.position((int) position);
+            buffer.limit((int) position + length);
+            return buffer;
+        }
+
+        void seal() {
+            close();
+        }
+
+        void close() {
+            if (mWriter == null) return;
+            try {
+                mWriter.close();
+            } catch (IOException ignored) {
+            }
+            mWriter = null;
+        }
+    }
+}
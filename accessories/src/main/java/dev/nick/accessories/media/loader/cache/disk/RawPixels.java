@@ -0,0 +1,118 @@
+/*
+ * Copyright (c) 2016 Nick Guo
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package dev.nick.accessories.media.loader.cache.disk;
+
+import android.annotation.TargetApi;
+import android.graphics.Bitmap;
+import android.os.Build;
+import android.support.annotation.NonNull;
+import android.support.annotation.Nullable;
+import android.support.annotation.WorkerThread;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+
+import dev.nick.accessories.media.loader.cache.pool.BitmapPool;
+
+/**
+ * Raw pixel files of the disk cache: {@code magic, width, height, config} followed by the pixels
+ * as {@link Bitmap#copyPixelsToBuffer(java.nio.Buffer)} gives them. Reading one back is a copy
+ * out of a mapped file, with no codec work, at the cost of a few times the size of a PNG.
+ */
+public abstract class RawPixels {
+
+    private static final int MAGIC = 0x50584c31;
+    private static final int HEADER_SIZE = 4 * 4;
+
+    private static final int CONFIG_ARGB_8888 = 0;
+    private static final int CONFIG_RGB_565 = 1;
+
+    /**
+     * @return {@code true} if the config of the bitmap can be written.
+     */
+    public static boolean isSupported(@NonNull Bitmap bitmap) {
+        return bitmap.getConfig() == Bitmap.Config.ARGB_8888 || bitmap.getConfig() == Bitmap.Config.RGB_565;
+    }
+
+    @WorkerThread
+    public static void write(@NonNull Bitmap bitmap, @NonNull OutputStream out) throws IOException {
+        ByteBuffer buffer = ByteBuffer.allocate(HEADER_SIZE + bitmap.getRowBytes() * bitmap.getHeight());
+        buffer.putInt(MAGIC)
+                .putInt(bitmap.getWidth())
+                .putInt(bitmap.getHeight())
+                .putInt(bitmap.getConfig() == Bitmap.Config.RGB_565 ? CONFIG_RGB_565 : CONFIG_ARGB_8888);
+        bitmap.copyPixelsToBuffer(buffer);
+        out.write(buffer.array(), 0, buffer.position());
+    }
+
+    /**
+     * @param file Raw pixel file.
+     * @param pool Pool to take the bitmap from, may be null.
+     * @return The bitmap, {@code null} if it is not a raw pixel file.
+     */
+    @Nullable
+    @WorkerThread
+    public static Bitmap read(@NonNull File file, @Nullable BitmapPool pool) throws IOException {
+        RandomAccessFile in = new RandomAccessFile(file, "r");
+        try {
+            MappedByteBuffer buffer = in.getChannel().map(FileChannel.MapMode.READ_ONLY, 0, in.length());
+            if (buffer.remaining() < HEADER_SIZE || buffer.getInt() != MAGIC) return null;
+            int width = buffer.getInt();
+            int height = buffer.getInt();
+            Bitmap.Config config = buffer.getInt() == CONFIG_RGB_565 ? Bitmap.Config.RGB_565 : Bitmap.Config.ARGB_8888;
+            if (width <= 0 || height <= 0) return null;
+            Bitmap bitmap = obtain(width, height, config, pool);
+            if (buffer.remaining() < bitmap.getRowBytes() * bitmap.getHeight()) {
+                if (pool != null) pool.put(bitmap);
+                return null;
+            }
+            bitmap.copyPixelsFromBuffer(buffer);
+            return bitmap;
+        } finally {
+            in.close();
+        }
+    }
+
+    private static Bitmap obtain(int width, int height, Bitmap.Config config, @Nullable BitmapPool pool) {
+        Bitmap candidate = pool == null ? null : pool.get(width, height, config);
+        if (candidate != null) {
+            if (candidate.getWidth() == width && candidate.getHeight() == height && candidate.getConfig() == config) {
+                return candidate;
+            }
+            if (Build.VERSION.SDK_INT >= Build.VERSION_CODES.KITKAT && reconfigure(candidate, width, height, config)) {
+                return candidate;
+            }
+            pool.put(candidate);
+        }
+        return Bitmap.createBitmap(width, height, config);
+    }
+
+    @TargetApi(Build.VERSION_CODES.KITKAT)
+    private static boolean reconfigure(Bitmap bitmap, int width, int height, Bitmap.Config config) {
+        try {
+            bitmap.reconfigure(width, height, config);
+            return true;
+        } catch (IllegalArgumentException e) {
+            return false;
+        }
+    }
+}
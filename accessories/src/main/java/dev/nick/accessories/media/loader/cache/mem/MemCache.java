@@ -1,46 +1,207 @@
+/*
+ * Copyright (c) 2016 Nick Guo
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
 package dev.nick.accessories.media.loader.cache.mem;
 
+import android.content.ComponentCallbacks2;
 import android.graphics.Bitmap;
 import android.support.annotation.NonNull;
+import android.support.annotation.Nullable;
 import android.support.v4.util.LruCache;
 
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Map;
+import java.util.Set;
+
+import dev.nick.accessories.logger.Logger;
+import dev.nick.accessories.logger.LoggerManager;
 import dev.nick.accessories.media.loader.cache.Cache;
+import dev.nick.accessories.media.loader.cache.CacheKey;
 import dev.nick.accessories.media.loader.cache.CachePolicy;
+import dev.nick.accessories.media.loader.cache.pool.BitmapPool;
+import dev.nick.accessories.media.loader.cache.pool.BitmapSeatTracker;
+import dev.nick.accessories.media.loader.utils.BitmapUtils;
+
+/**
+ * Memory tier of the bitmap cache, entries are measured in bytes
+ * so the pool size of {@link CachePolicy} is the real memory budget.
+ * Removed entries go to the {@link BitmapPool} once they are not displayed anymore.
+ * Several variants of the same url may be cached, a lookup takes the smallest one
+ * which is large enough for the requested {@link CacheKey}.
+ */
+public class MemCache implements Cache<CacheKey, Bitmap> {
 
-public class MemCache implements Cache<String, Bitmap> {
+    private final int mMaxSize;
 
-    private LruCache<String, Bitmap> mLruCache;
+    private LruCache<CacheKey, Bitmap> mLruCache;
+
+    // Cached variants of each base key.
+    private final Map<String, Set<CacheKey>> mVariants = new HashMap<>();
+
+    private Logger mLogger;
 
     public MemCache(CachePolicy cachePolicy) {
-        int poolSize = cachePolicy.getMemCachePoolSize();
-        mLruCache = new LruCache<String, Bitmap>(poolSize) {
+        this(cachePolicy, null);
+    }
+
+    public MemCache(CachePolicy cachePolicy, @Nullable final BitmapPool bitmapPool) {
+        mMaxSize = cachePolicy.getMemCachePoolSize();
+        mLruCache = new LruCache<CacheKey, Bitmap>(mMaxSize) {
             @Override
-            protected int sizeOf(String key, Bitmap value) {
-                if (value == null) return 0;
-                return value.getWidth() * value.getHeight();
+            protected int sizeOf(CacheKey key, Bitmap value) {
+                return BitmapUtils.getBitmapByteCount(value);
             }
 
             @Override
-            protected void entryRemoved(boolean evicted, String key, Bitmap oldValue, Bitmap newValue) {
-                super.entryRemoved(evicted, key, oldValue, newValue);
-                // Hard to recycle.
-                oldValue = null;
+            protected void entryRemoved(boolean evicted, CacheKey key, Bitmap oldValue, Bitmap newValue) {
+                if (newValue == null) removeVariant(key);
+                if (bitmapPool == null || oldValue == newValue) return;
+                BitmapSeatTracker.getSharedTracker().onRemovedFromCache(oldValue, bitmapPool);
             }
         };
+        mLogger = LoggerManager.getLogger(getClass());
     }
 
     @Override
-    public void cache(@NonNull String key, Bitmap value) {
+    public void cache(@NonNull CacheKey key, Bitmap value) {
+        if (value == null) return;
+        int size = BitmapUtils.getBitmapByteCount(value);
+        if (size > mMaxSize) {
+            // It would evict everything else and still not fit.
+            mLogger.debug(String.format("Skip caching %s, %d bytes exceeds the pool size %d", key, size, mMaxSize));
+            mLruCache.remove(key);
+            return;
+        }
+        BitmapSeatTracker.getSharedTracker().onAddedToCache(value);
+        addVariant(key);
         mLruCache.put(key, value);
     }
 
     @Override
-    public Bitmap get(@NonNull String key) {
-        return mLruCache.get(key);
+    public Bitmap get(@NonNull CacheKey key) {
+        return mLruCache.get(findBestFit(key));
+    }
+
+    /**
+     * Get a bitmap to display, retained in the {@link BitmapSeatTracker}. The tracker is locked
+     * across the lookup, so an eviction meanwhile sees the retain and does not put the bitmap
+     * back to the pool. The caller seats it or releases it.
+     */
+    @Nullable
+    public Bitmap getRetained(@NonNull CacheKey key) {
+        BitmapSeatTracker tracker = BitmapSeatTracker.getSharedTracker();
+        synchronized (tracker) {
+            Bitmap bitmap = get(key);
+            tracker.retain(bitmap);
+            return bitmap;
+        }
+    }
+
+    /**
+     * Cache a bitmap to display, retained in the {@link BitmapSeatTracker} before it can be evicted.
+     * The caller seats it or releases it.
+     */
+    public void cacheRetained(@NonNull CacheKey key, @NonNull Bitmap value) {
+        BitmapSeatTracker.getSharedTracker().retain(value);
+        cache(key, value);
+    }
+
+    private CacheKey findBestFit(CacheKey key) {
+        synchronized (mVariants) {
+            Set<CacheKey> variants = mVariants.get(key.getBaseKey());
+            if (variants == null || variants.contains(key)) return key;
+            CacheKey best = null;
+            for (CacheKey variant : variants) {
+                if (variant.covers(key) && (best == null || variant.area() < best.area())) {
+                    best = variant;
+                }
+            }
+            return best == null ? key : best;
+        }
+    }
+
+    private void addVariant(CacheKey key) {
+        synchronized (mVariants) {
+            Set<CacheKey> variants = mVariants.get(key.getBaseKey());
+            if (variants == null) {
+                variants = new HashSet<>();
+                mVariants.put(key.getBaseKey(), variants);
+            }
+            variants.add(key);
+        }
+    }
+
+    private void removeVariant(CacheKey key) {
+        synchronized (mVariants) {
+            Set<CacheKey> variants = mVariants.get(key.getBaseKey());
+            if (variants == null) return;
+            variants.remove(key);
+            if (variants.isEmpty()) mVariants.remove(key.getBaseKey());
+        }
+    }
+
+    /**
+     * Remove all variants cached for the base key.
+     */
+    public void removeAll(@NonNull String baseKey) {
+        Set<CacheKey> variants;
+        synchronized (mVariants) {
+            variants = mVariants.get(baseKey);
+            if (variants == null) return;
+            variants = new HashSet<>(variants);
+        }
+        for (CacheKey key : variants) {
+            mLruCache.remove(key);
+        }
     }
 
     @Override
     public void evictAll() {
         mLruCache.evictAll();
     }
+
+    /**
+     * Shrink the cache according to the level given by {@link ComponentCallbacks2#onTrimMemory(int)}.
+     *
+     * @param level The trim level.
+     */
+    public void trimMemory(int level) {
+        if (level >= ComponentCallbacks2.TRIM_MEMORY_BACKGROUND) {
+            evictAll();
+        } else if (level >= ComponentCallbacks2.TRIM_MEMORY_RUNNING_CRITICAL) {
+            mLruCache.trimToSize(mMaxSize / 2);
+        } else if (level >= ComponentCallbacks2.TRIM_MEMORY_RUNNING_LOW) {
+            mLruCache.trimToSize(mMaxSize / 4 * 3);
+        }
+        mLogger.verbose(String.format("Trimmed for level %d, size now %d", level, mLruCache.size()));
+    }
+
+    /**
+     * @return A snapshot of the counters of this cache.
+     */
+    @NonNull
+    public MemCacheStats getStats() {
+        return new MemCacheStats(
+                mLruCache.hitCount(),
+                mLruCache.missCount(),
+                mLruCache.evictionCount(),
+                mLruCache.putCount(),
+                mLruCache.size(),
+                mLruCache.maxSize());
+    }
 }
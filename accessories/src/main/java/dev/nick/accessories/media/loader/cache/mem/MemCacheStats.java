@@ -0,0 +1,44 @@
+/*
+ * Copyright (c) 2016 Nick Guo
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+package dev.nick.accessories.media.loader.cache.mem;
+
+import lombok.AccessLevel;
+import lombok.AllArgsConstructor;
+import lombok.Getter;
+import lombok.ToString;
+
+/**
+ * Counters of a {@link MemCache}, sizes are in bytes.
+ */
+@Getter
+@ToString
+@AllArgsConstructor(access = AccessLevel.PACKAGE)
+public class MemCacheStats {
+
+    private int hitCount;
+    private int missCount;
+    private int evictionCount;
+    private int putCount;
+    private int size;
+    private int maxSize;
+
+    public float getHitRate() {
+        int total = hitCount + missCount;
+        return total == 0 ? 0f : (float) hitCount / total;
+    }
+}
@@ -0,0 +1,58 @@
+/*
+ * Copyright (c) 2016 Nick Guo
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+package dev.nick.accessories.media.loader.cache.pool;
+
+import android.graphics.Bitmap;
+import android.support.annotation.NonNull;
+import android.support.annotation.Nullable;
+
+/**
+ * Pool of bitmaps that are no longer used, which can be decoded into
+ * through {@link android.graphics.BitmapFactory.Options#inBitmap}.
+ */
+public interface BitmapPool {
+
+    /**
+     * Offer a bitmap that nobody references anymore.
+     *
+     * @param bitmap The bitmap, immutable or recycled ones are ignored.
+     * @return {@code true} if the bitmap was added to the pool.
+     */
+    boolean put(@NonNull Bitmap bitmap);
+
+    /**
+     * Take a bitmap out of the pool that can be used to decode an image of given dimen.
+     *
+     * @param width  Width of the image to decode.
+     * @param height Height of the image to decode.
+     * @param config Config of the image to decode.
+     * @return A candidate, or {@code null} if there is no matching one.
+     */
+    @Nullable
+    Bitmap get(int width, int height, @NonNull Bitmap.Config config);
+
+    /**
+     * @param level Trim level from {@link android.content.ComponentCallbacks2#onTrimMemory(int)}
+     */
+    void trimMemory(int level);
+
+    void clear();
+
+    @NonNull
+    BitmapPoolStats getStats();
+}
@@ -0,0 +1,169 @@
+/*
+ * Copyright (c) 2016 Nick Guo
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+package dev.nick.accessories.media.loader.cache.pool;
+
+import android.content.ComponentCallbacks2;
+import android.graphics.Bitmap;
+import android.os.Build;
+import android.support.annotation.NonNull;
+import android.support.annotation.Nullable;
+
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.LinkedHashSet;
+import java.util.LinkedList;
+import java.util.Map;
+import java.util.TreeMap;
+
+import dev.nick.accessories.media.loader.utils.BitmapUtils;
+
+/**
+ * Size bounded {@link BitmapPool}, the oldest bitmaps are dropped first.
+ * On KitKat and above any bitmap with a large enough allocation can be decoded into,
+ * on older platforms the dimen and config must match exactly.
+ */
+public class BitmapPoolImpl implements BitmapPool {
+
+    // Do not hand out a bitmap far larger than needed, it wastes the memory it keeps.
+    private static final int MAX_SIZE_MULTIPLE = 4;
+
+    private final boolean mMatchBySize = Build.VERSION.SDK_INT >= Build.VERSION_CODES.KITKAT;
+
+    private final int mMaxSize;
+    private int mSize;
+
+    private final LinkedHashSet<Bitmap> mLru = new LinkedHashSet<>();
+    private final TreeMap<Integer, LinkedList<Bitmap>> mSizeGroups = new TreeMap<>();
+    private final Map<String, LinkedList<Bitmap>> mDimenGroups = new HashMap<>();
+
+    private int mHitCount;
+    private int mMissCount;
+    private int mPutCount;
+    private int mEvictionCount;
+
+    public BitmapPoolImpl(int maxSize) {
+        this.mMaxSize = maxSize;
+    }
+
+    private static String dimenKeyOf(int width, int height, Bitmap.Config config) {
+        return width + "x" + height + "-" + config;
+    }
+
+    @Override
+    public synchronized boolean put(@NonNull Bitmap bitmap) {
+        if (bitmap.isRecycled() || !bitmap.isMutable()) return false;
+        int size = BitmapUtils.getBitmapByteCount(bitmap);
+        if (size > mMaxSize || mLru.contains(bitmap)) return false;
+        if (mMatchBySize) {
+            addTo(mSizeGroups, size, bitmap);
+        } else {
+            addTo(mDimenGroups, dimenKeyOf(bitmap.getWidth(), bitmap.getHeight(), bitmap.getConfig()), bitmap);
+        }
+        mLru.add(bitmap);
+        mSize += size;
+        mPutCount++;
+        trimToSize(mMaxSize);
+        return true;
+    }
+
+    @Nullable
+    @Override
+    public synchronized Bitmap get(int width, int height, @NonNull Bitmap.Config config) {
+        Bitmap bitmap = null;
+        if (mMatchBySize) {
+            int required = width * height * BitmapUtils.getBytesPerPixel(config);
+            Integer key = mSizeGroups.ceilingKey(required);
+            if (key != null && key <= required * MAX_SIZE_MULTIPLE) {
+                bitmap = removeFrom(mSizeGroups, key);
+            }
+        } else {
+            bitmap = removeFrom(mDimenGroups, dimenKeyOf(width, height, config));
+        }
+        if (bitmap == null) {
+            mMissCount++;
+            return null;
+        }
+        mLru.remove(bitmap);
+        mSize -= BitmapUtils.getBitmapByteCount(bitmap);
+        mHitCount++;
+        return bitmap;
+    }
+
+    @Override
+    public void trimMemory(int level) {
+        if (level >= ComponentCallbacks2.TRIM_MEMORY_BACKGROUND) {
+            clear();
+        } else if (level >= ComponentCallbacks2.TRIM_MEMORY_RUNNING_CRITICAL) {
+            synchronized (this) {
+                trimToSize(mMaxSize / 2);
+            }
+        }
+    }
+
+    @Override
+    public synchronized void clear() {
+        trimToSize(0);
+    }
+
+    @NonNull
+    @Override
+    public synchronized BitmapPoolStats getStats() {
+        return new BitmapPoolStats(mHitCount, mMissCount, mPutCount, mEvictionCount, mSize, mMaxSize);
+    }
+
+    private void trimToSize(int maxSize) {
+        Iterator<Bitmap> eldest = mLru.iterator();
+        while (mSize > maxSize && eldest.hasNext()) {
+            Bitmap bitmap = eldest.next();
+            eldest.remove();
+            int size = BitmapUtils.getBitmapByteCount(bitmap);
+            if (mMatchBySize) {
+                removeFrom(mSizeGroups, size, bitmap);
+            } else {
+                removeFrom(mDimenGroups, dimenKeyOf(bitmap.getWidth(), bitmap.getHeight(), bitmap.getConfig()), bitmap);
+            }
+            mSize -= size;
+            mEvictionCount++;
+        }
+    }
+
+    private static <K> void addTo(Map<K, LinkedList<Bitmap>> groups, K key, Bitmap bitmap) {
+        LinkedList<Bitmap> group = groups.get(key);
+        if (group == null) {
+            group = new LinkedList<>();
+            groups.put(key, group);
+        }
+        group.addLast(bitmap);
+    }
+
+    private static <K> Bitmap removeFrom(Map<K, LinkedList<Bitmap>> groups, K key) {
+        LinkedList<Bitmap> group = groups.get(key);
+        if (group == null) return null;
+        // Newest first, it is most likely still in the CPU cache.
+        Bitmap bitmap = group.removeLast();
+        if (group.isEmpty()) groups.remove(key);
+        return bitmap;
+    }
+
+    private static <K> void removeFrom(Map<K, LinkedList<Bitmap>> groups, K key, Bitmap bitmap) {
+        LinkedList<Bitmap> group = groups.get(key);
+        if (group == null) return;
+        group.remove(bitmap);
+        if (group.isEmpty()) groups.remove(key);
+    }
+}
@@ -0,0 +1,136 @@
+/*
+ * Copyright (c) 2016 Nick Guo
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+package dev.nick.accessories.media.loader.cache.pool;
+
+import android.graphics.Bitmap;
+import android.support.annotation.Nullable;
+import android.support.annotation.UiThread;
+
+import java.lang.ref.WeakReference;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.Map;
+import java.util.Set;
+import java.util.WeakHashMap;
+
+import dev.nick.accessories.common.annotation.Shared;
+
+/**
+ * Tracks which bitmaps are shown by a {@link dev.nick.accessories.media.loader.ui.MediaHolder},
+ * so a bitmap removed from the memory cache only goes back to the {@link BitmapPool}
+ * once no holder displays it anymore.
+ */
+public class BitmapSeatTracker {
+
+    private static final int PRUNE_THRESHOLD = 256;
+
+    @Shared
+    private static BitmapSeatTracker sSharedTracker;
+
+    // Seats posted or done, per bitmap.
+    private final Map<Bitmap, Integer> mRefs = new WeakHashMap<>();
+    private final Map<Long, WeakReference<Bitmap>> mSeats = new HashMap<>();
+    // Removed from the cache while still seated.
+    private final Map<Bitmap, BitmapPool> mPendingRelease = new WeakHashMap<>();
+    // Handed out to the user, we can not know when they are done with it.
+    private final Set<Bitmap> mEscaped = Collections.newSetFromMap(new WeakHashMap<Bitmap, Boolean>());
+
+    private BitmapSeatTracker() {
+    }
+
+    public synchronized static BitmapSeatTracker getSharedTracker() {
+        if (sSharedTracker == null) sSharedTracker = new BitmapSeatTracker();
+        return sSharedTracker;
+    }
+
+    /**
+     * Called when a bitmap is about to be seated, before posting to the UI thread.
+     */
+    public synchronized void retain(@Nullable Bitmap bitmap) {
+        if (bitmap == null) return;
+        Integer count = mRefs.get(bitmap);
+        mRefs.put(bitmap, count == null ? 1 : count + 1);
+    }
+
+    /**
+     * Called once the bitmap is seated, the one previously shown by this holder is released.
+     */
+    @UiThread
+    public synchronized void onSeated(long holderId, @Nullable Bitmap bitmap) {
+        WeakReference<Bitmap> previous = bitmap == null
+                ? mSeats.remove(holderId)
+                : mSeats.put(holderId, new WeakReference<>(bitmap));
+        if (previous != null) {
+            release(previous.get());
+        }
+        if (mSeats.size() > PRUNE_THRESHOLD) {
+            pruneSeats();
+        }
+    }
+
+    /**
+     * Called when a bitmap is given to a listener or returned to the caller,
+     * it will never be put back to a pool.
+     */
+    public synchronized void markEscaped(@Nullable Bitmap bitmap) {
+        if (bitmap == null) return;
+        mEscaped.add(bitmap);
+        mPendingRelease.remove(bitmap);
+    }
+
+    public synchronized void onAddedToCache(@Nullable Bitmap bitmap) {
+        if (bitmap == null) return;
+        mPendingRelease.remove(bitmap);
+    }
+
+    public synchronized void onRemovedFromCache(@Nullable Bitmap bitmap, @Nullable BitmapPool pool) {
+        if (bitmap == null || pool == null || mEscaped.contains(bitmap)) return;
+        if (mRefs.containsKey(bitmap)) {
+            mPendingRelease.put(bitmap, pool);
+        } else {
+            pool.put(bitmap);
+        }
+    }
+
+    /**
+     * Balance a {@link #retain(Bitmap)} not tied to a holder, the bitmap goes to its pool
+     * if it was removed from the cache meanwhile.
+     */
+    public synchronized void release(@Nullable Bitmap bitmap) {
+        if (bitmap == null) return;
+        Integer count = mRefs.get(bitmap);
+        if (count == null) return;
+        if (count > 1) {
+            mRefs.put(bitmap, count - 1);
+            return;
+        }
+        mRefs.remove(bitmap);
+        BitmapPool pool = mPendingRelease.remove(bitmap);
+        if (pool != null && !mEscaped.contains(bitmap)) {
+            pool.put(bitmap);
+        }
+    }
+
+    private void pruneSeats() {
+        Iterator<WeakReference<Bitmap>> seats = mSeats.values().iterator();
+        while (seats.hasNext()) {
+            if (seats.next().get() == null) seats.remove();
+        }
+    }
+}
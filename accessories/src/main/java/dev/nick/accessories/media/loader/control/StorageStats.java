@@ -50,6 +50,14 @@ public class StorageStats extends UsageStats {
         mExternalUsage.addAndGet(size);
     }
 
+    public void onInternalStorageFreed(long size) {
+        mInternalUsage.addAndGet(-size);
+    }
+
+    public void onExternalStorageFreed(long size) {
+        mExternalUsage.addAndGet(-size);
+    }
+
     public long getInternalStorageUsage() {
         flush(TAG_INTERNAL_STORAGE, mInternalUsage.getAndSet(0));
         return getUsage(TAG_INTERNAL_STORAGE);
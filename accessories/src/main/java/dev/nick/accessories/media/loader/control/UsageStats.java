@@ -51,7 +51,8 @@ public class UsageStats {
     protected void flush(String tag, long size) {
         String last = readString(tag, String.valueOf(0));
         long lastLong = Long.parseLong(last);
-        writeString(tag, String.valueOf((lastLong + size)));
+        // Freed usage may be counted before the stats were enabled.
+        writeString(tag, String.valueOf(Math.max(0, lastLong + size)));
     }
 
     protected void reset(String tag) {
@@ -0,0 +1,112 @@
+/*
+ * Copyright (c) 2016 Nick Guo
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package dev.nick.accessories.media.loader.queue;
+
+import android.support.annotation.NonNull;
+
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.ScheduledThreadPoolExecutor;
+import java.util.concurrent.SynchronousQueue;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import dev.nick.accessories.common.annotation.Shared;
+
+/**
+ * Threads of all the loaders of the process, forks included. Each loader service is a
+ * {@link QuotaExecutor} with its own queue and a quota of threads, running on the threads of the
+ * dispatcher. Threads are started on demand and leave after {@link #KEEP_ALIVE_MILLIS} idle,
+ * so an idle process holds none.
+ */
+public final class Dispatcher {
+
+    public static final long KEEP_ALIVE_MILLIS = 30 * 1000;
+
+    @Shared
+    private static Dispatcher sDispatcher;
+
+    private final ThreadPoolExecutor mPool;
+    private final ScheduledThreadPoolExecutor mTimer;
+
+    private final AtomicInteger mCreatedThreads = new AtomicInteger();
+    private final AtomicInteger mWakeUps = new AtomicInteger();
+
+    private Dispatcher() {
+        ThreadFactory factory = new ThreadFactory() {
+            @Override
+            public Thread newThread(@NonNull Runnable r) {
+                return new Thread(r, "Dispatcher#" + mCreatedThreads.incrementAndGet());
+            }
+        };
+        // No core thread, the quotas of the executors bound the threads started.
+        mPool = new ThreadPoolExecutor(0, Integer.MAX_VALUE, KEEP_ALIVE_MILLIS, TimeUnit.MILLISECONDS,
+                new SynchronousQueue<Runnable>(), factory);
+        mTimer = new ScheduledThreadPoolExecutor(1, factory);
+        mTimer.setKeepAliveTime(KEEP_ALIVE_MILLIS, TimeUnit.MILLISECONDS);
+        mTimer.allowCoreThreadTimeOut(true);
+    }
+
+    public static synchronized Dispatcher shared() {
+        if (sDispatcher == null) sDispatcher = new Dispatcher();
+        return sDispatcher;
+    }
+
+    /**
+     * @param name  Name the threads take while running its tasks.
+     * @param quota Max number of its tasks running at once.
+     */
+    @NonNull
+    public QuotaExecutor newExecutor(@NonNull String name, int quota, @NonNull QueuePolicy policy) {
+        return new QuotaExecutor(this, name, quota, policy);
+    }
+
+    @NonNull
+    public QuotaExecutor newExecutor(@NonNull String name, int quota) {
+        return newExecutor(name, quota, QueuePolicy.FIFO);
+    }
+
+    void execute(@NonNull Runnable runnable) {
+        mWakeUps.incrementAndGet();
+        mPool.execute(runnable);
+    }
+
+    /**
+     * Run on a shared thread after the delay, for short work as handing a task over to an executor.
+     */
+    @NonNull
+    public ScheduledFuture<?> schedule(@NonNull final Runnable runnable, long delayMillis) {
+        return mTimer.schedule(new Runnable() {
+            @Override
+            public void run() {
+                mWakeUps.incrementAndGet();
+                runnable.run();
+            }
+        }, delayMillis, TimeUnit.MILLISECONDS);
+    }
+
+    @NonNull
+    public DispatcherStats getStats() {
+        return new DispatcherStats(
+                mPool.getPoolSize() + mTimer.getPoolSize(),
+                mPool.getLargestPoolSize() + mTimer.getLargestPoolSize(),
+                mCreatedThreads.get(),
+                mWakeUps.get(),
+                mPool.getCompletedTaskCount() + mTimer.getCompletedTaskCount());
+    }
+}
@@ -16,6 +16,10 @@
 
 package dev.nick.accessories.media.loader.queue;
 
+/**
+ * @deprecated Use {@link LanePriorityBlockingQueue} instead.
+ */
+@Deprecated
 public class FIFOPriorityBlockingQueue<E> extends PriorityBlockingQueue<E> {
     // Default.
 }
@@ -18,6 +18,9 @@ package dev.nick.accessories.media.loader.queue;
 
 import android.support.annotation.NonNull;
 
+/**
+ * @deprecated Use {@link LanePriorityBlockingQueue} instead.
+ */
 @Deprecated
 public class LIFOPriorityBlockingQueue<E> extends PriorityBlockingQueue<E> {
 
@@ -0,0 +1,366 @@
+/*
+ * Copyright (c) 2016 Nick Guo
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package dev.nick.accessories.media.loader.queue;
+
+import android.os.SystemClock;
+import android.support.annotation.NonNull;
+
+import java.util.AbstractQueue;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Iterator;
+import java.util.List;
+import java.util.NoSuchElementException;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.Condition;
+import java.util.concurrent.locks.ReentrantLock;
+
+/**
+ * Queue of the loading executors with one lane by {@link Priority}.
+ * <p>
+ * The highest lane holding something is served first, in the order of the {@link QueuePolicy}:
+ * oldest first for FIFO, newest first for LIFO. An element waiting longer than the
+ * {@link Priority#timeoutMillSec} of its lane is served before anything else, so a steady stream of
+ * higher priority work can not starve it, nor newer work in a LIFO lane.
+ * <p>
+ * Offer, take and peek are O(1) under one lock, removing or reprioritizing a given element is O(n).
+ * Elements which are not {@link PriorityRemarkable} go to the {@link Priority#NORMAL} lane.
+ */
+public class LanePriorityBlockingQueue<E> extends AbstractQueue<E> implements BlockingQueue<E> {
+
+    // By ordinal, highest first.
+    private static final Priority[] PRIORITIES = Priority.values();
+
+    private final boolean mLifo;
+    // Oldest first in each lane.
+    private final List<ArrayDeque<Node<E>>> mLanes;
+
+    private final ReentrantLock mLock = new ReentrantLock();
+    private final Condition mNotEmpty = mLock.newCondition();
+
+    private int mCount;
+    // Set by nextLane(), the lane returned is served oldest first for aging.
+    private ArrayDeque<Node<E>> mAgedLane;
+
+    public LanePriorityBlockingQueue(@NonNull QueuePolicy policy) {
+        mLifo = policy == QueuePolicy.LIFO;
+        mLanes = new ArrayList<>(PRIORITIES.length);
+        for (int i = 0; i < PRIORITIES.length; i++) {
+            mLanes.add(new ArrayDeque<Node<E>>());
+        }
+    }
+
+    private static int laneOf(Object e) {
+        if (e instanceof PriorityRemarkable) {
+            Priority priority = ((PriorityRemarkable) e).getRemark();
+            if (priority != null) return priority.ordinal();
+        }
+        return Priority.NORMAL.ordinal();
+    }
+
+    @Override
+    public boolean offer(@NonNull E e) {
+        if (e == null) throw new NullPointerException();
+        Node<E> node = new Node<>(e, SystemClock.uptimeMillis());
+        mLock.lock();
+        try {
+            mLanes.get(laneOf(e)).addLast(node);
+            mCount++;
+            mNotEmpty.signal();
+        } finally {
+            mLock.unlock();
+        }
+        return true;
+    }
+
+    @Override
+    public void put(@NonNull E e) {
+        offer(e);
+    }
+
+    @Override
+    public boolean offer(E e, long timeout, @NonNull TimeUnit unit) {
+        // Never full.
+        return offer(e);
+    }
+
+    @Override
+    public E poll() {
+        mLock.lock();
+        try {
+            return mCount == 0 ? null : dequeue();
+        } finally {
+            mLock.unlock();
+        }
+    }
+
+    @Override
+    public E take() throws InterruptedException {
+        mLock.lockInterruptibly();
+        try {
+            while (mCount == 0) {
+                mNotEmpty.await();
+            }
+            return dequeue();
+        } finally {
+            mLock.unlock();
+        }
+    }
+
+    @Override
+    public E poll(long timeout, @NonNull TimeUnit unit) throws InterruptedException {
+        long nanos = unit.toNanos(timeout);
+        mLock.lockInterruptibly();
+        try {
+            while (mCount == 0) {
+                if (nanos <= 0) return null;
+                nanos = mNotEmpty.awaitNanos(nanos);
+            }
+            return dequeue();
+        } finally {
+            mLock.unlock();
+        }
+    }
+
+    @Override
+    public E peek() {
+        mLock.lock();
+        try {
+            if (mCount == 0) return null;
+            ArrayDeque<Node<E>> lane = nextLane(SystemClock.uptimeMillis());
+            return (lane == mAgedLane || !mLifo ? lane.peekFirst() : lane.peekLast()).item;
+        } finally {
+            mLock.unlock();
+        }
+    }
+
+    /**
+     * @return The lane to serve next, not empty. Lock held, queue not empty.
+     */
+    private ArrayDeque<Node<E>> nextLane(long now) {
+        mAgedLane = null;
+        long longestOver = -1;
+        for (int i = 0; i < PRIORITIES.length; i++) {
+            long timeout = PRIORITIES[i].timeoutMillSec;
+            Node<E> oldest = mLanes.get(i).peekFirst();
+            if (timeout <= 0 || oldest == null) continue;
+            long over = now - oldest.enqueueTime - timeout;
+            if (over >= 0 && over > longestOver) {
+                longestOver = over;
+                mAgedLane = mLanes.get(i);
+            }
+        }
+        if (mAgedLane != null) return mAgedLane;
+        for (ArrayDeque<Node<E>> lane : mLanes) {
+            if (!lane.isEmpty()) return lane;
+        }
+        throw new IllegalStateException("Count is " + mCount + " with all lanes empty");
+    }
+
+    /**
+     * Lock held, queue not empty.
+     */
+    private E dequeue() {
+        ArrayDeque<Node<E>> lane = nextLane(SystemClock.uptimeMillis());
+        Node<E> node = lane == mAgedLane || !mLifo ? lane.pollFirst() : lane.pollLast();
+        mCount--;
+        return node.item;
+    }
+
+    /**
+     * Move a queued element to the lane of its current {@link PriorityRemarkable#getRemark()}.
+     * It keeps the time it was queued, so it goes where it would be had it been offered to that lane,
+     * and it still ages when moved back and forth.
+     *
+     * @return {@code true} if it was queued.
+     */
+    public boolean reprioritize(@NonNull Object o) {
+        int lane = laneOf(o);
+        mLock.lock();
+        try {
+            for (int i = 0; i < mLanes.size(); i++) {
+                if (i == lane) continue;
+                Iterator<Node<E>> iterator = mLanes.get(i).iterator();
+                while (iterator.hasNext()) {
+                    Node<E> node = iterator.next();
+                    if (o.equals(node.item)) {
+                        iterator.remove();
+                        insertByAge(mLanes.get(lane), node);
+                        return true;
+                    }
+                }
+            }
+            return contains(o);
+        } finally {
+            mLock.unlock();
+        }
+    }
+
+    /**
+     * Insert the node in the lane after the ones queued before it, the lane stays oldest first.
+     */
+    private static <E> void insertByAge(ArrayDeque<Node<E>> lane, Node<E> node) {
+        ArrayDeque<Node<E>> newer = new ArrayDeque<>();
+        while (!lane.isEmpty() && lane.peekLast().enqueueTime > node.enqueueTime) {
+            newer.addFirst(lane.pollLast());
+        }
+        lane.addLast(node);
+        lane.addAll(newer);
+    }
+
+    @Override
+    public boolean remove(Object o) {
+        if (o == null) return false;
+        mLock.lock();
+        try {
+            for (ArrayDeque<Node<E>> lane : mLanes) {
+                Iterator<Node<E>> iterator = lane.iterator();
+                while (iterator.hasNext()) {
+                    if (o.equals(iterator.next().item)) {
+                        iterator.remove();
+                        mCount--;
+                        return true;
+                    }
+                }
+            }
+            return false;
+        } finally {
+            mLock.unlock();
+        }
+    }
+
+    @Override
+    public boolean contains(Object o) {
+        if (o == null) return false;
+        mLock.lock();
+        try {
+            for (ArrayDeque<Node<E>> lane : mLanes) {
+                for (Node<E> node : lane) {
+                    if (o.equals(node.item)) return true;
+                }
+            }
+            return false;
+        } finally {
+            mLock.unlock();
+        }
+    }
+
+    @Override
+    public int size() {
+        mLock.lock();
+        try {
+            return mCount;
+        } finally {
+            mLock.unlock();
+        }
+    }
+
+    @Override
+    public int remainingCapacity() {
+        return Integer.MAX_VALUE;
+    }
+
+    @Override
+    public int drainTo(@NonNull Collection<? super E> c) {
+        return drainTo(c, Integer.MAX_VALUE);
+    }
+
+    @Override
+    public int drainTo(@NonNull Collection<? super E> c, int maxElements) {
+        if (c == this) throw new IllegalArgumentException();
+        mLock.lock();
+        try {
+            int n = 0;
+            while (n < maxElements && mCount > 0) {
+                c.add(dequeue());
+                n++;
+            }
+            return n;
+        } finally {
+            mLock.unlock();
+        }
+    }
+
+    @Override
+    public void clear() {
+        mLock.lock();
+        try {
+            for (ArrayDeque<Node<E>> lane : mLanes) {
+                lane.clear();
+            }
+            mCount = 0;
+        } finally {
+            mLock.unlock();
+        }
+    }
+
+    /**
+     * @return Iterator over a snapshot, highest lane first, removing through it removes from the queue.
+     */
+    @NonNull
+    @Override
+    public Iterator<E> iterator() {
+        final List<E> snapshot;
+        mLock.lock();
+        try {
+            snapshot = new ArrayList<>(mCount);
+            for (ArrayDeque<Node<E>> lane : mLanes) {
+                for (Node<E> node : lane) {
+                    snapshot.add(node.item);
+                }
+            }
+        } finally {
+            mLock.unlock();
+        }
+        return new Iterator<E>() {
+
+            private int mNext;
+            private E mLast;
+
+            @Override
+            public boolean hasNext() {
+                return mNext < snapshot.size();
+            }
+
+            @Override
+            public E next() {
+                if (!hasNext()) throw new NoSuchElementException();
+                mLast = snapshot.get(mNext++);
+                return mLast;
+            }
+
+            @Override
+            public void remove() {
+                if (mLast == null) throw new IllegalStateException();
+                LanePriorityBlockingQueue.this.remove(mLast);
+                mLast = null;
+            }
+        };
+    }
+
+    private static class Node<E> {
+        final E item;
+        final long enqueueTime;
+
+        Node(E item, long enqueueTime) {
+            this.item = item;
+            this.enqueueTime = enqueueTime;
+        }
+    }
+}
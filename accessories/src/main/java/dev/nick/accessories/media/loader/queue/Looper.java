@@ -16,6 +16,11 @@
 
 package dev.nick.accessories.media.loader.queue;
 
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Drains a {@link RequestQueue} on a thread of the {@link Dispatcher}, started only when requests come.
+ */
 class Looper<T> implements Runnable {
 
     RequestQueue<T> stack;
@@ -29,7 +34,7 @@ class Looper<T> implements Runnable {
     }
 
     void startLoop() {
-        new Thread(this, name).start();
+        Dispatcher.shared().execute(this);
     }
 
     void loop() {
@@ -42,6 +47,28 @@ class Looper<T> implements Runnable {
 
     @Override
     public void run() {
-        loop();
+        Thread thread = Thread.currentThread();
+        String threadName = thread.getName();
+        if (name != null) thread.setName(name);
+        boolean drained = false;
+        try {
+            loop();
+            drained = true;
+        } finally {
+            thread.setName(threadName);
+            if (!drained && stack.onDrainAborted()) startLoop();
+        }
+        scheduleIdleCheck();
+    }
+
+    private void scheduleIdleCheck() {
+        final int generation = stack.idleGeneration();
+        if (generation < 0) return;
+        Dispatcher.shared().schedule(new Runnable() {
+            @Override
+            public void run() {
+                stack.onIdle(generation);
+            }
+        }, TimeUnit.SECONDS.toMillis(RequestQueue.IDLE_TIME_SECONDS));
     }
 }
@@ -16,6 +16,10 @@
 
 package dev.nick.accessories.media.loader.queue;
 
+/**
+ * Lane of a task in the {@link LanePriorityBlockingQueue}, {@link #timeoutMillSec} is how long
+ * a task may wait in its lane before it is served ahead of higher lanes, 0 for never.
+ */
 public enum Priority {
 
     HIGH(0, new Sequencer<Priority>() {
@@ -39,7 +43,7 @@ public enum Priority {
             return false;
         }
     }),
-    NORMAL(0, new Sequencer<Priority>() {
+    NORMAL(3000, new Sequencer<Priority>() {
         @Override
         public Priority lower() {
             return LOW;
@@ -60,7 +64,7 @@ public enum Priority {
             return priority == HIGH;
         }
     }),
-    LOW(0, new Sequencer<Priority>() {
+    LOW(6000, new Sequencer<Priority>() {
         @Override
         public Priority lower() {
             return null;
@@ -24,6 +24,10 @@ import java.util.concurrent.TimeUnit;
 
 import dev.nick.accessories.logger.LoggerManager;
 
+/**
+ * @deprecated Use {@link LanePriorityBlockingQueue} instead.
+ */
+@Deprecated
 public class PriorityBlockingQueue<E> extends LinkedBlockingDeque<E> implements BlockingQueue<E> {
 
     @Override
@@ -0,0 +1,185 @@
+/*
+ * Copyright (c) 2016 Nick Guo
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package dev.nick.accessories.media.loader.queue;
+
+import android.support.annotation.NonNull;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.AbstractExecutorService;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.TimeUnit;
+
+import dev.nick.accessories.media.loader.utils.Preconditions;
+
+/**
+ * Executor of one loader service on the threads of the {@link Dispatcher}. Its tasks wait in its own
+ * {@link LanePriorityBlockingQueue}, and at most {@link #getQuota()} of them run at once.
+ */
+public class QuotaExecutor extends AbstractExecutorService {
+
+    private final Dispatcher mDispatcher;
+    private final String mName;
+    private final LanePriorityBlockingQueue<Runnable> mQueue;
+
+    private final Object mLock = new Object();
+    // Guarded by mLock.
+    private int mQuota;
+    private int mRunners;
+    private boolean mShutdown;
+
+    private final Runnable mRunner = new Runnable() {
+        @Override
+        public void run() {
+            Thread thread = Thread.currentThread();
+            String threadName = thread.getName();
+            thread.setName(mName);
+            boolean exited = false;
+            try {
+                for (; ; ) {
+                    Runnable task;
+                    synchronized (mLock) {
+                        if (mRunners > mQuota || (task = mQueue.poll()) == null) {
+                            exited = true;
+                            mRunners--;
+                            mLock.notifyAll();
+                            return;
+                        }
+                    }
+                    // Left by a cancel of the previous task, as a ThreadPoolExecutor would clear it.
+                    Thread.interrupted();
+                    task.run();
+                }
+            } finally {
+                thread.setName(threadName);
+                // The task threw, another runner takes over its slot.
+                if (!exited) mDispatcher.execute(mRunner);
+            }
+        }
+    };
+
+    QuotaExecutor(@NonNull Dispatcher dispatcher, @NonNull String name, int quota, @NonNull QueuePolicy policy) {
+        Preconditions.checkState(quota >= 1, "Quota should be positive");
+        this.mDispatcher = dispatcher;
+        this.mName = name;
+        this.mQueue = new LanePriorityBlockingQueue<>(policy);
+        this.mQuota = quota;
+    }
+
+    @Override
+    public void execute(@NonNull Runnable command) {
+        synchronized (mLock) {
+            if (mShutdown) throw new RejectedExecutionException(mName + " is shut down");
+            mQueue.offer(command);
+            if (mRunners >= mQuota) return;
+            mRunners++;
+        }
+        mDispatcher.execute(mRunner);
+    }
+
+    @NonNull
+    public String getName() {
+        return mName;
+    }
+
+    /**
+     * @return Queue of the tasks waiting for a thread.
+     */
+    @NonNull
+    public LanePriorityBlockingQueue<Runnable> getQueue() {
+        return mQueue;
+    }
+
+    public int getQuota() {
+        synchronized (mLock) {
+            return mQuota;
+        }
+    }
+
+    /**
+     * Raise or lower the number of tasks run at once. Extra runners leave once their task is done,
+     * new ones pick up queued tasks at once.
+     */
+    public void setQuota(int quota) {
+        Preconditions.checkState(quota >= 1, "Quota should be positive");
+        int started;
+        synchronized (mLock) {
+            mQuota = quota;
+            started = Math.max(0, Math.min(quota - mRunners, mQueue.size()));
+            mRunners += started;
+        }
+        for (int i = 0; i < started; i++) {
+            mDispatcher.execute(mRunner);
+        }
+    }
+
+    /**
+     * @return Number of threads running tasks of this executor.
+     */
+    public int getActiveCount() {
+        synchronized (mLock) {
+            return mRunners;
+        }
+    }
+
+    @Override
+    public void shutdown() {
+        synchronized (mLock) {
+            mShutdown = true;
+            mLock.notifyAll();
+        }
+    }
+
+    @NonNull
+    @Override
+    public List<Runnable> shutdownNow() {
+        List<Runnable> pending = new ArrayList<>();
+        synchronized (mLock) {
+            mShutdown = true;
+            mQueue.drainTo(pending);
+            mLock.notifyAll();
+        }
+        return pending;
+    }
+
+    @Override
+    public boolean isShutdown() {
+        synchronized (mLock) {
+            return mShutdown;
+        }
+    }
+
+    @Override
+    public boolean isTerminated() {
+        synchronized (mLock) {
+            return mShutdown && mRunners == 0;
+        }
+    }
+
+    @Override
+    public boolean awaitTermination(long timeout, @NonNull TimeUnit unit) throws InterruptedException {
+        long deadline = System.nanoTime() + unit.toNanos(timeout);
+        synchronized (mLock) {
+            while (!(mShutdown && mRunners == 0)) {
+                long left = TimeUnit.NANOSECONDS.toMillis(deadline - System.nanoTime());
+                if (left <= 0) return false;
+                mLock.wait(left);
+            }
+            return true;
+        }
+    }
+}
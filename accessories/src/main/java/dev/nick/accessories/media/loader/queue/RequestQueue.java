@@ -16,25 +16,28 @@
 
 package dev.nick.accessories.media.loader.queue;
 
-import java.util.concurrent.LinkedBlockingDeque;
-import java.util.concurrent.TimeUnit;
+import java.util.ArrayDeque;
+import java.util.Deque;
 
 class RequestQueue<T> {
 
+    // Quiet time after a drain before the idle monitor is called.
     static final int IDLE_TIME_SECONDS = 24;
 
-    LinkedBlockingDeque<T> mHolder;
+    // Guarded by this.
+    final Deque<T> mHolder = new ArrayDeque<>();
 
     IdleStateMonitor mIdleStateMonitor;
 
     QueuePolicy mPolicy = QueuePolicy.FIFO;
 
     boolean mActive = true;
-    boolean mIdleSignal = true;
-
-    public RequestQueue() {
-        mHolder = new LinkedBlockingDeque<>();
-    }
+    // Requests came since the last call of the idle monitor.
+    boolean mIdleSignal = false;
+    // A looper is draining the queue, or about to.
+    boolean mDraining;
+    // Bumped by each request, an idle check scheduled before one is stale.
+    int mGeneration;
 
     public void setStateMonitor(IdleStateMonitor monitor) {
         this.mIdleStateMonitor = monitor;
@@ -44,47 +47,64 @@ class RequestQueue<T> {
         this.mPolicy = policy;
     }
 
-    public T add(T item) {
-        if (!mActive) return null;
-        if (mHolder.add(item)) {
-            signal();
-        }
-        return item;
+    /**
+     * @return {@code true} if the caller has to start a looper to drain the queue.
+     */
+    public synchronized boolean add(T item) {
+        if (!mActive) return false;
+        mHolder.addLast(item);
+        mIdleSignal = true;
+        mGeneration++;
+        if (mDraining) return false;
+        mDraining = true;
+        return true;
     }
 
-    public T next() {
-        if (!mActive) return null;
-        try {
-            T polled = mPolicy == QueuePolicy.FIFO ? mHolder.pollFirst(IDLE_TIME_SECONDS, TimeUnit.SECONDS)
-                    : mHolder.pollFirst(IDLE_TIME_SECONDS, TimeUnit.SECONDS);
-            if (polled == null) {
-                onIdle();
-                return next();
-            } else {
-                return polled;
-            }
-        } catch (InterruptedException e) {
-            return null;
-        }
+    /**
+     * @return The next request, {@code null} once the queue is empty, which ends the drain.
+     */
+    public synchronized T next() {
+        T polled = mActive ? mHolder.pollFirst() : null;
+        if (polled == null) mDraining = false;
+        return polled;
     }
 
-    public void deactivate() {
-        mActive = false;
-        unSignal();
+    /**
+     * Called when a drain ended with a handler throwing.
+     *
+     * @return {@code true} if the caller has to start another looper for the requests left.
+     */
+    public synchronized boolean onDrainAborted() {
+        if (mActive && !mHolder.isEmpty()) return true;
+        mDraining = false;
+        return false;
     }
 
-    private void signal() {
-        mIdleSignal = true;
+    /**
+     * @return Generation to pass to {@link #onIdle(int)}, -1 if there is no monitor to call.
+     */
+    public synchronized int idleGeneration() {
+        return mIdleStateMonitor != null && mIdleSignal ? mGeneration : -1;
+    }
+
+    public synchronized void deactivate() {
+        mActive = false;
+        mHolder.clear();
+        unSignal();
     }
 
     private void unSignal() {
         mIdleSignal = false;
     }
 
-    protected void onIdle() {
-        if (mIdleSignal && mIdleStateMonitor != null) {
-            mIdleStateMonitor.onIdle();
-            mIdleSignal = false;
+    /**
+     * Call the monitor if no request came since the generation.
+     */
+    protected void onIdle(int generation) {
+        synchronized (this) {
+            if (!mActive || !mIdleSignal || mDraining || generation != mGeneration) return;
+            unSignal();
         }
+        mIdleStateMonitor.onIdle();
     }
 }
@@ -24,6 +24,7 @@ public final class RequestQueueManager<T> implements RequestHandler<T>, Terminab
     RequestQueue<T> mQueue;
     RequestHandler<T> mRequestHandler;
     String mName;
+    Looper<T> mLooper;
 
     private RequestQueueManager(RequestHandler<T> requestHandler, IdleStateMonitor idleStateMonitor, QueuePolicy policy, String name) {
         mQueue = new RequestQueue<>();
@@ -45,9 +46,11 @@ public final class RequestQueueManager<T> implements RequestHandler<T>, Terminab
         return new RequestQueueManager<T>(requestHandler, idleStateMonitor, policy, name).loop();
     }
 
+    /**
+     * No thread is held until a request is pushed, the looper runs on the {@link Dispatcher}.
+     */
     RequestQueueManager<T> loop() {
-        Looper<T> looper = new Looper<>(this, mQueue, mName);
-        looper.startLoop();
+        mLooper = new Looper<>(this, mQueue, mName);
         return this;
     }
 
@@ -57,7 +60,7 @@ public final class RequestQueueManager<T> implements RequestHandler<T>, Terminab
     }
 
     public void push(T request) {
-        mQueue.add(request);
+        if (mQueue.add(request)) mLooper.startLoop();
     }
 
     @Override
@@ -0,0 +1,43 @@
+/*
+ * Copyright (c) 2016 Nick Guo
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package dev.nick.accessories.media.loader.scrollable;
+
+import android.graphics.Bitmap;
+import android.support.annotation.NonNull;
+import android.support.annotation.Nullable;
+
+import dev.nick.accessories.media.loader.ui.DisplayOption;
+
+/**
+ * Tells the prefetch of a linked list what its adapter is about to show, usually implemented by the adapter.
+ */
+public interface PrefetchProvider {
+
+    /**
+     * @param position Adapter position, may be out of the adapter.
+     * @return Url of the image shown at the position, {@code null} if none.
+     */
+    @Nullable
+    String getUrl(int position);
+
+    /**
+     * @return The option the image at the position is displayed with,
+     * so the prefetch caches the same variant.
+     */
+    @NonNull
+    DisplayOption<Bitmap> getOption(int position);
+}
@@ -0,0 +1,151 @@
+/*
+ * Copyright (c) 2016 Nick Guo
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package dev.nick.accessories.media.loader.scrollable;
+
+import com.google.guava.base.Optional;
+
+import dev.nick.accessories.common.annotation.MinSize;
+import dev.nick.accessories.media.loader.utils.Preconditions;
+import lombok.Getter;
+import lombok.ToString;
+
+/**
+ * Policy reading when a list is linked to the loader by
+ * {@link dev.nick.accessories.media.loader.MediaLoader#linkScrollStateTo}.
+ * Using {@link Builder} to build a policy.
+ */
+@ToString
+@Getter
+public class ViewportPolicy {
+
+    public static final int DEFAULT_CANCEL_MARGIN = 8;
+    public static final int DEFAULT_FLING_DISPATCH_INTERVAL = 80;
+    public static final int DEFAULT_PREFETCH_MAX_COUNT = 6;
+    public static final int DEFAULT_PREFETCH_MAX_BYTES = 8 * 1024 * 1024;
+    public static final int DEFAULT_PREFETCH_LOOKAHEAD = 600;
+
+    public static final ViewportPolicy DEFAULT_VIEWPORT_POLICY = ViewportPolicy.builder().build();
+
+    // Adapter positions out of the visible ones a task is kept for, beyond it it is cancelled.
+    @MinSize(0)
+    private int cancelMargin;
+    // Millis between two tasks handed to the executors while the list flings.
+    @MinSize(1)
+    private int flingDispatchInterval;
+    // Prefetches in flight at most, by count and by estimated decoded bytes.
+    @MinSize(1)
+    private int prefetchMaxCount;
+    @MinSize(1)
+    private int prefetchMaxBytes;
+    // Millis of scroll at the current velocity to prefetch ahead for.
+    @MinSize(1)
+    private int prefetchLookahead;
+
+    private ViewportPolicy(int cancelMargin,
+                           int flingDispatchInterval,
+                           int prefetchMaxCount,
+                           int prefetchMaxBytes,
+                           int prefetchLookahead) {
+        this.cancelMargin = cancelMargin;
+        this.flingDispatchInterval = flingDispatchInterval;
+        this.prefetchMaxCount = prefetchMaxCount;
+        this.prefetchMaxBytes = prefetchMaxBytes;
+        this.prefetchLookahead = prefetchLookahead;
+    }
+
+    public static Builder builder() {
+        return new Builder();
+    }
+
+    public static class Builder {
+
+        private Optional<Integer> cancelMargin = Optional.absent();
+        private Optional<Integer> flingDispatchInterval = Optional.absent();
+        private Optional<Integer> prefetchMaxCount = Optional.absent();
+        private Optional<Integer> prefetchMaxBytes = Optional.absent();
+        private Optional<Integer> prefetchLookahead = Optional.absent();
+
+        private Builder() {
+        }
+
+        /**
+         * @param cancelMargin Number of adapter positions out of the visible ones whose tasks are
+         *                     kept at a low priority, default is {@link #DEFAULT_CANCEL_MARGIN}.
+         *                     Tasks of rows further away are cancelled.
+         * @return Builder instance.
+         */
+        public Builder cancelMargin(@MinSize(0) int cancelMargin) {
+            Preconditions.checkState(cancelMargin >= 0);
+            this.cancelMargin = Optional.of(cancelMargin);
+            return Builder.this;
+        }
+
+        /**
+         * @param flingDispatchInterval Min millis between two tasks started while the list flings,
+         *                              default is {@link #DEFAULT_FLING_DISPATCH_INTERVAL}.
+         * @return Builder instance.
+         */
+        public Builder flingDispatchInterval(@MinSize(1) int flingDispatchInterval) {
+            Preconditions.checkState(flingDispatchInterval >= 1);
+            this.flingDispatchInterval = Optional.of(flingDispatchInterval);
+            return Builder.this;
+        }
+
+        /**
+         * @param prefetchMaxCount Max number of prefetches in flight for a list,
+         *                         default is {@link #DEFAULT_PREFETCH_MAX_COUNT}.
+         * @return Builder instance.
+         */
+        public Builder prefetchMaxCount(@MinSize(1) int prefetchMaxCount) {
+            Preconditions.checkState(prefetchMaxCount >= 1);
+            this.prefetchMaxCount = Optional.of(prefetchMaxCount);
+            return Builder.this;
+        }
+
+        /**
+         * @param prefetchMaxBytes Max decoded bytes of the prefetches in flight for a list, estimated
+         *                         from the size of its cells, default is {@link #DEFAULT_PREFETCH_MAX_BYTES}.
+         * @return Builder instance.
+         */
+        public Builder prefetchMaxBytes(@MinSize(1) int prefetchMaxBytes) {
+            Preconditions.checkState(prefetchMaxBytes >= 1);
+            this.prefetchMaxBytes = Optional.of(prefetchMaxBytes);
+            return Builder.this;
+        }
+
+        /**
+         * @param prefetchLookahead Millis of scroll at the current velocity the prefetch runs ahead for,
+         *                          default is {@link #DEFAULT_PREFETCH_LOOKAHEAD}. At least the next
+         *                          position is prefetched.
+         * @return Builder instance.
+         */
+        public Builder prefetchLookahead(@MinSize(1) int prefetchLookahead) {
+            Preconditions.checkState(prefetchLookahead >= 1);
+            this.prefetchLookahead = Optional.of(prefetchLookahead);
+            return Builder.this;
+        }
+
+        public ViewportPolicy build() {
+            return new ViewportPolicy(
+                    cancelMargin.or(DEFAULT_CANCEL_MARGIN),
+                    flingDispatchInterval.or(DEFAULT_FLING_DISPATCH_INTERVAL),
+                    prefetchMaxCount.or(DEFAULT_PREFETCH_MAX_COUNT),
+                    prefetchMaxBytes.or(DEFAULT_PREFETCH_MAX_BYTES),
+                    prefetchLookahead.or(DEFAULT_PREFETCH_LOOKAHEAD));
+        }
+    }
+}
@@ -0,0 +1,214 @@
+/*
+ * Copyright (c) 2016 Nick Guo
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package dev.nick.accessories.media.loader.scrollable;
+
+import android.os.SystemClock;
+import android.support.annotation.NonNull;
+import android.support.annotation.Nullable;
+import android.support.annotation.UiThread;
+import android.support.v7.widget.RecyclerView;
+import android.view.View;
+import android.view.ViewGroup;
+import android.widget.AbsListView;
+import android.widget.ImageView;
+
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.Map;
+
+import dev.nick.accessories.media.loader.ui.IDCreator;
+import dev.nick.accessories.media.loader.ui.ImageViewDelegate;
+import dev.nick.accessories.media.loader.worker.DimenSpec;
+
+/**
+ * Tracks the adapter position of the {@link ImageView}s of a linked list, and which positions
+ * are visible, so a task can be told how far its holder is from the viewport.
+ * <p>
+ * Holders are matched by the ids of the {@link IDCreator} of the loader, a holder which is not an
+ * {@link ImageView} of the list is unknown to the tracker.
+ * <p>
+ * The moves of the visible positions give the direction and velocity of the scroll, in positions.
+ */
+public class ViewportTracker {
+
+    public static final int UNKNOWN = -1;
+
+    private final IDCreator mIdCreator;
+    private final ViewportPolicy mPolicy;
+
+    // Holder ids to the position of their row when last laid out.
+    private final Map<Long, Integer> mPositions = new HashMap<>();
+    private int mFirstVisible;
+    private int mLastVisible = -1;
+    // 1 toward the end of the adapter, -1 toward its start, 0 before any move.
+    private int mDirection;
+    // Positions per second, smoothed.
+    private float mVelocity;
+    private long mLastMoveTime;
+    // Size of the last image view laid out with one.
+    @Nullable
+    private DimenSpec mExpectedDimen;
+
+    private volatile boolean mFlinging;
+
+    public ViewportTracker(@NonNull IDCreator idCreator, @NonNull ViewportPolicy policy) {
+        mIdCreator = idCreator;
+        mPolicy = policy;
+    }
+
+    /**
+     * @return {@code true} if the visible positions changed.
+     */
+    @UiThread
+    public synchronized boolean onLayout(@NonNull RecyclerView view) {
+        RecyclerView.LayoutManager layout = view.getLayoutManager();
+        if (layout == null) return false;
+        boolean vertical = layout.canScrollVertically();
+        int first = Integer.MAX_VALUE;
+        int last = -1;
+        for (int i = 0; i < view.getChildCount(); i++) {
+            View child = view.getChildAt(i);
+            int position = view.getChildAdapterPosition(child);
+            if (position == RecyclerView.NO_POSITION) continue;
+            boolean visible = vertical
+                    ? child.getBottom() > 0 && child.getTop() < view.getHeight()
+                    : child.getRight() > 0 && child.getLeft() < view.getWidth();
+            if (visible) {
+                first = Math.min(first, position);
+                last = Math.max(last, position);
+            }
+            see(child, position);
+        }
+        return setVisible(first, last);
+    }
+
+    /**
+     * @return {@code true} if the visible positions changed.
+     */
+    @UiThread
+    public synchronized boolean onLayout(@NonNull AbsListView view) {
+        int first = view.getFirstVisiblePosition();
+        for (int i = 0; i < view.getChildCount(); i++) {
+            see(view.getChildAt(i), first + i);
+        }
+        return setVisible(first, view.getLastVisiblePosition());
+    }
+
+    private boolean setVisible(int first, int last) {
+        if (last < first) return false;
+        boolean changed = first != mFirstVisible || last != mLastVisible;
+        int moved = first != mFirstVisible ? first - mFirstVisible : last - mLastVisible;
+        if (moved != 0 && mLastVisible >= mFirstVisible) {
+            long now = SystemClock.uptimeMillis();
+            if (Integer.signum(moved) == mDirection && mLastMoveTime > 0) {
+                float velocity = Math.abs(moved) * 1000f / Math.max(1, now - mLastMoveTime);
+                mVelocity = mVelocity == 0 ? velocity : (mVelocity + velocity) / 2;
+            } else {
+                mVelocity = 0;
+            }
+            mDirection = Integer.signum(moved);
+            mLastMoveTime = now;
+        }
+        mFirstVisible = first;
+        mLastVisible = last;
+        return changed;
+    }
+
+    private void see(View view, int position) {
+        if (view instanceof ImageView) {
+            if (view.getWidth() > 0 && view.getHeight() > 0) {
+                mExpectedDimen = new DimenSpec(view.getWidth(), view.getHeight());
+            }
+            mPositions.put(mIdCreator.createSettableId(new ImageViewDelegate((ImageView) view)), position);
+        } else if (view instanceof ViewGroup) {
+            ViewGroup group = (ViewGroup) view;
+            for (int i = 0; i < group.getChildCount(); i++) {
+                see(group.getChildAt(i), position);
+            }
+        }
+    }
+
+    /**
+     * @return Number of positions between the row of the holder and the visible ones,
+     * 0 if it is visible, {@link #UNKNOWN} if the holder was not seen in the list.
+     */
+    public synchronized int distanceOf(long holderId) {
+        Integer position = mPositions.get(holderId);
+        if (position == null || mLastVisible < mFirstVisible) return UNKNOWN;
+        if (position < mFirstVisible) return mFirstVisible - position;
+        if (position > mLastVisible) return position - mLastVisible;
+        return 0;
+    }
+
+    /**
+     * @return {@code true} if a task of a holder this far is to be cancelled.
+     */
+    public boolean isBeyondMargin(int distance) {
+        return distance > mPolicy.getCancelMargin();
+    }
+
+    /**
+     * Forget the holders beyond the margin, their tasks were cancelled.
+     */
+    public synchronized void trim() {
+        Iterator<Long> ids = mPositions.keySet().iterator();
+        while (ids.hasNext()) {
+            int distance = distanceOf(ids.next());
+            if (isBeyondMargin(distance)) ids.remove();
+        }
+    }
+
+    /**
+     * The list stopped, the velocity is reset but the direction is kept.
+     */
+    public synchronized void onIdle() {
+        mVelocity = 0;
+        mLastMoveTime = 0;
+    }
+
+    public synchronized int getFirstVisible() {
+        return mFirstVisible;
+    }
+
+    public synchronized int getLastVisible() {
+        return mLastVisible;
+    }
+
+    public synchronized int getDirection() {
+        return mDirection;
+    }
+
+    public synchronized float getVelocity() {
+        return mVelocity;
+    }
+
+    /**
+     * @return Size the images of the list are shown at, {@code null} if none was laid out yet.
+     */
+    @Nullable
+    public synchronized DimenSpec getExpectedDimen() {
+        return mExpectedDimen;
+    }
+
+    public void setFlinging(boolean flinging) {
+        mFlinging = flinging;
+    }
+
+    public boolean isFlinging() {
+        return mFlinging;
+    }
+}
@@ -32,6 +32,10 @@ public class BitmapViewSettings extends ViewSettings<Bitmap> {
         this.mBitmap = bitmap;
     }
 
+    public Bitmap getBitmap() {
+        return mBitmap;
+    }
+
     @Override
     protected void apply() {
         mSeat.seat(mBitmap);
@@ -34,6 +34,11 @@ public abstract class ViewSettings<T> implements Runnable {
         this.mSeat = mediaHolder;
     }
 
+    @NonNull
+    public MediaHolder<T> getSeat() {
+        return mSeat;
+    }
+
     protected abstract void apply();
 
     @Override
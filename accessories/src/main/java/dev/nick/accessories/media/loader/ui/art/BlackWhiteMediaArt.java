@@ -22,10 +22,16 @@ import android.support.annotation.NonNull;
 import dev.nick.accessories.media.loader.ui.MediaHolder;
 import dev.nick.accessories.media.loader.utils.BitmapUtils;
 
-public class BlackWhiteMediaArt implements MediaArt<Bitmap> {
+public class BlackWhiteMediaArt implements StableMediaArt<Bitmap> {
     @NonNull
     @Override
     public Bitmap process(@NonNull Bitmap in, @NonNull MediaHolder<Bitmap> settable) {
         return BitmapUtils.blackAndWhited(in);
     }
+
+    @NonNull
+    @Override
+    public String getSignature() {
+        return "bw";
+    }
 }
@@ -22,7 +22,7 @@ import android.support.annotation.NonNull;
 import dev.nick.accessories.media.loader.ui.MediaHolder;
 import dev.nick.accessories.media.loader.utils.BitmapUtils;
 
-public class BlurMediaArt implements MediaArt<Bitmap> {
+public class BlurMediaArt implements StableMediaArt<Bitmap> {
 
     int radius;
 
@@ -43,4 +43,10 @@ public class BlurMediaArt implements MediaArt<Bitmap> {
             return BitmapUtils.createBlurredBitmap(in);
         }
     }
+
+    @NonNull
+    @Override
+    public String getSignature() {
+        return "blur" + radius;
+    }
 }
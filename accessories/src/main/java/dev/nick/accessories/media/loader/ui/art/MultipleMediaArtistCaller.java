@@ -17,6 +17,7 @@
 package dev.nick.accessories.media.loader.ui.art;
 
 import android.support.annotation.NonNull;
+import android.support.annotation.Nullable;
 import android.support.annotation.WorkerThread;
 
 import java.util.List;
@@ -33,4 +34,20 @@ public abstract class MultipleMediaArtistCaller {
         }
         return in;
     }
+
+    /**
+     * @param arts The art chain.
+     * @return Signature of the whole chain, {@code null} if it is empty or any art is not a {@link StableMediaArt}.
+     */
+    @Nullable
+    public static <T> String signatureOf(@Nullable List<MediaArt<T>> arts) {
+        if (arts == null || arts.isEmpty()) return null;
+        StringBuilder signature = new StringBuilder();
+        for (MediaArt<T> art : arts) {
+            if (!(art instanceof StableMediaArt)) return null;
+            if (signature.length() > 0) signature.append('+');
+            signature.append(((StableMediaArt<T>) art).getSignature());
+        }
+        return signature.toString();
+    }
 }
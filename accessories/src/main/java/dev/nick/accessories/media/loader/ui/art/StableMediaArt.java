@@ -0,0 +1,32 @@
+/*
+ * Copyright (c) 2016 Nick Guo
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+package dev.nick.accessories.media.loader.ui.art;
+
+import android.support.annotation.NonNull;
+
+/**
+ * A {@link MediaArt} whose output only depends on the input and its own params,
+ * the output can be cached and shared by requests using an art with the same signature.
+ */
+public interface StableMediaArt<T> extends MediaArt<T> {
+    /**
+     * @return A string identifying the type and params of this art.
+     */
+    @NonNull
+    String getSignature();
+}
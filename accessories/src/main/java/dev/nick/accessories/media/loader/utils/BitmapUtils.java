@@ -12,7 +12,15 @@
  */
 package dev.nick.accessories.media.loader.utils;
 
+import android.annotation.TargetApi;
+import android.content.res.Resources;
 import android.graphics.Bitmap;
+import android.graphics.BitmapFactory;
+import android.os.Build;
+import android.support.annotation.NonNull;
+import android.support.annotation.Nullable;
+
+import dev.nick.accessories.media.loader.cache.pool.BitmapPool;
 
 /**
  * {@link Bitmap} specific helpers.
@@ -30,6 +38,137 @@ public final class BitmapUtils {
     private BitmapUtils() {
     }
 
+    /**
+     * Returns the number of bytes the given {@link Bitmap} really holds in memory.
+     * On KitKat and above this is the allocation size, which may be larger than
+     * the pixel data when the bitmap was decoded into a reused buffer.
+     *
+     * @param bitmap The {@link Bitmap} to measure.
+     * @return Size in bytes, 0 for a {@code null} bitmap.
+     */
+    @TargetApi(Build.VERSION_CODES.KITKAT)
+    public static int getBitmapByteCount(Bitmap bitmap) {
+        if (bitmap == null) {
+            return 0;
+        }
+        if (Build.VERSION.SDK_INT >= Build.VERSION_CODES.KITKAT) {
+            return bitmap.getAllocationByteCount();
+        }
+        return bitmap.getByteCount();
+    }
+
+    /**
+     * @param config The {@link Bitmap.Config} of a bitmap.
+     * @return Bytes each pixel takes with this config.
+     */
+    public static int getBytesPerPixel(@Nullable Bitmap.Config config) {
+        if (config == null) {
+            return 4;
+        }
+        switch (config) {
+            case ALPHA_8:
+                return 1;
+            case RGB_565:
+            case ARGB_4444:
+                return 2;
+            case ARGB_8888:
+            default:
+                return 4;
+        }
+    }
+
+    /**
+     * Takes a reusable bitmap from the pool and set it as {@link BitmapFactory.Options#inBitmap}.
+     * The bounds must have been decoded into the options already.
+     *
+     * @param options Options with {@link BitmapFactory.Options#outWidth} and
+     *                {@link BitmapFactory.Options#outHeight} set.
+     * @param pool    The pool to take from, nothing happens when {@code null}.
+     */
+    public static void addInBitmapOptions(@NonNull BitmapFactory.Options options, @Nullable BitmapPool pool) {
+        if (pool == null || options.outWidth <= 0 || options.outHeight <= 0) {
+            return;
+        }
+        int sampleSize = Math.max(1, options.inSampleSize);
+        // Before KitKat, only un-sampled decodes into an equally sized bitmap are supported.
+        if (Build.VERSION.SDK_INT < Build.VERSION_CODES.KITKAT && sampleSize != 1) {
+            return;
+        }
+        int width = (options.outWidth + sampleSize - 1) / sampleSize;
+        int height = (options.outHeight + sampleSize - 1) / sampleSize;
+        Bitmap.Config config = options.inPreferredConfig == null
+                ? Bitmap.Config.ARGB_8888
+                : options.inPreferredConfig;
+        options.inMutable = true;
+        Bitmap candidate = pool.get(width, height, config);
+        if (candidate != null) {
+            options.inBitmap = candidate;
+        }
+    }
+
+    /**
+     * Same as {@link BitmapFactory#decodeFile(String, BitmapFactory.Options)}, but decode again
+     * without {@link BitmapFactory.Options#inBitmap} if the reused bitmap was refused.
+     */
+    public static Bitmap decodeFile(@NonNull String path, @Nullable BitmapFactory.Options options) {
+        if (options == null || options.inBitmap == null) {
+            return BitmapFactory.decodeFile(path, options);
+        }
+        Bitmap bitmap;
+        try {
+            bitmap = BitmapFactory.decodeFile(path, options);
+        } catch (IllegalArgumentException e) {
+            bitmap = null;
+        }
+        if (bitmap == null) {
+            options.inBitmap = null;
+            bitmap = BitmapFactory.decodeFile(path, options);
+        }
+        return bitmap;
+    }
+
+    /**
+     * Same as {@link BitmapFactory#decodeByteArray(byte[], int, int, BitmapFactory.Options)}, but decode again
+     * without {@link BitmapFactory.Options#inBitmap} if the reused bitmap was refused.
+     */
+    public static Bitmap decodeByteArray(@NonNull byte[] data, @Nullable BitmapFactory.Options options) {
+        if (options == null || options.inBitmap == null) {
+            return BitmapFactory.decodeByteArray(data, 0, data.length, options);
+        }
+        Bitmap bitmap;
+        try {
+            bitmap = BitmapFactory.decodeByteArray(data, 0, data.length, options);
+        } catch (IllegalArgumentException e) {
+            bitmap = null;
+        }
+        if (bitmap == null) {
+            options.inBitmap = null;
+            bitmap = BitmapFactory.decodeByteArray(data, 0, data.length, options);
+        }
+        return bitmap;
+    }
+
+    /**
+     * Same as {@link BitmapFactory#decodeResource(Resources, int, BitmapFactory.Options)}, but decode again
+     * without {@link BitmapFactory.Options#inBitmap} if the reused bitmap was refused.
+     */
+    public static Bitmap decodeResource(@NonNull Resources res, int id, @Nullable BitmapFactory.Options options) {
+        if (options == null || options.inBitmap == null) {
+            return BitmapFactory.decodeResource(res, id, options);
+        }
+        Bitmap bitmap;
+        try {
+            bitmap = BitmapFactory.decodeResource(res, id, options);
+        } catch (IllegalArgumentException e) {
+            bitmap = null;
+        }
+        if (bitmap == null) {
+            options.inBitmap = null;
+            bitmap = BitmapFactory.decodeResource(res, id, options);
+        }
+        return bitmap;
+    }
+
     /**
      * Takes a bitmap and creates a new slightly blurry version of it.
      *
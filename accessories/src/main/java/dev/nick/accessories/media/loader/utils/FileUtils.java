@@ -17,25 +17,72 @@
 package dev.nick.accessories.media.loader.utils;
 
 import android.support.annotation.NonNull;
+import android.support.annotation.Nullable;
 
+import java.io.BufferedInputStream;
+import java.io.DataInputStream;
 import java.io.File;
 import java.io.FileInputStream;
 import java.io.IOException;
-
-import dev.nick.accessories.logger.LoggerManager;
+import java.io.InputStream;
+import java.util.Arrays;
 
 public abstract class FileUtils {
     public static long getFileSize(@NonNull File f) {
-        long s = 0;
-        if (Preconditions.checkNotNull(f).exists()) {
-            FileInputStream fis;
+        return Preconditions.checkNotNull(f).exists() ? f.length() : 0;
+    }
+
+    /**
+     * @return All bytes of a small file, {@code null} if it can not be read.
+     */
+    @Nullable
+    public static byte[] readBytes(@NonNull File f) {
+        try {
+            DataInputStream in = new DataInputStream(new FileInputStream(f));
+            try {
+                byte[] data = new byte[(int) f.length()];
+                in.readFully(data);
+                return data;
+            } finally {
+                in.close();
+            }
+        } catch (IOException e) {
+            return null;
+        }
+    }
+
+    /**
+     * @return {@code true} if both files can be read and have the same bytes.
+     */
+    public static boolean contentEquals(@NonNull File a, @NonNull File b) {
+        if (!a.exists() || !b.exists() || a.length() != b.length()) return false;
+        try {
+            InputStream inA = new BufferedInputStream(new FileInputStream(a));
             try {
-                fis = new FileInputStream(f);
-                s = fis.available();
-            } catch (IOException e) {
-                LoggerManager.getLogger(FileUtils.class).trace("IOException occur:", e);
+                InputStream inB = new BufferedInputStream(new FileInputStream(b));
+                try {
+                    int read;
+                    while ((read = inA.read()) != -1) {
+                        if (read != inB.read()) return false;
+                    }
+                    return inB.read() == -1;
+                } finally {
+                    inB.close();
+                }
+            } finally {
+                inA.close();
             }
+        } catch (IOException e) {
+            return false;
         }
-        return s;
+    }
+
+    /**
+     * @return {@code true} if the file can be read and has the same bytes as the data.
+     */
+    public static boolean contentEquals(@NonNull byte[] data, @NonNull File f) {
+        if (f.length() != data.length) return false;
+        byte[] bytes = readBytes(f);
+        return bytes != null && Arrays.equals(data, bytes);
     }
 }
@@ -0,0 +1,134 @@
+/*
+ * Copyright (c) 2016 Nick Guo
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package dev.nick.accessories.media.loader.utils;
+
+import android.support.annotation.NonNull;
+
+/**
+ * MurmurHash3 x64 128 bit, over the UTF-16 code units of a string in little endian order,
+ * so no byte array is made for hashing it.
+ */
+public abstract class Murmur3 {
+
+    private static final long C1 = 0x87c37b91114253d5L;
+    private static final long C2 = 0x4cf5ad432745937fL;
+
+    private static final ThreadLocal<long[]> sOut = new ThreadLocal<long[]>() {
+        @Override
+        protected long[] initialValue() {
+            return new long[2];
+        }
+    };
+
+    /**
+     * @param s    String to hash.
+     * @param seed Seed of the hash.
+     * @param out  Takes the two halves of the hash, at least 2 long.
+     */
+    public static void hash128(@NonNull CharSequence s, long seed, @NonNull long[] out) {
+        int length = s.length();
+        long h1 = seed;
+        long h2 = seed;
+
+        int blocks = length / 8;
+        for (int i = 0; i < blocks; i++) {
+            int index = i * 8;
+            long k1 = lane(s, index);
+            long k2 = lane(s, index + 4);
+
+            h1 ^= mixK1(k1);
+            h1 = Long.rotateLeft(h1, 27);
+            h1 += h2;
+            h1 = h1 * 5 + 0x52dce729;
+
+            h2 ^= mixK2(k2);
+            h2 = Long.rotateLeft(h2, 31);
+            h2 += h1;
+            h2 = h2 * 5 + 0x38495ab5;
+        }
+
+        int tail = blocks * 8;
+        int remaining = length - tail;
+        if (remaining > 4) {
+            long k2 = 0;
+            for (int i = remaining - 1; i >= 4; i--) {
+                k2 = (k2 << 16) | s.charAt(tail + i);
+            }
+            h2 ^= mixK2(k2);
+        }
+        if (remaining > 0) {
+            long k1 = 0;
+            for (int i = Math.min(remaining, 4) - 1; i >= 0; i--) {
+                k1 = (k1 << 16) | s.charAt(tail + i);
+            }
+            h1 ^= mixK1(k1);
+        }
+
+        long bytes = length * 2L;
+        h1 ^= bytes;
+        h2 ^= bytes;
+        h1 += h2;
+        h2 += h1;
+        h1 = fmix(h1);
+        h2 = fmix(h2);
+        h1 += h2;
+        h2 += h1;
+
+        out[0] = h1;
+        out[1] = h2;
+    }
+
+    /**
+     * @return The first half of {@link #hash128(CharSequence, long, long[])}.
+     */
+    public static long hash64(@NonNull CharSequence s, long seed) {
+        long[] out = sOut.get();
+        hash128(s, seed, out);
+        return out[0];
+    }
+
+    // Four chars, the first one in the lowest bits.
+    private static long lane(CharSequence s, int index) {
+        return (long) s.charAt(index)
+                | (long) s.charAt(index + 1) << 16
+                | (long) s.charAt(index + 2) << 32
+                | (long) s.charAt(index + 3) << 48;
+    }
+
+    private static long mixK1(long k1) {
+        k1 *= C1;
+        k1 = Long.rotateLeft(k1, 31);
+        k1 *= C2;
+        return k1;
+    }
+
+    private static long mixK2(long k2) {
+        k2 *= C2;
+        k2 = Long.rotateLeft(k2, 33);
+        k2 *= C1;
+        return k2;
+    }
+
+    private static long fmix(long k) {
+        k ^= k >>> 33;
+        k *= 0xff51afd7ed558ccdL;
+        k ^= k >>> 33;
+        k *= 0xc4ceb9fe1a85ec53L;
+        k ^= k >>> 33;
+        return k;
+    }
+}
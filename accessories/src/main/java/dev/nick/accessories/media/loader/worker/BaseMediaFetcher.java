@@ -17,10 +17,13 @@
 package dev.nick.accessories.media.loader.worker;
 
 import android.content.Context;
+import android.graphics.Bitmap;
 import android.graphics.BitmapFactory;
 import android.support.annotation.NonNull;
 import android.support.annotation.Nullable;
 
+import java.util.concurrent.Callable;
+import java.util.concurrent.CancellationException;
 import java.util.concurrent.atomic.AtomicBoolean;
 
 import dev.nick.accessories.media.loader.LoaderConfig;
@@ -88,6 +91,80 @@ public class BaseMediaFetcher<T> implements MediaFetcher<T> {
         if (listener != null) listener.onProgressUpdate(progress);
     }
 
+    /**
+     * Decode with {@link #decodeCancellable(DecodeSpec, BitmapFactory.Options, Callable)}, then give
+     * the bitmap to the listener. If the spec has a {@link Pipeline} the decode goes to its decode stage
+     * and this returns at once, the listeners are called from there: with the bitmap, with an error,
+     * or {@link ProgressListener#onCancel()} if the decode is cancelled or the stage is shut down.
+     *
+     * @return The bitmap, {@code null} if the decode failed or is handed over.
+     * @throws CancellationException If cancelled before or while decoding on this thread.
+     */
+    @Nullable
+    protected static Bitmap decodeAndComplete(@NonNull final DecodeSpec spec,
+                                              @NonNull final BitmapFactory.Options options,
+                                              @NonNull final Callable<Bitmap> decode,
+                                              @Nullable final ProgressListener<Bitmap> progressListener,
+                                              @Nullable final ErrorListener errorListener) throws Exception {
+        Pipeline pipeline = spec.getPipeline();
+        if (pipeline == null) {
+            Bitmap bitmap;
+            try {
+                bitmap = decodeCancellable(spec, options, decode);
+            } catch (OutOfMemoryError error) {
+                if (errorListener != null) errorListener.onError(new Cause(error));
+                return null;
+            }
+            if (progressListener != null) progressListener.onComplete(bitmap);
+            return bitmap;
+        }
+        spec.handedOff = true;
+        boolean accepted = pipeline.submit(Pipeline.Stage.DECODE, new Runnable() {
+            @Override
+            public void run() {
+                Bitmap bitmap;
+                try {
+                    bitmap = decodeCancellable(spec, options, decode);
+                } catch (CancellationException e) {
+                    if (progressListener != null) progressListener.onCancel();
+                    return;
+                } catch (Exception e) {
+                    if (errorListener != null) errorListener.onError(new Cause(e));
+                    return;
+                } catch (OutOfMemoryError error) {
+                    if (errorListener != null) errorListener.onError(new Cause(error));
+                    return;
+                }
+                if (progressListener != null) progressListener.onComplete(bitmap);
+            }
+        });
+        if (!accepted && progressListener != null) progressListener.onCancel();
+        return null;
+    }
+
+    /**
+     * Run a decode a cancel of the spec aborts, through {@link BitmapFactory.Options#requestCancelDecode()}.
+     *
+     * @param options The options the decode uses.
+     * @throws CancellationException If cancelled before or while decoding.
+     */
+    protected static Bitmap decodeCancellable(@NonNull DecodeSpec spec, @NonNull BitmapFactory.Options options,
+                                              @NonNull Callable<Bitmap> decode) throws Exception {
+        CancelSignal signal = spec.getCancelSignal();
+        signal.cancelDecodeOnCancel(options);
+        Bitmap bitmap;
+        try {
+            bitmap = decode.call();
+        } finally {
+            signal.setOnCancelListener(null);
+        }
+        if (bitmap == null && signal.isCancelled()) {
+            signal.onDecodeAborted();
+            throw new CancellationException();
+        }
+        return bitmap;
+    }
+
     /*
      * Compute the sample size as a function of minSideLength
      * and maxNumOfPixels.
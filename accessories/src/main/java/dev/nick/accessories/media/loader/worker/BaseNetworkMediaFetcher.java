@@ -20,7 +20,10 @@ import android.content.Context;
 import android.support.annotation.NonNull;
 import android.support.annotation.Nullable;
 
+import java.io.File;
+
 import dev.nick.accessories.media.loader.LoaderConfig;
+import dev.nick.accessories.media.loader.cache.OriginalCommitter;
 import dev.nick.accessories.media.loader.worker.network.DownloadManager;
 import dev.nick.accessories.media.loader.worker.network.DownloadManagerImpl;
 import dev.nick.accessories.media.loader.worker.result.ErrorListener;
@@ -59,6 +62,8 @@ public class BaseNetworkMediaFetcher<T> extends BaseMediaFetcher<T> {
         transaction.setUrl(url);
         transaction.setErrorListener(errorListener);
         transaction.setProgressListener(progressListener);
+        transaction.setCancelSignal(decodeSpec.getCancelSignal());
+        transaction.setRetries(decodeSpec.getRetries());
 
         callOnStart(progressListener);
 
@@ -66,11 +71,16 @@ public class BaseNetworkMediaFetcher<T> extends BaseMediaFetcher<T> {
 
         boolean ok = receivedPath != null;
 
-        if (ok)
-            return mFileMediaFetcher.fetchFromUrl(MediaSource.Prefix.FILE + receivedPath, decodeSpec,
-                    progressListener, errorListener);
+        if (!ok) return null;
+
+        // Only keep bytes we can decode, once decoded, which may be on the decode stage.
+        OriginalCommitter committer = decodeSpec.getOriginalCommitter();
+        if (committer != null) {
+            progressListener = new CommittingListener<>(progressListener, committer, url, new File(receivedPath));
+        }
 
-        return null;
+        return mFileMediaFetcher.fetchFromUrl(MediaSource.Prefix.FILE + receivedPath, decodeSpec,
+                progressListener, errorListener);
     }
 
     @Override
@@ -78,4 +88,46 @@ public class BaseNetworkMediaFetcher<T> extends BaseMediaFetcher<T> {
         super.terminate();
         mDownloadManager.terminate();
     }
+
+    /**
+     * Commits the download as an original once it is decoded, the committed one may be packed
+     * and not a file any more.
+     */
+    private static class CommittingListener<T> implements ProgressListener<T> {
+
+        @Nullable
+        private final ProgressListener<T> mListener;
+        private final OriginalCommitter mCommitter;
+        private final String mUrl;
+        private final File mReceived;
+
+        CommittingListener(@Nullable ProgressListener<T> listener, OriginalCommitter committer,
+                           String url, File received) {
+            mListener = listener;
+            mCommitter = committer;
+            mUrl = url;
+            mReceived = received;
+        }
+
+        @Override
+        public void onStartLoading() {
+            if (mListener != null) mListener.onStartLoading();
+        }
+
+        @Override
+        public void onProgressUpdate(float progress) {
+            if (mListener != null) mListener.onProgressUpdate(progress);
+        }
+
+        @Override
+        public void onCancel() {
+            if (mListener != null) mListener.onCancel();
+        }
+
+        @Override
+        public void onComplete(T result) {
+            if (mListener != null) mListener.onComplete(result);
+            if (result != null) mCommitter.commitOriginal(mUrl, mReceived);
+        }
+    }
 }
@@ -0,0 +1,151 @@
+/*
+ * Copyright (c) 2016 Nick Guo
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package dev.nick.accessories.media.loader.worker;
+
+import android.graphics.BitmapFactory;
+import android.support.annotation.NonNull;
+import android.support.annotation.Nullable;
+
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Tells the work of a task it was cancelled, so it aborts what it is blocked on instead of
+ * finishing a result nobody wants. Work checks {@link #isCancelled()} between steps and sets an
+ * {@link OnCancelListener} around a blocking call, a download or a decode, to abort it.
+ */
+public class CancelSignal {
+
+    @Nullable
+    private final Counter mCounter;
+
+    private boolean mCancelled;
+    @Nullable
+    private OnCancelListener mListener;
+
+    public CancelSignal() {
+        this(null);
+    }
+
+    /**
+     * @param counter Where aborted work is counted, {@code null} if not counted.
+     */
+    public CancelSignal(@Nullable Counter counter) {
+        mCounter = counter;
+    }
+
+    /**
+     * Cancel the work, aborting the blocking call it is in if any. Does not block.
+     */
+    public void cancel() {
+        OnCancelListener listener;
+        synchronized (this) {
+            if (mCancelled) return;
+            mCancelled = true;
+            listener = mListener;
+            mListener = null;
+        }
+        if (mCounter != null) mCounter.cancels.incrementAndGet();
+        if (listener != null) listener.onCancel();
+    }
+
+    public synchronized boolean isCancelled() {
+        return mCancelled;
+    }
+
+    /**
+     * @throws CancellationException If cancelled.
+     */
+    public void throwIfCancelled() {
+        if (isCancelled()) throw new CancellationException();
+    }
+
+    /**
+     * @param listener Aborts the blocking call about to be made, called at once if already cancelled.
+     *                 {@code null} once the call returned.
+     */
+    public void setOnCancelListener(@Nullable OnCancelListener listener) {
+        synchronized (this) {
+            if (!mCancelled) {
+                mListener = listener;
+                return;
+            }
+        }
+        if (listener != null) listener.onCancel();
+    }
+
+    /**
+     * Abort a decode using these options on cancel, until the listener is cleared.
+     */
+    public void cancelDecodeOnCancel(@NonNull final BitmapFactory.Options options) {
+        setOnCancelListener(new OnCancelListener() {
+            @Override
+            public void onCancel() {
+                options.requestCancelDecode();
+            }
+        });
+    }
+
+    /**
+     * @param read  Bytes of the content read when it was aborted.
+     * @param total Size of the content, -1 if not known.
+     * @param kept  Bytes kept to be resumed.
+     */
+    public void onDownloadAborted(long read, long total, long kept) {
+        if (mCounter == null) return;
+        mCounter.abortedDownloads.incrementAndGet();
+        if (total > read) mCounter.savedBytes.addAndGet(total - read);
+        mCounter.keptBytes.addAndGet(kept);
+    }
+
+    /**
+     * A decode was skipped or cut by a cancel.
+     */
+    public void onDecodeAborted() {
+        if (mCounter == null) return;
+        mCounter.abortedDecodes.incrementAndGet();
+    }
+
+    public interface OnCancelListener {
+        /**
+         * Called on the thread cancelling, must not block.
+         */
+        void onCancel();
+    }
+
+    /**
+     * Counts the work aborted by the signals created with it.
+     */
+    public static class Counter {
+
+        private final AtomicLong cancels = new AtomicLong();
+        private final AtomicLong abortedDownloads = new AtomicLong();
+        private final AtomicLong savedBytes = new AtomicLong();
+        private final AtomicLong keptBytes = new AtomicLong();
+        private final AtomicLong abortedDecodes = new AtomicLong();
+
+        @NonNull
+        public CancelStats getStats() {
+            return new CancelStats(
+                    cancels.get(),
+                    abortedDownloads.get(),
+                    savedBytes.get(),
+                    keptBytes.get(),
+                    abortedDecodes.get());
+        }
+    }
+}
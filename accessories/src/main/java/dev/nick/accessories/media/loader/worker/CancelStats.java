@@ -0,0 +1,42 @@
+/*
+ * Copyright (c) 2016 Nick Guo
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package dev.nick.accessories.media.loader.worker;
+
+import lombok.AccessLevel;
+import lombok.AllArgsConstructor;
+import lombok.Getter;
+import lombok.ToString;
+
+/**
+ * Snapshot of the work cancelled tasks did not do.
+ */
+@Getter
+@ToString
+@AllArgsConstructor(access = AccessLevel.PACKAGE)
+public class CancelStats {
+
+    // Tasks cancelled before they finished.
+    private long cancelCount;
+    // Downloads cut by a cancel.
+    private long abortedDownloadCount;
+    // Bytes the cut downloads did not read, counted only if the length was known.
+    private long savedBytes;
+    // Bytes the cut downloads kept to be resumed instead of read again.
+    private long keptBytes;
+    // Decodes skipped or cut by a cancel.
+    private long abortedDecodeCount;
+}
@@ -16,8 +16,14 @@
 
 package dev.nick.accessories.media.loader.worker;
 
+import android.support.annotation.NonNull;
+import android.support.annotation.Nullable;
+
+import dev.nick.accessories.media.loader.cache.OriginalCommitter;
+import dev.nick.accessories.media.loader.cache.pool.BitmapPool;
 import dev.nick.accessories.media.loader.ui.MediaQuality;
 import lombok.Getter;
+import lombok.Setter;
 import lombok.ToString;
 
 @ToString
@@ -27,9 +33,48 @@ public class DecodeSpec {
     MediaQuality quality;
     DimenSpec dimenSpec;
 
+    // Where to take inBitmap candidates from, null if reusing is disabled.
+    @Setter
+    @Nullable
+    BitmapPool bitmapPool;
+
+    // Where to keep downloaded files, null if they are not kept as originals.
+    @Setter
+    @Nullable
+    OriginalCommitter originalCommitter;
+
+    // Where decodes and art chains are handed over to, null to run them on the fetching thread.
+    @Setter
+    @Nullable
+    Pipeline pipeline;
+
+    // The decode went to the pipeline, the listeners get its result from there.
+    boolean handedOff;
+
+    // Failed downloads of the task run again later, the delay grows with it.
+    @Setter
+    int retries;
+
+    // Cancelled with the task decoding with this spec.
+    @Setter
+    @NonNull
+    CancelSignal cancelSignal = new CancelSignal();
+
     public DecodeSpec(MediaQuality quality, DimenSpec dimenSpec) {
         this.quality = quality;
         this.dimenSpec = dimenSpec;
     }
 
+    /**
+     * @return A copy of this spec not cancelled with the task, for work outliving it,
+     * which decodes on its own thread.
+     */
+    @NonNull
+    public DecodeSpec detached() {
+        DecodeSpec spec = new DecodeSpec(quality, dimenSpec);
+        spec.bitmapPool = bitmapPool;
+        spec.originalCommitter = originalCommitter;
+        return spec;
+    }
+
 }
\ No newline at end of file
@@ -71,5 +71,9 @@ public abstract class MediaSource<X> {
         String CONTENT = "content://";
         String HTTP = "http://";
         String HTTPS = "https://";
+        // Entries of the packed disk cache, see PackedBlobStore.
+        String PACKED = "packed://";
+        // Raw pixel files of the disk cache, see RawPixels.
+        String PIXELS = "pixels://";
     }
 }
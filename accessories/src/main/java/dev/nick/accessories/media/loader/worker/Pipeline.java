@@ -0,0 +1,151 @@
+/*
+ * Copyright (c) 2016 Nick Guo
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package dev.nick.accessories.media.loader.worker;
+
+import android.os.Process;
+import android.os.SystemClock;
+import android.support.annotation.NonNull;
+
+import java.util.concurrent.RejectedExecutionException;
+
+import dev.nick.accessories.logger.Logger;
+import dev.nick.accessories.logger.LoggerManager;
+import dev.nick.accessories.media.loader.queue.Dispatcher;
+import dev.nick.accessories.media.loader.queue.QuotaExecutor;
+
+/**
+ * Stages of a display after its fetch. The task fetching hands its decode over to the decode stage
+ * and returns, the decode hands the art chain over to the art stage, and the result completes the task
+ * from the stage it ends on. Each stage is a bounded executor sized to the cores, so a slow fetch holds
+ * no decode slot and a decode never waits for a fetch slot.
+ * <p>
+ * Each hand-off is counted in the {@link StageStats} of its stage.
+ */
+public class Pipeline {
+
+    public enum Stage {
+        DECODE,
+        ART
+    }
+
+    private final QuotaExecutor[] mServices = new QuotaExecutor[Stage.values().length];
+    private final Counter[] mCounters = new Counter[Stage.values().length];
+
+    private final Logger mLogger;
+
+    /**
+     * @param name Suffix of the names of the stage threads.
+     */
+    public Pipeline(@NonNull String name, int decodeThreads, int artThreads) {
+        mServices[Stage.DECODE.ordinal()] = Dispatcher.shared().newExecutor("DecodeService" + name, decodeThreads);
+        mServices[Stage.ART.ordinal()] = Dispatcher.shared().newExecutor("ArtService" + name, artThreads);
+        for (int i = 0; i < mCounters.length; i++) {
+            mCounters[i] = new Counter();
+        }
+        mLogger = LoggerManager.getLogger(getClass());
+    }
+
+    /**
+     * Hand the work over to the stage, the caller goes on at once.
+     *
+     * @return {@code false} if the stage is shut down, the work is dropped then.
+     */
+    public boolean submit(@NonNull final Stage stage, @NonNull final Runnable work) {
+        final Counter counter = mCounters[stage.ordinal()];
+        final long handedAt = SystemClock.uptimeMillis();
+        counter.onHandOff();
+        try {
+            mServices[stage.ordinal()].execute(new Runnable() {
+                @Override
+                public void run() {
+                    long startedAt = SystemClock.uptimeMillis();
+                    counter.onStart(startedAt - handedAt);
+                    Process.setThreadPriority(Process.THREAD_PRIORITY_BACKGROUND);
+                    try {
+                        work.run();
+                    } catch (RuntimeException e) {
+                        mLogger.trace("Failed on stage " + stage, e);
+                    } finally {
+                        counter.onEnd(SystemClock.uptimeMillis() - startedAt);
+                    }
+                }
+            });
+        } catch (RejectedExecutionException e) {
+            counter.onDropped();
+            return false;
+        }
+        return true;
+    }
+
+    @NonNull
+    public StageStats getStats(@NonNull Stage stage) {
+        return mCounters[stage.ordinal()].getStats(mServices[stage.ordinal()]);
+    }
+
+    /**
+     * Refuse new hand-offs, the ones already queued still run and end with the cancel of their tasks.
+     */
+    public void shutdown() {
+        for (QuotaExecutor service : mServices) {
+            service.shutdown();
+        }
+    }
+
+    private static class Counter {
+
+        private int mHandOffCount;
+        private int mDroppedCount;
+        private int mStartedCount;
+        private int mRunning;
+        private long mTotalWaitMillis;
+        private long mMaxWaitMillis;
+        private long mTotalRunMillis;
+
+        synchronized void onHandOff() {
+            mHandOffCount++;
+        }
+
+        synchronized void onStart(long waitMillis) {
+            mStartedCount++;
+            mRunning++;
+            mTotalWaitMillis += waitMillis;
+            mMaxWaitMillis = Math.max(mMaxWaitMillis, waitMillis);
+        }
+
+        synchronized void onEnd(long runMillis) {
+            mRunning--;
+            mTotalRunMillis += runMillis;
+        }
+
+        synchronized void onDropped() {
+            mDroppedCount++;
+        }
+
+        synchronized StageStats getStats(QuotaExecutor service) {
+            return new StageStats(
+                    mHandOffCount,
+                    mDroppedCount,
+                    mStartedCount,
+                    service.getQueue().size(),
+                    mRunning,
+                    service.getQuota(),
+                    mTotalWaitMillis,
+                    mMaxWaitMillis,
+                    mTotalRunMillis);
+        }
+    }
+}
@@ -0,0 +1,47 @@
+/*
+ * Copyright (c) 2016 Nick Guo
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package dev.nick.accessories.media.loader.worker;
+
+import lombok.AccessLevel;
+import lombok.AllArgsConstructor;
+import lombok.Getter;
+import lombok.ToString;
+
+/**
+ * Counters of the hand-offs to a {@link Pipeline.Stage}, times are in millis.
+ */
+@Getter
+@ToString
+@AllArgsConstructor(access = AccessLevel.PACKAGE)
+public class StageStats {
+
+    private int handOffCount;
+    // Refused as the stage is shut down.
+    private int droppedCount;
+    private int startedCount;
+    private int pendingCount;
+    private int runningCount;
+    private int quota;
+    // From the hand-off to the start on a stage thread.
+    private long totalWaitMillis;
+    private long maxWaitMillis;
+    private long totalRunMillis;
+
+    public long getAverageWaitMillis() {
+        return startedCount == 0 ? 0 : totalWaitMillis / startedCount;
+    }
+}
@@ -26,6 +26,7 @@ import android.support.annotation.Nullable;
 import java.io.IOException;
 import java.io.InputStream;
 
+import dev.nick.accessories.media.loader.utils.BitmapUtils;
 import dev.nick.accessories.media.loader.worker.BaseMediaFetcher;
 import dev.nick.accessories.media.loader.worker.DecodeSpec;
 import dev.nick.accessories.media.loader.worker.DimenSpec;
@@ -85,10 +86,19 @@ public class AssetsMediaFetcher extends BaseMediaFetcher<Bitmap> {
                         MAX_NUM_PIXELS_THUMBNAIL
                         : dimenSpec.width * dimenSpec.height));
 
+        BitmapUtils.addInBitmapOptions(decodeOptions, decodeSpec.getBitmapPool());
+
         Bitmap tempBitmap;
 
         try {
-            tempBitmap = BitmapFactory.decodeStream(in, rect, decodeOptions);
+            tempBitmap = decodeStream(in, rect, decodeOptions);
+            if (tempBitmap == null && decodeOptions.inBitmap != null) {
+                // The reused bitmap is not suitable, decode again into a new one.
+                decodeOptions.inBitmap = null;
+                @Cleanup
+                InputStream retry = mAssets.open(path);
+                tempBitmap = BitmapFactory.decodeStream(retry, rect, decodeOptions);
+            }
         } catch (OutOfMemoryError error) {
             callOnError(errorListener, new Cause(error));
             return null;
@@ -96,4 +106,13 @@ public class AssetsMediaFetcher extends BaseMediaFetcher<Bitmap> {
         callOnComplete(progressListener, tempBitmap);
         return tempBitmap;
     }
+
+    private Bitmap decodeStream(InputStream in, Rect rect, BitmapFactory.Options options) {
+        try {
+            return BitmapFactory.decodeStream(in, rect, options);
+        } catch (IllegalArgumentException e) {
+            if (options.inBitmap == null) throw e;
+            return null;
+        }
+    }
 }
@@ -37,6 +37,8 @@ public class BitmapSource extends MediaSource<Bitmap> {
     public static final BitmapSource CONTENT = new ContentSource();
     public static final BitmapSource HTTP = new HttpSource();
     public static final BitmapSource HTTPS = new HttpsSource();
+    public static final BitmapSource PACKED = new PackedSource();
+    public static final BitmapSource PIXELS = new PixelsSource();
 
     private static final List<BitmapSource> BITMAP_IMAGE_SOURCES = new ArrayList<>();
 
@@ -48,6 +50,8 @@ public class BitmapSource extends MediaSource<Bitmap> {
         addBitmapSource(CONTENT);
         addBitmapSource(HTTP);
         addBitmapSource(HTTPS);
+        addBitmapSource(PACKED);
+        addBitmapSource(PIXELS);
     }
 
     public BitmapSource(MediaFetcher<Bitmap> fetcher, String prefix) {
@@ -192,6 +196,30 @@ public class BitmapSource extends MediaSource<Bitmap> {
         }
     }
 
+    static class PackedSource extends BitmapSource {
+
+        public PackedSource() {
+            super(new PackedMediaFetcher(new PathSplitter<String>() {
+                @Override
+                public String getRealPath(@NonNull String fullPath) {
+                    return fullPath.substring(Prefix.PACKED.length(), fullPath.length());
+                }
+            }), Prefix.PACKED);
+        }
+    }
+
+    static class PixelsSource extends BitmapSource {
+
+        public PixelsSource() {
+            super(new PixelsMediaFetcher(new PathSplitter<String>() {
+                @Override
+                public String getRealPath(@NonNull String fullPath) {
+                    return fullPath.substring(Prefix.PIXELS.length(), fullPath.length());
+                }
+            }), Prefix.PIXELS);
+        }
+    }
+
     private static class HookedFileMediaFetcher extends FileMediaFetcher {
 
         public HookedFileMediaFetcher(PathSplitter<String> splitter) {
@@ -23,7 +23,10 @@ import android.support.annotation.Nullable;
 
 import java.io.File;
 import java.io.FileNotFoundException;
+import java.util.concurrent.Callable;
 
+import dev.nick.accessories.media.loader.cache.pool.BitmapPool;
+import dev.nick.accessories.media.loader.utils.BitmapUtils;
 import dev.nick.accessories.media.loader.utils.Preconditions;
 import dev.nick.accessories.media.loader.worker.BaseMediaFetcher;
 import dev.nick.accessories.media.loader.worker.DecodeSpec;
@@ -47,7 +50,7 @@ public class FileMediaFetcher extends BaseMediaFetcher<Bitmap> {
 
         super.fetchFromUrl(url, decodeSpec, progressListener, errorListener);
 
-        String path = mSplitter.getRealPath(url);
+        final String path = mSplitter.getRealPath(url);
 
         File file = new File(path);
         if (!file.exists()) {
@@ -57,6 +60,7 @@ public class FileMediaFetcher extends BaseMediaFetcher<Bitmap> {
 
         BitmapFactory.Options decodeOptions = null;
         DimenSpec dimenSpec = decodeSpec.getDimenSpec();
+        BitmapPool bitmapPool = decodeSpec.getBitmapPool();
 
         callOnStart(progressListener);
 
@@ -79,17 +83,25 @@ public class FileMediaFetcher extends BaseMediaFetcher<Bitmap> {
                 break;
         }
 
-        Bitmap bitmap;
-
-        try {
-            bitmap = BitmapFactory.decodeFile(path, decodeOptions);
-        } catch (OutOfMemoryError error) {
-            callOnError(errorListener, new Cause(error));
-            return null;
+        if (bitmapPool != null) {
+            if (decodeOptions == null) {
+                decodeOptions = new BitmapFactory.Options();
+                decodeOptions.inJustDecodeBounds = true;
+                BitmapFactory.decodeFile(path, decodeOptions);
+                decodeOptions.inJustDecodeBounds = false;
+            }
+            BitmapUtils.addInBitmapOptions(decodeOptions, bitmapPool);
         }
 
-        callOnComplete(progressListener, bitmap);
-        return bitmap;
+        // Default options, only to have something to cancel.
+        final BitmapFactory.Options options = decodeOptions != null ? decodeOptions : new BitmapFactory.Options();
+
+        return decodeAndComplete(decodeSpec, options, new Callable<Bitmap>() {
+            @Override
+            public Bitmap call() {
+                return BitmapUtils.decodeFile(path, options);
+            }
+        }, progressListener, errorListener);
     }
 
     @Override
@@ -0,0 +1,107 @@
+/*
+ * Copyright (c) 2016 Nick Guo
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package dev.nick.accessories.media.loader.worker.bitmap;
+
+import android.graphics.Bitmap;
+import android.graphics.BitmapFactory;
+import android.support.annotation.NonNull;
+import android.support.annotation.Nullable;
+
+import java.io.FileNotFoundException;
+import java.util.concurrent.Callable;
+
+import dev.nick.accessories.media.loader.cache.disk.PackedBlobStore;
+import dev.nick.accessories.media.loader.cache.pool.BitmapPool;
+import dev.nick.accessories.media.loader.utils.BitmapUtils;
+import dev.nick.accessories.media.loader.utils.Preconditions;
+import dev.nick.accessories.media.loader.worker.BaseMediaFetcher;
+import dev.nick.accessories.media.loader.worker.DecodeSpec;
+import dev.nick.accessories.media.loader.worker.DimenSpec;
+import dev.nick.accessories.media.loader.worker.PathSplitter;
+import dev.nick.accessories.media.loader.worker.ProgressListener;
+import dev.nick.accessories.media.loader.worker.result.Cause;
+import dev.nick.accessories.media.loader.worker.result.ErrorListener;
+
+/**
+ * Decodes the entries of a {@link PackedBlobStore}.
+ */
+public class PackedMediaFetcher extends BaseMediaFetcher<Bitmap> {
+
+    public PackedMediaFetcher(PathSplitter<String> splitter) {
+        super(splitter);
+    }
+
+    @Override
+    public Bitmap fetchFromUrl(@NonNull String url,
+                               @NonNull DecodeSpec decodeSpec,
+                               @Nullable ProgressListener<Bitmap> progressListener,
+                               @Nullable ErrorListener errorListener) throws Exception {
+
+        super.fetchFromUrl(url, decodeSpec, progressListener, errorListener);
+
+        String[] dirAndName = PackedBlobStore.splitPath(mSplitter.getRealPath(url));
+        PackedBlobStore store = dirAndName == null ? null : PackedBlobStore.find(dirAndName[0]);
+        final byte[] data = store == null ? null : store.read(dirAndName[1]);
+        if (data == null) {
+            callOnError(errorListener, new Cause(new FileNotFoundException(String.format("Entry %s not found.", url))));
+            return null;
+        }
+
+        BitmapFactory.Options decodeOptions = null;
+        DimenSpec dimenSpec = decodeSpec.getDimenSpec();
+        BitmapPool bitmapPool = decodeSpec.getBitmapPool();
+
+        callOnStart(progressListener);
+
+        switch (decodeSpec.getQuality()) {
+            case OPT:
+                Preconditions.checkNotNull(dimenSpec, "Spec can not be null when defined quality which not RAW");
+                decodeOptions = new BitmapFactory.Options();
+                decodeOptions.inJustDecodeBounds = true;
+                BitmapFactory.decodeByteArray(data, 0, data.length, decodeOptions);
+
+                decodeOptions.inJustDecodeBounds = false;
+                decodeOptions.inSampleSize =
+                        computeSampleSize(decodeOptions, UNCONSTRAINED,
+                                (dimenSpec.width * dimenSpec.height == 0 ?
+                                        MAX_NUM_PIXELS_THUMBNAIL
+                                        : dimenSpec.width * dimenSpec.height));
+            default:
+                break;
+        }
+
+        if (bitmapPool != null) {
+            if (decodeOptions == null) {
+                decodeOptions = new BitmapFactory.Options();
+                decodeOptions.inJustDecodeBounds = true;
+                BitmapFactory.decodeByteArray(data, 0, data.length, decodeOptions);
+                decodeOptions.inJustDecodeBounds = false;
+            }
+            BitmapUtils.addInBitmapOptions(decodeOptions, bitmapPool);
+        }
+
+        // Default options, only to have something to cancel.
+        final BitmapFactory.Options options = decodeOptions != null ? decodeOptions : new BitmapFactory.Options();
+
+        return decodeAndComplete(decodeSpec, options, new Callable<Bitmap>() {
+            @Override
+            public Bitmap call() {
+                return BitmapUtils.decodeByteArray(data, options);
+            }
+        }, progressListener, errorListener);
+    }
+}
@@ -0,0 +1,81 @@
+/*
+ * Copyright (c) 2016 Nick Guo
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package dev.nick.accessories.media.loader.worker.bitmap;
+
+import android.graphics.Bitmap;
+import android.support.annotation.NonNull;
+import android.support.annotation.Nullable;
+
+import java.io.File;
+import java.io.FileNotFoundException;
+import java.io.IOException;
+
+import dev.nick.accessories.media.loader.cache.disk.RawPixels;
+import dev.nick.accessories.media.loader.worker.BaseMediaFetcher;
+import dev.nick.accessories.media.loader.worker.DecodeSpec;
+import dev.nick.accessories.media.loader.worker.PathSplitter;
+import dev.nick.accessories.media.loader.worker.ProgressListener;
+import dev.nick.accessories.media.loader.worker.result.Cause;
+import dev.nick.accessories.media.loader.worker.result.ErrorListener;
+
+/**
+ * Reads the {@link RawPixels} files of the disk cache, they are already the size of the
+ * requested variant so the decode spec is not looked at.
+ */
+public class PixelsMediaFetcher extends BaseMediaFetcher<Bitmap> {
+
+    public PixelsMediaFetcher(PathSplitter<String> splitter) {
+        super(splitter);
+    }
+
+    @Override
+    public Bitmap fetchFromUrl(@NonNull String url,
+                               @NonNull DecodeSpec decodeSpec,
+                               @Nullable ProgressListener<Bitmap> progressListener,
+                               @Nullable ErrorListener errorListener) throws Exception {
+
+        super.fetchFromUrl(url, decodeSpec, progressListener, errorListener);
+
+        File file = new File(mSplitter.getRealPath(url));
+        if (!file.exists()) {
+            callOnError(errorListener, new Cause(new FileNotFoundException(String.format("File %s not found.", url))));
+            return null;
+        }
+
+        callOnStart(progressListener);
+
+        Bitmap bitmap;
+
+        try {
+            bitmap = RawPixels.read(file, decodeSpec.getBitmapPool());
+        } catch (IOException e) {
+            callOnError(errorListener, new Cause(e));
+            return null;
+        } catch (OutOfMemoryError error) {
+            callOnError(errorListener, new Cause(error));
+            return null;
+        }
+
+        if (bitmap == null) {
+            callOnError(errorListener, new Cause(new IOException(String.format("File %s is not raw pixels.", url))));
+            return null;
+        }
+
+        callOnComplete(progressListener, bitmap);
+        return bitmap;
+    }
+}
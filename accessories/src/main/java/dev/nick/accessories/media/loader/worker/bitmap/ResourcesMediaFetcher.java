@@ -17,9 +17,12 @@ package dev.nick.accessories.media.loader.worker.bitmap;
 
 import android.content.res.Resources;
 import android.graphics.Bitmap;
+import android.graphics.BitmapFactory;
 import android.support.annotation.NonNull;
 import android.support.annotation.Nullable;
 
+import dev.nick.accessories.media.loader.cache.pool.BitmapPool;
+import dev.nick.accessories.media.loader.utils.BitmapUtils;
 import dev.nick.accessories.media.loader.worker.BaseMediaFetcher;
 import dev.nick.accessories.media.loader.worker.DecodeSpec;
 import dev.nick.accessories.media.loader.worker.PathSplitter;
@@ -53,10 +56,21 @@ public abstract class ResourcesMediaFetcher extends BaseMediaFetcher<Bitmap> {
 
         callOnStart(progressListener);
 
-        Bitmap bitmap;
+        Bitmap bitmap = null;
 
         try {
-            bitmap = ResourceAccessories.getBitmap(mContext, resId);
+            BitmapPool bitmapPool = decodeSpec.getBitmapPool();
+            if (bitmapPool != null) {
+                // Decode ourselves, bitmaps from the drawable cache are immutable and can not be reused.
+                BitmapFactory.Options decodeOptions = new BitmapFactory.Options();
+                decodeOptions.inJustDecodeBounds = true;
+                BitmapFactory.decodeResource(resources, resId, decodeOptions);
+                decodeOptions.inJustDecodeBounds = false;
+                BitmapUtils.addInBitmapOptions(decodeOptions, bitmapPool);
+                bitmap = BitmapUtils.decodeResource(resources, resId, decodeOptions);
+            }
+            // Not a bitmap resource, a vector for example.
+            if (bitmap == null) bitmap = ResourceAccessories.getBitmap(mContext, resId);
         } catch (OutOfMemoryError error) {
             callOnError(errorListener, new Cause(error));
             return null;
@@ -0,0 +1,245 @@
+/*
+ * Copyright (c) 2016 Nick Guo
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package dev.nick.accessories.media.loader.worker.network;
+
+import android.support.annotation.NonNull;
+import android.support.annotation.Nullable;
+import android.text.TextUtils;
+
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.text.ParseException;
+import java.text.SimpleDateFormat;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Properties;
+import java.util.TimeZone;
+import java.util.concurrent.TimeUnit;
+
+import lombok.Getter;
+import lombok.ToString;
+
+/**
+ * HTTP validators and expiry of a downloaded file, kept next to it in a {@code .meta} file
+ * so it can be revalidated with a conditional GET instead of downloaded again.
+ */
+@Getter
+@ToString
+public class CacheMeta {
+
+    private static final String SUFFIX = ".meta";
+
+    private static final String KEY_ETAG = "etag";
+    private static final String KEY_LAST_MODIFIED = "last-modified";
+    private static final String KEY_EXPIRES_AT = "expires-at";
+
+    // Cap of the freshness guessed from Last-Modified when the server gives none.
+    private static final long MAX_HEURISTIC_FRESHNESS = TimeUnit.DAYS.toMillis(1);
+
+    private static final String HTTP_DATE_FORMAT = "EEE, dd MMM yyyy HH:mm:ss zzz";
+
+    @Nullable
+    private final String etag;
+    // As the server sent it, sent back as is in If-Modified-Since.
+    @Nullable
+    private final String lastModified;
+    // Wall clock time until which the file can be used without asking the server, 0 if never.
+    private final long expiresAt;
+
+    public CacheMeta(@Nullable String etag, @Nullable String lastModified, long expiresAt) {
+        this.etag = etag;
+        this.lastModified = lastModified;
+        this.expiresAt = expiresAt;
+    }
+
+    /**
+     * @param content The downloaded file.
+     * @return The meta file of it.
+     */
+    @NonNull
+    public static File fileOf(@NonNull File content) {
+        return new File(content.getPath() + SUFFIX);
+    }
+
+    public static boolean isMetaFile(@NonNull File file) {
+        return file.getName().endsWith(SUFFIX);
+    }
+
+    /**
+     * Read the validators and freshness of a response, from {@code Cache-Control: max-age},
+     * then {@code Expires}, then a tenth of the age of {@code Last-Modified}.
+     *
+     * @param response The response.
+     * @param now      Current wall clock time.
+     */
+    @NonNull
+    public static CacheMeta fromResponse(@NonNull HttpTransport.Response response, long now) {
+        String etag = response.getHeader("ETag");
+        String lastModified = response.getHeader("Last-Modified");
+        return new CacheMeta(etag, lastModified, now + freshnessOf(response));
+    }
+
+    private static long freshnessOf(HttpTransport.Response response) {
+        String cacheControl = response.getHeader("Cache-Control");
+        if (cacheControl != null) {
+            for (String directive : cacheControl.split(",")) {
+                directive = directive.trim().toLowerCase();
+                if (directive.equals("no-cache") || directive.equals("no-store")) {
+                    return 0;
+                }
+                if (directive.startsWith("max-age=")) {
+                    try {
+                        return TimeUnit.SECONDS.toMillis(Math.max(0, Long.parseLong(directive.substring(8))));
+                    } catch (NumberFormatException ignored) {
+                        // Fall back to the other headers.
+                    }
+                }
+            }
+        }
+        long date = parseDate(response.getHeader("Date"));
+        long expires = parseDate(response.getHeader("Expires"));
+        if (expires > 0) {
+            return Math.max(0, expires - (date > 0 ? date : System.currentTimeMillis()));
+        }
+        long lastModified = parseDate(response.getHeader("Last-Modified"));
+        if (date > 0 && lastModified > 0 && date > lastModified) {
+            return Math.min((date - lastModified) / 10, MAX_HEURISTIC_FRESHNESS);
+        }
+        return 0;
+    }
+
+    /**
+     * @return Time of a HTTP date header, 0 if missing or malformed.
+     */
+    private static long parseDate(@Nullable String value) {
+        if (value == null) return 0;
+        SimpleDateFormat format = new SimpleDateFormat(HTTP_DATE_FORMAT, Locale.US);
+        format.setTimeZone(TimeZone.getTimeZone("GMT"));
+        try {
+            return format.parse(value).getTime();
+        } catch (ParseException e) {
+            return 0;
+        }
+    }
+
+    /**
+     * @return {@code true} if the file can be used without asking the server.
+     */
+    public boolean isFresh(long now) {
+        return now < expiresAt;
+    }
+
+    public boolean hasValidators() {
+        return etag != null || lastModified != null;
+    }
+
+    /**
+     * @return The validator for {@code If-Range}, a weak ETag can not be used there.
+     */
+    @Nullable
+    public String getStrongValidator() {
+        if (etag != null && !etag.startsWith("W/")) return etag;
+        return lastModified;
+    }
+
+    /**
+     * Add the validators to the headers of a conditional request.
+     */
+    public void addValidators(@NonNull Map<String, String> headers) {
+        if (etag != null) headers.put("If-None-Match", etag);
+        if (lastModified != null) headers.put("If-Modified-Since", lastModified);
+    }
+
+    /**
+     * @param notModified Meta of a 304 response.
+     * @return Meta of the file after it was revalidated, validators the 304 does not repeat are kept.
+     */
+    @NonNull
+    public CacheMeta refreshedBy(@NonNull CacheMeta notModified) {
+        return new CacheMeta(
+                notModified.etag != null ? notModified.etag : etag,
+                notModified.lastModified != null ? notModified.lastModified : lastModified,
+                notModified.expiresAt);
+    }
+
+    /**
+     * @return The meta of the file, {@code null} if it has none or it can not be read.
+     */
+    @Nullable
+    public static CacheMeta read(@NonNull File content) {
+        File file = fileOf(content);
+        if (!file.exists()) return null;
+        Properties properties = new Properties();
+        try {
+            InputStream in = new FileInputStream(file);
+            try {
+                properties.load(in);
+            } finally {
+                in.close();
+            }
+            return new CacheMeta(
+                    properties.getProperty(KEY_ETAG),
+                    properties.getProperty(KEY_LAST_MODIFIED),
+                    Long.parseLong(properties.getProperty(KEY_EXPIRES_AT, "0")));
+        } catch (IOException | NumberFormatException e) {
+            return null;
+        }
+    }
+
+    /**
+     * Write this as the meta of the file.
+     *
+     * @return {@code true} if written.
+     */
+    public boolean write(@NonNull File content) {
+        Properties properties = new Properties();
+        if (!TextUtils.isEmpty(etag)) properties.setProperty(KEY_ETAG, etag);
+        if (!TextUtils.isEmpty(lastModified)) properties.setProperty(KEY_LAST_MODIFIED, lastModified);
+        properties.setProperty(KEY_EXPIRES_AT, String.valueOf(expiresAt));
+        try {
+            OutputStream out = new FileOutputStream(fileOf(content));
+            try {
+                properties.store(out, null);
+            } finally {
+                out.close();
+            }
+            return true;
+        } catch (IOException e) {
+            return false;
+        }
+    }
+
+    /**
+     * Move the meta of a file along with it, if it has one.
+     */
+    public static void move(@NonNull File from, @NonNull File to) {
+        File meta = fileOf(from);
+        if (meta.exists() && !meta.renameTo(fileOf(to))) {
+            //noinspection ResultOfMethodCallIgnored
+            meta.delete();
+        }
+    }
+
+    public static void delete(@NonNull File content) {
+        //noinspection ResultOfMethodCallIgnored
+        fileOf(content).delete();
+    }
+}
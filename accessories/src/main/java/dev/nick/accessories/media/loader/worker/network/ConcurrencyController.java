@@ -0,0 +1,272 @@
+/*
+ * Copyright (c) 2016 Nick Guo
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package dev.nick.accessories.media.loader.worker.network;
+
+import android.os.SystemClock;
+import android.support.annotation.NonNull;
+
+import com.google.guava.base.Optional;
+
+import dev.nick.accessories.common.annotation.MinSize;
+import dev.nick.accessories.media.loader.utils.Preconditions;
+import lombok.Getter;
+import lombok.ToString;
+
+/**
+ * Adapts how many downloads run at once to what the network gives back, set through
+ * {@link NetworkPolicy#getConcurrency()}.
+ * <p>
+ * Transfers are sampled in windows. At the end of a window that kept every slot busy, the limit
+ * goes up by one while the aggregate throughput keeps improving, and down by one once more
+ * concurrency stops paying. It is cut by a quarter when the time to first byte rises well above
+ * the lowest one seen, or when downloads fail, a sign the server or the link is queueing.
+ * <p>
+ * A loader runs its network tasks on a {@link dev.nick.accessories.media.loader.queue.QuotaExecutor}
+ * of the shared dispatcher, its quota follows {@link #getLimit()} as tasks are submitted.
+ */
+@ToString(exclude = "mLock")
+public class ConcurrencyController {
+
+    public static final int DEFAULT_MIN_LIMIT = 1;
+    public static final int DEFAULT_MAX_LIMIT = 8;
+    public static final int DEFAULT_INITIAL_LIMIT = 3;
+    public static final int DEFAULT_WINDOW = 2 * 1000;
+
+    // Throughput has to improve by more than it to take a limit increase as paying.
+    private static final float MIN_GAIN = 0.05f;
+    // Time to first byte this times the lowest one seen is taken as queueing.
+    private static final float LATENCY_TOLERANCE = 2f;
+    // The lowest time to first byte forgets this much per window, networks change.
+    private static final float BASE_LATENCY_DRIFT = 1.05f;
+    private static final float SMOOTHING = 0.3f;
+
+    @Getter
+    @MinSize(1)
+    private final int minLimit;
+    @Getter
+    @MinSize(1)
+    private final int maxLimit;
+    // Millis a window lasts at least.
+    @Getter
+    @MinSize(1)
+    private final int window;
+
+    private final Object mLock = new Object();
+
+    private int mLimit;
+    private int mInFlight;
+
+    private long mWindowStart = SystemClock.uptimeMillis();
+    private int mWindowMaxInFlight;
+    private long mWindowBytes;
+    private long mWindowLatency;
+    private int mWindowSamples;
+    private int mWindowErrors;
+
+    // Bytes per second, smoothed over windows.
+    private float mThroughput;
+    // Of the window before the last change of the limit.
+    private float mThroughputBefore;
+    private float mLatency;
+    private float mBaseLatency;
+
+    private long mSampleCount;
+    private long mErrorCount;
+    private long mIncreaseCount;
+    private long mDecreaseCount;
+
+    private ConcurrencyController(int minLimit, int maxLimit, int initialLimit, int window) {
+        this.minLimit = minLimit;
+        this.maxLimit = maxLimit;
+        this.window = window;
+        this.mLimit = Math.max(minLimit, Math.min(maxLimit, initialLimit));
+    }
+
+    public static Builder builder() {
+        return new Builder();
+    }
+
+    /**
+     * @return Downloads to run at once right now.
+     */
+    public int getLimit() {
+        synchronized (mLock) {
+            return mLimit;
+        }
+    }
+
+    /**
+     * A download starts.
+     */
+    public void onTransferStart() {
+        synchronized (mLock) {
+            mInFlight++;
+            mWindowMaxInFlight = Math.max(mWindowMaxInFlight, mInFlight);
+        }
+    }
+
+    /**
+     * A download ended.
+     *
+     * @param bytes   Bytes received.
+     * @param latency Millis until the first byte, or until the end if nothing was received.
+     * @param failed  {@code true} if it failed, a cancelled one is not a failure.
+     */
+    public void onTransferEnd(long bytes, long latency, boolean failed) {
+        synchronized (mLock) {
+            mInFlight = Math.max(0, mInFlight - 1);
+            mSampleCount++;
+            mWindowSamples++;
+            mWindowBytes += bytes;
+            mWindowLatency += latency;
+            if (failed) {
+                mErrorCount++;
+                mWindowErrors++;
+            }
+            long now = SystemClock.uptimeMillis();
+            if (now - mWindowStart >= window) {
+                endWindow(now);
+            }
+        }
+    }
+
+    /**
+     * A download ended without a sample, cancelled for example.
+     */
+    public void onTransferAbort() {
+        synchronized (mLock) {
+            mInFlight = Math.max(0, mInFlight - 1);
+        }
+    }
+
+    private void endWindow(long now) {
+        float throughput = mWindowBytes * 1000f / (now - mWindowStart);
+        float latency = (float) mWindowLatency / mWindowSamples;
+        boolean saturated = mWindowMaxInFlight >= mLimit;
+        boolean errors = mWindowErrors > 0;
+
+        mThroughput = mThroughput == 0 ? throughput : mThroughput + SMOOTHING * (throughput - mThroughput);
+        mLatency = mLatency == 0 ? latency : mLatency + SMOOTHING * (latency - mLatency);
+        mBaseLatency = mBaseLatency == 0 ? latency : Math.min(latency, mBaseLatency * BASE_LATENCY_DRIFT);
+
+        if (errors || mLatency > mBaseLatency * LATENCY_TOLERANCE) {
+            // Back off hard, queueing only gets worse with more requests.
+            setLimit(mLimit - Math.max(1, mLimit / 4));
+        } else if (saturated) {
+            if (mThroughputBefore == 0 || mThroughput > mThroughputBefore * (1 + MIN_GAIN)) {
+                setLimit(mLimit + 1);
+            } else if (mThroughput < mThroughputBefore * (1 - MIN_GAIN)) {
+                setLimit(mLimit - 1);
+            }
+        }
+
+        mWindowStart = now;
+        mWindowMaxInFlight = mInFlight;
+        mWindowBytes = 0;
+        mWindowLatency = 0;
+        mWindowSamples = 0;
+        mWindowErrors = 0;
+    }
+
+    private void setLimit(int limit) {
+        limit = Math.max(minLimit, Math.min(maxLimit, limit));
+        if (limit == mLimit) return;
+        if (limit > mLimit) {
+            mIncreaseCount++;
+        } else {
+            mDecreaseCount++;
+        }
+        mThroughputBefore = mThroughput;
+        mLimit = limit;
+    }
+
+    @NonNull
+    public ConcurrencyStats getStats() {
+        synchronized (mLock) {
+            return new ConcurrencyStats(
+                    mLimit,
+                    minLimit,
+                    maxLimit,
+                    mInFlight,
+                    mThroughput,
+                    mLatency,
+                    mBaseLatency,
+                    mSampleCount,
+                    mErrorCount,
+                    mIncreaseCount,
+                    mDecreaseCount);
+        }
+    }
+
+    public static class Builder {
+
+        private Optional<Integer> minLimit = Optional.absent();
+        private Optional<Integer> maxLimit = Optional.absent();
+        private Optional<Integer> initialLimit = Optional.absent();
+        private Optional<Integer> window = Optional.absent();
+
+        private Builder() {
+        }
+
+        /**
+         * @param minLimit Downloads to run at once at least.
+         * @return Builder instance.
+         */
+        public Builder minLimit(@MinSize(1) int minLimit) {
+            Preconditions.checkState(minLimit >= 1);
+            this.minLimit = Optional.of(minLimit);
+            return Builder.this;
+        }
+
+        /**
+         * @param maxLimit Downloads to run at once at most.
+         * @return Builder instance.
+         */
+        public Builder maxLimit(@MinSize(1) int maxLimit) {
+            Preconditions.checkState(maxLimit >= 1);
+            this.maxLimit = Optional.of(maxLimit);
+            return Builder.this;
+        }
+
+        /**
+         * @param initialLimit Downloads to run at once before anything is measured.
+         * @return Builder instance.
+         */
+        public Builder initialLimit(@MinSize(1) int initialLimit) {
+            Preconditions.checkState(initialLimit >= 1);
+            this.initialLimit = Optional.of(initialLimit);
+            return Builder.this;
+        }
+
+        /**
+         * @param window Millis of transfers sampled before the limit is adjusted.
+         * @return Builder instance.
+         */
+        public Builder window(@MinSize(1) int window) {
+            Preconditions.checkState(window >= 1);
+            this.window = Optional.of(window);
+            return Builder.this;
+        }
+
+        public ConcurrencyController build() {
+            int min = minLimit.or(DEFAULT_MIN_LIMIT);
+            int max = maxLimit.or(Math.max(min, DEFAULT_MAX_LIMIT));
+            Preconditions.checkState(min <= max, "minLimit is over maxLimit");
+            return new ConcurrencyController(min, max, initialLimit.or(DEFAULT_INITIAL_LIMIT), window.or(DEFAULT_WINDOW));
+        }
+    }
+}
@@ -0,0 +1,47 @@
+/*
+ * Copyright (c) 2016 Nick Guo
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package dev.nick.accessories.media.loader.worker.network;
+
+import lombok.AccessLevel;
+import lombok.AllArgsConstructor;
+import lombok.Getter;
+import lombok.ToString;
+
+/**
+ * Snapshot of a {@link ConcurrencyController}, times are in milliseconds.
+ */
+@Getter
+@ToString
+@AllArgsConstructor(access = AccessLevel.PACKAGE)
+public class ConcurrencyStats {
+
+    private int limit;
+    private int minLimit;
+    private int maxLimit;
+    // Downloads running right now.
+    private int inFlight;
+    // Bytes per second of all downloads together, smoothed.
+    private float throughput;
+    // Time to first byte, smoothed.
+    private float latency;
+    // Lowest time to first byte seen lately.
+    private float baseLatency;
+    private long sampleCount;
+    private long errorCount;
+    private long increaseCount;
+    private long decreaseCount;
+}
@@ -0,0 +1,53 @@
+/*
+ * Copyright (c) 2016 Nick Guo
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package dev.nick.accessories.media.loader.worker.network;
+
+import android.support.annotation.NonNull;
+
+import java.util.ArrayDeque;
+import java.util.Deque;
+
+/**
+ * Buffers of the downloads, large enough to read a typical image in a few calls
+ * and kept for the next download instead of allocated per request.
+ */
+class DownloadBuffers {
+
+    static final int BUFFER_SIZE = 64 * 1024;
+
+    private static final int MAX_POOLED = 4;
+
+    private static final Deque<byte[]> sPool = new ArrayDeque<>(MAX_POOLED);
+
+    private DownloadBuffers() {
+    }
+
+    @NonNull
+    static byte[] acquire() {
+        synchronized (sPool) {
+            byte[] buffer = sPool.poll();
+            if (buffer != null) return buffer;
+        }
+        return new byte[BUFFER_SIZE];
+    }
+
+    static void release(@NonNull byte[] buffer) {
+        synchronized (sPool) {
+            if (sPool.size() < MAX_POOLED) sPool.push(buffer);
+        }
+    }
+}
@@ -18,8 +18,10 @@ package dev.nick.accessories.media.loader.worker.network;
 
 import android.net.ConnectivityManager;
 import android.support.annotation.NonNull;
+import android.support.annotation.Nullable;
 
 import dev.nick.accessories.media.loader.Terminable;
+import dev.nick.accessories.media.loader.worker.CancelSignal;
 import dev.nick.accessories.media.loader.worker.ProgressListener;
 import dev.nick.accessories.media.loader.worker.result.ErrorListener;
 import lombok.Getter;
@@ -28,11 +30,31 @@ import lombok.experimental.Builder;
 
 public interface DownloadManager extends Terminable {
 
+    /**
+     * @throws IllegalStateException If the network policy does not allow downloading now,
+     *                               unless {@link NetworkPolicy#isStaleWhileRevalidate()}, in which case
+     *                               an {@link Transaction#isOffline()} transaction is returned.
+     */
     @NonNull
     Transaction beginTransaction();
 
     String endTransaction(Transaction transaction);
 
+    /**
+     * Download the url again, or only revalidate it when {@code cached} is given.
+     * The local copy is left as is, the new content goes to a file next to it owned by the caller.
+     *
+     * @return {@code null} on failure or if the transaction is offline.
+     */
+    @Nullable
+    DownloadResult<String> revalidate(Transaction transaction, @Nullable CacheMeta cached);
+
+    /**
+     * @return Path the url is downloaded to, the file may not exist.
+     */
+    @NonNull
+    String getDownloadPath(String url);
+
     String getDownloadDirPath();
 
     @Builder
@@ -45,5 +67,14 @@ public interface DownloadManager extends Terminable {
         private ErrorListener errorListener;
 
         private int usingNetworkType = ConnectivityManager.TYPE_WIFI;
+
+        // No network is available, only local copies can be used.
+        private boolean offline;
+
+        // Aborts the download, null if it is not cancelled.
+        private CancelSignal cancelSignal;
+
+        // Failed attempts of the task before this one, see RetryLaterException.
+        private int retries;
     }
 }
@@ -18,32 +18,53 @@ package dev.nick.accessories.media.loader.worker.network;
 
 import android.content.Context;
 import android.net.ConnectivityManager;
+import android.net.Uri;
 import android.os.Environment;
+import android.os.SystemClock;
 import android.support.annotation.NonNull;
+import android.support.annotation.Nullable;
 
-import com.google.guava.io.Files;
 
 import java.io.File;
-import java.io.IOException;
+import java.io.FileFilter;
+import java.net.SocketException;
+import java.net.SocketTimeoutException;
+import java.net.UnknownHostException;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.concurrent.atomic.AtomicLong;
 
 import dev.nick.accessories.media.loader.LoaderConfig;
 import dev.nick.accessories.media.loader.cache.CachePolicy;
 import dev.nick.accessories.media.loader.cache.FileNameGenerator;
 import dev.nick.accessories.media.loader.cache.KeyGenerator;
 import dev.nick.accessories.media.loader.control.TrafficStats;
+import dev.nick.accessories.media.loader.worker.CancelSignal;
+import dev.nick.accessories.media.loader.worker.result.Cause;
+import dev.nick.accessories.media.loader.worker.result.ErrorListener;
 import dev.nick.accessories.logger.Logger;
 import dev.nick.accessories.logger.LoggerManager;
 
 public class DownloadManagerImpl implements DownloadManager {
 
     private static final String DOWNLOAD_DIR_NAME = "download";
+    private static final String REVALIDATED_SUFFIX = ".new";
+    // Cut downloads kept to be resumed, the oldest ones are dropped beyond it.
+    private static final long MAX_PARTIALS_SIZE = 32 * 1024 * 1024;
+    // Temp files of downloads are renamed once complete, older ones were left by a killed process.
+    private static final long MAX_TEMP_AGE = 60 * 60 * 1000;
 
     private Context mContext;
 
     private boolean mOnlyOnWifi;
+    private boolean mStaleWhileRevalidate;
     private Logger mLogger;
 
     private TrafficStats mTrafficStats;
+    private HttpTransport mTransport;
+    @Nullable
+    private ConcurrencyController mConcurrency;
+    private HostBreaker mHostBreaker;
 
     private boolean mTrafficStatsEnabled;
 
@@ -52,6 +73,10 @@ public class DownloadManagerImpl implements DownloadManager {
 
     private String mDownloadDir;
 
+    // Size of the partial files as of the last trim, plus what failed downloads added since.
+    // Resumed ones are not taken off, the next trim counts again.
+    private final AtomicLong mPartialsSize = new AtomicLong();
+
     public DownloadManagerImpl(Context context, LoaderConfig config) {
         mLogger = LoggerManager.getLogger(getClass());
         mContext = context;
@@ -59,6 +84,14 @@ public class DownloadManagerImpl implements DownloadManager {
         NetworkPolicy networkPolicy = config.getNetworkPolicy();
         mOnlyOnWifi = networkPolicy.isOnlyOnWifi();
         mTrafficStatsEnabled = networkPolicy.isTrafficStatsEnabled();
+        mStaleWhileRevalidate = networkPolicy.isStaleWhileRevalidate();
+        mTransport = networkPolicy.getTransport() != null
+                ? networkPolicy.getTransport()
+                : UrlConnectionTransport.shared();
+        mConcurrency = networkPolicy.getConcurrency();
+        mHostBreaker = networkPolicy.getHostBreaker() != null
+                ? networkPolicy.getHostBreaker()
+                : HostBreaker.shared();
         mTrafficStats = TrafficStats.from(mContext);
 
         CachePolicy cachePolicy = config.getCachePolicy();
@@ -81,6 +114,61 @@ public class DownloadManagerImpl implements DownloadManager {
         if (!new File(mDownloadDir).exists() && !new File(mDownloadDir).mkdirs()) {
             throw new IllegalStateException("Can not create folder for download.");
         }
+
+        trimPartials();
+    }
+
+    private synchronized void trimPartials() {
+        File[] partials = new File(mDownloadDir).listFiles(new FileFilter() {
+            @Override
+            public boolean accept(File file) {
+                return HttpImageDownloader.isPartialFile(file) || HttpImageDownloader.isTempFile(file);
+            }
+        });
+        if (partials == null) return;
+        long now = System.currentTimeMillis();
+        int count = 0;
+        for (File file : partials) {
+            if (!HttpImageDownloader.isTempFile(file)) {
+                partials[count++] = file;
+            } else if (now - file.lastModified() > MAX_TEMP_AGE) {
+                mLogger.verbose("Dropping temp download:" + file);
+                //noinspection ResultOfMethodCallIgnored
+                file.delete();
+            }
+        }
+        partials = Arrays.copyOf(partials, count);
+        Arrays.sort(partials, new Comparator<File>() {
+            @Override
+            public int compare(File lhs, File rhs) {
+                long l = lhs.lastModified(), r = rhs.lastModified();
+                return l > r ? -1 : (l == r ? 0 : 1);
+            }
+        });
+        long size = 0;
+        long kept = 0;
+        for (File partial : partials) {
+            long length = partial.length();
+            size += length;
+            // Not the one a download is resuming right now.
+            if (size > MAX_PARTIALS_SIZE && HttpImageDownloader.discardIdlePartial(partial)) {
+                mLogger.verbose("Dropped partial download:" + partial);
+            } else {
+                kept += length;
+            }
+        }
+        mPartialsSize.set(kept);
+    }
+
+    /**
+     * Account for a partial file grown by a failed download, trim them once over the budget.
+     */
+    private void onPartialGrown(long grown) {
+        if (grown <= 0 || mPartialsSize.addAndGet(grown) <= MAX_PARTIALS_SIZE) return;
+        synchronized (this) {
+            // Another download trimmed them meanwhile.
+            if (mPartialsSize.get() > MAX_PARTIALS_SIZE) trimPartials();
+        }
     }
 
     private String buildDownloadFilePath(String url) {
@@ -111,6 +199,10 @@ public class DownloadManagerImpl implements DownloadManager {
 
         // No connection.
         if (!readyToLoad) {
+            if (mStaleWhileRevalidate) {
+                mLogger.verbose("No network is available, local copies only");
+                return Transaction.builder().offline(true).build();
+            }
             mLogger.verbose("No network is available, returning");
             throw new IllegalStateException("Network policy is not allowed.");
         }
@@ -126,55 +218,216 @@ public class DownloadManagerImpl implements DownloadManager {
 
         String result = buildDownloadFilePath(transaction.getUrl());
 
-        ImageDownloader<String> downloader = new HttpImageDownloader(Files.createTempDir(),
-                new HttpImageDownloader.ByteReadingListener() {
-                    @Override
-                    public void onBytesRead(byte[] bytes) {
-                        if (mTrafficStatsEnabled) {
-                            switch (transaction.getUsingNetworkType()) {
-                                case ConnectivityManager.TYPE_MOBILE:
-                                    mTrafficStats.onMobileTrafficUsage(bytes.length);
-                                    break;
-                                case ConnectivityManager.TYPE_WIFI: //fall
-                                default:
-                                    mTrafficStats.onWifiTrafficUsage(bytes.length);
-                                    break;
-                            }
-                        }
-                    }
-                });
-
-        // Check if already download this one.
-        boolean exist = new File(result).exists();
-
-        boolean willUseExistsOne = false;
-
-        if (exist) {
-            // Check file size.
-            long size = Files.size(new File(result));
-            willUseExistsOne = size == downloader.size(transaction.getUrl());
-        }
-
-        if (willUseExistsOne) {
-            mLogger.verbose("willUseExistsOne instead of download");
+        File target = new File(result);
+
+        // Any copy is better than none without network.
+        boolean servesStale = mStaleWhileRevalidate && target.exists();
+
+        if (transaction.isOffline()) {
+            if (servesStale) {
+                mLogger.verbose("Using stale download when offline");
+                return result;
+            }
+            throw new IllegalStateException("Network policy is not allowed.");
+        }
+
+        // A copy the server said is fresh is used without asking again.
+        CacheMeta cached = target.exists() ? CacheMeta.read(target) : null;
+        if (cached != null && cached.isFresh(System.currentTimeMillis())) {
+            mLogger.verbose("Using fresh download instead of revalidate");
             return result;
         }
 
-        String received = downloader.download(transaction.getUrl(), transaction.getProgressListener(), transaction.getErrorListener());
+        // Without validators there is nothing to revalidate, download it again.
+        if (cached != null && !cached.hasValidators()) cached = null;
+
+        // Written in place, the current copy stays until the new one is complete.
+        // No retry if the stale copy is served instead.
+        DownloadResult<String> received = download(transaction, cached, target,
+                servesStale ? null : transaction.getErrorListener(), !servesStale);
 
         if (received == null) {
+            if (servesStale) {
+                mLogger.verbose("Using stale download when download failed");
+                return result;
+            }
+            return null;
+        }
+
+        if (received.isNotModified()) {
+            mLogger.verbose("Using revalidated download instead of download");
+        }
+        received.getMeta().write(target);
+        return result;
+    }
+
+    @Nullable
+    @Override
+    public DownloadResult<String> revalidate(Transaction transaction, @Nullable CacheMeta cached) {
+        if (transaction.isOffline()) return null;
+        // Next to the download, so keeping it is a rename.
+        File target = new File(buildDownloadFilePath(transaction.getUrl()) + REVALIDATED_SUFFIX);
+        // The copy in use stays good, the next revalidation tries again.
+        return download(transaction, cached, target, transaction.getErrorListener(), false);
+    }
+
+    /**
+     * @param retryLater Whether a failure of a struggling host is to be retried, the retry is not run here
+     *                   but by the task, after a backoff.
+     * @throws RetryLaterException If the task is to run again after a delay.
+     */
+    @Nullable
+    private DownloadResult<String> download(Transaction transaction, @Nullable CacheMeta cached,
+                                            File target, @Nullable ErrorListener errorListener,
+                                            boolean retryLater) {
+        String host = Uri.parse(transaction.getUrl()).getHost();
+        if (host == null) return downloadOnce(transaction, cached, target, errorListener);
+
+        long shortCircuited = mHostBreaker.checkHost(host);
+        if (shortCircuited > 0) {
+            mLogger.verbose("Short-circuited host:" + host);
+            if (errorListener != null) {
+                errorListener.onError(new Cause(new HostUnavailableException(host, shortCircuited)));
+            }
             return null;
         }
 
-        try {
-            Files.move(new File(received), new File(result));
-        } catch (IOException e) {
-            mLogger.trace("Failed to move file:", e);
+        CancelSignal cancelSignal = transaction.getCancelSignal();
+        FailureCatcher failure = new FailureCatcher();
+        DownloadResult<String> result = downloadOnce(transaction, cached, target, failure);
+        if (result != null) {
+            mHostBreaker.onSuccess(host);
+            return result;
+        }
+        if ((cancelSignal != null && cancelSignal.isCancelled()) || failure.mCause == null) {
+            mHostBreaker.onAbort(host);
             return null;
         }
+        if (!isHostFailure(failure.mCause)) {
+            if (failure.mCause.exception instanceof HttpStatusException) {
+                // The host answered, the request itself is not going to work.
+                mHostBreaker.onSuccess(host);
+            } else {
+                // Not the fault of the host, a full disk for example.
+                mHostBreaker.onAbort(host);
+            }
+            failure.forwardTo(errorListener);
+            return null;
+        }
+        mHostBreaker.onFailure(host);
+        int retry = transaction.getRetries();
+        if (!retryLater || retry >= mHostBreaker.getMaxRetries() || mHostBreaker.checkHost(host) > 0) {
+            failure.forwardTo(errorListener);
+            return null;
+        }
+        long backoff = mHostBreaker.backoffOf(retry);
+        mLogger.verbose(String.format("Retrying %s in %d ms", transaction.getUrl(), backoff));
+        throw new RetryLaterException(backoff, failure.mCause);
+    }
+
+    /**
+     * @return {@code true} if the failure says the host is down or struggling: it could not be reached,
+     * timed out or answered with a 5xx. Local failures, of the disk for example, are not.
+     */
+    private static boolean isHostFailure(Cause cause) {
+        Exception e = cause.exception;
+        if (e instanceof HttpStatusException) {
+            return ((HttpStatusException) e).isServerFailure();
+        }
+        // ConnectException and NoRouteToHostException are socket ones too.
+        return e instanceof SocketException
+                || e instanceof SocketTimeoutException
+                || e instanceof UnknownHostException;
+    }
+
+    /**
+     * Keeps the error of an attempt, only the last one is reported.
+     */
+    private static class FailureCatcher implements ErrorListener {
+
+        private Cause mCause;
+
+        @Override
+        public void onError(@NonNull Cause cause) {
+            mCause = cause;
+        }
+
+        void forwardTo(@Nullable ErrorListener listener) {
+            if (listener != null) listener.onError(mCause);
+        }
+    }
+
+    @Nullable
+    private DownloadResult<String> downloadOnce(Transaction transaction, @Nullable CacheMeta cached,
+                                                File target, @Nullable ErrorListener errorListener) {
+        Transfer transfer = new Transfer(transaction);
+        ImageDownloader<String> downloader = new HttpImageDownloader(mTransport, transaction.getCancelSignal(),
+                transfer);
+
+        File partial = HttpImageDownloader.partialOf(target);
+        long partialSize = partial.length();
+
+        if (mConcurrency != null) mConcurrency.onTransferStart();
+
+        DownloadResult<String> result = downloader.download(transaction.getUrl(), cached, target,
+                transaction.getProgressListener(), errorListener);
+
+        if (mConcurrency != null) {
+            CancelSignal cancelSignal = transaction.getCancelSignal();
+            if (cancelSignal != null && cancelSignal.isCancelled()) {
+                mConcurrency.onTransferAbort();
+            } else {
+                mConcurrency.onTransferEnd(transfer.mBytes, transfer.getLatency(), result == null);
+            }
+        }
+
+        // May have left a partial behind.
+        if (result == null) onPartialGrown(partial.length() - partialSize);
         return result;
     }
 
+    /**
+     * Counts the bytes of a download, for the traffic stats and the concurrency samples.
+     */
+    private class Transfer implements HttpImageDownloader.ByteReadingListener {
+
+        private final Transaction mTransaction;
+        private final long mStart = SystemClock.uptimeMillis();
+        private long mFirstByte;
+        private long mBytes;
+
+        Transfer(Transaction transaction) {
+            mTransaction = transaction;
+        }
+
+        long getLatency() {
+            return (mFirstByte > 0 ? mFirstByte : SystemClock.uptimeMillis()) - mStart;
+        }
+
+        @Override
+        public void onBytesRead(int count) {
+            if (mFirstByte == 0) mFirstByte = SystemClock.uptimeMillis();
+            mBytes += count;
+            if (mTrafficStatsEnabled) {
+                switch (mTransaction.getUsingNetworkType()) {
+                    case ConnectivityManager.TYPE_MOBILE:
+                        mTrafficStats.onMobileTrafficUsage(count);
+                        break;
+                    case ConnectivityManager.TYPE_WIFI: //fall
+                    default:
+                        mTrafficStats.onWifiTrafficUsage(count);
+                        break;
+                }
+            }
+        }
+    }
+
+    @NonNull
+    @Override
+    public String getDownloadPath(String url) {
+        return buildDownloadFilePath(url);
+    }
+
     @Override
     public String getDownloadDirPath() {
         return mDownloadDir;
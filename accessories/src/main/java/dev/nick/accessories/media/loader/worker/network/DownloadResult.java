@@ -0,0 +1,53 @@
+/*
+ * Copyright (c) 2016 Nick Guo
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package dev.nick.accessories.media.loader.worker.network;
+
+import android.support.annotation.NonNull;
+import android.support.annotation.Nullable;
+
+import lombok.Getter;
+import lombok.ToString;
+
+/**
+ * Result of a conditional download, either the new content or a confirmation
+ * that the local copy is still current.
+ */
+@Getter
+@ToString
+public class DownloadResult<T> {
+
+    // Null when not modified.
+    @Nullable
+    private final T content;
+    @NonNull
+    private final CacheMeta meta;
+    private final boolean notModified;
+
+    private DownloadResult(@Nullable T content, @NonNull CacheMeta meta, boolean notModified) {
+        this.content = content;
+        this.meta = meta;
+        this.notModified = notModified;
+    }
+
+    public static <T> DownloadResult<T> of(@NonNull T content, @NonNull CacheMeta meta) {
+        return new DownloadResult<>(content, meta, false);
+    }
+
+    public static <T> DownloadResult<T> notModified(@NonNull CacheMeta meta) {
+        return new DownloadResult<>(null, meta, true);
+    }
+}
@@ -0,0 +1,239 @@
+/*
+ * Copyright (c) 2016 Nick Guo
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package dev.nick.accessories.media.loader.worker.network;
+
+import android.os.SystemClock;
+import android.support.annotation.NonNull;
+
+import com.google.guava.base.Optional;
+
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Random;
+
+import dev.nick.accessories.common.annotation.MinSize;
+import dev.nick.accessories.media.loader.utils.Preconditions;
+import lombok.Getter;
+import lombok.ToString;
+
+/**
+ * Tracks the health of hosts, set through {@link NetworkPolicy#getHostBreaker()}.
+ * <p>
+ * A failed download is retried a few times after a jittered, growing delay. After
+ * {@link #getFailureThreshold()} failures in a row a host is short-circuited for {@link #getCooldown()}:
+ * its requests fail at once with a {@link HostUnavailableException} instead of each waiting for a
+ * connect timeout on a loading thread. One probe is then let through, its result closes the
+ * circuit or opens it for another cooldown.
+ */
+@ToString(exclude = {"mHosts", "mRandom"})
+public class HostBreaker {
+
+    public static final int DEFAULT_MAX_RETRIES = 2;
+    public static final int DEFAULT_BASE_BACKOFF = 300;
+    public static final int DEFAULT_MAX_BACKOFF = 3 * 1000;
+    public static final int DEFAULT_FAILURE_THRESHOLD = 5;
+    public static final int DEFAULT_COOLDOWN = 30 * 1000;
+
+    private static HostBreaker sShared;
+
+    // Retries of a failed download, 0 for none.
+    @Getter
+    private final int maxRetries;
+    // Millis, doubled by retry.
+    @Getter
+    @MinSize(1)
+    private final int baseBackoff;
+    @Getter
+    @MinSize(1)
+    private final int maxBackoff;
+    // Failures in a row opening the circuit of a host.
+    @Getter
+    @MinSize(1)
+    private final int failureThreshold;
+    // Millis a host stays short-circuited.
+    @Getter
+    @MinSize(1)
+    private final int cooldown;
+
+    // Only hosts failing lately, a success removes the host.
+    private final Map<String, Health> mHosts = new HashMap<>();
+    private final Random mRandom = new Random();
+
+    private HostBreaker(int maxRetries, int baseBackoff, int maxBackoff, int failureThreshold, int cooldown) {
+        this.maxRetries = maxRetries;
+        this.baseBackoff = baseBackoff;
+        this.maxBackoff = maxBackoff;
+        this.failureThreshold = failureThreshold;
+        this.cooldown = cooldown;
+    }
+
+    /**
+     * @return The breaker with default settings shared by the policies setting none,
+     * so one failing host is known to every loader.
+     */
+    public static synchronized HostBreaker shared() {
+        if (sShared == null) sShared = builder().build();
+        return sShared;
+    }
+
+    public static Builder builder() {
+        return new Builder();
+    }
+
+    /**
+     * @return Millis the host is short-circuited for, 0 if a request can be sent.
+     * The first request after a cooldown is the probe, others wait for its result.
+     */
+    public long checkHost(@NonNull String host) {
+        long now = SystemClock.uptimeMillis();
+        synchronized (mHosts) {
+            Health health = mHosts.get(host);
+            if (health == null || health.openUntil == 0) return 0;
+            if (now < health.openUntil) return health.openUntil - now;
+            // A probe that never reported back does not keep the host closed forever.
+            if (health.probeStart > 0 && now - health.probeStart < cooldown) return 1;
+            health.probeStart = now;
+            return 0;
+        }
+    }
+
+    public void onSuccess(@NonNull String host) {
+        synchronized (mHosts) {
+            mHosts.remove(host);
+        }
+    }
+
+    /**
+     * The host failed or was too slow to answer, a wrong request is not a failure of the host.
+     */
+    public void onFailure(@NonNull String host) {
+        long now = SystemClock.uptimeMillis();
+        synchronized (mHosts) {
+            Health health = mHosts.get(host);
+            if (health == null) {
+                health = new Health();
+                mHosts.put(host, health);
+            }
+            health.failures++;
+            if (health.probeStart > 0 || health.failures >= failureThreshold) {
+                health.openUntil = now + cooldown;
+                health.probeStart = 0;
+            }
+        }
+    }
+
+    /**
+     * The request ended without telling anything about the host, cancelled for example.
+     */
+    public void onAbort(@NonNull String host) {
+        synchronized (mHosts) {
+            Health health = mHosts.get(host);
+            if (health != null) health.probeStart = 0;
+        }
+    }
+
+    /**
+     * @param retry 0 for the first retry.
+     * @return Millis to wait before the retry, half of the doubled delay plus a random part of the other half
+     * so failed requests do not come back all at once.
+     */
+    public long backoffOf(int retry) {
+        long delay = Math.min(maxBackoff, (long) baseBackoff << Math.min(retry, 16));
+        synchronized (mRandom) {
+            return delay / 2 + (long) (mRandom.nextDouble() * (delay / 2));
+        }
+    }
+
+    private static class Health {
+        int failures;
+        // Uptime until which requests are refused, 0 if the circuit is closed.
+        long openUntil;
+        // Uptime the probe was let through, 0 if none is out.
+        long probeStart;
+    }
+
+    public static class Builder {
+
+        private Optional<Integer> maxRetries = Optional.absent();
+        private Optional<Integer> baseBackoff = Optional.absent();
+        private Optional<Integer> maxBackoff = Optional.absent();
+        private Optional<Integer> failureThreshold = Optional.absent();
+        private Optional<Integer> cooldown = Optional.absent();
+
+        private Builder() {
+        }
+
+        /**
+         * @param maxRetries Retries of a failed download, 0 for none.
+         * @return Builder instance.
+         */
+        public Builder maxRetries(int maxRetries) {
+            Preconditions.checkState(maxRetries >= 0);
+            this.maxRetries = Optional.of(maxRetries);
+            return Builder.this;
+        }
+
+        /**
+         * @param baseBackoff Millis before the first retry, doubled by retry.
+         * @return Builder instance.
+         */
+        public Builder baseBackoff(@MinSize(1) int baseBackoff) {
+            Preconditions.checkState(baseBackoff >= 1);
+            this.baseBackoff = Optional.of(baseBackoff);
+            return Builder.this;
+        }
+
+        /**
+         * @param maxBackoff Millis before a retry at most.
+         * @return Builder instance.
+         */
+        public Builder maxBackoff(@MinSize(1) int maxBackoff) {
+            Preconditions.checkState(maxBackoff >= 1);
+            this.maxBackoff = Optional.of(maxBackoff);
+            return Builder.this;
+        }
+
+        /**
+         * @param failureThreshold Failures in a row short-circuiting a host.
+         * @return Builder instance.
+         */
+        public Builder failureThreshold(@MinSize(1) int failureThreshold) {
+            Preconditions.checkState(failureThreshold >= 1);
+            this.failureThreshold = Optional.of(failureThreshold);
+            return Builder.this;
+        }
+
+        /**
+         * @param cooldown Millis a short-circuited host is not tried.
+         * @return Builder instance.
+         */
+        public Builder cooldown(@MinSize(1) int cooldown) {
+            Preconditions.checkState(cooldown >= 1);
+            this.cooldown = Optional.of(cooldown);
+            return Builder.this;
+        }
+
+        public HostBreaker build() {
+            return new HostBreaker(
+                    maxRetries.or(DEFAULT_MAX_RETRIES),
+                    baseBackoff.or(DEFAULT_BASE_BACKOFF),
+                    maxBackoff.or(DEFAULT_MAX_BACKOFF),
+                    failureThreshold.or(DEFAULT_FAILURE_THRESHOLD),
+                    cooldown.or(DEFAULT_COOLDOWN));
+        }
+    }
+}
@@ -0,0 +1,38 @@
+/*
+ * Copyright (c) 2016 Nick Guo
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package dev.nick.accessories.media.loader.worker.network;
+
+import java.io.IOException;
+
+import lombok.Getter;
+
+/**
+ * A request not sent because its host failed too often lately, see {@link HostBreaker}.
+ */
+@Getter
+public class HostUnavailableException extends IOException {
+
+    private final String host;
+    // Millis before the host is tried again.
+    private final long retryIn;
+
+    public HostUnavailableException(String host, long retryIn) {
+        super(String.format("Host %s failed repeatedly, not tried again for %d ms.", host, retryIn));
+        this.host = host;
+        this.retryIn = retryIn;
+    }
+}
@@ -16,13 +16,23 @@
 
 package dev.nick.accessories.media.loader.worker.network;
 
+import android.support.annotation.NonNull;
+import android.support.annotation.Nullable;
+
 import java.io.File;
 import java.io.FileOutputStream;
+import java.io.IOException;
 import java.io.InputStream;
 import java.io.InterruptedIOException;
-import java.net.URL;
-import java.net.URLConnection;
+import java.net.HttpURLConnection;
+import java.net.SocketTimeoutException;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Map;
+import java.util.Set;
 
+import dev.nick.accessories.media.loader.worker.CancelSignal;
 import dev.nick.accessories.media.loader.worker.ProgressListener;
 import dev.nick.accessories.media.loader.worker.result.Cause;
 import dev.nick.accessories.media.loader.worker.result.ErrorListener;
@@ -30,66 +40,308 @@ import dev.nick.accessories.logger.LoggerManager;
 
 public class HttpImageDownloader implements ImageDownloader<String> {
 
-    File mTmpDir;
+    private static final String PARTIAL_SUFFIX = ".part";
+    private static final String TEMP_SUFFIX = ".tmp";
+
+    // Partial files a download of this process is reading or writing, guarded by itself.
+    private static final Set<String> sClaimedPartials = new HashSet<>();
+
     ByteReadingListener mByteReadingListener;
+    HttpTransport mTransport;
+    CancelSignal mCancelSignal;
 
-    public HttpImageDownloader(File tmpDir, ByteReadingListener listener) {
-        this.mTmpDir = tmpDir;
+    public HttpImageDownloader(ByteReadingListener listener) {
+        this(UrlConnectionTransport.shared(), null, listener);
+    }
+
+    /**
+     * @param cancelSignal Aborts the download, {@code null} if it is not cancelled.
+     */
+    public HttpImageDownloader(@NonNull HttpTransport transport, @Nullable CancelSignal cancelSignal,
+                               ByteReadingListener listener) {
+        this.mTransport = transport;
+        this.mCancelSignal = cancelSignal != null ? cancelSignal : new CancelSignal();
         this.mByteReadingListener = listener;
     }
 
+    /**
+     * @param target A download target.
+     * @return Where the target is downloaded to until it is complete.
+     */
+    @NonNull
+    public static File partialOf(@NonNull File target) {
+        return new File(target.getPath() + PARTIAL_SUFFIX);
+    }
+
+    public static boolean isPartialFile(@NonNull File file) {
+        return file.getName().endsWith(PARTIAL_SUFFIX);
+    }
+
+    /**
+     * @return A new empty file next to the target, a download that can not be resumed goes there.
+     */
+    @NonNull
+    private static File tempOf(@NonNull File target) throws IOException {
+        return File.createTempFile(target.getName() + ".", TEMP_SUFFIX, target.getParentFile());
+    }
+
+    public static boolean isTempFile(@NonNull File file) {
+        return file.getName().endsWith(TEMP_SUFFIX);
+    }
+
+    /**
+     * Claim the partial file, a download of the same target running meanwhile does not touch it.
+     *
+     * @return {@code false} if it is already claimed.
+     */
+    private static boolean claimPartial(@NonNull File partial) {
+        synchronized (sClaimedPartials) {
+            return sClaimedPartials.add(partial.getPath());
+        }
+    }
+
+    private static void releasePartial(@NonNull File partial) {
+        synchronized (sClaimedPartials) {
+            sClaimedPartials.remove(partial.getPath());
+        }
+    }
+
+    /**
+     * Delete a partial download and its meta, unless a running download claims it.
+     *
+     * @return {@code true} if it is deleted.
+     */
+    public static boolean discardIdlePartial(@NonNull File partial) {
+        if (!claimPartial(partial)) return false;
+        try {
+            discardPartial(partial);
+            return true;
+        } finally {
+            releasePartial(partial);
+        }
+    }
+
+    /**
+     * Delete a partial download and its meta.
+     */
+    public static void discardPartial(@NonNull File partial) {
+        //noinspection ResultOfMethodCallIgnored
+        partial.delete();
+        CacheMeta.delete(partial);
+    }
+
+    @Nullable
     @Override
-    public String download(String url, ProgressListener progressListener, ErrorListener errorListener) {
+    public DownloadResult<String> download(String url, @Nullable CacheMeta cached, @NonNull File target,
+                                           ProgressListener progressListener, ErrorListener errorListener) {
+        File partial = partialOf(target);
+        // Another download of the target, of another variant or a revalidation, has the partial,
+        // this one starts from scratch into a temp file.
+        boolean ownsPartial = claimPartial(partial);
         try {
-            URL u = new URL(url);
-            URLConnection conn = u.openConnection();
-            conn.setConnectTimeout(6 * 1000);
-            conn.connect();
-            InputStream is = conn.getInputStream();
-            float fileSize = (float) conn.getContentLength();
-            if (fileSize < 1 || is == null) {
-                if (errorListener != null) {
-                    errorListener.onError(new Cause(new Error(String.format("Content for from %s length is 0.", url))));
+            CacheMeta partialMeta = ownsPartial ? resumableMetaOf(partial) : null;
+            Map<String, String> headers = new HashMap<>();
+            if (partialMeta != null) {
+                // Ask the rest of the partial, or all of it again if it changed since.
+                headers.put("Range", "bytes=" + partial.length() + "-");
+                headers.put("If-Range", partialMeta.getStrongValidator());
+                // Ranges are of the encoded bytes, the partial holds the decoded ones.
+                headers.put("Accept-Encoding", "identity");
+            } else if (cached != null) {
+                cached.addValidators(headers);
+            }
+            if (mCancelSignal.isCancelled()) return null;
+            final HttpTransport.Response response = mTransport.get(url, headers);
+            mCancelSignal.setOnCancelListener(new CancelSignal.OnCancelListener() {
+                @Override
+                public void onCancel() {
+                    response.abort();
+                }
+            });
+            try {
+                int code = response.getCode();
+                CacheMeta meta = CacheMeta.fromResponse(response, System.currentTimeMillis());
+                if (cached != null && code == HttpURLConnection.HTTP_NOT_MODIFIED) {
+                    LoggerManager.getLogger(getClass()).verbose("Not modified:" + url);
+                    return DownloadResult.notModified(cached.refreshedBy(meta));
                 }
-            } else {
-                File tmpFile = new File(mTmpDir, String.valueOf(url.hashCode()));
-                LoggerManager.getLogger(getClass()).verbose("Using tmp path:" + tmpFile.getPath());
-                FileOutputStream fos = new FileOutputStream(tmpFile);
-                byte[] bytes = new byte[1024];
-                int len = -1;
-                float downloadSize = 0f;
-                while ((len = is.read(bytes)) != -1) {
-                    fos.write(bytes, 0, len);
-                    if (mByteReadingListener != null) {
-                        mByteReadingListener.onBytesRead(bytes);
+                long offset = 0;
+                if (code == HttpURLConnection.HTTP_PARTIAL && partialMeta != null
+                        && rangeStartOf(response.getHeader("Content-Range")) == partial.length()) {
+                    LoggerManager.getLogger(getClass()).verbose("Resuming at " + partial.length() + ":" + url);
+                    offset = partial.length();
+                    meta = partialMeta.refreshedBy(meta);
+                } else if (code != HttpURLConnection.HTTP_OK) {
+                    // A range we can not use, start again next time.
+                    if (partialMeta != null) discardPartial(partial);
+                    if (errorListener != null) {
+                        errorListener.onError(new Cause(new HttpStatusException(code, url)));
                     }
-                    downloadSize += len;
-                    float progress = downloadSize / fileSize;
-                    if (progressListener != null) {
-                        progressListener.onProgressUpdate(progress);
+                    return null;
+                }
+                // -1 if not known, chunked or gzip'ed for example.
+                long fileSize = response.getContentLength();
+                if (fileSize == 0 && offset == 0) {
+                    if (errorListener != null) {
+                        errorListener.onError(new Cause(new Error(String.format("Content for from %s length is 0.", url))));
                     }
+                    return null;
                 }
-                is.close();
-                fos.close();
-                return tmpFile.getPath();
+                long total = fileSize < 0 ? -1 : offset + fileSize;
+                CacheMeta resumable = ownsPartial && isResumable(response, meta) ? meta : null;
+                long downloadSize = stream(response.getBody(), target, ownsPartial, offset, total, resumable,
+                        progressListener);
+                if (downloadSize == 0) {
+                    if (errorListener != null) {
+                        errorListener.onError(new Cause(new Error(String.format("Content for from %s length is 0.", url))));
+                    }
+                    return null;
+                }
+                return DownloadResult.of(target.getPath(), meta);
+            } finally {
+                mCancelSignal.setOnCancelListener(null);
+                // Gives the connection back for reuse.
+                response.close();
+            }
+        } catch (SocketTimeoutException e) {
+            // Interrupted by the host, not by a cancel.
+            if (!mCancelSignal.isCancelled() && errorListener != null) {
+                errorListener.onError(new Cause(e));
             }
         } catch (InterruptedIOException ignored) {
         } catch (Exception e) {
+            // The aborted connection failed the read.
+            if (mCancelSignal.isCancelled()) return null;
             if (errorListener != null) {
                 errorListener.onError(new Cause(e));
             }
+        } finally {
+            if (ownsPartial) releasePartial(partial);
         }
         return null;
     }
 
+    /**
+     * @return Meta of a partial download that can be resumed, {@code null} after dropping it if it can not.
+     */
+    @Nullable
+    private static CacheMeta resumableMetaOf(File partial) {
+        if (!partial.exists()) return null;
+        CacheMeta meta = partial.length() > 0 ? CacheMeta.read(partial) : null;
+        if (meta == null || meta.getStrongValidator() == null) {
+            discardPartial(partial);
+            return null;
+        }
+        return meta;
+    }
+
+    /**
+     * @return {@code true} if the rest of this response can be asked with a range if it is cut.
+     */
+    private static boolean isResumable(HttpTransport.Response response, CacheMeta meta) {
+        String encoding = response.getHeader("Content-Encoding");
+        return meta.getStrongValidator() != null
+                && !"none".equalsIgnoreCase(response.getHeader("Accept-Ranges"))
+                && (encoding == null || "identity".equalsIgnoreCase(encoding));
+    }
+
+    /**
+     * @param contentRange {@code bytes start-end/total}
+     * @return The start, -1 if it can not be read.
+     */
+    private static long rangeStartOf(@Nullable String contentRange) {
+        if (contentRange == null || !contentRange.startsWith("bytes ")) return -1;
+        int dash = contentRange.indexOf('-');
+        if (dash < 0) return -1;
+        try {
+            return Long.parseLong(contentRange.substring(6, dash).trim());
+        } catch (NumberFormatException e) {
+            return -1;
+        }
+    }
+
+    /**
+     * Copy the body into the partial file of the target if it can be resumed, or into a temp file of
+     * its own, which replaces the target once the body is complete. Readers of the target never see
+     * a body being written. A cut body stays in the partial file if {@code resumable} is given,
+     * to be resumed by a later download. The body is left open, it belongs to the response.
+     *
+     * @param ownsPartial {@code true} if this download claimed the partial file of the target,
+     *                    {@code resumable} is {@code null} and {@code offset} 0 if not.
+     * @param offset      Bytes already in the partial file, the body is appended to them.
+     * @param total       Size of the complete content, -1 if not known.
+     * @return Size of the content, the target is untouched if 0.
+     */
+    private long stream(InputStream is, File target, boolean ownsPartial, long offset, long total,
+                        @Nullable CacheMeta resumable, ProgressListener progressListener) throws IOException {
+        File partial = partialOf(target);
+        boolean intoPartial = resumable != null || offset > 0;
+        if (resumable != null) {
+            resumable.write(partial);
+        } else if (intoPartial) {
+            CacheMeta.delete(partial);
+        } else if (ownsPartial) {
+            // Superseded by this complete body.
+            discardPartial(partial);
+        }
+        File out = intoPartial ? partial : tempOf(target);
+        FileOutputStream fos = new FileOutputStream(out, offset > 0);
+        byte[] buffer = DownloadBuffers.acquire();
+        long downloadSize = offset;
+        boolean complete = false;
+        try {
+            int len;
+            while ((len = is.read(buffer)) != -1) {
+                fos.write(buffer, 0, len);
+                if (mByteReadingListener != null) {
+                    mByteReadingListener.onBytesRead(len);
+                }
+                downloadSize += len;
+                if (progressListener != null && total > 0) {
+                    progressListener.onProgressUpdate((float) downloadSize / total);
+                }
+                // Cancelled, what we have is kept for the next try.
+                if (mCancelSignal.isCancelled() || Thread.currentThread().isInterrupted()) {
+                    throw new InterruptedIOException("Interrupted downloading " + target);
+                }
+            }
+            // Not synced, the rename keeps readers off a torn body and a cache entry lost
+            // to a power cut is only downloaded again.
+            complete = true;
+        } finally {
+            DownloadBuffers.release(buffer);
+            fos.close();
+            boolean kept = resumable != null && downloadSize > 0;
+            if (!complete && !kept) {
+                discardPartial(out);
+            }
+            if (!complete && (mCancelSignal.isCancelled() || Thread.currentThread().isInterrupted())) {
+                mCancelSignal.onDownloadAborted(downloadSize, total, kept ? downloadSize : 0);
+            }
+        }
+        CacheMeta.delete(out);
+        if (downloadSize == 0) {
+            //noinspection ResultOfMethodCallIgnored
+            out.delete();
+            return 0;
+        }
+        if (!out.renameTo(target)) {
+            discardPartial(out);
+            throw new IOException("Failed to rename " + out + " to " + target);
+        }
+        return downloadSize;
+    }
+
+    @Deprecated
     @Override
     public long size(String url) {
         try {
-            URL u = new URL(url);
-            URLConnection conn = u.openConnection();
-            conn.setConnectTimeout(6 * 1000);
-            conn.connect();
-            return conn.getContentLength();
+            HttpTransport.Response response = mTransport.get(url, Collections.<String, String>emptyMap());
+            try {
+                return response.getContentLength();
+            } finally {
+                response.close();
+            }
         } catch (Exception ignored) {
 
         }
@@ -97,6 +349,9 @@ public class HttpImageDownloader implements ImageDownloader<String> {
     }
 
     public interface ByteReadingListener {
-        void onBytesRead(byte[] bytes);
+        /**
+         * @param count Number of bytes actually read by one read.
+         */
+        void onBytesRead(int count);
     }
 }
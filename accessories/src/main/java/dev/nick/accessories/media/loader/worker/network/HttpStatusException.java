@@ -0,0 +1,43 @@
+/*
+ * Copyright (c) 2016 Nick Guo
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package dev.nick.accessories.media.loader.worker.network;
+
+import java.io.IOException;
+
+import lombok.Getter;
+
+/**
+ * A response with a status other than the ones a download can use.
+ */
+@Getter
+public class HttpStatusException extends IOException {
+
+    private final int code;
+
+    public HttpStatusException(int code, String url) {
+        super(String.format("Response %d from %s.", code, url));
+        this.code = code;
+    }
+
+    /**
+     * @return {@code true} for a 5xx, the server is failing rather than the request being wrong.
+     * A 408 or 429 is about this request, it does not count against the host.
+     */
+    public boolean isServerFailure() {
+        return code >= 500;
+    }
+}
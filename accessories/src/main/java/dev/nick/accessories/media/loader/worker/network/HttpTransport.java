@@ -0,0 +1,67 @@
+/*
+ * Copyright (c) 2016 Nick Guo
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package dev.nick.accessories.media.loader.worker.network;
+
+import android.support.annotation.NonNull;
+import android.support.annotation.Nullable;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.Map;
+
+/**
+ * Sends the requests of {@link HttpImageDownloader}, set through {@link NetworkPolicy#getTransport()}
+ * to change how connections are made and reused, {@link UrlConnectionTransport} by default.
+ * One transport is used by every loader sharing the policy, so it must be thread safe.
+ */
+public interface HttpTransport {
+
+    /**
+     * Send a GET request.
+     *
+     * @param headers Extra request headers, the validators of a conditional request for example.
+     * @return The response, to be closed by the caller so its connection can be reused.
+     */
+    @NonNull
+    Response get(@NonNull String url, @NonNull Map<String, String> headers) throws IOException;
+
+    interface Response extends Closeable {
+
+        int getCode();
+
+        @Nullable
+        String getHeader(@NonNull String name);
+
+        /**
+         * @return Length of the body as read from {@link #getBody()}, -1 if not known.
+         */
+        long getContentLength();
+
+        /**
+         * @return The body, already decoded if it was sent compressed.
+         */
+        @NonNull
+        InputStream getBody() throws IOException;
+
+        /**
+         * Drop the connection from any thread without blocking, a read in progress fails.
+         * The response still has to be closed.
+         */
+        void abort();
+    }
+}
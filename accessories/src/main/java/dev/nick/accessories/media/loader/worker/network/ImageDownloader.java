@@ -16,10 +16,34 @@
 
 package dev.nick.accessories.media.loader.worker.network;
 
+import android.support.annotation.NonNull;
+import android.support.annotation.Nullable;
+
+import java.io.File;
+
 import dev.nick.accessories.media.loader.worker.ProgressListener;
 import dev.nick.accessories.media.loader.worker.result.ErrorListener;
 
 public interface ImageDownloader<T> {
-    T download(String url, ProgressListener progressListener, ErrorListener errorListener);
+
+    /**
+     * Download the content straight into the target, or only revalidate it if a local copy is known.
+     * The target is replaced atomically, it is left as is unless the new content is complete.
+     * A cut download may be kept next to it and resumed with a range by the next call for the same target.
+     *
+     * @param cached Meta of the local copy, {@code null} if there is none.
+     * @param target Where the content goes.
+     * @return The new content, a not modified result if {@code cached} is still current,
+     * or {@code null} on failure.
+     */
+    @Nullable
+    DownloadResult<T> download(String url, @Nullable CacheMeta cached, @NonNull File target,
+                               ProgressListener progressListener, ErrorListener errorListener);
+
+    /**
+     * @deprecated Opens a connection just for the length, revalidate with
+     * {@link #download(String, CacheMeta, File, ProgressListener, ErrorListener)} instead.
+     */
+    @Deprecated
     long size(String url);
 }
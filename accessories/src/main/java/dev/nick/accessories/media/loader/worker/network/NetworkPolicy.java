@@ -32,4 +32,24 @@ public class NetworkPolicy {
 
     private boolean onlyOnWifi;
     private boolean trafficStatsEnabled;
+    /**
+     * Serve any local copy of a network url at once, also when offline or when the download fails,
+     * and refresh it in the background. A refreshed bitmap is pushed to the holder still showing
+     * the url, only if the content changed.
+     */
+    private boolean staleWhileRevalidate;
+    /**
+     * Sends the requests, {@link UrlConnectionTransport#shared()} if {@code null}.
+     * Build a {@link UrlConnectionTransport} for other timeouts or per host limits,
+     * or use {@link OkHttpTransport} for HTTP/2.
+     */
+    private HttpTransport transport;
+    /**
+     * Adapts how many network tasks run at once, {@code null} to run them on the loading threads.
+     */
+    private ConcurrencyController concurrency;
+    /**
+     * Retries failed downloads and short-circuits failing hosts, {@link HostBreaker#shared()} if {@code null}.
+     */
+    private HostBreaker hostBreaker;
 }
@@ -0,0 +1,105 @@
+/*
+ * Copyright (c) 2016 Nick Guo
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package dev.nick.accessories.media.loader.worker.network;
+
+import android.support.annotation.NonNull;
+import android.support.annotation.Nullable;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.Map;
+
+import okhttp3.Call;
+import okhttp3.OkHttpClient;
+import okhttp3.Request;
+import okhttp3.ResponseBody;
+
+/**
+ * {@link HttpTransport} over an OkHttp client, for HTTP/2 and its connection pool.
+ * OkHttp is not a dependency of this library, the app adds it to use this one:
+ * <pre>
+ * NetworkPolicy.builder().transport(new OkHttpTransport(new OkHttpClient())).build();
+ * </pre>
+ * Timeouts, pool and per host limits are the ones of the client.
+ */
+public class OkHttpTransport implements HttpTransport {
+
+    private final OkHttpClient mClient;
+
+    public OkHttpTransport(@NonNull OkHttpClient client) {
+        mClient = client;
+    }
+
+    @NonNull
+    @Override
+    public Response get(@NonNull String url, @NonNull Map<String, String> headers) throws IOException {
+        Request.Builder request = new Request.Builder().url(url);
+        for (Map.Entry<String, String> header : headers.entrySet()) {
+            request.header(header.getKey(), header.getValue());
+        }
+        Call call = mClient.newCall(request.build());
+        return new OkHttpResponse(call, call.execute());
+    }
+
+    private static class OkHttpResponse implements Response {
+
+        private final Call mCall;
+        private final okhttp3.Response mResponse;
+
+        OkHttpResponse(Call call, okhttp3.Response response) {
+            mCall = call;
+            mResponse = response;
+        }
+
+        @Override
+        public int getCode() {
+            return mResponse.code();
+        }
+
+        @Nullable
+        @Override
+        public String getHeader(@NonNull String name) {
+            return mResponse.header(name);
+        }
+
+        @Override
+        public long getContentLength() {
+            ResponseBody body = mResponse.body();
+            return body != null ? body.contentLength() : -1;
+        }
+
+        @NonNull
+        @Override
+        public InputStream getBody() throws IOException {
+            ResponseBody body = mResponse.body();
+            if (body == null) throw new IOException("No body in response " + mResponse.code());
+            // Decoded by OkHttp already if it was gzip'ed.
+            return body.byteStream();
+        }
+
+        @Override
+        public void abort() {
+            mCall.cancel();
+        }
+
+        @Override
+        public void close() {
+            ResponseBody body = mResponse.body();
+            if (body != null) body.close();
+        }
+    }
+}
@@ -0,0 +1,42 @@
+/*
+ * Copyright (c) 2016 Nick Guo
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package dev.nick.accessories.media.loader.worker.network;
+
+import android.support.annotation.NonNull;
+
+import dev.nick.accessories.media.loader.worker.result.Cause;
+import lombok.Getter;
+
+/**
+ * A download failed as its host is struggling, the task is to be run again after a delay,
+ * see {@link HostBreaker#backoffOf(int)}. Its thread is not held while it waits.
+ */
+@Getter
+public class RetryLaterException extends RuntimeException {
+
+    // Millis before the task runs again.
+    private final long delayMillis;
+    // Failure of the attempt, reported if the task can not be run again.
+    @NonNull
+    private final Cause failure;
+
+    public RetryLaterException(long delayMillis, @NonNull Cause failure) {
+        super(String.format("Retrying in %d ms", delayMillis));
+        this.delayMillis = delayMillis;
+        this.failure = failure;
+    }
+}
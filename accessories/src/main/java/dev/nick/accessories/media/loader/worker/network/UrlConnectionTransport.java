@@ -0,0 +1,299 @@
+/*
+ * Copyright (c) 2016 Nick Guo
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package dev.nick.accessories.media.loader.worker.network;
+
+import android.support.annotation.NonNull;
+import android.support.annotation.Nullable;
+
+import com.google.guava.base.Optional;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InterruptedIOException;
+import java.net.HttpURLConnection;
+import java.net.URL;
+import java.net.URLConnection;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.Executor;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.zip.GZIPInputStream;
+
+import dev.nick.accessories.common.annotation.MinSize;
+import dev.nick.accessories.media.loader.utils.Preconditions;
+import lombok.Getter;
+import lombok.ToString;
+
+/**
+ * Default {@link HttpTransport} over {@link HttpURLConnection}.
+ * <p>
+ * Connections are kept alive in the platform pool: what is left of a body is read on close, so its
+ * connection goes back to the pool instead of being torn down. The connections open to one host are
+ * limited, a screen of images from one CDN waits for a pooled connection instead of opening one each.
+ * Bodies are asked gzip'ed and decoded here.
+ */
+@ToString(exclude = "mOpenConnections")
+public class UrlConnectionTransport implements HttpTransport {
+
+    public static final int DEFAULT_CONNECT_TIMEOUT = 6 * 1000;
+    public static final int DEFAULT_READ_TIMEOUT = 15 * 1000;
+    public static final int DEFAULT_MAX_CONNECTIONS_PER_HOST = 4;
+
+    // Left over bodies longer than it are cheaper to drop with the connection than to read.
+    private static final int MAX_DRAIN_SIZE = 64 * 1024;
+
+    // Disconnecting may write to the socket, not done on the thread aborting.
+    private static final Executor sDisconnector = new ThreadPoolExecutor(0, 1, 10, TimeUnit.SECONDS,
+            new LinkedBlockingQueue<Runnable>());
+
+    private static UrlConnectionTransport sShared;
+
+    // Millis to connect.
+    @Getter
+    @MinSize(1)
+    private final int connectTimeout;
+    // Millis without a byte before a read fails, the transfer can take longer as long as it moves.
+    @Getter
+    @MinSize(1)
+    private final int readTimeout;
+    @Getter
+    @MinSize(1)
+    private final int maxConnectionsPerHost;
+
+    // Open connections by host, a host is removed once it has none.
+    private final Map<String, Integer> mOpenConnections = new HashMap<>();
+
+    private UrlConnectionTransport(int connectTimeout, int readTimeout, int maxConnectionsPerHost) {
+        this.connectTimeout = connectTimeout;
+        this.readTimeout = readTimeout;
+        this.maxConnectionsPerHost = maxConnectionsPerHost;
+    }
+
+    /**
+     * @return The transport with default settings shared by the policies setting none,
+     * so the per host limit holds across loaders.
+     */
+    public static synchronized UrlConnectionTransport shared() {
+        if (sShared == null) sShared = builder().build();
+        return sShared;
+    }
+
+    public static Builder builder() {
+        return new Builder();
+    }
+
+    @NonNull
+    @Override
+    public Response get(@NonNull String url, @NonNull Map<String, String> headers) throws IOException {
+        URL u = new URL(url);
+        String host = u.getAuthority();
+        acquire(host);
+        Response response = null;
+        try {
+            URLConnection conn = u.openConnection();
+            conn.setConnectTimeout(connectTimeout);
+            conn.setReadTimeout(readTimeout);
+            conn.setUseCaches(false);
+            // Set explicitly, the platform would otherwise decode it and hide the length.
+            conn.setRequestProperty("Accept-Encoding", "gzip");
+            for (Map.Entry<String, String> header : headers.entrySet()) {
+                conn.setRequestProperty(header.getKey(), header.getValue());
+            }
+            conn.connect();
+            int code = conn instanceof HttpURLConnection
+                    ? ((HttpURLConnection) conn).getResponseCode()
+                    : HttpURLConnection.HTTP_OK;
+            response = new UrlConnectionResponse(conn, code, host);
+            return response;
+        } finally {
+            if (response == null) release(host);
+        }
+    }
+
+    private void acquire(String host) throws InterruptedIOException {
+        synchronized (mOpenConnections) {
+            Integer open;
+            while ((open = mOpenConnections.get(host)) != null && open >= maxConnectionsPerHost) {
+                try {
+                    mOpenConnections.wait();
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                    throw new InterruptedIOException("Interrupted waiting for a connection to " + host);
+                }
+            }
+            mOpenConnections.put(host, open == null ? 1 : open + 1);
+        }
+    }
+
+    private void release(String host) {
+        synchronized (mOpenConnections) {
+            Integer open = mOpenConnections.get(host);
+            if (open == null || open <= 1) {
+                mOpenConnections.remove(host);
+            } else {
+                mOpenConnections.put(host, open - 1);
+            }
+            mOpenConnections.notifyAll();
+        }
+    }
+
+    private class UrlConnectionResponse implements Response {
+
+        private final URLConnection mConn;
+        private final int mCode;
+        private final String mHost;
+        private final boolean mGzip;
+
+        private InputStream mRaw;
+        private InputStream mBody;
+        private boolean mClosed;
+
+        UrlConnectionResponse(URLConnection conn, int code, String host) {
+            mConn = conn;
+            mCode = code;
+            mHost = host;
+            mGzip = "gzip".equalsIgnoreCase(conn.getContentEncoding());
+        }
+
+        @Override
+        public int getCode() {
+            return mCode;
+        }
+
+        @Nullable
+        @Override
+        public String getHeader(@NonNull String name) {
+            return mConn.getHeaderField(name);
+        }
+
+        @Override
+        public long getContentLength() {
+            return mGzip ? -1 : mConn.getContentLength();
+        }
+
+        @NonNull
+        @Override
+        public InputStream getBody() throws IOException {
+            if (mBody == null) {
+                mRaw = mConn.getInputStream();
+                mBody = mGzip ? new GZIPInputStream(mRaw) : mRaw;
+            }
+            return mBody;
+        }
+
+        @Override
+        public void abort() {
+            sDisconnector.execute(new Runnable() {
+                @Override
+                public void run() {
+                    disconnect();
+                }
+            });
+        }
+
+        @Override
+        public void close() {
+            if (mClosed) return;
+            mClosed = true;
+            try {
+                InputStream raw = mRaw;
+                if (raw == null && mConn instanceof HttpURLConnection) {
+                    HttpURLConnection http = (HttpURLConnection) mConn;
+                    raw = mCode >= HttpURLConnection.HTTP_BAD_REQUEST ? http.getErrorStream() : http.getInputStream();
+                }
+                if (raw != null) {
+                    if (!drain(raw)) disconnect();
+                    raw.close();
+                }
+            } catch (IOException e) {
+                disconnect();
+            } finally {
+                release(mHost);
+            }
+        }
+
+        private boolean drain(InputStream in) throws IOException {
+            byte[] buffer = DownloadBuffers.acquire();
+            try {
+                long drained = 0;
+                int len;
+                while ((len = in.read(buffer)) != -1) {
+                    drained += len;
+                    if (drained > MAX_DRAIN_SIZE) return false;
+                }
+                return true;
+            } finally {
+                DownloadBuffers.release(buffer);
+            }
+        }
+
+        private void disconnect() {
+            if (mConn instanceof HttpURLConnection) {
+                ((HttpURLConnection) mConn).disconnect();
+            }
+        }
+    }
+
+    public static class Builder {
+
+        private Optional<Integer> connectTimeout = Optional.absent();
+        private Optional<Integer> readTimeout = Optional.absent();
+        private Optional<Integer> maxConnectionsPerHost = Optional.absent();
+
+        private Builder() {
+        }
+
+        /**
+         * @param connectTimeout Millis to connect.
+         * @return Builder instance.
+         */
+        public Builder connectTimeout(@MinSize(1) int connectTimeout) {
+            Preconditions.checkState(connectTimeout >= 1);
+            this.connectTimeout = Optional.of(connectTimeout);
+            return Builder.this;
+        }
+
+        /**
+         * @param readTimeout Millis without a byte before the download fails as stalled.
+         * @return Builder instance.
+         */
+        public Builder readTimeout(@MinSize(1) int readTimeout) {
+            Preconditions.checkState(readTimeout >= 1);
+            this.readTimeout = Optional.of(readTimeout);
+            return Builder.this;
+        }
+
+        /**
+         * @param maxConnectionsPerHost Connections open to one host at most, more requests wait.
+         * @return Builder instance.
+         */
+        public Builder maxConnectionsPerHost(@MinSize(1) int maxConnectionsPerHost) {
+            Preconditions.checkState(maxConnectionsPerHost >= 1);
+            this.maxConnectionsPerHost = Optional.of(maxConnectionsPerHost);
+            return Builder.this;
+        }
+
+        public UrlConnectionTransport build() {
+            return new UrlConnectionTransport(
+                    connectTimeout.or(DEFAULT_CONNECT_TIMEOUT),
+                    readTimeout.or(DEFAULT_READ_TIMEOUT),
+                    maxConnectionsPerHost.or(DEFAULT_MAX_CONNECTIONS_PER_HOST));
+        }
+    }
+}
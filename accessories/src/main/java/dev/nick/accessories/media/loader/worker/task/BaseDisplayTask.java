@@ -16,9 +16,31 @@
 
 package dev.nick.accessories.media.loader.worker.task;
 
+import android.support.annotation.NonNull;
+import android.support.annotation.Nullable;
+
+import dev.nick.accessories.media.loader.worker.CancelSignal;
+
 public abstract class BaseDisplayTask<T> implements DisplayTask<T> {
     @Override
     public DisplayTaskRecord getTaskRecord() {
         return null;
     }
+
+    /**
+     * Run the task for its future. The future completes with what is given to the completion,
+     * by default the result of {@link #call()} before returning. A task handing its work over
+     * to another thread returns at once and completes from there.
+     */
+    public void start(@NonNull Completion<T> completion) throws Exception {
+        completion.complete(call());
+    }
+
+    /**
+     * @return Cancelled along with the future of this task, {@code null} if the work can not be aborted.
+     */
+    @Nullable
+    public CancelSignal getCancelSignal() {
+        return null;
+    }
 }
@@ -19,10 +19,16 @@ package dev.nick.accessories.media.loader.worker.task;
 import android.support.annotation.Nullable;
 
 import java.util.concurrent.FutureTask;
+import java.util.concurrent.atomic.AtomicBoolean;
 
 import dev.nick.accessories.media.loader.queue.Priority;
 import dev.nick.accessories.media.loader.queue.PriorityRemarkable;
+import dev.nick.accessories.media.loader.worker.CancelSignal;
 
+/**
+ * Future of a display task. Unlike a plain {@link FutureTask} it may complete after {@link #run()}
+ * returned, from the thread the task handed its work over to, see {@link BaseDisplayTask#start(Completion)}.
+ */
 public class BaseFutureTask<T> extends FutureTask<T> implements PriorityRemarkable {
 
     private TaskActionListener mListener;
@@ -33,6 +39,32 @@ public class BaseFutureTask<T> extends FutureTask<T> implements PriorityRemarkab
 
     private boolean mCancelOthersBeforeRun;
 
+    private final AtomicBoolean mStarted = new AtomicBoolean();
+    // Thread in run(), interrupted by a cancel, guarded by mStarted.
+    private Thread mRunner;
+
+    private final Completion<T> mCompletion = new Completion<T>() {
+        @Override
+        public void complete(@Nullable T result) {
+            set(result);
+        }
+
+        @Override
+        public void cancel() {
+            BaseFutureTask.this.cancel(false);
+        }
+
+        @Override
+        public boolean retryAfter(long delayMillis) {
+            if (mListener == null || isDone()) return false;
+            // Lets the next run start.
+            mStarted.set(false);
+            if (mListener.onRetry(BaseFutureTask.this, delayMillis)) return true;
+            mStarted.set(true);
+            return false;
+        }
+    };
+
     public BaseFutureTask(BaseDisplayTask<T> task, @Nullable TaskActionListener listener, boolean cancelOthersBeforeRun) {
         super(task);
         this.mTask = task;
@@ -41,6 +73,24 @@ public class BaseFutureTask<T> extends FutureTask<T> implements PriorityRemarkab
         this.mCancelOthersBeforeRun = cancelOthersBeforeRun;
     }
 
+    @Override
+    public void run() {
+        if (isDone() || !mStarted.compareAndSet(false, true)) return;
+        synchronized (mStarted) {
+            mRunner = Thread.currentThread();
+        }
+        try {
+            mTask.start(mCompletion);
+        } catch (Throwable e) {
+            setException(e);
+        } finally {
+            synchronized (mStarted) {
+                // A retry may be running already.
+                if (mRunner == Thread.currentThread()) mRunner = null;
+            }
+        }
+    }
+
     @Override
     protected void done() {
         super.done();
@@ -50,6 +100,14 @@ public class BaseFutureTask<T> extends FutureTask<T> implements PriorityRemarkab
     @Override
     public boolean cancel(boolean mayInterruptIfRunning) {
         boolean result = super.cancel(mayInterruptIfRunning);
+        if (result && mayInterruptIfRunning) {
+            synchronized (mStarted) {
+                if (mRunner != null) mRunner.interrupt();
+            }
+        }
+        // Abort the download or decode running, the result would be dropped anyway.
+        CancelSignal signal = mTask.getCancelSignal();
+        if (result && signal != null) signal.cancel();
         if (mListener != null) mListener.onCancel(this);
         return result;
     }
@@ -84,5 +142,10 @@ public class BaseFutureTask<T> extends FutureTask<T> implements PriorityRemarkab
         void onDone(BaseFutureTask futureTTask);
 
         void onCancel(BaseFutureTask futureTTask);
+
+        /**
+         * @return {@code true} if the task is to be run again after the delay.
+         */
+        boolean onRetry(BaseFutureTask futureTTask, long delayMillis);
     }
 }
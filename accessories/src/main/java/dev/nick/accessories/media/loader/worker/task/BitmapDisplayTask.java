@@ -23,16 +23,17 @@ import android.support.annotation.NonNull;
 import android.support.annotation.Nullable;
 
 import java.io.InterruptedIOException;
+import java.util.concurrent.CancellationException;
 
 import dev.nick.accessories.logger.LoggerManager;
 import dev.nick.accessories.media.loader.LoaderConfig;
-import dev.nick.accessories.media.loader.ui.MediaQuality;
+import dev.nick.accessories.media.loader.worker.CancelSignal;
 import dev.nick.accessories.media.loader.worker.DecodeSpec;
-import dev.nick.accessories.media.loader.worker.DimenSpec;
 import dev.nick.accessories.media.loader.worker.MediaData;
 import dev.nick.accessories.media.loader.worker.MediaFetcher;
 import dev.nick.accessories.media.loader.worker.MediaSource;
 import dev.nick.accessories.media.loader.worker.ProgressListener;
+import dev.nick.accessories.media.loader.worker.network.RetryLaterException;
 import dev.nick.accessories.media.loader.worker.result.Cause;
 import dev.nick.accessories.media.loader.worker.result.ErrorListener;
 
@@ -40,8 +41,7 @@ public class BitmapDisplayTask extends BaseDisplayTask<Bitmap> {
 
     private MediaData<Bitmap> mMediaData;
 
-    private DimenSpec mDimenSpec;
-    private MediaQuality mQuality;
+    private DecodeSpec mDecodeSpec;
 
     private LoaderConfig mLoaderConfig;
 
@@ -60,8 +60,7 @@ public class BitmapDisplayTask extends BaseDisplayTask<Bitmap> {
                              LoaderConfig loaderConfig,
                              TaskInterrupter displayTaskMonitor,
                              MediaData<Bitmap> url,
-                             DimenSpec spec,
-                             MediaQuality quality,
+                             DecodeSpec spec,
                              ProgressListener<Bitmap> progressListener,
                              ErrorListener errorListener,
                              DisplayTaskRecord taskRecord) {
@@ -69,34 +68,70 @@ public class BitmapDisplayTask extends BaseDisplayTask<Bitmap> {
         this.mLoaderConfig = loaderConfig;
         this.mDisplayTaskMonitor = displayTaskMonitor;
         this.mMediaData = url;
-        this.mDimenSpec = spec;
-        this.mQuality = quality;
+        this.mDecodeSpec = spec;
         this.mProgressListener = progressListener;
         this.mErrorListener = errorListener;
         this.mTaskRecord = taskRecord;
     }
 
+    /**
+     * Fetch and decode on this thread, the result is {@code null} if the decode is handed over
+     * to the pipeline of the spec.
+     */
     @Override
     public void run() {
+        try {
+            mResult = fetch(mProgressListener, mErrorListener);
+        } catch (RetryLaterException e) {
+            // Nothing runs it again from here.
+            if (mErrorListener != null) mErrorListener.onError(e.getFailure());
+        }
+    }
+
+    /**
+     * Fetch on this thread, the future completes once the listeners get the result, which is
+     * from the decode stage if the decode is handed over to the pipeline of the spec.
+     */
+    @Override
+    public void start(@NonNull Completion<Bitmap> completion) {
+        CompletingListener listener = new CompletingListener(completion);
+        Bitmap result;
+        try {
+            result = fetch(listener, listener);
+        } catch (RetryLaterException e) {
+            mDecodeSpec.setRetries(mDecodeSpec.getRetries() + 1);
+            if (!completion.retryAfter(e.getDelayMillis())) listener.onError(e.getFailure());
+            return;
+        }
+        if (!mDecodeSpec.isHandedOff()) completion.complete(result);
+    }
+
+    /**
+     * @throws RetryLaterException If the download is to be tried again later.
+     */
+    @Nullable
+    private Bitmap fetch(ProgressListener<Bitmap> progressListener, ErrorListener errorListener) {
 
         Process.setThreadPriority(Process.THREAD_PRIORITY_BACKGROUND);
 
         if (mDisplayTaskMonitor.interruptExecute(mTaskRecord)) {
             LoggerManager.getLogger(getClass()).verbose("interruptExecute!");
-            return;
+            return null;
         }
 
         try {
             MediaSource<Bitmap> source = mMediaData.getSource();
             MediaFetcher<Bitmap> fetcher = source.getFetcher(mContext, mLoaderConfig);
-            DecodeSpec decodeSpec = new DecodeSpec(mQuality, mDimenSpec);
-            mResult = fetcher.fetchFromUrl(mMediaData.getUrl(), decodeSpec, mProgressListener, mErrorListener);
-        } catch (InterruptedIOException | InterruptedException ignored) {
+            return fetcher.fetchFromUrl(mMediaData.getUrl(), mDecodeSpec, progressListener, errorListener);
+        } catch (InterruptedIOException | InterruptedException | CancellationException ignored) {
             LoggerManager.getLogger(getClass()).debug("Ignored error:" + ignored.getLocalizedMessage());
+        } catch (RetryLaterException e) {
+            throw e;
         } catch (Exception e) {
-            if (mErrorListener != null)
-                mErrorListener.onError(new Cause(e));
+            if (errorListener != null)
+                errorListener.onError(new Cause(e));
         }
+        return null;
     }
 
     @Override
@@ -104,6 +139,12 @@ public class BitmapDisplayTask extends BaseDisplayTask<Bitmap> {
         return mTaskRecord;
     }
 
+    @Nullable
+    @Override
+    public CancelSignal getCancelSignal() {
+        return mDecodeSpec.getCancelSignal();
+    }
+
     @Override
     public Bitmap call() throws Exception {
         run();
@@ -125,4 +166,46 @@ public class BitmapDisplayTask extends BaseDisplayTask<Bitmap> {
     public void setProgressListener(@Nullable ProgressListener<Bitmap> listener) {
         mProgressListener = listener;
     }
+
+    /**
+     * Calls the listeners of the task, then completes its future with the result.
+     */
+    private class CompletingListener implements ProgressListener<Bitmap>, ErrorListener {
+
+        private final Completion<Bitmap> mCompletion;
+
+        CompletingListener(Completion<Bitmap> completion) {
+            mCompletion = completion;
+        }
+
+        @Override
+        public void onStartLoading() {
+            if (mProgressListener != null) mProgressListener.onStartLoading();
+        }
+
+        @Override
+        public void onProgressUpdate(float progress) {
+            if (mProgressListener != null) mProgressListener.onProgressUpdate(progress);
+        }
+
+        /**
+         * The handed over decode is dropped, the listeners hear of it with the cancel of the future.
+         */
+        @Override
+        public void onCancel() {
+            mCompletion.cancel();
+        }
+
+        @Override
+        public void onComplete(Bitmap result) {
+            if (mProgressListener != null) mProgressListener.onComplete(result);
+            mCompletion.complete(result);
+        }
+
+        @Override
+        public void onError(@NonNull Cause cause) {
+            if (mErrorListener != null) mErrorListener.onError(cause);
+            mCompletion.complete(null);
+        }
+    }
 }
\ No newline at end of file
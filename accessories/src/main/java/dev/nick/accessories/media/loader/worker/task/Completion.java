@@ -0,0 +1,43 @@
+/*
+ * Copyright (c) 2016 Nick Guo
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package dev.nick.accessories.media.loader.worker.task;
+
+import android.support.annotation.Nullable;
+
+/**
+ * Completes the future of a task, possibly from another thread once the task returned.
+ * Only the first call counts.
+ *
+ * @see BaseDisplayTask#start(Completion)
+ */
+public interface Completion<T> {
+
+    void complete(@Nullable T result);
+
+    /**
+     * The work was dropped before it could end, the future is cancelled.
+     */
+    void cancel();
+
+    /**
+     * The work failed for now, the task runs again after the delay unless cancelled meanwhile.
+     * No thread is held while it waits.
+     *
+     * @return {@code false} if the task can not be run again, it is to complete now.
+     */
+    boolean retryAfter(long delayMillis);
+}
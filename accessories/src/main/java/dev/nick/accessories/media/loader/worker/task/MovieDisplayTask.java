@@ -23,15 +23,18 @@ import android.support.annotation.NonNull;
 import android.support.annotation.Nullable;
 
 import java.io.InterruptedIOException;
+import java.util.concurrent.CancellationException;
 
 import dev.nick.accessories.media.loader.LoaderConfig;
 import dev.nick.accessories.media.loader.ui.MediaQuality;
+import dev.nick.accessories.media.loader.worker.CancelSignal;
 import dev.nick.accessories.media.loader.worker.DecodeSpec;
 import dev.nick.accessories.media.loader.worker.DimenSpec;
 import dev.nick.accessories.media.loader.worker.MediaData;
 import dev.nick.accessories.media.loader.worker.MediaFetcher;
 import dev.nick.accessories.media.loader.worker.MediaSource;
 import dev.nick.accessories.media.loader.worker.ProgressListener;
+import dev.nick.accessories.media.loader.worker.network.RetryLaterException;
 import dev.nick.accessories.media.loader.worker.result.Cause;
 import dev.nick.accessories.media.loader.worker.result.ErrorListener;
 import dev.nick.accessories.logger.LoggerManager;
@@ -42,6 +45,7 @@ public class MovieDisplayTask extends BaseDisplayTask<Movie> {
 
     private DimenSpec mDimenSpec;
     private MediaQuality mQuality;
+    private CancelSignal mCancelSignal;
 
     private LoaderConfig mLoaderConfig;
 
@@ -56,12 +60,16 @@ public class MovieDisplayTask extends BaseDisplayTask<Movie> {
 
     private Movie mResult;
 
+    // Failed downloads so far, the spec is made again on each run.
+    private int mRetries;
+
     public MovieDisplayTask(Context context,
                             LoaderConfig loaderConfig,
                             TaskInterrupter displayTaskMonitor,
                             MediaData<Movie> url,
                             DimenSpec spec,
                             MediaQuality quality,
+                            CancelSignal cancelSignal,
                             ProgressListener<Movie> progressListener,
                             ErrorListener errorListener,
                             DisplayTaskRecord taskRecord) {
@@ -71,6 +79,7 @@ public class MovieDisplayTask extends BaseDisplayTask<Movie> {
         this.mMediaData = url;
         this.mDimenSpec = spec;
         this.mQuality = quality;
+        this.mCancelSignal = cancelSignal;
         this.mProgressListener = progressListener;
         this.mErrorListener = errorListener;
         this.mTaskRecord = taskRecord;
@@ -78,6 +87,30 @@ public class MovieDisplayTask extends BaseDisplayTask<Movie> {
 
     @Override
     public void run() {
+        try {
+            fetch();
+        } catch (RetryLaterException e) {
+            // Nothing runs it again from here.
+            if (mErrorListener != null) mErrorListener.onError(e.getFailure());
+        }
+    }
+
+    @Override
+    public void start(@NonNull Completion<Movie> completion) {
+        try {
+            fetch();
+        } catch (RetryLaterException e) {
+            mRetries++;
+            if (completion.retryAfter(e.getDelayMillis())) return;
+            if (mErrorListener != null) mErrorListener.onError(e.getFailure());
+        }
+        completion.complete(mResult);
+    }
+
+    /**
+     * @throws RetryLaterException If the download is to be tried again later.
+     */
+    private void fetch() {
 
         Process.setThreadPriority(Process.THREAD_PRIORITY_BACKGROUND);
 
@@ -93,9 +126,13 @@ public class MovieDisplayTask extends BaseDisplayTask<Movie> {
             MediaSource<Movie> source = mMediaData.getSource();
             MediaFetcher<Movie> fetcher = source.getFetcher(mContext, mLoaderConfig);
             DecodeSpec decodeSpec = new DecodeSpec(mQuality, mDimenSpec);
+            decodeSpec.setCancelSignal(mCancelSignal);
+            decodeSpec.setRetries(mRetries);
             mResult = fetcher.fetchFromUrl(mMediaData.getUrl(), decodeSpec, mProgressListener, mErrorListener);
-        } catch (InterruptedIOException | InterruptedException ignored) {
+        } catch (InterruptedIOException | InterruptedException | CancellationException ignored) {
             LoggerManager.getLogger(getClass()).debug("Ignored error:" + ignored.getLocalizedMessage());
+        } catch (RetryLaterException e) {
+            throw e;
         } catch (Exception e) {
             if (mErrorListener != null)
                 mErrorListener.onError(new Cause(e));
@@ -107,6 +144,12 @@ public class MovieDisplayTask extends BaseDisplayTask<Movie> {
         return mTaskRecord;
     }
 
+    @Nullable
+    @Override
+    public CancelSignal getCancelSignal() {
+        return mCancelSignal;
+    }
+
     @Override
     public Movie call() throws Exception {
         run();
@@ -0,0 +1,355 @@
+/*
+ * Copyright (c) 2016 Nick Guo
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package dev.nick.accessories.media.loader.cache.disk;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.io.BufferedReader;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.FileReader;
+import java.io.FileWriter;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.LinkedList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.Executor;
+
+import dev.nick.accessories.media.loader.cache.CacheKey;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+public class DiskLruIndexTest {
+
+    private File mRoot;
+    private File mInternal;
+    private File mExternal;
+    private File mJournal;
+
+    private QueuedExecutor mExecutor;
+
+    @Before
+    public void setUp() throws IOException {
+        mRoot = File.createTempFile("disk-lru-index", "");
+        assertTrue(mRoot.delete());
+        mInternal = new File(mRoot, "internal");
+        mExternal = new File(mRoot, "external");
+        assertTrue(mInternal.mkdirs());
+        assertTrue(mExternal.mkdirs());
+        mJournal = new File(mRoot, "cache.journal");
+        mExecutor = new QueuedExecutor();
+    }
+
+    @After
+    public void tearDown() {
+        delete(mRoot);
+    }
+
+    @Test
+    public void replayRestoresEntriesAndOrder() throws IOException {
+        DiskLruIndex index = open();
+        index.put(write(mInternal, "a", 10), 10, false, 1);
+        index.put(write(mExternal, "b", 20), 20, true, 2);
+        index.put(write(mInternal, "c", 30), 30, false, 3);
+        index.get("a");
+        mExecutor.drain();
+
+        DiskLruIndex replayed = open();
+        assertTrue(replayed.isLoaded());
+        assertEquals(3, replayed.count());
+        assertEquals(60, replayed.size());
+
+        DiskLruIndex.Entry b = replayed.get("b");
+        assertNotNull(b);
+        assertTrue(b.external);
+        assertEquals(20, b.size);
+        assertEquals(2, b.fingerprint);
+        // a was read after c was put, b was just read.
+        assertEquals("c", replayed.eldest().name);
+    }
+
+    @Test
+    public void replayAppliesDeletesAndOverwrites() throws IOException {
+        DiskLruIndex index = open();
+        index.put(write(mInternal, "a", 10), 10, false, 1);
+        index.put(write(mInternal, "b", 20), 20, false, 2);
+        index.put(write(mInternal, "a", 15), 15, false, 3);
+        index.remove("b");
+        assertTrue(new File(mInternal, "b").delete());
+        mExecutor.drain();
+
+        DiskLruIndex replayed = open();
+        assertEquals(1, replayed.count());
+        assertEquals(15, replayed.size());
+        assertNull(replayed.get("b"));
+        assertEquals(3, replayed.get("a").fingerprint);
+    }
+
+    @Test
+    public void replayKeepsLinesBeforeATornOne() throws IOException {
+        DiskLruIndex index = open();
+        index.put(write(mInternal, "a", 10), 10, false, 1);
+        index.put(write(mInternal, "b", 20), 20, false, 2);
+        mExecutor.drain();
+
+        // A crash in the middle of a line, followed by lines that must not be trusted.
+        append("PUT I 3");
+        append("DEL a");
+
+        DiskLruIndex replayed = open();
+        assertEquals(2, replayed.count());
+        assertNotNull(replayed.get("a"));
+    }
+
+    @Test
+    public void replayWithBadHeaderFallsBackToFiles() throws IOException {
+        write(mInternal, "a", 10);
+        FileWriter writer = new FileWriter(mJournal);
+        writer.write("not a journal\n1\n\nPUT I 99 1 gone\n");
+        writer.close();
+
+        DiskLruIndex replayed = open();
+        assertEquals(1, replayed.count());
+        assertEquals(10, replayed.size());
+        assertNull(replayed.get("gone"));
+        assertEquals(DiskLruIndex.MAGIC, readJournal().get(0));
+    }
+
+    @Test
+    public void versionOneJournalIsRebuiltFromTheFiles() throws IOException {
+        assertTrue(new File(mInternal, write(mInternal, "a", 10)).setLastModified(1000000L));
+        assertTrue(new File(mExternal, write(mExternal, "b", 20)).setLastModified(2000000L));
+        FileWriter writer = new FileWriter(mJournal);
+        writer.write(DiskLruIndex.MAGIC + "\n1\n\nPUT E 20 b\nPUT I 10 a\nREAD b\n");
+        writer.close();
+
+        DiskLruIndex replayed = open();
+        assertEquals(2, replayed.count());
+        assertEquals(30, replayed.size());
+
+        List<String> lines = readJournal();
+        assertEquals(5, lines.size());
+        assertEquals(DiskLruIndex.VERSION, lines.get(1));
+        // Adopted by age, without a fingerprint to check.
+        assertEquals("PUT I 10 " + CacheKey.UNKNOWN_FINGERPRINT + " a", lines.get(3));
+        assertEquals("PUT E 20 " + CacheKey.UNKNOWN_FINGERPRINT + " b", lines.get(4));
+        assertEquals(CacheKey.UNKNOWN_FINGERPRINT, replayed.get("b").fingerprint);
+
+        // Replays as version 2 from now on.
+        DiskLruIndex reopened = open();
+        assertEquals(2, reopened.count());
+        assertEquals("a", reopened.eldest().name);
+        assertEquals(5, readJournal().size());
+    }
+
+    @Test
+    public void openDropsMissingFilesAndAdoptsUnknownOnesAsEldest() throws IOException {
+        DiskLruIndex index = open();
+        index.put(write(mInternal, "known", 10), 10, false, 1);
+        index.put(write(mInternal, "lost", 20), 20, false, 2);
+        mExecutor.drain();
+
+        assertTrue(new File(mInternal, "lost").delete());
+        write(mExternal, "stray", 5);
+        write(mInternal, "ignored.bak", 7);
+        Map<String, Long> packed = new HashMap<>();
+        packed.put("blob", 3L);
+
+        DiskLruIndex replayed = new DiskLruIndex(mJournal, mExecutor);
+        replayed.open(mInternal.getPath(), mExternal.getPath(), packed);
+        assertEquals(3, replayed.count());
+        assertEquals(18, replayed.size());
+        assertNull(replayed.get("lost"));
+        assertNull(replayed.get("ignored.bak"));
+        assertTrue(replayed.get("stray").external);
+        assertTrue(replayed.get("blob").packed);
+        assertEquals(1, replayed.get("known").fingerprint);
+    }
+
+    @Test
+    public void openRewritesTheJournalCompacted() throws IOException {
+        DiskLruIndex index = open();
+        index.put(write(mInternal, "a", 10), 10, false, 1);
+        index.put(write(mInternal, "b", 20), 20, false, 2);
+        for (int i = 0; i < 10; i++) {
+            index.get("a");
+        }
+        index.remove("b");
+        assertTrue(new File(mInternal, "b").delete());
+        mExecutor.drain();
+        assertEquals(3 + 13, readJournal().size());
+
+        open();
+        List<String> lines = readJournal();
+        assertEquals(4, lines.size());
+        assertEquals(DiskLruIndex.MAGIC, lines.get(0));
+        assertEquals(DiskLruIndex.VERSION, lines.get(1));
+        assertEquals("", lines.get(2));
+        assertEquals("PUT I 10 1 a", lines.get(3));
+    }
+
+    @Test
+    public void redundantLinesTriggerCompaction() throws IOException {
+        DiskLruIndex index = open();
+        index.put(write(mInternal, "a", 10), 10, false, 1);
+        index.put(write(mExternal, "b", 20), 20, true, 2);
+        mExecutor.drain();
+
+        for (int i = 0; i < DiskLruIndex.COMPACT_THRESHOLD - 1; i++) {
+            index.get("b");
+        }
+        mExecutor.drain();
+        assertEquals(3 + 2 + DiskLruIndex.COMPACT_THRESHOLD - 1, readJournal().size());
+
+        index.get("a");
+        mExecutor.drain();
+        List<String> lines = readJournal();
+        assertEquals(5, lines.size());
+        // Rebuilt in access order.
+        assertEquals("PUT E 20 2 b", lines.get(3));
+        assertEquals("PUT I 10 1 a", lines.get(4));
+
+        // Lines keep being appended to the rebuilt journal.
+        index.remove("b");
+        assertTrue(new File(mExternal, "b").delete());
+        mExecutor.drain();
+        assertEquals("DEL b", readJournal().get(5));
+
+        DiskLruIndex replayed = open();
+        assertEquals(1, replayed.count());
+        assertEquals("a", replayed.eldest().name);
+    }
+
+    @Test
+    public void compactionIsNotScheduledForFewRedundantLines() throws IOException {
+        DiskLruIndex index = open();
+        index.put(write(mInternal, "a", 10), 10, false, 1);
+        mExecutor.drain();
+
+        for (int i = 0; i < DiskLruIndex.COMPACT_THRESHOLD - 1; i++) {
+            index.get("a");
+        }
+        // One flush only, no rebuild queued.
+        assertEquals(1, mExecutor.size());
+        mExecutor.drain();
+        assertEquals(3 + 1 + DiskLruIndex.COMPACT_THRESHOLD - 1, readJournal().size());
+    }
+
+    @Test
+    public void clearEmptiesTheJournal() throws IOException {
+        DiskLruIndex index = open();
+        index.put(write(mInternal, "a", 10), 10, false, 1);
+        mExecutor.drain();
+
+        index.clear();
+        assertEquals(0, index.count());
+        assertEquals(3, readJournal().size());
+
+        assertTrue(new File(mInternal, "a").delete());
+        DiskLruIndex replayed = open();
+        assertEquals(0, replayed.count());
+        assertFalse(new File(mJournal.getPath() + ".tmp").exists());
+    }
+
+    private DiskLruIndex open() {
+        DiskLruIndex index = new DiskLruIndex(mJournal, mExecutor);
+        index.open(mInternal.getPath(), mExternal.getPath(), null);
+        return index;
+    }
+
+    private static String write(File dir, String name, int size) throws IOException {
+        OutputStream out = new FileOutputStream(new File(dir, name));
+        try {
+            out.write(new byte[size]);
+        } finally {
+            out.close();
+        }
+        return name;
+    }
+
+    private void append(String line) throws IOException {
+        FileWriter writer = new FileWriter(mJournal, true);
+        try {
+            writer.write(line);
+            writer.write('\n');
+        } finally {
+            writer.close();
+        }
+    }
+
+    private List<String> readJournal() throws IOException {
+        List<String> lines = new ArrayList<>();
+        BufferedReader reader = new BufferedReader(new FileReader(mJournal));
+        try {
+            String line;
+            while ((line = reader.readLine()) != null) {
+                lines.add(line);
+            }
+        } finally {
+            reader.close();
+        }
+        return lines;
+    }
+
+    private static void delete(File file) {
+        File[] children = file.listFiles();
+        if (children != null) {
+            for (File child : children) {
+                delete(child);
+            }
+        }
+        //noinspection ResultOfMethodCallIgnored
+        file.delete();
+    }
+
+    /**
+     * Runs the journal writes when told to, like the disk executor would some time later.
+     */
+    private static class QueuedExecutor implements Executor {
+
+        private final LinkedList<Runnable> mTasks = new LinkedList<>();
+
+        @Override
+        public synchronized void execute(Runnable command) {
+            mTasks.add(command);
+        }
+
+        synchronized int size() {
+            return mTasks.size();
+        }
+
+        void drain() {
+            Runnable task;
+            while ((task = poll()) != null) {
+                task.run();
+            }
+        }
+
+        private synchronized Runnable poll() {
+            return mTasks.poll();
+        }
+    }
+}
@@ -0,0 +1,72 @@
+/*
+ * Copyright (c) 2016 Nick Guo
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package dev.nick.accessories.media.loader.utils;
+
+import org.junit.Test;
+
+import static org.junit.Assert.assertEquals;
+
+/**
+ * Expected values are MurmurHash3_x64_128 of the UTF-16LE bytes of the string, from the
+ * reference implementation of SMHasher.
+ */
+public class Murmur3Test {
+
+    @Test
+    public void emptyString() {
+        assertHash("", 0, 0x0000000000000000L, 0x0000000000000000L);
+    }
+
+    @Test
+    public void tailOnly() {
+        // 2, 8 and 10 bytes, the last one spills into the second half of the tail.
+        assertHash("a", 0, 0x96a698500b4e98bdL, 0xb278c9bfc754677dL);
+        assertHash("abcd", 0, 0x548cfc581a584f48L, 0x076f42dc4bbe30dfL);
+        assertHash("abcde", 0, 0xef8464c206cb30ecL, 0xcc827c3e934dfa4bL);
+    }
+
+    @Test
+    public void blocks() {
+        assertHash("abcdefgh", 0, 0x2803a5bc696daeb2L, 0xa2b1eb7540d6d1faL);
+        assertHash("hello world", 0, 0xd24b5e8173a667a8L, 0xa966cad9adfa2788L);
+        assertHash("http://example.com/images/photo.jpg", 0, 0xc01afce0251d6581L, 0x4b1a73b56e76e0a4L);
+    }
+
+    @Test
+    public void charsOutsideOfAscii() {
+        // A latin letter, a CJK one and a surrogate pair.
+        assertHash("\u00e9\u4e2d\ud83d\ude00", 0, 0x8d25c0584196c833L, 0x409fc9acc7ec6683L);
+    }
+
+    @Test
+    public void seed() {
+        assertHash("hello world", 42, 0xb4349c0b08b75c45L, 0x5bfe83f09b29ce15L);
+    }
+
+    @Test
+    public void hash64IsTheFirstHalf() {
+        assertEquals(0xd24b5e8173a667a8L, Murmur3.hash64("hello world", 0));
+        assertEquals(0xd24b5e8173a667a8L, Murmur3.hash64(new StringBuilder("hello ").append("world"), 0));
+    }
+
+    private static void assertHash(String s, long seed, long h1, long h2) {
+        long[] out = new long[2];
+        Murmur3.hash128(s, seed, out);
+        assertEquals(s, h1, out[0]);
+        assertEquals(s, h2, out[1]);
+    }
+}
@@ -0,0 +1,126 @@
+/*
+ * Copyright (c) 2016 Nick Guo
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package dev.nick.accessoriestest.media;
+
+import android.graphics.Bitmap;
+import android.graphics.BitmapFactory;
+import android.os.AsyncTask;
+import android.os.Bundle;
+import android.os.SystemClock;
+import android.support.annotation.Nullable;
+import android.widget.TextView;
+
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+
+import dev.nick.accessories.injection.Injector;
+import dev.nick.accessories.injection.annotation.binding.BindView;
+import dev.nick.accessories.media.loader.cache.disk.RawPixels;
+import dev.nick.accessoriestest.R;
+
+/**
+ * Times reading a grid thumbnail back from the disk cache, decoding a PNG as
+ * DiskCache.FileReader does against copying the raw pixels.
+ */
+public class DiskTierBenchmark extends BaseTest {
+
+    private static final int THUMBNAIL_SIZE = 200;
+    private static final int ROUNDS = 200;
+
+    @BindView(R.id.text)
+    TextView textView;
+
+    @Override
+    protected void onCreate(@Nullable Bundle savedInstanceState) {
+        super.onCreate(savedInstanceState);
+        setContentView(R.layout.usage);
+        setTitle(getClass().getSimpleName());
+        Injector.shared().inject(this);
+        textView.setText("Running...");
+        new AsyncTask<Void, Void, String>() {
+            @Override
+            protected String doInBackground(Void... params) {
+                try {
+                    return runBenchmark();
+                } catch (IOException e) {
+                    return "Failed: " + e;
+                }
+            }
+
+            @Override
+            protected void onPostExecute(String result) {
+                textView.setText(result);
+            }
+        }.execute();
+    }
+
+    private String runBenchmark() throws IOException {
+        InputStream in = getAssets().open("tree.jpg");
+        Bitmap source;
+        try {
+            source = BitmapFactory.decodeStream(in);
+        } finally {
+            in.close();
+        }
+        Bitmap thumbnail = Bitmap.createScaledBitmap(source, THUMBNAIL_SIZE, THUMBNAIL_SIZE, true);
+
+        File png = new File(getCacheDir(), "benchmark.png");
+        File pixels = new File(getCacheDir(), "benchmark.px");
+        FileOutputStream out = new FileOutputStream(png);
+        try {
+            thumbnail.compress(Bitmap.CompressFormat.PNG, 100, out);
+        } finally {
+            out.close();
+        }
+        out = new FileOutputStream(pixels);
+        try {
+            RawPixels.write(thumbnail, out);
+        } finally {
+            out.close();
+        }
+
+        long pngTime = 0;
+        long pixelsTime = 0;
+        // Interleaved, so neither one always runs on a warmer cache.
+        for (int i = 0; i < ROUNDS; i++) {
+            long start = SystemClock.elapsedRealtimeNanos();
+            FileInputStream fis = new FileInputStream(png);
+            try {
+                BitmapFactory.decodeStream(fis).recycle();
+            } finally {
+                fis.close();
+            }
+            pngTime += SystemClock.elapsedRealtimeNanos() - start;
+
+            start = SystemClock.elapsedRealtimeNanos();
+            RawPixels.read(pixels, null).recycle();
+            pixelsTime += SystemClock.elapsedRealtimeNanos() - start;
+        }
+
+        String result = THUMBNAIL_SIZE + "x" + THUMBNAIL_SIZE + ", " + ROUNDS + " rounds"
+                + "\n PNG: " + MiscUtils.formatedFileSize(png.length())
+                + ", " + (pngTime / ROUNDS / 1000) + "us per read"
+                + "\n Raw pixels: " + MiscUtils.formatedFileSize(pixels.length())
+                + ", " + (pixelsTime / ROUNDS / 1000) + "us per read";
+        png.delete();
+        pixels.delete();
+        return result;
+    }
+}
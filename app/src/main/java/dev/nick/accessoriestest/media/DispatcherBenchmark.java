@@ -0,0 +1,203 @@
+/*
+ * Copyright (c) 2016 Nick Guo
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package dev.nick.accessoriestest.media;
+
+import android.os.AsyncTask;
+import android.os.Bundle;
+import android.os.SystemClock;
+import android.support.annotation.NonNull;
+import android.support.annotation.Nullable;
+import android.widget.TextView;
+
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import dev.nick.accessories.injection.Injector;
+import dev.nick.accessories.injection.annotation.binding.BindView;
+import dev.nick.accessories.media.loader.queue.Dispatcher;
+import dev.nick.accessories.media.loader.queue.DispatcherStats;
+import dev.nick.accessoriestest.R;
+
+/**
+ * Runs the same load on a few loaders, each with its own fixed pools as the loaders used to
+ * have, against their quota executors on the shared Dispatcher: one loader after the other,
+ * then all of them at once, then nothing for longer than the dispatcher keeps idle threads.
+ */
+public class DispatcherBenchmark extends BaseTest {
+
+    private static final int LOADERS = 4;
+    // Loading and network service of each loader.
+    private static final int SERVICES = 2;
+    private static final int THREADS = 3;
+    private static final int TASKS = 200;
+    // A disk read or a small download.
+    private static final long TASK_MILLIS = 4;
+
+    @BindView(R.id.text)
+    TextView textView;
+
+    @Override
+    protected void onCreate(@Nullable Bundle savedInstanceState) {
+        super.onCreate(savedInstanceState);
+        setContentView(R.layout.usage);
+        setTitle(getClass().getSimpleName());
+        Injector.shared().inject(this);
+        textView.setText("Running...");
+        new AsyncTask<Void, Void, String>() {
+            @Override
+            protected String doInBackground(Void... params) {
+                try {
+                    return runBenchmark();
+                } catch (InterruptedException e) {
+                    return "Interrupted";
+                }
+            }
+
+            @Override
+            protected void onPostExecute(String result) {
+                textView.setText(result);
+            }
+        }.execute();
+    }
+
+    private String runBenchmark() throws InterruptedException {
+        final AtomicInteger created = new AtomicInteger();
+        ThreadFactory factory = new ThreadFactory() {
+            @Override
+            public Thread newThread(@NonNull Runnable r) {
+                created.incrementAndGet();
+                return new Thread(r);
+            }
+        };
+        ExecutorService[] pools = new ExecutorService[LOADERS * SERVICES];
+        for (int i = 0; i < pools.length; i++) {
+            pools[i] = new ThreadPoolExecutor(THREADS, THREADS, 0L, TimeUnit.MILLISECONDS,
+                    new LinkedBlockingQueue<Runnable>(), factory);
+        }
+        int pooledBase = Thread.activeCount();
+        Run pooledOne = runStaggered(pools, pooledBase);
+        int pooledOneCreated = created.get();
+        Run pooledAll = runAll(pools, pooledBase);
+        int pooledAllCreated = created.get() - pooledOneCreated;
+        SystemClock.sleep(Dispatcher.KEEP_ALIVE_MILLIS + 1000);
+        // The core threads stay until the loaders are terminated.
+        int pooledIdle = Thread.activeCount() - pooledBase;
+        for (ExecutorService pool : pools) {
+            pool.shutdown();
+        }
+        for (ExecutorService pool : pools) {
+            pool.awaitTermination(1, TimeUnit.SECONDS);
+        }
+
+        Dispatcher dispatcher = Dispatcher.shared();
+        DispatcherStats before = dispatcher.getStats();
+        ExecutorService[] executors = new ExecutorService[LOADERS * SERVICES];
+        for (int i = 0; i < executors.length; i++) {
+            executors[i] = dispatcher.newExecutor("Benchmark#" + i, THREADS);
+        }
+        int sharedBase = Thread.activeCount();
+        Run sharedOne = runStaggered(executors, sharedBase);
+        DispatcherStats middle = dispatcher.getStats();
+        Run sharedAll = runAll(executors, sharedBase);
+        DispatcherStats after = dispatcher.getStats();
+        SystemClock.sleep(Dispatcher.KEEP_ALIVE_MILLIS + 1000);
+        int sharedIdle = Thread.activeCount() - sharedBase;
+        for (ExecutorService executor : executors) {
+            executor.shutdown();
+        }
+
+        return LOADERS + " loaders x " + SERVICES + " services x " + THREADS + " threads, "
+                + TASKS + " tasks of " + TASK_MILLIS + "ms each"
+                + "\nOne loader at a time:"
+                + "\n Own pools: " + pooledOne.millis + "ms"
+                + ", threads created " + pooledOneCreated
+                + ", peak extra threads " + pooledOne.peakThreads
+                + "\n Dispatcher: " + sharedOne.millis + "ms"
+                + ", threads created " + (middle.getCreatedThreadCount() - before.getCreatedThreadCount())
+                + ", peak extra threads " + sharedOne.peakThreads
+                + ", wake-ups " + (middle.getWakeUpCount() - before.getWakeUpCount())
+                + "\nAll loaders at once:"
+                + "\n Own pools: " + pooledAll.millis + "ms"
+                + ", threads created " + pooledAllCreated
+                + ", peak extra threads " + pooledAll.peakThreads
+                + "\n Dispatcher: " + sharedAll.millis + "ms"
+                + ", threads created " + (after.getCreatedThreadCount() - middle.getCreatedThreadCount())
+                + ", peak extra threads " + sharedAll.peakThreads
+                + ", wake-ups " + (after.getWakeUpCount() - middle.getWakeUpCount())
+                + "\nIdle threads kept after " + (Dispatcher.KEEP_ALIVE_MILLIS + 1000) + "ms:"
+                + " own pools " + pooledIdle + ", dispatcher " + sharedIdle
+                + "\n " + dispatcher.getStats();
+    }
+
+    /**
+     * Spread the tasks over all the executors at once.
+     */
+    private Run runAll(ExecutorService[] executors, int baseThreads) throws InterruptedException {
+        Run run = new Run();
+        long start = SystemClock.elapsedRealtime();
+        await(submit(executors, 0, executors.length, TASKS), run, baseThreads);
+        run.millis = SystemClock.elapsedRealtime() - start;
+        return run;
+    }
+
+    /**
+     * Give the tasks to the services of one loader after the other, as a screen at a time loads.
+     */
+    private Run runStaggered(ExecutorService[] executors, int baseThreads) throws InterruptedException {
+        Run run = new Run();
+        long start = SystemClock.elapsedRealtime();
+        for (int loader = 0; loader < LOADERS; loader++) {
+            await(submit(executors, loader * SERVICES, SERVICES, TASKS / LOADERS), run, baseThreads);
+        }
+        run.millis = SystemClock.elapsedRealtime() - start;
+        return run;
+    }
+
+    private CountDownLatch submit(ExecutorService[] executors, int from, int count, int tasks) {
+        final CountDownLatch done = new CountDownLatch(tasks);
+        Runnable task = new Runnable() {
+            @Override
+            public void run() {
+                SystemClock.sleep(TASK_MILLIS);
+                done.countDown();
+            }
+        };
+        for (int i = 0; i < tasks; i++) {
+            executors[from + i % count].execute(task);
+        }
+        return done;
+    }
+
+    /**
+     * Wait for the tasks, sampling the threads started meanwhile.
+     */
+    private void await(CountDownLatch done, Run run, int baseThreads) throws InterruptedException {
+        while (!done.await(1, TimeUnit.MILLISECONDS)) {
+            run.peakThreads = Math.max(run.peakThreads, Thread.activeCount() - baseThreads);
+        }
+    }
+
+    private static class Run {
+        long millis;
+        int peakThreads;
+    }
+}
@@ -0,0 +1,143 @@
+/*
+ * Copyright (c) 2016 Nick Guo
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package dev.nick.accessoriestest.media;
+
+import android.os.AsyncTask;
+import android.os.Bundle;
+import android.os.SystemClock;
+import android.support.annotation.Nullable;
+import android.widget.TextView;
+
+import java.util.Random;
+import java.util.concurrent.BlockingQueue;
+
+import dev.nick.accessories.injection.Injector;
+import dev.nick.accessories.injection.annotation.binding.BindView;
+import dev.nick.accessories.media.loader.queue.FIFOPriorityBlockingQueue;
+import dev.nick.accessories.media.loader.queue.LanePriorityBlockingQueue;
+import dev.nick.accessories.media.loader.queue.Priority;
+import dev.nick.accessories.media.loader.queue.PriorityRemarkable;
+import dev.nick.accessories.media.loader.queue.QueuePolicy;
+import dev.nick.accessoriestest.R;
+
+/**
+ * Times offering and polling tasks of mixed priorities on the LanePriorityBlockingQueue
+ * against the deprecated PriorityBlockingQueue the loaders used before, and counts the tasks
+ * served while one of a higher priority was waiting.
+ */
+@SuppressWarnings("deprecation")
+public class LaneQueueBenchmark extends BaseTest {
+
+    private static final int TASKS = 5000;
+    private static final int ROUNDS = 20;
+
+    @BindView(R.id.text)
+    TextView textView;
+
+    @Override
+    protected void onCreate(@Nullable Bundle savedInstanceState) {
+        super.onCreate(savedInstanceState);
+        setContentView(R.layout.usage);
+        setTitle(getClass().getSimpleName());
+        Injector.shared().inject(this);
+        textView.setText("Running...");
+        new AsyncTask<Void, Void, String>() {
+            @Override
+            protected String doInBackground(Void... params) {
+                return runBenchmark();
+            }
+
+            @Override
+            protected void onPostExecute(String result) {
+                textView.setText(result);
+            }
+        }.execute();
+    }
+
+    private String runBenchmark() {
+        Priority[] priorities = Priority.values();
+        Random random = new Random(42);
+        Task[] tasks = new Task[TASKS];
+        for (int i = 0; i < TASKS; i++) {
+            tasks[i] = new Task(priorities[random.nextInt(priorities.length)]);
+        }
+
+        Run lanes = new Run();
+        Run deque = new Run();
+        // Interleaved, so neither one always runs on a warmer heap.
+        for (int i = 0; i < ROUNDS; i++) {
+            run(new LanePriorityBlockingQueue<Task>(QueuePolicy.FIFO), tasks, lanes);
+            run(new FIFOPriorityBlockingQueue<Task>(), tasks, deque);
+        }
+
+        long ops = (long) TASKS * ROUNDS;
+        return TASKS + " tasks of mixed priorities, " + ROUNDS + " rounds"
+                + "\n Lanes: offer " + (lanes.offerNanos / ops) + "ns, poll " + (lanes.pollNanos / ops) + "ns"
+                + ", inversions " + (lanes.inversions / ROUNDS)
+                + "\n Deque: offer " + (deque.offerNanos / ops) + "ns, poll " + (deque.pollNanos / ops) + "ns"
+                + ", inversions " + (deque.inversions / ROUNDS)
+                + "\n An inversion is a task served while one of a higher priority waited.";
+    }
+
+    private static void run(BlockingQueue<Task> queue, Task[] tasks, Run run) {
+        // Tasks waiting by priority ordinal, HIGH first.
+        int[] waiting = new int[Priority.values().length];
+        long start = SystemClock.elapsedRealtimeNanos();
+        for (Task task : tasks) {
+            queue.offer(task);
+        }
+        run.offerNanos += SystemClock.elapsedRealtimeNanos() - start;
+
+        Task[] served = new Task[tasks.length];
+        start = SystemClock.elapsedRealtimeNanos();
+        for (int i = 0; i < served.length; i++) {
+            served[i] = queue.poll();
+        }
+        run.pollNanos += SystemClock.elapsedRealtimeNanos() - start;
+
+        for (Task task : tasks) {
+            waiting[task.priority.ordinal()]++;
+        }
+        for (Task task : served) {
+            int ordinal = task.priority.ordinal();
+            waiting[ordinal]--;
+            for (int higher = 0; higher < ordinal; higher++) {
+                run.inversions += waiting[higher];
+            }
+        }
+    }
+
+    private static class Task implements PriorityRemarkable {
+
+        final Priority priority;
+
+        Task(Priority priority) {
+            this.priority = priority;
+        }
+
+        @Override
+        public Priority getRemark() {
+            return priority;
+        }
+    }
+
+    private static class Run {
+        long offerNanos;
+        long pollNanos;
+        long inversions;
+    }
+}
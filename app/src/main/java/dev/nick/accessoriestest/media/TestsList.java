@@ -75,6 +75,9 @@ public class TestsList extends AppCompatActivity {
 //        tests.add(new Test(Usage.class));
 //        tests.add(new Test(ScrollStateTest.class));
 //        tests.add(new Test(CustomAnimationTest.class));
+        tests.add(new Test(DiskTierBenchmark.class, "DiskTierBenchmark", "PNG decoding against raw pixels of a thumbnail"));
+        tests.add(new Test(DispatcherBenchmark.class, "DispatcherBenchmark", "Per-loader pools against the shared dispatcher"));
+        tests.add(new Test(LaneQueueBenchmark.class, "LaneQueueBenchmark", "Priority lanes against the old priority deque"));
         return tests;
     }
 